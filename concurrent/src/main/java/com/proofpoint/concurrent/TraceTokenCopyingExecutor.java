@@ -15,14 +15,10 @@
  */
 package com.proofpoint.concurrent;
 
-import com.proofpoint.tracetoken.TraceToken;
-import com.proofpoint.tracetoken.TraceTokenScope;
-
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 
-import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
-import static com.proofpoint.tracetoken.TraceTokenManager.registerTraceToken;
+import static com.proofpoint.concurrent.TraceTokenPropagation.propagating;
 
 public class TraceTokenCopyingExecutor
     extends WrappingExecutorService
@@ -47,22 +43,12 @@ public class TraceTokenCopyingExecutor
     @Override
     protected <T> Callable<T> wrapTask(Callable<T> callable)
     {
-        TraceToken token = getCurrentTraceToken();
-        return () -> {
-            try (TraceTokenScope ignored = registerTraceToken(token)) {
-                return callable.call();
-            }
-        };
+        return propagating(callable);
     }
 
     @Override
     protected Runnable wrapTask(Runnable command)
     {
-        TraceToken token = getCurrentTraceToken();
-        return () -> {
-            try (TraceTokenScope ignored = registerTraceToken(token)) {
-                command.run();
-            }
-        };
+        return propagating(command);
     }
 }
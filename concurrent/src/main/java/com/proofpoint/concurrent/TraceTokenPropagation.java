@@ -0,0 +1,193 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.concurrent;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.proofpoint.tracetoken.TraceToken;
+import com.proofpoint.tracetoken.TraceTokenScope;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
+import static com.proofpoint.tracetoken.TraceTokenManager.registerTraceToken;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Helpers that carry the current trace token into code that runs later,
+ * possibly on another thread, such as executor tasks and future callbacks.
+ * <p>
+ * A {@link TraceToken} is immutable, so each helper captures the token of the
+ * thread that calls it by reference. When the wrapped code runs, the token
+ * is registered only if the running thread does not already have that same
+ * token, and the thread's previous token is restored afterwards. Code wrapped
+ * while there is no token runs with no token, so a pooled thread never
+ * carries over the token of the task it ran before.
+ */
+public final class TraceTokenPropagation
+{
+    private TraceTokenPropagation()
+    {}
+
+    /**
+     * @return an {@link Executor} that runs each task with the trace token of
+     * the thread that submitted it
+     */
+    public static Executor traceTokenPropagatingExecutor(Executor executor)
+    {
+        requireNonNull(executor, "executor is null");
+        return command -> executor.execute(propagating(command));
+    }
+
+    public static Runnable propagating(Runnable runnable)
+    {
+        requireNonNull(runnable, "runnable is null");
+        TraceToken token = getCurrentTraceToken();
+        return () -> {
+            if (getCurrentTraceToken() == token) {
+                runnable.run();
+                return;
+            }
+            try (TraceTokenScope ignored = registerTraceToken(token)) {
+                runnable.run();
+            }
+        };
+    }
+
+    public static <V> Callable<V> propagating(Callable<V> callable)
+    {
+        requireNonNull(callable, "callable is null");
+        TraceToken token = getCurrentTraceToken();
+        return () -> {
+            if (getCurrentTraceToken() == token) {
+                return callable.call();
+            }
+            try (TraceTokenScope ignored = registerTraceToken(token)) {
+                return callable.call();
+            }
+        };
+    }
+
+    public static <V> FutureCallback<V> propagating(FutureCallback<V> callback)
+    {
+        requireNonNull(callback, "callback is null");
+        TraceToken token = getCurrentTraceToken();
+        return new FutureCallback<>()
+        {
+            @Override
+            public void onSuccess(V result)
+            {
+                if (getCurrentTraceToken() == token) {
+                    callback.onSuccess(result);
+                    return;
+                }
+                try (TraceTokenScope ignored = registerTraceToken(token)) {
+                    callback.onSuccess(result);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                if (getCurrentTraceToken() == token) {
+                    callback.onFailure(t);
+                    return;
+                }
+                try (TraceTokenScope ignored = registerTraceToken(token)) {
+                    callback.onFailure(t);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps a function passed to a {@link java.util.concurrent.CompletionStage}
+     * method such as {@code thenApply}.
+     */
+    public static <T, R> Function<T, R> propagatingFunction(Function<T, R> function)
+    {
+        requireNonNull(function, "function is null");
+        TraceToken token = getCurrentTraceToken();
+        return value -> {
+            if (getCurrentTraceToken() == token) {
+                return function.apply(value);
+            }
+            try (TraceTokenScope ignored = registerTraceToken(token)) {
+                return function.apply(value);
+            }
+        };
+    }
+
+    /**
+     * Wraps a consumer passed to a {@link java.util.concurrent.CompletionStage}
+     * method such as {@code thenAccept}.
+     */
+    public static <T> Consumer<T> propagatingConsumer(Consumer<T> consumer)
+    {
+        requireNonNull(consumer, "consumer is null");
+        TraceToken token = getCurrentTraceToken();
+        return value -> {
+            if (getCurrentTraceToken() == token) {
+                consumer.accept(value);
+                return;
+            }
+            try (TraceTokenScope ignored = registerTraceToken(token)) {
+                consumer.accept(value);
+            }
+        };
+    }
+
+    /**
+     * Wraps a function passed to a {@link java.util.concurrent.CompletionStage}
+     * method such as {@code handle} or {@code thenCombine}.
+     */
+    public static <T, U, R> BiFunction<T, U, R> propagatingBiFunction(BiFunction<T, U, R> function)
+    {
+        requireNonNull(function, "function is null");
+        TraceToken token = getCurrentTraceToken();
+        return (first, second) -> {
+            if (getCurrentTraceToken() == token) {
+                return function.apply(first, second);
+            }
+            try (TraceTokenScope ignored = registerTraceToken(token)) {
+                return function.apply(first, second);
+            }
+        };
+    }
+
+    /**
+     * Wraps a consumer passed to a {@link java.util.concurrent.CompletionStage}
+     * method such as {@code whenComplete} or {@code thenAcceptBoth}.
+     */
+    public static <T, U> BiConsumer<T, U> propagatingBiConsumer(BiConsumer<T, U> consumer)
+    {
+        requireNonNull(consumer, "consumer is null");
+        TraceToken token = getCurrentTraceToken();
+        return (first, second) -> {
+            if (getCurrentTraceToken() == token) {
+                consumer.accept(first, second);
+                return;
+            }
+            try (TraceTokenScope ignored = registerTraceToken(token)) {
+                consumer.accept(first, second);
+            }
+        };
+    }
+}
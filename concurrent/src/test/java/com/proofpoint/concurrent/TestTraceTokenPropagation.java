@@ -0,0 +1,170 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.concurrent;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import com.proofpoint.tracetoken.TraceToken;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static com.proofpoint.concurrent.TraceTokenPropagation.propagating;
+import static com.proofpoint.concurrent.TraceTokenPropagation.propagatingBiConsumer;
+import static com.proofpoint.concurrent.TraceTokenPropagation.propagatingFunction;
+import static com.proofpoint.concurrent.TraceTokenPropagation.traceTokenPropagatingExecutor;
+import static com.proofpoint.tracetoken.TraceTokenManager.clearRequestToken;
+import static com.proofpoint.tracetoken.TraceTokenManager.createAndRegisterNewRequestToken;
+import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
+import static com.proofpoint.tracetoken.TraceTokenManager.registerRequestToken;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestTraceTokenPropagation
+{
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setup()
+    {
+        executor = newSingleThreadExecutor();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown()
+    {
+        executor.shutdownNow();
+        clearRequestToken();
+    }
+
+    @Test
+    public void testExecutor()
+            throws Exception
+    {
+        AtomicReference<TraceToken> actualToken = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        createAndRegisterNewRequestToken("somekey", "somevalue");
+        TraceToken token = getCurrentTraceToken();
+        traceTokenPropagatingExecutor(executor).execute(() -> {
+            actualToken.set(getCurrentTraceToken());
+            latch.countDown();
+        });
+        assertTrue(latch.await(10, SECONDS));
+        assertSame(actualToken.get(), token);
+    }
+
+    @Test
+    public void testNoTokenClearsPooledThreadToken()
+            throws Exception
+    {
+        executor.submit(() -> registerRequestToken("stale")).get(10, SECONDS);
+
+        clearRequestToken();
+        TraceToken actualToken = executor.submit(propagating(() -> getCurrentTraceToken())).get(10, SECONDS);
+        assertNull(actualToken);
+    }
+
+    @Test
+    public void testRestoresPreviousToken()
+    {
+        registerRequestToken("inner");
+        Runnable inner = propagating(() -> assertEquals(getCurrentTraceToken().get("id"), "inner"));
+        registerRequestToken("outer");
+
+        inner.run();
+        assertEquals(getCurrentTraceToken().get("id"), "outer");
+
+        // The thread already has the captured token
+        registerRequestToken("inner");
+        TraceToken token = getCurrentTraceToken();
+        Runnable sameToken = propagating(() -> assertSame(getCurrentTraceToken(), token));
+        sameToken.run();
+        assertSame(getCurrentTraceToken(), token);
+    }
+
+    @Test
+    public void testFutureCallback()
+            throws Exception
+    {
+        AtomicReference<TraceToken> successToken = new AtomicReference<>();
+        AtomicReference<TraceToken> failureToken = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        SettableFuture<String> success = SettableFuture.create();
+        SettableFuture<String> failure = SettableFuture.create();
+
+        registerRequestToken("callback");
+        TraceToken token = getCurrentTraceToken();
+        FutureCallback<String> callback = propagating(new FutureCallback<>()
+        {
+            @Override
+            public void onSuccess(String result)
+            {
+                successToken.set(getCurrentTraceToken());
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                failureToken.set(getCurrentTraceToken());
+                latch.countDown();
+            }
+        });
+        Futures.addCallback(success, callback, executor);
+        Futures.addCallback(failure, callback, directExecutor());
+
+        clearRequestToken();
+        success.set("value");
+        failure.setException(new RuntimeException());
+
+        assertTrue(latch.await(10, SECONDS));
+        assertSame(successToken.get(), token);
+        assertSame(failureToken.get(), token);
+        assertNull(getCurrentTraceToken());
+    }
+
+    @Test
+    public void testCompletionStage()
+            throws Exception
+    {
+        AtomicReference<TraceToken> completeToken = new AtomicReference<>();
+        CompletableFuture<String> future = new CompletableFuture<>();
+
+        registerRequestToken("stage");
+        TraceToken token = getCurrentTraceToken();
+        CompletableFuture<String> result = future
+                .thenApplyAsync(propagatingFunction(value -> value + " " + getCurrentTraceToken().get("id")), executor)
+                .whenComplete(propagatingBiConsumer((value, throwable) -> completeToken.set(getCurrentTraceToken())));
+
+        clearRequestToken();
+        future.complete("value");
+
+        assertEquals(result.get(10, SECONDS), "value stage");
+        assertSame(completeToken.get(), token);
+    }
+}
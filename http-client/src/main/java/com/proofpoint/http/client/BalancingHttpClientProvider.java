@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client;
+
+import com.proofpoint.http.client.balancing.BalancingHttpClient;
+import com.proofpoint.http.client.balancing.ForBalancingHttpClient;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Provides a balancing client, wrapped in a {@link CachingHttpClient} if the
+ * binding asked for a cache. The cache is outside the balancer so that it is
+ * keyed by the relative request URI and hits never become attempts on an
+ * instance.
+ */
+class BalancingHttpClientProvider
+    implements Provider<HttpClient>
+{
+    private final BalancingHttpClient balancingHttpClient;
+    private final HttpClientBindOptions bindOptions;
+    private final HttpClientConfig config;
+
+    @Inject
+    BalancingHttpClientProvider(BalancingHttpClient balancingHttpClient,
+            @ForBalancingHttpClient HttpClientBindOptions bindOptions,
+            @ForBalancingHttpClient HttpClientConfig config)
+    {
+        this.balancingHttpClient = requireNonNull(balancingHttpClient, "balancingHttpClient is null");
+        this.bindOptions = requireNonNull(bindOptions, "bindOptions is null");
+        this.config = requireNonNull(config, "config is null");
+    }
+
+    @Override
+    public HttpClient get()
+    {
+        if (bindOptions.isWithCache()) {
+            return new CachingHttpClient(balancingHttpClient, config.getCacheMaxSize());
+        }
+        return balancingHttpClient;
+    }
+}
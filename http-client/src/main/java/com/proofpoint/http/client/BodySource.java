@@ -15,10 +15,19 @@
  */
 package com.proofpoint.http.client;
 
+import javax.annotation.Nullable;
+
 public interface BodySource
 {
     /**
      * @return the content length, if known, or -1 if the content length is unknown
      */
     default long getLength() { return -1; }
+
+    /**
+     * @return the value of the Content-Encoding header to send with the body,
+     *         or null if the body is not encoded
+     */
+    @Nullable
+    default String getContentEncoding() { return null; }
 }
@@ -0,0 +1,741 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.proofpoint.reporting.Gauge;
+import com.proofpoint.stats.CounterStat;
+import com.proofpoint.units.DataSize;
+import org.weakref.jmx.Flatten;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.cache.CacheBuilder.newBuilder;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
+import static com.google.common.net.HttpHeaders.VARY;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.lang.Math.max;
+import static java.util.Locale.ENGLISH;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * {@link HttpClient} decorator that caches responses to GET requests as
+ * directed by their Cache-Control and ETag headers.
+ * <p>
+ * A 200 response that has a {@code max-age} or an ETag is stored unless it
+ * has {@code no-store}, {@code private} or {@code Vary: *}. A stored response
+ * is served without a request until it is {@code max-age} seconds old, or
+ * never if it has {@code no-cache}. Unless it has {@code must-revalidate}, it
+ * is then served for a further {@code stale-while-revalidate} seconds while a
+ * background request revalidates it. After that, a request revalidates it
+ * with {@code If-None-Match} if it has an ETag. Concurrent requests for the
+ * same URI that miss the cache share a single request. When that request's
+ * response cannot be stored, the waiting requests are sent as soon as its
+ * headers arrive, and for the next minute requests for the URI are sent
+ * without waiting for each other.
+ * <p>
+ * Requests with a body, or with an Authorization, Cache-Control, Pragma,
+ * Range or conditional header, bypass the cache. Responses larger than an
+ * eighth of the cache size are passed through without being stored. The
+ * Expires and Age headers are not used.
+ */
+public class CachingHttpClient
+        implements HttpClient
+{
+    private static final Set<String> BYPASS_HEADERS = Set.of("authorization", "cache-control", "pragma", "range",
+            "if-match", "if-none-match", "if-modified-since", "if-unmodified-since", "if-range");
+    private static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate";
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+    private static final long PASS_SECONDS = 60;
+    private static final int MAX_PASS_URIS = 10_000;
+    private static final Splitter HEADER_LIST_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final HttpClient delegate;
+    private final Ticker ticker;
+    private final long maxEntryBytes;
+    private final Cache<URI, CacheEntry> cache;
+    private final Cache<URI, Boolean> passUris;
+    private final ConcurrentMap<URI, CompletableFuture<CacheEntry>> inFlight = new ConcurrentHashMap<>();
+    private final CounterStat hits = new CounterStat();
+    private final CounterStat misses = new CounterStat();
+    private final CounterStat notModified = new CounterStat();
+    private final CounterStat bytesSaved = new CounterStat();
+
+    public CachingHttpClient(HttpClient delegate, DataSize maxSize)
+    {
+        this(delegate, maxSize, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    CachingHttpClient(HttpClient delegate, DataSize maxSize, Ticker ticker)
+    {
+        this.delegate = requireNonNull(delegate, "delegate is null");
+        long maxBytes = requireNonNull(maxSize, "maxSize is null").toBytes();
+        maxEntryBytes = maxBytes / 8;
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        cache = newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((URI uri, CacheEntry entry) -> entry.getWeight())
+                .build();
+        passUris = newBuilder()
+                .maximumSize(MAX_PASS_URIS)
+                .expireAfterWrite(PASS_SECONDS, SECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    @Override
+    public <T, E extends Exception> T execute(Request request, ResponseHandler<T, E> responseHandler)
+            throws E
+    {
+        if (!isCacheable(request)) {
+            return delegate.execute(request, responseHandler);
+        }
+
+        URI uri = request.getUri();
+        CacheEntry entry = lookup(request);
+        if (entry != null) {
+            long now = ticker.read();
+            if (entry.isFresh(now)) {
+                return handleHit(request, entry, responseHandler);
+            }
+            if (entry.isServableWhileRevalidating(now)) {
+                revalidateInBackground(request, entry);
+                return handleHit(request, entry, responseHandler);
+            }
+        }
+
+        if (entry == null && passUris.getIfPresent(uri) != null) {
+            misses.add(1);
+            return delegate.execute(request, new StoringResponseHandler<>(request, null, null, responseHandler));
+        }
+
+        CompletableFuture<CacheEntry> fetch = new CompletableFuture<>();
+        CompletableFuture<CacheEntry> existing = inFlight.putIfAbsent(uri, fetch);
+        if (existing != null) {
+            CacheEntry shared;
+            try {
+                shared = existing.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return responseHandler.handleException(request, e);
+            }
+            catch (ExecutionException e) {
+                throw new AssertionError("in-flight fetches complete normally", e);
+            }
+            if (shared != null && shared.matches(request)) {
+                return handleHit(request, shared, responseHandler);
+            }
+            misses.add(1);
+            return delegate.execute(request, responseHandler);
+        }
+
+        misses.add(1);
+        try {
+            return delegate.execute(conditionalRequest(request, entry), new StoringResponseHandler<>(request, fetch, entry, responseHandler));
+        }
+        finally {
+            complete(uri, fetch, null);
+        }
+    }
+
+    @Override
+    public <T, E extends Exception> HttpResponseFuture<T> executeAsync(Request request, ResponseHandler<T, E> responseHandler)
+    {
+        if (!isCacheable(request)) {
+            return delegate.executeAsync(request, responseHandler);
+        }
+
+        URI uri = request.getUri();
+        CacheEntry entry = lookup(request);
+        if (entry != null) {
+            long now = ticker.read();
+            if (entry.isFresh(now)) {
+                return cachedResponseFuture(request, entry, responseHandler);
+            }
+            if (entry.isServableWhileRevalidating(now)) {
+                revalidateInBackground(request, entry);
+                return cachedResponseFuture(request, entry, responseHandler);
+            }
+        }
+
+        if (entry == null && passUris.getIfPresent(uri) != null) {
+            misses.add(1);
+            return delegate.executeAsync(request, new StoringResponseHandler<>(request, null, null, responseHandler));
+        }
+
+        CompletableFuture<CacheEntry> fetch = new CompletableFuture<>();
+        CompletableFuture<CacheEntry> existing = inFlight.putIfAbsent(uri, fetch);
+        if (existing != null) {
+            CachingResponseFuture<T> future = new CachingResponseFuture<>();
+            existing.thenAccept(shared -> {
+                if (shared != null && shared.matches(request)) {
+                    future.setHit(request, shared, responseHandler);
+                }
+                else {
+                    misses.add(1);
+                    future.forward(request, responseHandler);
+                }
+            });
+            return future;
+        }
+
+        misses.add(1);
+        HttpResponseFuture<T> future;
+        try {
+            future = delegate.executeAsync(conditionalRequest(request, entry), new StoringResponseHandler<>(request, fetch, entry, responseHandler));
+        }
+        catch (RuntimeException e) {
+            complete(uri, fetch, null);
+            throw e;
+        }
+        future.addListener(() -> complete(uri, fetch, null), directExecutor());
+        return future;
+    }
+
+    private static boolean isCacheable(Request request)
+    {
+        if (!"GET".equals(request.getMethod()) || request.getBodySource() != null) {
+            return false;
+        }
+        for (String name : request.getHeaders().keySet()) {
+            if (BYPASS_HEADERS.contains(name.toLowerCase(ENGLISH))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private CacheEntry lookup(Request request)
+    {
+        CacheEntry entry = cache.getIfPresent(request.getUri());
+        if (entry == null || !entry.matches(request)) {
+            return null;
+        }
+        return entry;
+    }
+
+    private <T, E extends Exception> T handleHit(Request request, CacheEntry entry, ResponseHandler<T, E> responseHandler)
+            throws E
+    {
+        hits.add(1);
+        bytesSaved.add(entry.body.length);
+        return responseHandler.handle(request, entry.toResponse());
+    }
+
+    private <T, E extends Exception> HttpResponseFuture<T> cachedResponseFuture(Request request, CacheEntry entry, ResponseHandler<T, E> responseHandler)
+    {
+        CachingResponseFuture<T> future = new CachingResponseFuture<>();
+        future.setHit(request, entry, responseHandler);
+        return future;
+    }
+
+    private void revalidateInBackground(Request request, CacheEntry entry)
+    {
+        URI uri = request.getUri();
+        CompletableFuture<CacheEntry> fetch = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(uri, fetch) != null) {
+            return;
+        }
+        try {
+            delegate.executeAsync(conditionalRequest(request, entry), new StoringResponseHandler<>(request, fetch, entry, new DiscardingResponseHandler()))
+                    .addListener(() -> complete(uri, fetch, null), directExecutor());
+        }
+        catch (RuntimeException e) {
+            complete(uri, fetch, null);
+        }
+    }
+
+    private static Request conditionalRequest(Request request, @Nullable CacheEntry entry)
+    {
+        if (entry == null || entry.etag == null) {
+            return request;
+        }
+        return Request.Builder.fromRequest(request)
+                .setHeader(IF_NONE_MATCH, entry.etag)
+                .build();
+    }
+
+    private void complete(URI uri, CompletableFuture<CacheEntry> fetch, @Nullable CacheEntry entry)
+    {
+        inFlight.remove(uri, fetch);
+        fetch.complete(entry);
+    }
+
+    @Override
+    public RequestStats getStats()
+    {
+        return delegate.getStats();
+    }
+
+    @Flatten
+    public HttpClient getDelegate()
+    {
+        return delegate;
+    }
+
+    @Nested
+    public CounterStat getCacheHits()
+    {
+        return hits;
+    }
+
+    @Nested
+    public CounterStat getCacheMisses()
+    {
+        return misses;
+    }
+
+    @Nested
+    public CounterStat getCacheNotModified()
+    {
+        return notModified;
+    }
+
+    @Nested
+    public CounterStat getCacheBytesSaved()
+    {
+        return bytesSaved;
+    }
+
+    @Gauge
+    public double getCacheHitRatio()
+    {
+        double hitCount = hits.getOneMinute().getCount();
+        double total = hitCount + misses.getOneMinute().getCount();
+        if (total == 0) {
+            return 0;
+        }
+        return hitCount / total;
+    }
+
+    @Gauge
+    public long getCacheEntries()
+    {
+        return cache.size();
+    }
+
+    @Override
+    public void close()
+    {
+        cache.invalidateAll();
+        passUris.invalidateAll();
+        delegate.close();
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return delegate.isClosed();
+    }
+
+    @Nullable
+    private static CacheControl storableCacheControl(Response response)
+    {
+        if (response.getStatusCode() != HttpStatus.OK.code()) {
+            return null;
+        }
+        for (String vary : response.getHeaders(VARY)) {
+            if (vary.contains("*")) {
+                return null;
+            }
+        }
+        CacheControl cacheControl = parseCacheControl(response.getHeader(CACHE_CONTROL));
+        if (cacheControl == null || cacheControl.isNoStore() || cacheControl.isPrivate()) {
+            return null;
+        }
+        if (cacheControl.getMaxAge() < 0 && response.getHeader(ETAG) == null) {
+            return null;
+        }
+        return cacheControl;
+    }
+
+    @Nullable
+    private static CacheControl parseCacheControl(@Nullable String header)
+    {
+        if (header == null) {
+            return new CacheControl();
+        }
+        try {
+            return CacheControl.valueOf(header);
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static List<String> requestHeaderValues(Request request, String name)
+    {
+        return request.getHeaders().entries().stream()
+                .filter(entry -> entry.getKey().equalsIgnoreCase(name))
+                .map(Entry::getValue)
+                .collect(toImmutableList());
+    }
+
+    private class StoringResponseHandler<T, E extends Exception>
+            implements ResponseHandler<T, E>
+    {
+        private final Request originalRequest;
+        @Nullable
+        private final CompletableFuture<CacheEntry> fetch;
+        @Nullable
+        private final CacheEntry staleEntry;
+        private final ResponseHandler<T, E> responseHandler;
+
+        StoringResponseHandler(Request originalRequest, @Nullable CompletableFuture<CacheEntry> fetch, @Nullable CacheEntry staleEntry, ResponseHandler<T, E> responseHandler)
+        {
+            this.originalRequest = originalRequest;
+            this.fetch = fetch;
+            this.staleEntry = staleEntry;
+            this.responseHandler = responseHandler;
+        }
+
+        @Override
+        public T handleException(Request request, Exception exception)
+                throws E
+        {
+            completeFetch(null);
+            return responseHandler.handleException(request, exception);
+        }
+
+        @Override
+        public T handle(Request request, Response response)
+                throws E
+        {
+            URI uri = originalRequest.getUri();
+            CacheEntry entry = null;
+            try {
+                if (response.getStatusCode() == HttpStatus.NOT_MODIFIED.code() && staleEntry != null) {
+                    entry = staleEntry.revalidated(response, ticker.read());
+                    cache.put(uri, entry);
+                    notModified.add(1);
+                    bytesSaved.add(entry.body.length);
+                    return responseHandler.handle(request, entry.toResponse());
+                }
+
+                CacheControl cacheControl = storableCacheControl(response);
+                if (cacheControl == null) {
+                    if (response.getStatusCode() == HttpStatus.OK.code()) {
+                        cache.invalidate(uri);
+                    }
+                    pass(uri);
+                    return responseHandler.handle(request, response);
+                }
+
+                InputStream input;
+                byte[] body;
+                try {
+                    input = response.getInputStream();
+                    body = ByteStreams.toByteArray(ByteStreams.limit(input, maxEntryBytes + 1));
+                }
+                catch (IOException e) {
+                    return responseHandler.handleException(request, e);
+                }
+                if (body.length > maxEntryBytes) {
+                    cache.invalidate(uri);
+                    pass(uri);
+                    return responseHandler.handle(request, new CachedResponse(response, new SequenceInputStream(new ByteArrayInputStream(body), input)));
+                }
+
+                entry = new CacheEntry(response, body, varyValues(response), cacheControl, ticker.read());
+                cache.put(uri, entry);
+                passUris.invalidate(uri);
+                return responseHandler.handle(request, entry.toResponse());
+            }
+            finally {
+                completeFetch(entry);
+            }
+        }
+
+        private void pass(URI uri)
+        {
+            // Waiting requests cannot share the response, so release them before it is read
+            passUris.put(uri, true);
+            completeFetch(null);
+        }
+
+        private void completeFetch(@Nullable CacheEntry entry)
+        {
+            if (fetch != null) {
+                complete(originalRequest.getUri(), fetch, entry);
+            }
+        }
+
+        private Map<String, List<String>> varyValues(Response response)
+        {
+            ImmutableMap.Builder<String, List<String>> builder = ImmutableMap.builder();
+            for (String vary : response.getHeaders(VARY)) {
+                for (String name : HEADER_LIST_SPLITTER.split(vary)) {
+                    String lowerCaseName = name.toLowerCase(ENGLISH);
+                    builder.put(lowerCaseName, requestHeaderValues(originalRequest, lowerCaseName));
+                }
+            }
+            return builder.buildKeepingLast();
+        }
+    }
+
+    private static class DiscardingResponseHandler
+            implements ResponseHandler<Void, RuntimeException>
+    {
+        @Override
+        public Void handleException(Request request, Exception exception)
+        {
+            return null;
+        }
+
+        @Override
+        public Void handle(Request request, Response response)
+        {
+            return null;
+        }
+    }
+
+    private static final class CacheEntry
+    {
+        private final int statusCode;
+        private final String statusMessage;
+        private final ListMultimap<HeaderName, String> headers;
+        private final byte[] body;
+        private final Map<String, List<String>> varyValues;
+        @Nullable
+        private final String etag;
+        private final long freshUntil;
+        private final long staleUntil;
+
+        CacheEntry(Response response, byte[] body, Map<String, List<String>> varyValues, CacheControl cacheControl, long now)
+        {
+            this(response.getStatusCode(), response.getStatusMessage(), ImmutableListMultimap.copyOf(response.getHeaders()), body, varyValues, cacheControl, now);
+        }
+
+        private CacheEntry(int statusCode, String statusMessage, ListMultimap<HeaderName, String> headers, byte[] body, Map<String, List<String>> varyValues, CacheControl cacheControl, long now)
+        {
+            this.statusCode = statusCode;
+            this.statusMessage = statusMessage;
+            this.headers = headers;
+            this.body = body;
+            this.varyValues = varyValues;
+            List<String> etags = headers.get(HeaderName.of(ETAG));
+            etag = etags.isEmpty() ? null : etags.get(0);
+
+            long lifetime = cacheControl.isNoCache() ? 0 : SECONDS.toNanos(max(cacheControl.getMaxAge(), 0));
+            freshUntil = now + lifetime;
+            if (cacheControl.isNoCache() || cacheControl.isMustRevalidate()) {
+                staleUntil = freshUntil;
+            }
+            else {
+                staleUntil = freshUntil + SECONDS.toNanos(staleWhileRevalidateSeconds(cacheControl));
+            }
+        }
+
+        private static long staleWhileRevalidateSeconds(CacheControl cacheControl)
+        {
+            String value = cacheControl.getCacheExtension().get(STALE_WHILE_REVALIDATE);
+            if (value == null) {
+                return 0;
+            }
+            try {
+                return max(Long.parseLong(value), 0);
+            }
+            catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        /**
+         * Returns the entry refreshed by a 304 response, which replaces the
+         * stored Cache-Control and ETag headers if it has them.
+         */
+        CacheEntry revalidated(Response response, long now)
+        {
+            ImmutableListMultimap.Builder<HeaderName, String> builder = ImmutableListMultimap.builder();
+            for (Entry<HeaderName, String> header : headers.entries()) {
+                if (response.getHeaders().containsKey(header.getKey()) && isRevalidatedHeader(header.getKey())) {
+                    continue;
+                }
+                builder.put(header);
+            }
+            for (Entry<HeaderName, String> header : response.getHeaders().entries()) {
+                if (isRevalidatedHeader(header.getKey())) {
+                    builder.put(header);
+                }
+            }
+            ListMultimap<HeaderName, String> newHeaders = builder.build();
+
+            List<String> cacheControlHeaders = newHeaders.get(HeaderName.of(CACHE_CONTROL));
+            CacheControl cacheControl = parseCacheControl(cacheControlHeaders.isEmpty() ? null : cacheControlHeaders.get(0));
+            if (cacheControl == null) {
+                cacheControl = CacheControl.valueOf("no-cache");
+            }
+            return new CacheEntry(statusCode, statusMessage, newHeaders, body, varyValues, cacheControl, now);
+        }
+
+        private static boolean isRevalidatedHeader(HeaderName name)
+        {
+            return name.equals(HeaderName.of(CACHE_CONTROL)) || name.equals(HeaderName.of(ETAG));
+        }
+
+        boolean isFresh(long now)
+        {
+            return now - freshUntil < 0;
+        }
+
+        boolean isServableWhileRevalidating(long now)
+        {
+            return now - staleUntil < 0;
+        }
+
+        boolean matches(Request request)
+        {
+            for (Entry<String, List<String>> entry : varyValues.entrySet()) {
+                if (!requestHeaderValues(request, entry.getKey()).equals(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int getWeight()
+        {
+            return body.length + ENTRY_OVERHEAD_BYTES;
+        }
+
+        Response toResponse()
+        {
+            return new CachedResponse(statusCode, statusMessage, headers, body.length, new ByteArrayInputStream(body));
+        }
+    }
+
+    private static class CachedResponse
+            implements Response
+    {
+        private final int statusCode;
+        private final String statusMessage;
+        private final ListMultimap<HeaderName, String> headers;
+        private final long bytesRead;
+        private final InputStream inputStream;
+
+        CachedResponse(Response response, InputStream inputStream)
+        {
+            this(response.getStatusCode(), response.getStatusMessage(), response.getHeaders(), response.getBytesRead(), inputStream);
+        }
+
+        CachedResponse(int statusCode, String statusMessage, ListMultimap<HeaderName, String> headers, long bytesRead, InputStream inputStream)
+        {
+            this.statusCode = statusCode;
+            this.statusMessage = statusMessage;
+            this.headers = headers;
+            this.bytesRead = bytesRead;
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int getStatusCode()
+        {
+            return statusCode;
+        }
+
+        @Override
+        public String getStatusMessage()
+        {
+            return statusMessage;
+        }
+
+        @Override
+        public ListMultimap<HeaderName, String> getHeaders()
+        {
+            return headers;
+        }
+
+        @Override
+        public long getBytesRead()
+        {
+            return bytesRead;
+        }
+
+        @Override
+        public InputStream getInputStream()
+        {
+            return inputStream;
+        }
+    }
+
+    private class CachingResponseFuture<T>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        private volatile HttpResponseFuture<T> delegateFuture;
+
+        <E extends Exception> void setHit(Request request, CacheEntry entry, ResponseHandler<T, E> responseHandler)
+        {
+            try {
+                set(handleHit(request, entry, responseHandler));
+            }
+            catch (Exception e) {
+                setException(e);
+            }
+        }
+
+        <E extends Exception> void forward(Request request, ResponseHandler<T, E> responseHandler)
+        {
+            try {
+                delegateFuture = delegate.executeAsync(request, responseHandler);
+            }
+            catch (RuntimeException e) {
+                setException(e);
+                return;
+            }
+            setFuture(delegateFuture);
+        }
+
+        @Override
+        public String getState()
+        {
+            HttpResponseFuture<T> future = delegateFuture;
+            if (future != null) {
+                return future.getState();
+            }
+            return isDone() ? "CACHED" : "WAITING_FOR_SHARED_REQUEST";
+        }
+    }
+}
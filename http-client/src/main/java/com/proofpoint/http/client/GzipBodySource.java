@@ -0,0 +1,202 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client;
+
+import com.proofpoint.json.JsonCodec;
+import com.proofpoint.units.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.proofpoint.http.client.SmileBodyGenerator.writeSmile;
+import static com.proofpoint.http.client.StaticBodyGenerator.createStaticBodyGenerator;
+import static com.proofpoint.units.DataSize.Unit.KILOBYTE;
+import static java.lang.Math.toIntExact;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A request body that is serialized directly into a gzip stream as it is
+ * sent, without an intermediate uncompressed array. The HTTP client sends
+ * {@code Content-Encoding: gzip} with such a body.
+ * <p>
+ * The instance is serialized on the sending thread in the first call to the
+ * {@link Writer}, so only the compressed body is held while it is sent.
+ * <p>
+ * The factory methods return an uncompressed {@link StaticBodyGenerator}
+ * instead when the serialized body is smaller than a threshold, as
+ * compressing small bodies costs more than it saves. Determining this
+ * serializes at most the threshold's worth of the instance; a larger instance
+ * is serialized again each time the body is sent.
+ */
+public final class GzipBodySource
+        implements DynamicBodySource
+{
+    private static final DataSize DEFAULT_MIN_COMPRESSED_SIZE = new DataSize(1, KILOBYTE);
+    private static final int BUFFER_SIZE = 8192;
+
+    private final BodyWriter bodyWriter;
+
+    public static <T> BodySource gzipJsonBodySource(JsonCodec<T> jsonCodec, T instance)
+    {
+        return gzipJsonBodySource(jsonCodec, instance, DEFAULT_MIN_COMPRESSED_SIZE);
+    }
+
+    /**
+     * @param minCompressedSize bodies smaller than this are sent uncompressed
+     */
+    public static <T> BodySource gzipJsonBodySource(JsonCodec<T> jsonCodec, T instance, DataSize minCompressedSize)
+    {
+        requireNonNull(jsonCodec, "jsonCodec is null");
+        return create(out -> jsonCodec.writeJson(out, instance), instance, "JSON", minCompressedSize);
+    }
+
+    public static <T> BodySource gzipSmileBodySource(JsonCodec<T> jsonCodec, T instance)
+    {
+        return gzipSmileBodySource(jsonCodec, instance, DEFAULT_MIN_COMPRESSED_SIZE);
+    }
+
+    /**
+     * @param minCompressedSize bodies smaller than this are sent uncompressed
+     */
+    public static <T> BodySource gzipSmileBodySource(JsonCodec<T> jsonCodec, T instance, DataSize minCompressedSize)
+    {
+        requireNonNull(jsonCodec, "jsonCodec is null");
+        return create(out -> writeSmile(out, jsonCodec, instance), instance, "SMILE", minCompressedSize);
+    }
+
+    private static BodySource create(BodyWriter bodyWriter, Object instance, String format, DataSize minCompressedSize)
+    {
+        requireNonNull(minCompressedSize, "minCompressedSize is null");
+        LimitedByteArrayOutputStream out = new LimitedByteArrayOutputStream(toIntExact(minCompressedSize.toBytes()));
+        try {
+            bodyWriter.writeTo(out);
+        }
+        catch (IOException e) {
+            if (out.isLimitExceeded()) {
+                return new GzipBodySource(bodyWriter);
+            }
+            throw new IllegalArgumentException(String.format("%s could not be converted to %s", instance == null ? "null" : instance.getClass().getName(), format), e);
+        }
+        return createStaticBodyGenerator(out.toByteArray());
+    }
+
+    private GzipBodySource(BodyWriter bodyWriter)
+    {
+        this.bodyWriter = bodyWriter;
+    }
+
+    @Override
+    public String getContentEncoding()
+    {
+        return "gzip";
+    }
+
+    @Override
+    public Writer start(OutputStream out)
+    {
+        return () -> {
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(out, BUFFER_SIZE);
+            // Only finish the gzip stream, which ends the body, if the instance
+            // was completely written; Jackson closes its target on failure.
+            bodyWriter.writeTo(new UncloseableOutputStream(gzipOutputStream));
+            gzipOutputStream.close();
+        };
+    }
+
+    private interface BodyWriter
+    {
+        void writeTo(OutputStream out)
+                throws IOException;
+    }
+
+    private static class UncloseableOutputStream
+            extends FilterOutputStream
+    {
+        UncloseableOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+                throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    private static class LimitedByteArrayOutputStream
+            extends OutputStream
+    {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final int maxLength;
+        private boolean limitExceeded;
+
+        LimitedByteArrayOutputStream(int maxLength)
+        {
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        public void write(int b)
+                throws IOException
+        {
+            checkLimit(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+                throws IOException
+        {
+            checkLimit(len);
+            out.write(b, off, len);
+        }
+
+        private void checkLimit(int length)
+                throws LimitExceededException
+        {
+            if (out.size() + length >= maxLength) {
+                limitExceeded = true;
+                throw new LimitExceededException();
+            }
+        }
+
+        boolean isLimitExceeded()
+        {
+            return limitExceeded;
+        }
+
+        byte[] toByteArray()
+        {
+            return out.toByteArray();
+        }
+    }
+
+    // this needs to extend IOException so that Jackson doesn't wrap it
+    private static class LimitExceededException
+            extends IOException
+    {
+    }
+}
@@ -20,6 +20,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 class HttpClientBindOptions
 {
     private final AtomicBoolean withTracing = new AtomicBoolean(true);
+    private final AtomicBoolean withCache = new AtomicBoolean(false);
 
     public boolean isWithTracing()
     {
@@ -30,4 +31,14 @@ class HttpClientBindOptions
     {
         this.withTracing.set(withTracing);
     }
+
+    public boolean isWithCache()
+    {
+        return withCache.get();
+    }
+
+    public void setWithCache(boolean withCache)
+    {
+        this.withCache.set(withCache);
+    }
 }
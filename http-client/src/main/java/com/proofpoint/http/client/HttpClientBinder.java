@@ -22,7 +22,6 @@ import com.google.inject.PrivateBinder;
 import com.google.inject.Scopes;
 import com.google.inject.binder.LinkedBindingBuilder;
 import com.google.inject.multibindings.Multibinder;
-import com.proofpoint.http.client.balancing.BalancingHttpClient;
 import com.proofpoint.http.client.balancing.BalancingHttpClientBindingBuilder;
 import com.proofpoint.http.client.balancing.BalancingHttpClientConfig;
 import com.proofpoint.http.client.balancing.ForBalancingHttpClient;
@@ -79,6 +78,13 @@ import static org.weakref.jmx.guice.ExportBinder.newExporter;
  *
  * <pre>
  *     httpClientBinder(binder).bindHttpClient("foo", FooClient.class)
+ *         .withCache();</pre>
+ *
+ * Caches responses to GET requests as directed by their Cache-Control and
+ * ETag headers. See {@link CachingHttpClient}.
+ *
+ * <pre>
+ *     httpClientBinder(binder).bindHttpClient("foo", FooClient.class)
  *         .withPrivateIoThreadPool();</pre>
  *
  * Specifies that the {@link HttpClient} should have its own IO thread pool
@@ -314,7 +320,7 @@ public class HttpClientBinder
     {
         HttpClientBindingBuilder delegateBindingBuilder = httpClientPrivateBinder(privateBinder, binder).bindHttpClient(name, ForBalancingHttpClient.class);
         bindConfig(privateBinder).bind(BalancingHttpClientConfig.class).prefixedWith(name);
-        privateBinder.bind(HttpClient.class).annotatedWith(annotation).to(BalancingHttpClient.class).in(Scopes.SINGLETON);
+        privateBinder.bind(HttpClient.class).annotatedWith(annotation).toProvider(BalancingHttpClientProvider.class).in(Scopes.SINGLETON);
         privateBinder.expose(HttpClient.class).annotatedWith(annotation);
         reportBinder(binder).export(HttpClient.class).annotatedWith(annotation);
         newExporter(binder).export(HttpClient.class).annotatedWith(annotation).withGeneratedName();
@@ -397,7 +403,7 @@ public class HttpClientBinder
     {
         HttpClientBindingBuilder delegateBindingBuilder = httpClientPrivateBinder(privateBinder, binder).bindHttpClient(name, ForBalancingHttpClient.class);
         bindConfig(privateBinder).bind(BalancingHttpClientConfig.class).prefixedWith(name);
-        privateBinder.bind(HttpClient.class).annotatedWith(annotation).to(BalancingHttpClient.class).in(Scopes.SINGLETON);
+        privateBinder.bind(HttpClient.class).annotatedWith(annotation).toProvider(BalancingHttpClientProvider.class).in(Scopes.SINGLETON);
         privateBinder.expose(HttpClient.class).annotatedWith(annotation);
         reportBinder(binder).export(HttpClient.class).annotatedWith(annotation).withNamePrefix("HttpClient." + serviceName);
         newExporter(binder).export(HttpClient.class).annotatedWith(annotation).as(new ObjectNameBuilder(HttpClient.class.getPackage().getName())
@@ -476,6 +482,15 @@ public class HttpClientBinder
             return this;
         }
 
+        /**
+         * See the EDSL examples at {@link HttpClientBinder}.
+         */
+        public HttpClientBindingBuilder withCache()
+        {
+            options.setWithCache(true);
+            return this;
+        }
+
         /**
          * @deprecated No longer necessary.
          */
@@ -25,6 +25,7 @@ import com.proofpoint.units.Duration;
 import com.proofpoint.units.MaxDataSize;
 import com.proofpoint.units.MinDataSize;
 import com.proofpoint.units.MinDuration;
+import jakarta.validation.constraints.AssertFalse;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 
@@ -50,6 +51,7 @@ public class HttpClientConfig
     private DataSize requestBufferSize = new DataSize(4, KILOBYTE);
     private DataSize responseBufferSize = new DataSize(16, KILOBYTE);
     private HostAndPort socksProxy;
+    private String unixSocketPath;
     private String keyStorePath = System.getProperty(JAVAX_NET_SSL_KEY_STORE);
     private String keyStorePassword = System.getProperty(JAVAX_NET_SSL_KEY_STORE_PASSWORD);
     private String trustStorePath;
@@ -59,6 +61,11 @@ public class HttpClientConfig
     private int minThreads = 8;
     private int timeoutThreads = 1;
     private int timeoutConcurrency = 1;
+    private DataSize cacheMaxSize = new DataSize(16, MEGABYTE);
+    private boolean compressionEnabled;
+    private boolean compactTraceTokenHeader;
+    private Duration dnsCacheTtl = new Duration(30, SECONDS);
+    private Duration dnsCacheNegativeTtl = new Duration(10, SECONDS);
 
     private boolean http2Enabled;
     private DataSize http2InitialSessionReceiveWindowSize = new DataSize(16, MEGABYTE);
@@ -200,6 +207,25 @@ public class HttpClientConfig
         return this;
     }
 
+    public String getUnixSocketPath()
+    {
+        return unixSocketPath;
+    }
+
+    @Config("http-client.unix-socket-path")
+    @ConfigDescription("Path of a Unix domain socket through which to send all requests, if any")
+    public HttpClientConfig setUnixSocketPath(String unixSocketPath)
+    {
+        this.unixSocketPath = unixSocketPath;
+        return this;
+    }
+
+    @AssertFalse
+    public boolean isHttp2EnabledWithUnixSocket()
+    {
+        return http2Enabled && unixSocketPath != null;
+    }
+
     public String getKeyStorePath()
     {
         return keyStorePath;
@@ -363,4 +389,75 @@ public class HttpClientConfig
         this.timeoutConcurrency = timeoutConcurrency;
         return this;
     }
+
+    @NotNull
+    @MinDataSize("1kB")
+    public DataSize getCacheMaxSize()
+    {
+        return cacheMaxSize;
+    }
+
+    @Config("http-client.cache.max-size")
+    @ConfigDescription("Maximum size of the response cache of a client bound with a cache")
+    public HttpClientConfig setCacheMaxSize(DataSize cacheMaxSize)
+    {
+        this.cacheMaxSize = cacheMaxSize;
+        return this;
+    }
+
+    public boolean isCompressionEnabled()
+    {
+        return compressionEnabled;
+    }
+
+    @Config("http-client.compression.enabled")
+    @ConfigDescription("Request gzip-compressed responses and decompress them while they are read")
+    public HttpClientConfig setCompressionEnabled(boolean compressionEnabled)
+    {
+        this.compressionEnabled = compressionEnabled;
+        return this;
+    }
+
+    public boolean isCompactTraceTokenHeader()
+    {
+        return compactTraceTokenHeader;
+    }
+
+    @Config("http-client.trace-token.compact-header")
+    @ConfigDescription("Send trace tokens with properties in the compact form, which servers before platform 2.70 cannot decode")
+    public HttpClientConfig setCompactTraceTokenHeader(boolean compactTraceTokenHeader)
+    {
+        this.compactTraceTokenHeader = compactTraceTokenHeader;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("0ms")
+    public Duration getDnsCacheTtl()
+    {
+        return dnsCacheTtl;
+    }
+
+    @Config("http-client.dns-cache.ttl")
+    @ConfigDescription("Time for which resolved host addresses are cached, or zero to disable the cache")
+    public HttpClientConfig setDnsCacheTtl(Duration dnsCacheTtl)
+    {
+        this.dnsCacheTtl = dnsCacheTtl;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("0ms")
+    public Duration getDnsCacheNegativeTtl()
+    {
+        return dnsCacheNegativeTtl;
+    }
+
+    @Config("http-client.dns-cache.negative-ttl")
+    @ConfigDescription("Time for which unknown hosts are cached")
+    public HttpClientConfig setDnsCacheNegativeTtl(Duration dnsCacheNegativeTtl)
+    {
+        this.dnsCacheNegativeTtl = dnsCacheNegativeTtl;
+        return this;
+    }
 }
@@ -21,6 +21,7 @@ import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.Scopes;
 import com.google.inject.TypeLiteral;
+import com.proofpoint.http.client.balancing.ForBalancingHttpClient;
 import com.proofpoint.http.client.jetty.JettyHttpClient;
 import com.proofpoint.log.Logger;
 
@@ -113,12 +114,16 @@ class HttpClientModule
             HttpClientBindOptions httpClientBindOptions = injector.getInstance(Key.get(HttpClientBindOptions.class, annotation));
 
             if (httpClientBindOptions.isWithTracing()) {
-                filters.add(new TraceTokenRequestFilter());
+                filters.add(new TraceTokenRequestFilter(config.isCompactTraceTokenHeader()));
             }
 
             client = new JettyHttpClient(name, config, filters);
 
             injector = null;
+            // the cache of a balancing client wraps the balancer, not its delegate
+            if (httpClientBindOptions.isWithCache() && annotation != ForBalancingHttpClient.class) {
+                return new CachingHttpClient(client, config.getCacheMaxSize());
+            }
             return client;
         }
 
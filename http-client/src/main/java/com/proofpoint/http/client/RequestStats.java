@@ -27,6 +27,7 @@ public class RequestStats
     private final TimeStat requestTime;
     private final TimeStat responseTime;
     private final DistributionStat readBytes;
+    private final DistributionStat compressedReadBytes;
     private final DistributionStat writtenBytes;
 
     @Inject
@@ -35,6 +36,7 @@ public class RequestStats
         requestTime = new TimeStat();
         responseTime = new TimeStat();
         readBytes = new DistributionStat();
+        compressedReadBytes = new DistributionStat();
         writtenBytes = new DistributionStat();
     }
 
@@ -51,6 +53,24 @@ public class RequestStats
         writtenBytes.add(requestSizeInBytes);
     }
 
+    /**
+     * Records a request whose response was decompressed while being read.
+     *
+     * @param responseSizeInBytes the size of the decompressed response body
+     * @param compressedResponseSizeInBytes the size of the response body as received
+     */
+    public void record(String method,
+            int responseCode,
+            long requestSizeInBytes,
+            long responseSizeInBytes,
+            long compressedResponseSizeInBytes,
+            Duration requestProcessingTime,
+            Duration responseProcessingTime)
+    {
+        record(method, responseCode, requestSizeInBytes, responseSizeInBytes, requestProcessingTime, responseProcessingTime);
+        compressedReadBytes.add(compressedResponseSizeInBytes);
+    }
+
     @Nested
     public TimeStat getRequestTime()
     {
@@ -69,6 +89,12 @@ public class RequestStats
         return readBytes;
     }
 
+    @Nested
+    public DistributionStat getCompressedReadBytes()
+    {
+        return compressedReadBytes;
+    }
+
     @Nested
     public DistributionStat getWrittenBytes()
     {
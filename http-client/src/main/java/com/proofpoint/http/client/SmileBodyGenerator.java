@@ -25,6 +25,7 @@ import com.proofpoint.json.ObjectMapperProvider;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.function.Supplier;
 
@@ -36,16 +37,23 @@ public class SmileBodyGenerator<T>
 
     public static <T> SmileBodyGenerator<T> smileBodyGenerator(JsonCodec<T> jsonCodec, T instance)
     {
-        ObjectMapper objectMapper = OBJECT_MAPPER_SUPPLIER.get();
         ByteArrayOutputStream out = new ByteArrayOutputStream();
-        JsonGenerator jsonGenerator;
         try {
-            jsonGenerator = new SmileFactory().createGenerator(out);
+            writeSmile(out, jsonCodec, instance);
         }
         catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new IllegalArgumentException(String.format("%s could not be converted to SMILE", instance == null ? "null" : instance.getClass().getName()), e);
         }
 
+        return new SmileBodyGenerator<>(out.toByteArray());
+    }
+
+    static <T> void writeSmile(OutputStream out, JsonCodec<T> jsonCodec, T instance)
+            throws IOException
+    {
+        ObjectMapper objectMapper = OBJECT_MAPPER_SUPPLIER.get();
+        JsonGenerator jsonGenerator = new SmileFactory().createGenerator(out);
+
         Type genericType = jsonCodec.getType();
         // 04-Mar-2010, tatu: How about type we were given? (if any)
         JavaType rootType = null;
@@ -69,19 +77,13 @@ public class SmileBodyGenerator<T>
             }
         }
 
-        try {
-            if (rootType != null) {
-                objectMapper.writerFor(rootType).writeValue(jsonGenerator, instance);
-            }
-            else {
-                objectMapper.writeValue(jsonGenerator, instance);
-            }
+        if (rootType != null) {
+            objectMapper.writerFor(rootType).writeValue(jsonGenerator, instance);
         }
-        catch (IOException e) {
-            throw new IllegalArgumentException(String.format("%s could not be converted to SMILE", instance == null ? "null" : instance.getClass().getName()), e);
+        else {
+            objectMapper.writeValue(jsonGenerator, instance);
         }
-
-        return new SmileBodyGenerator<>(out.toByteArray());
+        jsonGenerator.flush();
     }
 
     private SmileBodyGenerator(byte[] body)
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.net.MediaType;
+import com.google.common.primitives.Ints;
+import com.proofpoint.json.JsonCodec;
+import com.proofpoint.json.ObjectMapperProvider;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static com.proofpoint.http.client.ResponseHandlerUtils.propagate;
+
+/**
+ * Parses a JSON response with a non-blocking parser as the body arrives, so
+ * the body is not buffered as bytes and invalid JSON fails the request
+ * without waiting for the rest of the body.
+ * <p>
+ * When the codec's type is a {@link List} or {@link java.util.Collection} and
+ * the document is an array, each element is bound as soon as its last token
+ * has been parsed, so only the bound elements and the tokens of the current
+ * element are held. For other types, the tokens of the whole document are
+ * held until the body is complete and then bound.
+ */
+public class StreamingJsonResponseHandler<T>
+        implements StreamingResponseHandler<T, RuntimeException>
+{
+    private static final MediaType MEDIA_TYPE_JSON = MediaType.create("application", "json");
+    private static final Supplier<ObjectMapper> OBJECT_MAPPER_SUPPLIER = Suppliers.memoize(
+            () -> new ObjectMapperProvider().get())::get;
+
+    public static <T> StreamingJsonResponseHandler<T> createStreamingJsonResponseHandler(JsonCodec<T> jsonCodec)
+    {
+        return new StreamingJsonResponseHandler<>(jsonCodec);
+    }
+
+    public static <T> StreamingJsonResponseHandler<T> createStreamingJsonResponseHandler(JsonCodec<T> jsonCodec, int firstSuccessfulResponseCode, int... otherSuccessfulResponseCodes)
+    {
+        return new StreamingJsonResponseHandler<>(jsonCodec, firstSuccessfulResponseCode, otherSuccessfulResponseCodes);
+    }
+
+    private final JsonCodec<T> jsonCodec;
+    private final Set<Integer> successfulResponseCodes;
+
+    private StreamingJsonResponseHandler(JsonCodec<T> jsonCodec)
+    {
+        this(jsonCodec, 200, 201, 202, 203, 204, 205, 206);
+    }
+
+    private StreamingJsonResponseHandler(JsonCodec<T> jsonCodec, int firstSuccessfulResponseCode, int... otherSuccessfulResponseCodes)
+    {
+        this.jsonCodec = jsonCodec;
+        this.successfulResponseCodes = ImmutableSet.<Integer>builder().add(firstSuccessfulResponseCode).addAll(Ints.asList(otherSuccessfulResponseCodes)).build();
+    }
+
+    @Override
+    public T handleException(Request request, Exception exception)
+    {
+        throw propagate(request, exception);
+    }
+
+    @Override
+    public ContentConsumer<T, RuntimeException> start(Request request, Response response)
+    {
+        if (!successfulResponseCodes.contains(response.getStatusCode())) {
+            throw new UnexpectedResponseException(
+                    String.format("Expected response code to be %s, but was %d: %s", successfulResponseCodes, response.getStatusCode(), response.getStatusMessage()),
+                    request,
+                    response);
+        }
+        String contentType = response.getHeader(CONTENT_TYPE);
+        if (contentType == null) {
+            throw new UnexpectedResponseException("Content-Type is not set for response", request, response);
+        }
+        if (!MediaType.parse(contentType).is(MEDIA_TYPE_JSON)) {
+            throw new UnexpectedResponseException("Expected application/json response from server but got " + contentType, request, response);
+        }
+        ObjectMapper objectMapper = OBJECT_MAPPER_SUPPLIER.get();
+        try {
+            return new JsonContentConsumer(objectMapper, objectMapper.getTypeFactory().constructType(jsonCodec.getType()));
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Error reading JSON response from server", e);
+        }
+    }
+
+    private class JsonContentConsumer
+            implements ContentConsumer<T, RuntimeException>
+    {
+        private final ObjectMapper objectMapper;
+        private final JavaType javaType;
+        @Nullable
+        private final ObjectReader elementReader;
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+        @Nullable
+        private TokenBuffer tokens;
+        @Nullable
+        private List<Object> elements;
+        private int depth;
+        private boolean arrayEnded;
+
+        JsonContentConsumer(ObjectMapper objectMapper, JavaType javaType)
+                throws IOException
+        {
+            this.objectMapper = objectMapper;
+            this.javaType = javaType;
+            if (javaType.isCollectionLikeType() && javaType.getRawClass().isAssignableFrom(ArrayList.class)) {
+                elementReader = objectMapper.readerFor(javaType.getContentType());
+            }
+            else {
+                elementReader = null;
+            }
+            parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+            feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        @Override
+        public void content(ByteBuffer content)
+        {
+            byte[] bytes;
+            int offset;
+            int length = content.remaining();
+            if (content.hasArray()) {
+                bytes = content.array();
+                offset = content.arrayOffset() + content.position();
+                content.position(content.limit());
+            }
+            else {
+                bytes = new byte[length];
+                offset = 0;
+                content.get(bytes);
+            }
+
+            try {
+                feeder.feedInput(bytes, offset, offset + length);
+                processAvailableTokens();
+            }
+            catch (IOException e) {
+                throw invalidJson(e);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T complete()
+        {
+            try {
+                feeder.endOfInput();
+                processAvailableTokens();
+                if (elements != null) {
+                    if (!arrayEnded) {
+                        throw new JsonEOFException(parser, null, "Unexpected end-of-input: expected close marker for ARRAY");
+                    }
+                    return (T) elements;
+                }
+                if (tokens == null) {
+                    tokens = new TokenBuffer(parser);
+                }
+                return objectMapper.readValue(tokens.asParser(objectMapper), javaType);
+            }
+            catch (IOException e) {
+                throw invalidJson(e);
+            }
+        }
+
+        private void processAvailableTokens()
+                throws IOException
+        {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (elements == null) {
+                    if (tokens == null && elementReader != null && token == JsonToken.START_ARRAY) {
+                        elements = new ArrayList<>();
+                        depth = 1;
+                        continue;
+                    }
+                    if (tokens == null) {
+                        tokens = new TokenBuffer(parser);
+                    }
+                    tokens.copyCurrentEvent(parser);
+                    continue;
+                }
+
+                if (arrayEnded) {
+                    continue;
+                }
+                if (depth == 1 && token == JsonToken.END_ARRAY) {
+                    arrayEnded = true;
+                    continue;
+                }
+                if (tokens == null) {
+                    tokens = new TokenBuffer(parser);
+                }
+                tokens.copyCurrentEvent(parser);
+                if (token.isStructStart()) {
+                    ++depth;
+                }
+                else if (token.isStructEnd()) {
+                    --depth;
+                }
+                if (depth == 1) {
+                    elements.add(elementReader.readValue(tokens.asParser(objectMapper)));
+                    tokens = null;
+                }
+            }
+        }
+
+        private IllegalArgumentException invalidJson(IOException e)
+        {
+            return new IllegalArgumentException(String.format("Unable to create %s from JSON response", jsonCodec.getType()), e);
+        }
+    }
+}
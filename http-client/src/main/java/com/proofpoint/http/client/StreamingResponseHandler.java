@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A response handler that consumes the response body incrementally.
+ * <p>
+ * For asynchronous requests, {@link com.proofpoint.http.client.jetty.JettyHttpClient}
+ * passes each chunk of the body to the handler as it arrives, instead of
+ * buffering the whole body before calling {@link #handle(Request, Response)}.
+ * The next chunk is not read from the connection until the handler returns
+ * from {@link ContentConsumer#content(ByteBuffer)}. Clients that do not
+ * support streaming call {@link #handle(Request, Response)}, which feeds the
+ * body to the same consumer.
+ */
+public interface StreamingResponseHandler<T, E extends Exception>
+        extends ResponseHandler<T, E>
+{
+    /**
+     * Start consuming a response. The response body is not available from
+     * {@link Response#getInputStream()}; it is delivered to the returned
+     * consumer instead.
+     *
+     * @param request The request
+     * @param response The response status and headers
+     * @return The consumer of the response body
+     * @throws E The exception to propagate to the caller
+     */
+    ContentConsumer<T, E> start(Request request, Response response)
+            throws E;
+
+    @Override
+    default T handle(Request request, Response response)
+            throws E
+    {
+        ContentConsumer<T, E> consumer = start(request, response);
+        byte[] buffer = new byte[8192];
+        try {
+            InputStream inputStream = response.getInputStream();
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                consumer.content(ByteBuffer.wrap(buffer, 0, length));
+            }
+        }
+        catch (IOException e) {
+            return handleException(request, e);
+        }
+        return consumer.complete();
+    }
+
+    interface ContentConsumer<T, E extends Exception>
+    {
+        /**
+         * Consume a chunk of the response body. The buffer is only valid
+         * for the duration of the call, so any content that is needed
+         * afterwards must be copied. This may be called on an I/O thread,
+         * so it should not block.
+         *
+         * @throws E The exception to propagate to the caller
+         */
+        void content(ByteBuffer content)
+                throws E;
+
+        /**
+         * Called once the entire response body has been consumed.
+         *
+         * @return The value to return to the caller
+         * @throws E The exception to propagate to the caller
+         */
+        T complete()
+                throws E;
+    }
+}
@@ -20,6 +20,7 @@ import com.proofpoint.tracetoken.TraceToken;
 
 import static com.proofpoint.http.client.Request.Builder.fromRequest;
 import static com.proofpoint.json.JsonCodec.jsonCodec;
+import static com.proofpoint.tracetoken.TraceTokenHeader.encode;
 import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
 import static java.util.Objects.requireNonNull;
 
@@ -29,6 +30,23 @@ public class TraceTokenRequestFilter
     public static final String TRACETOKEN_HEADER = "X-Proofpoint-Tracetoken";
     private static final JsonCodec<TraceToken> TRACE_TOKEN_JSON_CODEC = jsonCodec(TraceToken.class).withoutPretty();
 
+    private final boolean compactHeader;
+
+    public TraceTokenRequestFilter()
+    {
+        this(false);
+    }
+
+    /**
+     * @param compactHeader whether to send tokens with properties in the compact
+     * {@code ~id;key=value} form rather than as JSON. Servers running platform
+     * versions which do not decode the compact form treat it as a token id.
+     */
+    public TraceTokenRequestFilter(boolean compactHeader)
+    {
+        this.compactHeader = compactHeader;
+    }
+
     @Override
     public Request filterRequest(Request request)
     {
@@ -40,7 +58,10 @@ public class TraceTokenRequestFilter
         }
 
         String tokenString;
-        if (token.size() == 1) {
+        if (compactHeader) {
+            tokenString = encode(token);
+        }
+        else if (token.size() == 1) {
             tokenString = token.toString();
         }
         else {
@@ -61,12 +82,12 @@ public class TraceTokenRequestFilter
         if ((obj == null) || (getClass() != obj.getClass())) {
             return false;
         }
-        return true;
+        return compactHeader == ((TraceTokenRequestFilter) obj).compactHeader;
     }
 
     @Override
     public int hashCode()
     {
-        return 1;
+        return Boolean.hashCode(compactHeader);
     }
 }
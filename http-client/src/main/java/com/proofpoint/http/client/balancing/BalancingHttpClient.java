@@ -26,20 +26,28 @@ import com.proofpoint.http.client.Request;
 import com.proofpoint.http.client.RequestStats;
 import com.proofpoint.http.client.ResponseHandler;
 import com.proofpoint.http.client.jetty.JettyHttpClient;
+import com.proofpoint.stats.CounterStat;
+import com.proofpoint.stats.ExponentialDecay;
+import com.proofpoint.stats.QuantileDigest;
 import com.proofpoint.tracetoken.TraceToken;
 import com.proofpoint.tracetoken.TraceTokenScope;
 import com.proofpoint.units.Duration;
 import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.inject.Inject;
 import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.throwIfUnchecked;
 import static com.google.common.cache.CacheBuilder.newBuilder;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
@@ -47,11 +55,16 @@ import static com.proofpoint.tracetoken.TraceTokenManager.registerTraceToken;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class BalancingHttpClient
         implements HttpClient
 {
     private static final Duration ZERO_DURATION = new Duration(0, TimeUnit.MILLISECONDS);
+    private static final Set<String> HEDGED_METHODS = Set.of("GET", "HEAD");
+    private static final int MIN_HEDGE_DELAY_SAMPLES = 100;
+    private static final long HEDGE_DELAY_UPDATE_NANOS = SECONDS.toNanos(1);
 
     private final HttpServiceBalancer pool;
     private final HttpClient httpClient;
@@ -59,6 +72,17 @@ public class BalancingHttpClient
     private final RetryBudget retryBudget;
     private final BackoffPolicy backoffPolicy;
     private final ScheduledExecutorService retryExecutor;
+    private final Ticker ticker;
+    private final boolean hedgingEnabled;
+    private final long fixedHedgeDelayNanos;
+    private final boolean asyncRetriesEnabled;
+    @GuardedBy("responseTimes")
+    private final QuantileDigest responseTimes = new QuantileDigest(0.01, ExponentialDecay.oneMinute());
+    @GuardedBy("responseTimes")
+    private long nextHedgeDelayUpdate;
+    private volatile long observedHedgeDelayNanos = -1;
+    private final CounterStat hedges = new CounterStat();
+    private final CounterStat hedgeWins = new CounterStat();
     private final Cache<Class<? extends Exception>, Boolean> exceptionCache = newBuilder()
             .expireAfterWrite(30, TimeUnit.SECONDS)
             .build();
@@ -85,6 +109,10 @@ public class BalancingHttpClient
         retryBudget = TokenRetryBudget.tokenRetryBudget(config.getRetryBudgetRatio(), config.getRetryBudgetRatioPeriod(), config.getRetryBudgetMinPerSecond(), ticker);
         backoffPolicy = new DecorrelatedJitteredBackoffPolicy(config.getMinBackoff(), config.getMaxBackoff());
         this.retryExecutor = requireNonNull(retryExecutor, "retryExecutor is null");
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        hedgingEnabled = config.isHedgingEnabled();
+        fixedHedgeDelayNanos = config.getHedgeDelay() == null ? -1 : config.getHedgeDelay().roundTo(NANOSECONDS);
+        asyncRetriesEnabled = config.isAsyncRetriesEnabled();
     }
 
     @Override
@@ -96,6 +124,11 @@ public class BalancingHttpClient
         String path = request.getUri().getPath();
         checkArgument(path == null || !path.startsWith("/"), request.getUri() + " path starts with '/'");
 
+        // hedging applies to synchronous requests only through the asynchronous machinery
+        if (asyncRetriesEnabled) {
+            return executeBlocking(request, responseHandler);
+        }
+
         HttpServiceAttempt attempt;
         try {
             attempt = pool.createAttempt();
@@ -164,6 +197,33 @@ public class BalancingHttpClient
         }
     }
 
+    /**
+     * Runs the request, including any retries and hedges, on the asynchronous
+     * machinery and waits once for the final result. Backoff between
+     * attempts is a scheduled task on the retry executor rather than a sleep
+     * in the calling thread, and interrupting the caller cancels whatever
+     * attempt or backoff is outstanding.
+     */
+    private <T, E extends Exception> T executeBlocking(Request request, ResponseHandler<T, E> responseHandler)
+            throws E
+    {
+        HttpResponseFuture<T> future = executeAsync(request, responseHandler);
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return responseHandler.handleException(request, e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throwIfUnchecked(cause);
+            //noinspection unchecked
+            throw (E) cause;
+        }
+    }
+
     @Override
     public <T, E extends Exception> HttpResponseFuture<T> executeAsync(Request request, ResponseHandler<T, E> responseHandler)
     {
@@ -185,9 +245,39 @@ public class BalancingHttpClient
             }
         }
         retryBudget.initialAttempt();
-        RetryFuture<T, E> retryFuture = new RetryFuture<>(request, responseHandler);
+        boolean hedged = isHedged(request);
+        // the delay is learned only from attempts that hedging does not cut short
+        RetryFuture<T, E> retryFuture = new RetryFuture<>(request, responseHandler, hedged && fixedHedgeDelayNanos < 0);
         attemptQuery(retryFuture, request, responseHandler, attempt, maxAttempts);
-        return retryFuture;
+        if (!hedged) {
+            return retryFuture;
+        }
+
+        HedgedFuture<T, E> hedgedFuture = new HedgedFuture<>(request, responseHandler, retryFuture, attempt.getUri());
+        long hedgeDelayNanos = fixedHedgeDelayNanos >= 0 ? fixedHedgeDelayNanos : observedHedgeDelayNanos;
+        if (hedgeDelayNanos >= 0) {
+            hedgedFuture.scheduleHedge(hedgeDelayNanos);
+        }
+        return hedgedFuture;
+    }
+
+    private boolean isHedged(Request request)
+    {
+        return hedgingEnabled && HEDGED_METHODS.contains(request.getMethod()) && request.getBodySource() == null;
+    }
+
+    private void recordResponseTime(long nanos)
+    {
+        long now = ticker.read();
+        synchronized (responseTimes) {
+            responseTimes.add(nanos);
+            if (now - nextHedgeDelayUpdate >= 0) {
+                nextHedgeDelayUpdate = now + HEDGE_DELAY_UPDATE_NANOS;
+                if (responseTimes.getCount() >= MIN_HEDGE_DELAY_SAMPLES) {
+                    observedHedgeDelayNanos = responseTimes.getQuantile(0.95);
+                }
+            }
+        }
     }
 
     private <T, E extends Exception> void attemptQuery(RetryFuture<T, E> retryFuture, Request request, ResponseHandler<T, E> responseHandler, HttpServiceAttempt attempt, int attemptsLeft)
@@ -225,6 +315,18 @@ public class BalancingHttpClient
         return retryBudget;
     }
 
+    @Nested
+    public CounterStat getHedges()
+    {
+        return hedges;
+    }
+
+    @Nested
+    public CounterStat getHedgeWins()
+    {
+        return hedgeWins;
+    }
+
     @Managed
     public String dump()
     {
@@ -263,6 +365,7 @@ public class BalancingHttpClient
 
         private final Request request;
         private final ResponseHandler<T,E> responseHandler;
+        private final boolean recordsResponseTimes;
         private final Object subFutureLock = new Object();
         @GuardedBy("subFutureLock")
         private HttpServiceAttempt attempt = null;
@@ -275,10 +378,11 @@ public class BalancingHttpClient
         @GuardedBy("subFutureLock")
         private HttpResponseFuture<T> subFuture = null;
 
-        RetryFuture(Request request, ResponseHandler<T, E> responseHandler)
+        RetryFuture(Request request, ResponseHandler<T, E> responseHandler, boolean recordsResponseTimes)
         {
             this.request = request;
             this.responseHandler = responseHandler;
+            this.recordsResponseTimes = recordsResponseTimes;
         }
 
         void newAttempt(final HttpResponseFuture<T> future, final HttpServiceAttempt attempt, URI uri, final int attemptsLeft)
@@ -291,12 +395,14 @@ public class BalancingHttpClient
             final RetryFuture<T, E> retryFuture = this;
             final Request request = this.request;
             final ResponseHandler<T, E> responseHandler = this.responseHandler;
+            final long attemptStart = ticker.read();
             Futures.addCallback(future, new FutureCallback<T>()
             {
                 @Override
                 public void onSuccess(T result)
                 {
                     attempt.markGood();
+                    recordAttemptTime(attemptStart);
                     set(result);
                 }
 
@@ -310,9 +416,15 @@ public class BalancingHttpClient
                     }
                     else if (t instanceof FailureStatusException) {
                         attempt.markBad(((FailureStatusException) t).getFailureCategory());
+                        recordAttemptTime(attemptStart);
                         //noinspection unchecked
                         set((T) ((FailureStatusException) t).result);
                     }
+                    else if (t instanceof CancellationException) {
+                        attempt.markCanceled();
+                        // an attempt canceled because its hedge won took at least this long
+                        recordAttemptTime(attemptStart);
+                    }
                     else if (t instanceof RetryException) {
                         attempt.markBad(((RetryException) t).getFailureCategory());
                         TraceToken traceToken = getCurrentTraceToken();
@@ -352,12 +464,18 @@ public class BalancingHttpClient
             }, directExecutor());
         }
 
+        private void recordAttemptTime(long attemptStart)
+        {
+            if (recordsResponseTimes) {
+                recordResponseTime(ticker.read() - attemptStart);
+            }
+        }
+
         @Override
         public boolean cancel(boolean mayInterruptIfRunning)
         {
 
             if (super.cancel(mayInterruptIfRunning)) {
-                // todo attempt.cancel() ?
                 synchronized (subFutureLock) {
                     subFuture.cancel(mayInterruptIfRunning);
                 }
@@ -375,6 +493,165 @@ public class BalancingHttpClient
         }
     }
 
+    /**
+     * Request that, if it has not completed within the hedge delay, is also
+     * sent to another URI. The first of the two to succeed completes the
+     * request and the other is canceled. A failure completes the request
+     * only once the other attempt, if any, has also completed.
+     */
+    private class HedgedFuture<T, E extends Exception>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        private final Request request;
+        private final ResponseHandler<T, E> responseHandler;
+        private final RetryFuture<T, E> primary;
+        private final URI primaryUri;
+        private final Object hedgeLock = new Object();
+        @GuardedBy("hedgeLock")
+        private ScheduledFuture<?> hedgeTimer = null;
+        @GuardedBy("hedgeLock")
+        private RetryFuture<T, E> hedge = null;
+
+        HedgedFuture(Request request, ResponseHandler<T, E> responseHandler, RetryFuture<T, E> primary, URI primaryUri)
+        {
+            this.request = request;
+            this.responseHandler = responseHandler;
+            this.primary = primary;
+            this.primaryUri = primaryUri;
+            Futures.addCallback(primary, new CompletionCallback(false), directExecutor());
+        }
+
+        void scheduleHedge(long delayNanos)
+        {
+            TraceToken traceToken = getCurrentTraceToken();
+            ScheduledFuture<?> timer = retryExecutor.schedule(() -> {
+                try (TraceTokenScope scope = registerTraceToken(traceToken)) {
+                    sendHedge();
+                }
+            }, delayNanos, NANOSECONDS);
+            synchronized (hedgeLock) {
+                hedgeTimer = timer;
+            }
+            if (isDone()) {
+                timer.cancel(false);
+            }
+        }
+
+        private void sendHedge()
+        {
+            // hedges are paid for from the same budget as retries
+            if (isDone() || !retryBudget.canRetry()) {
+                return;
+            }
+            HttpServiceAttempt attempt;
+            try {
+                attempt = pool.createAttempt(Set.of(primaryUri));
+            }
+            catch (RuntimeException e) {
+                return;
+            }
+
+            RetryFuture<T, E> hedge = new RetryFuture<>(request, responseHandler, false);
+            try {
+                attemptQuery(hedge, request, responseHandler, attempt, maxAttempts);
+            }
+            catch (RuntimeException e) {
+                attempt.markCanceled();
+                return;
+            }
+            hedges.add(1);
+            synchronized (hedgeLock) {
+                this.hedge = hedge;
+            }
+            Futures.addCallback(hedge, new CompletionCallback(true), directExecutor());
+            if (isDone()) {
+                hedge.cancel(true);
+            }
+        }
+
+        private void completed(boolean byHedge, boolean succeeded)
+        {
+            if (byHedge && succeeded) {
+                hedgeWins.add(1);
+            }
+            cancelAttempts();
+        }
+
+        private void cancelAttempts()
+        {
+            RetryFuture<T, E> hedge;
+            synchronized (hedgeLock) {
+                if (hedgeTimer != null) {
+                    hedgeTimer.cancel(false);
+                }
+                hedge = this.hedge;
+            }
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            if (super.cancel(mayInterruptIfRunning)) {
+                cancelAttempts();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String getState()
+        {
+            RetryFuture<T, E> hedge;
+            synchronized (hedgeLock) {
+                hedge = this.hedge;
+            }
+            if (hedge == null) {
+                return primary.getState();
+            }
+            return format("%s, hedged by %s", primary.getState(), hedge.getState());
+        }
+
+        private class CompletionCallback
+                implements FutureCallback<T>
+        {
+            private final boolean isHedge;
+
+            CompletionCallback(boolean isHedge)
+            {
+                this.isHedge = isHedge;
+            }
+
+            @Override
+            public void onSuccess(T result)
+            {
+                if (set(result)) {
+                    completed(isHedge, true);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                RetryFuture<T, E> other;
+                synchronized (hedgeLock) {
+                    other = isHedge ? primary : hedge;
+                }
+                if (other != null && !other.isDone()) {
+                    // the other attempt may yet succeed; its completion completes the request
+                    return;
+                }
+                if (setException(t)) {
+                    completed(isHedge, false);
+                }
+            }
+        }
+    }
+
     private static class ImmediateHttpResponseFuture<T>
             extends AbstractFuture<T>
             implements HttpResponseFuture<T>
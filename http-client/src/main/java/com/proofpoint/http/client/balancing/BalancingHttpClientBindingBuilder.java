@@ -96,6 +96,12 @@ public class BalancingHttpClientBindingBuilder
         return this;
     }
 
+    public BalancingHttpClientBindingBuilder withCache()
+    {
+        delegateBindingBuilder.withCache();
+        return this;
+    }
+
     /**
      * @deprecated No longer necessary.
      */
@@ -24,6 +24,7 @@ import jakarta.validation.constraints.AssertFalse;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 
+import javax.annotation.Nullable;
 import java.math.BigDecimal;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -37,6 +38,9 @@ public class BalancingHttpClientConfig
     private BigDecimal retryBudgetRatio = new BigDecimal(2).movePointLeft(1);
     private Duration retryBudgetRatioPeriod = new Duration(10, SECONDS);
     private int retryBudgetMinPerSecond = 10;
+    private boolean hedgingEnabled = false;
+    private Duration hedgeDelay = null;
+    private boolean asyncRetriesEnabled = false;
 
     @Min(1)
     public int getMaxAttempts()
@@ -121,6 +125,47 @@ public class BalancingHttpClientConfig
         return this;
     }
 
+    public boolean isHedgingEnabled()
+    {
+        return hedgingEnabled;
+    }
+
+    @Config("http-client.hedging.enabled")
+    @ConfigDescription("Send a second attempt of an asynchronous GET or HEAD request to another URI if the first has not completed within the hedge delay")
+    public BalancingHttpClientConfig setHedgingEnabled(boolean hedgingEnabled)
+    {
+        this.hedgingEnabled = hedgingEnabled;
+        return this;
+    }
+
+    @Nullable
+    @MinDuration("1ms")
+    public Duration getHedgeDelay()
+    {
+        return hedgeDelay;
+    }
+
+    @Config("http-client.hedging.delay")
+    @ConfigDescription("Delay before sending a hedged attempt. Defaults to the observed 95th percentile response time of primary attempts")
+    public BalancingHttpClientConfig setHedgeDelay(Duration hedgeDelay)
+    {
+        this.hedgeDelay = hedgeDelay;
+        return this;
+    }
+
+    public boolean isAsyncRetriesEnabled()
+    {
+        return asyncRetriesEnabled;
+    }
+
+    @Config("http-client.async-retries.enabled")
+    @ConfigDescription("Run the attempts of synchronous requests on the asynchronous client, waiting for retry backoff without holding the calling thread in a sleep")
+    public BalancingHttpClientConfig setAsyncRetriesEnabled(boolean asyncRetriesEnabled)
+    {
+        this.asyncRetriesEnabled = asyncRetriesEnabled;
+        return this;
+    }
+
     @AssertFalse
     public boolean isMaxBackoffLessThanMinBackoff()
     {
@@ -23,5 +23,12 @@ public interface HttpServiceAttempt
     void markGood();
     void markBad(String failureCategory);
     void markBad(String failureCategory, String handlerCategory);
+
+    /**
+     * Releases an attempt whose request was canceled before completing,
+     * without recording it as a success or failure of the instance.
+     */
+    void markCanceled();
+
     HttpServiceAttempt next();
 }
@@ -15,7 +15,19 @@
  */
 package com.proofpoint.http.client.balancing;
 
+import java.net.URI;
+import java.util.Set;
+
 public interface HttpServiceBalancer
 {
     HttpServiceAttempt createAttempt();
+
+    /**
+     * Creates an attempt on an instance other than the ones with the given
+     * URIs, unless no other instance is available.
+     */
+    default HttpServiceAttempt createAttempt(Set<URI> avoidedUris)
+    {
+        return createAttempt();
+    }
 }
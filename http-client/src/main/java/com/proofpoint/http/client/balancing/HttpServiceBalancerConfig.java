@@ -19,6 +19,9 @@ import com.proofpoint.configuration.Config;
 import com.proofpoint.configuration.ConfigDescription;
 import com.proofpoint.units.Duration;
 import jakarta.validation.constraints.AssertFalse;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
@@ -29,6 +32,11 @@ public class HttpServiceBalancerConfig
     private int consecutiveFailures = 5;
     private Duration minBackoff = new Duration(5, SECONDS);
     private Duration maxBackoff = new Duration(2, MINUTES);
+    private boolean powerOfTwoChoices = false;
+    private boolean outlierDetection = false;
+    private double outlierLatencyMultiplier = 5.0;
+    private double outlierSuccessRateRatio = 0.8;
+    private int outlierMaxEjectionPercent = 10;
 
     @Min(1)
     public int getConsecutiveFailures()
@@ -70,6 +78,75 @@ public class HttpServiceBalancerConfig
         return this;
     }
 
+    public boolean isPowerOfTwoChoices()
+    {
+        return powerOfTwoChoices;
+    }
+
+    @Config("power-of-two-choices.enabled")
+    @ConfigDescription("Send each request to the less loaded of two randomly chosen URIs instead of the least loaded of all URIs")
+    public HttpServiceBalancerConfig setPowerOfTwoChoices(boolean powerOfTwoChoices)
+    {
+        this.powerOfTwoChoices = powerOfTwoChoices;
+        return this;
+    }
+
+    public boolean isOutlierDetection()
+    {
+        return outlierDetection;
+    }
+
+    @Config("outlier-detection.enabled")
+    @ConfigDescription("Temporarily stop sending requests to URIs whose latency or success rate is an outlier")
+    public HttpServiceBalancerConfig setOutlierDetection(boolean outlierDetection)
+    {
+        this.outlierDetection = outlierDetection;
+        return this;
+    }
+
+    @DecimalMin("1.0")
+    public double getOutlierLatencyMultiplier()
+    {
+        return outlierLatencyMultiplier;
+    }
+
+    @Config("outlier-detection.latency-multiplier")
+    @ConfigDescription("Multiple of the median average latency above which a URI is an outlier")
+    public HttpServiceBalancerConfig setOutlierLatencyMultiplier(double outlierLatencyMultiplier)
+    {
+        this.outlierLatencyMultiplier = outlierLatencyMultiplier;
+        return this;
+    }
+
+    @DecimalMin("0.0")
+    @DecimalMax("1.0")
+    public double getOutlierSuccessRateRatio()
+    {
+        return outlierSuccessRateRatio;
+    }
+
+    @Config("outlier-detection.success-rate-ratio")
+    @ConfigDescription("Fraction of the median success rate below which a URI is an outlier")
+    public HttpServiceBalancerConfig setOutlierSuccessRateRatio(double outlierSuccessRateRatio)
+    {
+        this.outlierSuccessRateRatio = outlierSuccessRateRatio;
+        return this;
+    }
+
+    @Min(0)
+    @Max(100)
+    public int getOutlierMaxEjectionPercent()
+    {
+        return outlierMaxEjectionPercent;
+    }
+
+    @Config("outlier-detection.max-ejection-percent")
+    @ConfigDescription("Maximum percentage of the URIs that are ejected as outliers at a time")
+    public HttpServiceBalancerConfig setOutlierMaxEjectionPercent(int outlierMaxEjectionPercent)
+    {
+        this.outlierMaxEjectionPercent = outlierMaxEjectionPercent;
+        return this;
+    }
 
     @AssertFalse
     public boolean isMaxBackoffLessThanMinBackoff()
@@ -28,6 +28,7 @@ import com.proofpoint.units.Duration;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import java.net.URI;
 import java.util.ArrayList;
@@ -38,6 +39,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
@@ -51,6 +53,7 @@ public class HttpServiceBalancerImpl
 {
     private static final InstanceState INSTANCE_STATE_WORST = new InstanceState(Liveness.DEAD, Integer.MAX_VALUE);
     private static final Duration ZERO_DURATION = new Duration(0, SECONDS);
+    private static final int SAMPLE_TRIES = 3;
     private final AtomicReference<ImmutableMultiset<URI>> httpUris = new AtomicReference<>(ImmutableMultiset.of());
 
     @GuardedBy("uriStates")
@@ -61,6 +64,10 @@ public class HttpServiceBalancerImpl
     private final BackoffPolicy backoffPolicy;
     private final Ticker ticker;
     private final MaxGauge concurrency = new MaxGauge();
+    private final boolean powerOfTwoChoices;
+    @Nullable
+    private final OutlierDetector outlierDetector;
+    private final AtomicReference<WeightedInstances<Instance>> instances = new AtomicReference<>(new WeightedInstances<>(List.of(), new int[0]));
 
     public HttpServiceBalancerImpl(String description, HttpServiceBalancerStats httpServiceBalancerStats, HttpServiceBalancerConfig config)
     {
@@ -74,18 +81,67 @@ public class HttpServiceBalancerImpl
         consecutiveFailures = requireNonNull(config, "config is null").getConsecutiveFailures();
         backoffPolicy = new DecorrelatedJitteredBackoffPolicy(config.getMinBackoff(), config.getMaxBackoff());
         this.ticker = requireNonNull(ticker, "ticker is null");
+        powerOfTwoChoices = config.isPowerOfTwoChoices();
+        if (config.isOutlierDetection()) {
+            outlierDetector = new OutlierDetector(httpServiceBalancerStats, backoffPolicy, config.getOutlierLatencyMultiplier(),
+                    config.getOutlierSuccessRateRatio(), config.getOutlierMaxEjectionPercent(), ticker.read());
+        }
+        else {
+            outlierDetector = null;
+        }
     }
 
     @Override
     public HttpServiceAttempt createAttempt()
     {
+        if (powerOfTwoChoices) {
+            return new PowerOfTwoChoicesAttempt(Set.of());
+        }
         return new HttpServiceAttemptImpl(Set.of());
     }
 
+    @Override
+    public HttpServiceAttempt createAttempt(Set<URI> avoidedUris)
+    {
+        if (powerOfTwoChoices) {
+            return new PowerOfTwoChoicesAttempt(Set.copyOf(avoidedUris));
+        }
+        return new HttpServiceAttemptImpl(Set.copyOf(avoidedUris));
+    }
+
     @Beta
     public void updateHttpUris(Collection<URI> newHttpUris)
     {
-        httpUris.set(ImmutableMultiset.copyOf(newHttpUris));
+        ImmutableMultiset<URI> newUris = ImmutableMultiset.copyOf(newHttpUris);
+        if (powerOfTwoChoices) {
+            updateInstances(newUris);
+        }
+        if (outlierDetector != null) {
+            outlierDetector.updateInstances(newUris.elementSet());
+        }
+        httpUris.set(newUris);
+    }
+
+    private synchronized void updateInstances(Multiset<URI> newUris)
+    {
+        Map<URI, Instance> existingInstances = new HashMap<>();
+        WeightedInstances<Instance> oldInstances = instances.get();
+        for (int i = 0; i < oldInstances.size(); i++) {
+            existingInstances.put(oldInstances.get(i).uri, oldInstances.get(i));
+        }
+
+        List<Instance> newInstances = new ArrayList<>();
+        int[] weights = new int[newUris.elementSet().size()];
+        for (Entry<URI> entry : newUris.entrySet()) {
+            weights[newInstances.size()] = entry.getCount();
+            Instance instance = existingInstances.get(entry.getElement());
+            if (instance == null) {
+                instance = new Instance(entry.getElement(), outlierDetector);
+            }
+            instance.weight = entry.getCount();
+            newInstances.add(instance);
+        }
+        instances.set(new WeightedInstances<>(newInstances, weights));
     }
 
     private class HttpServiceAttemptImpl
@@ -126,6 +182,7 @@ public class HttpServiceBalancerImpl
                         if (uriState.liveness == Liveness.DEAD && uriState.deadUntil <= now) {
                             uriState.liveness = Liveness.PROBING;
                         }
+                        uriState.ejected = outlierDetector != null && outlierDetector.isEjected(uri, now);
                         int comparison = uriState.compareTo(bestState);
                         if (comparison <= 0) {
                             if (comparison < 0) {
@@ -171,40 +228,48 @@ public class HttpServiceBalancerImpl
         @Override
         public void markGood()
         {
-            decrementConcurrency(false);
-            httpServiceBalancerStats.requestTime(uri, Status.SUCCESS).add(ticker.read() - startTick, TimeUnit.NANOSECONDS);
+            decrementConcurrency(false, true);
+            recordRequestTime(uri, startTick, true);
         }
 
         @Override
         public void markBad(String failureCategory)
         {
-            decrementConcurrency(true);
-            httpServiceBalancerStats.requestTime(uri, Status.FAILURE).add(ticker.read() - startTick, TimeUnit.NANOSECONDS);
+            decrementConcurrency(true, true);
+            recordRequestTime(uri, startTick, false);
             httpServiceBalancerStats.failure(uri, failureCategory).add(1);
         }
 
         @Override
         public void markBad(String failureCategory, String handlerCategory)
         {
-            decrementConcurrency(true);
-            httpServiceBalancerStats.requestTime(uri, Status.FAILURE).add(ticker.read() - startTick, TimeUnit.NANOSECONDS);
+            decrementConcurrency(true, true);
+            recordRequestTime(uri, startTick, false);
             httpServiceBalancerStats.failure(uri, failureCategory, handlerCategory).add(1);
         }
 
-        private void decrementConcurrency(boolean isFailure)
+        @Override
+        public void markCanceled()
+        {
+            decrementConcurrency(false, false);
+        }
+
+        private void decrementConcurrency(boolean isFailure, boolean updateLiveness)
         {
             checkState(inProgress, "is in progress");
             inProgress = false;
             synchronized (uriStates) {
                 InstanceState uriState = uriStates.get(uri);
 
-                uriState.liveness.mark(isFailure, uriState, this, HttpServiceBalancerImpl.this);
+                if (updateLiveness) {
+                    uriState.liveness.mark(isFailure, uriState, this, HttpServiceBalancerImpl.this);
+                }
                 int oldConcurrency = uriState.concurrency;
                 if (oldConcurrency > 0) {
                     --uriState.concurrency;
                 }
 
-                if (oldConcurrency == 1 && !isFailure && uriState.liveness == Liveness.ALIVE) {
+                if (oldConcurrency == 1 && !isFailure && uriState.liveness == Liveness.ALIVE && uriState.numFailures == 0) {
                     uriStates.remove(uri);
                     if (uriStates.isEmpty()) {
                         concurrency.update(0);
@@ -234,6 +299,177 @@ public class HttpServiceBalancerImpl
         }
     }
 
+    /**
+     * Attempt on the less loaded of two instances sampled in proportion to
+     * their weights. Selection does not take a lock and does not scan the
+     * instances unless both sampled instances are dead or being probed. The
+     * concurrency gauge reports the total number of attempts in progress
+     * rather than the largest number on one instance, as tracking that
+     * maximum would need a scan when the busiest instance completes one.
+     */
+    private class PowerOfTwoChoicesAttempt
+            implements HttpServiceAttempt
+    {
+        private final Set<URI> attempted;
+        private final Instance instance;
+        private final long startTick;
+        private boolean inProgress = true;
+
+        PowerOfTwoChoicesAttempt(Set<URI> attempted)
+        {
+            WeightedInstances<Instance> instances = HttpServiceBalancerImpl.this.instances.get();
+            if (instances.isEmpty()) {
+                throw new ServiceUnavailableException(description);
+            }
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long now = ticker.read();
+            Instance selected;
+            for (;;) {
+                int first = sample(instances, attempted, random, -1);
+                if (first < 0) {
+                    attempted = Set.of();
+                    continue;
+                }
+                selected = instances.get(first);
+                int second = sample(instances, attempted, random, first);
+                if (second >= 0 && instances.get(second).compareTo(selected, now) < 0) {
+                    selected = instances.get(second);
+                }
+
+                if (!selected.isAvailable(now)) {
+                    Instance available = findAvailable(instances, attempted, now);
+                    if (available != null) {
+                        selected = available;
+                    }
+                    else if (!attempted.isEmpty()) {
+                        attempted = Set.of();
+                        continue;
+                    }
+                }
+                break;
+            }
+
+            instance = selected;
+            Health health = instance.health.get();
+            int oldConcurrency = instance.concurrency.getAndIncrement();
+            if (health.liveness == Liveness.PROBING && oldConcurrency == 0) {
+                httpServiceBalancerStats.probe(instance.uri).add(1);
+            }
+            concurrency.add(1);
+
+            this.attempted = Set.copyOf(attempted);
+            startTick = ticker.read();
+        }
+
+        @Override
+        public URI getUri()
+        {
+            return instance.uri;
+        }
+
+        @Override
+        public void markGood()
+        {
+            complete(false, true);
+            recordRequestTime(instance.uri, startTick, true);
+        }
+
+        @Override
+        public void markBad(String failureCategory)
+        {
+            complete(true, true);
+            recordRequestTime(instance.uri, startTick, false);
+            httpServiceBalancerStats.failure(instance.uri, failureCategory).add(1);
+        }
+
+        @Override
+        public void markBad(String failureCategory, String handlerCategory)
+        {
+            complete(true, true);
+            recordRequestTime(instance.uri, startTick, false);
+            httpServiceBalancerStats.failure(instance.uri, failureCategory, handlerCategory).add(1);
+        }
+
+        @Override
+        public void markCanceled()
+        {
+            complete(false, false);
+        }
+
+        private void complete(boolean isFailure, boolean updateHealth)
+        {
+            checkState(inProgress, "is in progress");
+            inProgress = false;
+            if (updateHealth) {
+                if (isFailure) {
+                    instance.markFailure(HttpServiceBalancerImpl.this);
+                }
+                else {
+                    instance.markSuccess(HttpServiceBalancerImpl.this);
+                }
+            }
+
+            instance.concurrency.decrementAndGet();
+            concurrency.add(-1);
+        }
+
+        @Override
+        public HttpServiceAttempt next()
+        {
+            checkState(!inProgress, "is not still in progress");
+            Set<URI> newAttempted = ImmutableSet.<URI>builder()
+                    .add(instance.uri)
+                    .addAll(attempted)
+                    .build();
+            return new PowerOfTwoChoicesAttempt(newAttempted);
+        }
+    }
+
+    private void recordRequestTime(URI uri, long startTick, boolean success)
+    {
+        long now = ticker.read();
+        httpServiceBalancerStats.requestTime(uri, success ? Status.SUCCESS : Status.FAILURE).add(now - startTick, TimeUnit.NANOSECONDS);
+        if (outlierDetector != null) {
+            outlierDetector.record(uri, now - startTick, success, now);
+        }
+    }
+
+    /**
+     * @return the index of an instance that has not been attempted and is not
+     * at index {@code excluded}, or -1 if there is none
+     */
+    private static int sample(WeightedInstances<Instance> instances, Set<URI> attempted, ThreadLocalRandom random, int excluded)
+    {
+        for (int i = 0; i < SAMPLE_TRIES; i++) {
+            int index = instances.sample(random);
+            if (index != excluded && !attempted.contains(instances.get(index).uri)) {
+                return index;
+            }
+        }
+        int start = random.nextInt(instances.size());
+        for (int i = 0; i < instances.size(); i++) {
+            int index = (start + i) % instances.size();
+            if (index != excluded && !attempted.contains(instances.get(index).uri)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    @Nullable
+    private static Instance findAvailable(WeightedInstances<Instance> instances, Set<URI> attempted, long now)
+    {
+        Instance best = null;
+        for (int i = 0; i < instances.size(); i++) {
+            Instance instance = instances.get(i);
+            if (!attempted.contains(instance.uri) && instance.isAvailable(now) && (best == null || instance.compareTo(best, now) < 0)) {
+                best = instance;
+            }
+        }
+        return best;
+    }
+
     @Nested
     public MaxGauge getConcurrency()
     {
@@ -247,6 +483,7 @@ public class HttpServiceBalancerImpl
         int weight = 1;
         int concurrency;
         int numFailures = 0;
+        boolean ejected;
         BackoffPolicy backoffPolicy;
         Duration lastBackoff;
         long deadUntil;
@@ -259,17 +496,135 @@ public class HttpServiceBalancerImpl
 
         int compareTo(InstanceState that)
         {
-            if (liveness == Liveness.DEAD || (liveness == Liveness.PROBING && concurrency > 0)) {
-                if (that.liveness == Liveness.DEAD || (that.liveness == Liveness.PROBING && that.concurrency > 0)) {
+            if (isUnavailable()) {
+                if (that.isUnavailable()) {
                     return Integer.compare(concurrency / weight, that.concurrency / that.weight);
                 }
                 return 1;
             }
-            if (that.liveness == Liveness.DEAD || (that.liveness == Liveness.PROBING && that.concurrency > 0)) {
+            if (that.isUnavailable()) {
                 return -1;
             }
             return Integer.compare(concurrency / weight, that.concurrency / that.weight);
         }
+
+        private boolean isUnavailable()
+        {
+            return ejected || liveness == Liveness.DEAD || (liveness == Liveness.PROBING && concurrency > 0);
+        }
+    }
+
+    private static class Instance
+    {
+        private final URI uri;
+        private final AtomicInteger concurrency = new AtomicInteger();
+        private final AtomicReference<Health> health = new AtomicReference<>(Health.HEALTHY);
+        @Nullable
+        private final OutlierDetector outlierDetector;
+        private volatile int weight = 1;
+
+        Instance(URI uri, @Nullable OutlierDetector outlierDetector)
+        {
+            this.uri = uri;
+            this.outlierDetector = outlierDetector;
+        }
+
+        boolean isAvailable(long now)
+        {
+            if (outlierDetector != null && outlierDetector.isEjected(uri, now)) {
+                return false;
+            }
+            Health current = health.get();
+            if (current.liveness == Liveness.DEAD && current.deadUntil <= now) {
+                health.compareAndSet(current, current.withLiveness(Liveness.PROBING));
+                current = health.get();
+            }
+            return current.liveness == Liveness.ALIVE || (current.liveness == Liveness.PROBING && concurrency.get() == 0);
+        }
+
+        int compareTo(Instance that, long now)
+        {
+            boolean available = isAvailable(now);
+            if (available != that.isAvailable(now)) {
+                return available ? -1 : 1;
+            }
+            return Long.compare((long) concurrency.get() * that.weight, (long) that.concurrency.get() * weight);
+        }
+
+        void markSuccess(HttpServiceBalancerImpl balancer)
+        {
+            for (;;) {
+                Health current = health.get();
+                if (current == Health.HEALTHY) {
+                    return;
+                }
+                if (health.compareAndSet(current, Health.HEALTHY)) {
+                    if (current.liveness != Liveness.ALIVE) {
+                        balancer.httpServiceBalancerStats.revival(uri).add(1);
+                    }
+                    return;
+                }
+            }
+        }
+
+        void markFailure(HttpServiceBalancerImpl balancer)
+        {
+            for (;;) {
+                Health current = health.get();
+                Health next;
+                switch (current.liveness) {
+                    case ALIVE:
+                        if (current.numFailures + 1 < balancer.consecutiveFailures) {
+                            next = new Health(Liveness.ALIVE, current.numFailures + 1, null, null, 0);
+                        }
+                        else {
+                            Duration backoff = balancer.backoffPolicy.backoff(ZERO_DURATION);
+                            next = new Health(Liveness.DEAD, 0, balancer.backoffPolicy, backoff, balancer.ticker.read() + backoff.roundTo(NANOSECONDS));
+                        }
+                        break;
+                    case PROBING:
+                        BackoffPolicy backoffPolicy = current.backoffPolicy.nextAttempt();
+                        Duration backoff = backoffPolicy.backoff(current.lastBackoff);
+                        next = new Health(Liveness.DEAD, 0, backoffPolicy, backoff, balancer.ticker.read() + backoff.roundTo(NANOSECONDS));
+                        break;
+                    default:
+                        return;
+                }
+                if (health.compareAndSet(current, next)) {
+                    if (next.liveness == Liveness.DEAD) {
+                        balancer.httpServiceBalancerStats.removal(uri).add(next.lastBackoff);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class Health
+    {
+        static final Health HEALTHY = new Health(Liveness.ALIVE, 0, null, null, 0);
+
+        final Liveness liveness;
+        final int numFailures;
+        @Nullable
+        final BackoffPolicy backoffPolicy;
+        @Nullable
+        final Duration lastBackoff;
+        final long deadUntil;
+
+        Health(Liveness liveness, int numFailures, @Nullable BackoffPolicy backoffPolicy, @Nullable Duration lastBackoff, long deadUntil)
+        {
+            this.liveness = liveness;
+            this.numFailures = numFailures;
+            this.backoffPolicy = backoffPolicy;
+            this.lastBackoff = lastBackoff;
+            this.deadUntil = deadUntil;
+        }
+
+        Health withLiveness(Liveness liveness)
+        {
+            return new Health(liveness, numFailures, backoffPolicy, lastBackoff, deadUntil);
+        }
     }
 
     private enum Liveness
@@ -17,6 +17,7 @@ package com.proofpoint.http.client.balancing;
 
 import com.proofpoint.reporting.Key;
 import com.proofpoint.stats.SparseCounterStat;
+import com.proofpoint.stats.SparseDistributionStat;
 import com.proofpoint.stats.SparseTimeStat;
 
 import java.net.URI;
@@ -35,6 +36,12 @@ public interface HttpServiceBalancerStats
 
     SparseCounterStat probe(@Key("targetUri") URI uri);
 
+    SparseTimeStat ejection(@Key("targetUri") URI uri);
+
+    SparseDistributionStat latencyScore(@Key("targetUri") URI uri);
+
+    SparseDistributionStat successRate(@Key("targetUri") URI uri);
+
     enum Status {
         SUCCESS, FAILURE;
 
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.balancing;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.proofpoint.units.Duration;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToDoubleFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.round;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Ejects instances whose recent latency or success rate is an outlier among
+ * the instances of a service.
+ * <p>
+ * Keeps an exponentially weighted moving average of the latency and of the
+ * success of the requests to each instance. At most once per
+ * {@link #ANALYSIS_INTERVAL_NANOS}, the instances with at least
+ * {@link #MIN_SAMPLES} samples are compared with their median. An instance is
+ * ejected if its average latency is more than the latency multiplier times
+ * the median, or if its success rate is less than the success rate ratio
+ * times the median. Ejected instances return after a backoff from the
+ * {@link BackoffPolicy}, which grows if they are ejected again before being
+ * found healthy. No more than the maximum ejection percentage of the
+ * instances are ejected at a time.
+ * <p>
+ * The latency and success rate of each analyzed instance are exported as
+ * percentages of their medians.
+ */
+class OutlierDetector
+{
+    private static final double ALPHA = 0.1;
+    private static final int MIN_SAMPLES = 20;
+    private static final int MIN_INSTANCES = 3;
+    private static final long ANALYSIS_INTERVAL_NANOS = SECONDS.toNanos(10);
+    private static final Duration ZERO_DURATION = new Duration(0, SECONDS);
+
+    private final HttpServiceBalancerStats httpServiceBalancerStats;
+    private final BackoffPolicy backoffPolicy;
+    private final double latencyMultiplier;
+    private final double successRateRatio;
+    private final int maxEjectionPercent;
+    private final ConcurrentMap<URI, Score> scores = new ConcurrentHashMap<>();
+    private final AtomicBoolean analyzing = new AtomicBoolean();
+    private volatile int instanceCount;
+    private volatile long nextAnalysis;
+
+    OutlierDetector(HttpServiceBalancerStats httpServiceBalancerStats, BackoffPolicy backoffPolicy, double latencyMultiplier, double successRateRatio, int maxEjectionPercent, long now)
+    {
+        checkArgument(latencyMultiplier >= 1.0, "latencyMultiplier is less than 1");
+        checkArgument(successRateRatio >= 0.0 && successRateRatio <= 1.0, "successRateRatio is not between 0 and 1");
+        checkArgument(maxEjectionPercent >= 0 && maxEjectionPercent <= 100, "maxEjectionPercent is not between 0 and 100");
+        this.httpServiceBalancerStats = requireNonNull(httpServiceBalancerStats, "httpServiceBalancerStats is null");
+        this.backoffPolicy = requireNonNull(backoffPolicy, "backoffPolicy is null");
+        this.latencyMultiplier = latencyMultiplier;
+        this.successRateRatio = successRateRatio;
+        this.maxEjectionPercent = maxEjectionPercent;
+        nextAnalysis = now + ANALYSIS_INTERVAL_NANOS;
+    }
+
+    void updateInstances(Set<URI> uris)
+    {
+        instanceCount = uris.size();
+        scores.keySet().retainAll(uris);
+    }
+
+    void record(URI uri, long latencyNanos, boolean success, long now)
+    {
+        Score score = scores.get(uri);
+        if (score == null) {
+            score = scores.computeIfAbsent(uri, key -> new Score(key, now));
+        }
+        score.add(latencyNanos, success, now);
+
+        if (now - nextAnalysis >= 0 && analyzing.compareAndSet(false, true)) {
+            try {
+                analyze(now);
+                nextAnalysis = now + ANALYSIS_INTERVAL_NANOS;
+            }
+            finally {
+                analyzing.set(false);
+            }
+        }
+    }
+
+    boolean isEjected(URI uri, long now)
+    {
+        Score score = scores.get(uri);
+        return score != null && now - score.ejectedUntil < 0;
+    }
+
+    @VisibleForTesting
+    void analyze(long now)
+    {
+        List<Snapshot> snapshots = new ArrayList<>();
+        int ejected = 0;
+        for (Score score : scores.values()) {
+            if (now - score.ejectedUntil < 0) {
+                ++ejected;
+                continue;
+            }
+            Snapshot snapshot = score.snapshot(now);
+            if (snapshot != null) {
+                snapshots.add(snapshot);
+            }
+        }
+        if (snapshots.size() < MIN_INSTANCES) {
+            return;
+        }
+
+        double medianLatency = median(snapshots, Snapshot::getLatency);
+        double medianSuccessRate = median(snapshots, Snapshot::getSuccessRate);
+        int maxEjected = max(instanceCount, scores.size()) * maxEjectionPercent / 100;
+        if (maxEjected == 0 && maxEjectionPercent > 0) {
+            maxEjected = 1;
+        }
+
+        // Eject the slowest outliers first
+        snapshots.sort(Comparator.comparingDouble(Snapshot::getLatency).reversed());
+        for (Snapshot snapshot : snapshots) {
+            if (medianLatency > 0) {
+                httpServiceBalancerStats.latencyScore(snapshot.score.uri).add(round(100 * snapshot.latency / medianLatency));
+            }
+            if (medianSuccessRate > 0) {
+                httpServiceBalancerStats.successRate(snapshot.score.uri).add(round(100 * snapshot.successRate / medianSuccessRate));
+            }
+
+            boolean outlier = (medianLatency > 0 && snapshot.latency > medianLatency * latencyMultiplier)
+                    || snapshot.successRate < medianSuccessRate * successRateRatio;
+            if (!outlier) {
+                snapshot.score.markHealthy();
+            }
+            else if (ejected < maxEjected) {
+                ++ejected;
+                Duration backoff = snapshot.score.eject(backoffPolicy, now);
+                httpServiceBalancerStats.ejection(snapshot.score.uri).add(backoff);
+            }
+        }
+    }
+
+    private static double median(List<Snapshot> snapshots, ToDoubleFunction<Snapshot> value)
+    {
+        double[] values = new double[snapshots.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = value.applyAsDouble(snapshots.get(i));
+        }
+        Arrays.sort(values);
+        int middle = values.length / 2;
+        if (values.length % 2 == 1) {
+            return values[middle];
+        }
+        return (values[middle - 1] + values[middle]) / 2;
+    }
+
+    private static class Score
+    {
+        private final URI uri;
+        private volatile long ejectedUntil;
+        @GuardedBy("this")
+        private double latency;
+        @GuardedBy("this")
+        private double successRate;
+        @GuardedBy("this")
+        private int samples;
+        @GuardedBy("this")
+        private boolean ejected;
+        @GuardedBy("this")
+        private Duration lastBackoff;
+        @GuardedBy("this")
+        private BackoffPolicy backoffPolicy;
+
+        Score(URI uri, long now)
+        {
+            this.uri = uri;
+            ejectedUntil = now;
+        }
+
+        synchronized void add(long latencyNanos, boolean success, long now)
+        {
+            if (ejected) {
+                if (now - ejectedUntil < 0) {
+                    // completion of a request sent before the ejection
+                    return;
+                }
+                returned();
+            }
+            double successValue = success ? 1.0 : 0.0;
+            if (samples++ == 0) {
+                latency = latencyNanos;
+                successRate = successValue;
+            }
+            else {
+                latency += ALPHA * (latencyNanos - latency);
+                successRate += ALPHA * (successValue - successRate);
+            }
+        }
+
+        @Nullable
+        synchronized Snapshot snapshot(long now)
+        {
+            if (ejected) {
+                if (now - ejectedUntil < 0) {
+                    return null;
+                }
+                returned();
+            }
+            if (samples < MIN_SAMPLES) {
+                return null;
+            }
+            return new Snapshot(this, latency, successRate);
+        }
+
+        @GuardedBy("this")
+        private void returned()
+        {
+            // judge only on requests made since the return from ejection
+            ejected = false;
+            samples = 0;
+        }
+
+        synchronized void markHealthy()
+        {
+            backoffPolicy = null;
+            lastBackoff = null;
+        }
+
+        synchronized Duration eject(BackoffPolicy initialBackoffPolicy, long now)
+        {
+            if (backoffPolicy == null) {
+                backoffPolicy = initialBackoffPolicy;
+                lastBackoff = backoffPolicy.backoff(ZERO_DURATION);
+            }
+            else {
+                backoffPolicy = backoffPolicy.nextAttempt();
+                lastBackoff = backoffPolicy.backoff(lastBackoff);
+            }
+            ejected = true;
+            ejectedUntil = now + lastBackoff.roundTo(NANOSECONDS);
+            return lastBackoff;
+        }
+    }
+
+    private static class Snapshot
+    {
+        private final Score score;
+        private final double latency;
+        private final double successRate;
+
+        Snapshot(Score score, double latency, double successRate)
+        {
+            this.score = score;
+            this.latency = latency;
+            this.successRate = successRate;
+        }
+
+        double getLatency()
+        {
+            return latency;
+        }
+
+        double getSuccessRate()
+        {
+            return successRate;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.balancing;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable set of instances from which an instance can be sampled, in
+ * proportion to its weight, in constant time.
+ * <p>
+ * Uses Vose's alias method: each of the {@code n} columns of the table holds
+ * an instance and, for the remainder of the column, an alias to another
+ * instance.
+ */
+final class WeightedInstances<T>
+{
+    private final List<T> instances;
+    private final int[] weights;
+    private final double[] probability;
+    private final int[] alias;
+
+    WeightedInstances(List<T> instances, int[] weights)
+    {
+        this.instances = ImmutableList.copyOf(requireNonNull(instances, "instances is null"));
+        this.weights = requireNonNull(weights, "weights is null").clone();
+        checkArgument(instances.size() == weights.length, "instances and weights have different sizes");
+
+        int size = weights.length;
+        probability = new double[size];
+        alias = new int[size];
+        long totalWeight = 0;
+        for (int weight : weights) {
+            checkArgument(weight > 0, "weight is not positive");
+            totalWeight += weight;
+        }
+
+        double[] scaled = new double[size];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < size; i++) {
+            scaled[i] = (double) weights[i] * size / totalWeight;
+            if (scaled[i] < 1.0) {
+                small.push(i);
+            }
+            else {
+                large.push(i);
+            }
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.pop();
+            int more = large.pop();
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small.push(more);
+            }
+            else {
+                large.push(more);
+            }
+        }
+        // Whatever remains is, up to rounding error, exactly full
+        while (!large.isEmpty()) {
+            probability[large.pop()] = 1.0;
+        }
+        while (!small.isEmpty()) {
+            probability[small.pop()] = 1.0;
+        }
+    }
+
+    int size()
+    {
+        return instances.size();
+    }
+
+    boolean isEmpty()
+    {
+        return instances.isEmpty();
+    }
+
+    T get(int index)
+    {
+        return instances.get(index);
+    }
+
+    int getWeight(int index)
+    {
+        return weights[index];
+    }
+
+    /**
+     * @return the index of an instance chosen with probability proportional
+     * to its weight
+     */
+    int sample(Random random)
+    {
+        int column = random.nextInt(probability.length);
+        if (random.nextDouble() < probability[column]) {
+            return column;
+        }
+        return alias[column];
+    }
+}
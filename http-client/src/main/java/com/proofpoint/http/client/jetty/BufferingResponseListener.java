@@ -10,12 +10,14 @@ import org.eclipse.jetty.http.HttpHeader;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.proofpoint.http.client.jetty.JettyHttpClient.isGzipEncoded;
 import static com.proofpoint.units.DataSize.Unit.KILOBYTE;
 import static com.proofpoint.units.DataSize.Unit.MEGABYTE;
 import static java.lang.Math.max;
@@ -30,6 +32,7 @@ class BufferingResponseListener
     private static final long BUFFER_MIN_BYTES = new DataSize(1, KILOBYTE).toBytes();
     private final JettyResponseFuture<?, ?> future;
     private final int maxLength;
+    private final boolean decodeGzip;
 
     @GuardedBy("this")
     private byte[] currentBuffer = new byte[0];
@@ -39,12 +42,24 @@ class BufferingResponseListener
     private List<byte[]> buffers = new ArrayList<>();
     @GuardedBy("this")
     private long size;
+    @GuardedBy("this")
+    private GzipChunkDecoder decoder;
+    @GuardedBy("this")
+    private long compressedSize;
+    @GuardedBy("this")
+    private boolean tooLarge;
 
-    BufferingResponseListener(JettyResponseFuture<?, ?> future, int maxLength)
+    /**
+     * @param decodeGzip whether to decompress a gzip-encoded response as it
+     * is received, in which case {@code maxLength} limits the size of the
+     * decompressed body
+     */
+    BufferingResponseListener(JettyResponseFuture<?, ?> future, int maxLength, boolean decodeGzip)
     {
         this.future = requireNonNull(future, "future is null");
         checkArgument(maxLength > 0, "maxLength must be greater than zero");
         this.maxLength = maxLength;
+        this.decodeGzip = decodeGzip;
     }
 
     @Override
@@ -53,33 +68,47 @@ class BufferingResponseListener
         long length = response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString());
         if (length > maxLength) {
             response.abort(new ResponseTooLargeException());
+            return;
+        }
+        if (decodeGzip && isGzipEncoded(response)) {
+            decoder = new GzipChunkDecoder(chunk -> {
+                tooLarge = !append(chunk);
+                // stop decoding once the limit is exceeded
+                return !tooLarge;
+            });
         }
     }
 
     @Override
     public synchronized void onContent(Response response, ByteBuffer content)
     {
-        int length = content.remaining();
-        size += length;
-        if (size > maxLength) {
-            response.abort(new ResponseTooLargeException());
+        if (decoder == null) {
+            if (!append(content)) {
+                response.abort(new ResponseTooLargeException());
+            }
             return;
         }
 
-        while (length > 0) {
-            if (currentBufferPosition >= currentBuffer.length) {
-                allocateCurrentBuffer();
-            }
-            int readLength = min(length, currentBuffer.length - currentBufferPosition);
-            content.get(currentBuffer, currentBufferPosition, readLength);
-            length -= readLength;
-            currentBufferPosition += readLength;
+        compressedSize += content.remaining();
+        try {
+            decoder.decodeContent(content);
+        }
+        catch (RuntimeException e) {
+            response.abort(e);
+            return;
+        }
+        if (tooLarge) {
+            response.abort(new ResponseTooLargeException());
         }
     }
 
     @Override
     public synchronized void onComplete(Result result)
     {
+        if (decoder != null) {
+            decoder.destroy();
+        }
+
         Throwable throwable = result.getFailure();
         if (throwable != null) {
             future.failed(throwable);
@@ -87,12 +116,43 @@ class BufferingResponseListener
         else {
             currentBuffer = new byte[0];
             currentBufferPosition = 0;
-            future.completed(result.getResponse(), new GatheringByteArrayInputStream(buffers, size));
+            InputStream content = new GatheringByteArrayInputStream(buffers, size);
+            if (decoder == null) {
+                future.completed(result.getResponse(), content);
+            }
+            else {
+                long compressedBytesRead = compressedSize;
+                future.completed(result.getResponse(), content, () -> compressedBytesRead);
+            }
             buffers = new ArrayList<>();
             size = 0;
         }
     }
 
+    /**
+     * @return false if the content would exceed the maximum length, in which
+     * case none of it is appended
+     */
+    private synchronized boolean append(ByteBuffer content)
+    {
+        int length = content.remaining();
+        if (size + length > maxLength) {
+            return false;
+        }
+        size += length;
+
+        while (length > 0) {
+            if (currentBufferPosition >= currentBuffer.length) {
+                allocateCurrentBuffer();
+            }
+            int readLength = min(length, currentBuffer.length - currentBufferPosition);
+            content.get(currentBuffer, currentBufferPosition, readLength);
+            length -= readLength;
+            currentBufferPosition += readLength;
+        }
+        return true;
+    }
+
     private synchronized void allocateCurrentBuffer()
     {
         checkState(currentBufferPosition >= currentBuffer.length, "there is still remaining space in currentBuffer");
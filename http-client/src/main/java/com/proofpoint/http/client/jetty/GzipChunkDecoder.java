@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.jetty;
+
+import org.eclipse.jetty.http.GZIPContentDecoder;
+
+import java.nio.ByteBuffer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decompresses gzip-encoded response content as it is received, passing each
+ * decompressed chunk to a consumer. The chunk is released once the consumer
+ * returns.
+ */
+class GzipChunkDecoder
+        extends GZIPContentDecoder
+{
+    private static final int BUFFER_BYTES = 8192;
+
+    private final ChunkConsumer consumer;
+
+    GzipChunkDecoder(ChunkConsumer consumer)
+    {
+        super(BUFFER_BYTES);
+        this.consumer = requireNonNull(consumer, "consumer is null");
+    }
+
+    void decodeContent(ByteBuffer compressed)
+    {
+        decodeChunks(compressed);
+    }
+
+    @Override
+    protected boolean decodedChunk(ByteBuffer chunk)
+    {
+        try {
+            return !consumer.accept(chunk);
+        }
+        finally {
+            release(chunk);
+        }
+    }
+
+    interface ChunkConsumer
+    {
+        /**
+         * @return false to stop decoding
+         */
+        boolean accept(ByteBuffer chunk);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.jetty;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses a gzip-encoded response body as it is read. The gzip header is
+ * not read until the first read, so an empty body, as sent in response to a
+ * HEAD request, reads as empty rather than failing.
+ */
+class GzipDecodingInputStream
+        extends FilterInputStream
+{
+    private static final int INFLATER_BUFFER_SIZE = 8192;
+
+    private boolean started;
+
+    GzipDecodingInputStream(InputStream compressed)
+    {
+        super(new PushbackInputStream(compressed));
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        start();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+            throws IOException
+    {
+        start();
+        return super.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n)
+            throws IOException
+    {
+        start();
+        return super.skip(n);
+    }
+
+    @Override
+    public int available()
+            throws IOException
+    {
+        if (!started) {
+            return 0;
+        }
+        return super.available();
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    private void start()
+            throws IOException
+    {
+        if (started) {
+            return;
+        }
+        started = true;
+        PushbackInputStream compressed = (PushbackInputStream) in;
+        int first = compressed.read();
+        if (first != -1) {
+            compressed.unread(first);
+            in = new GZIPInputStream(compressed, INFLATER_BUFFER_SIZE);
+        }
+    }
+}
@@ -1,27 +1,103 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
 package com.proofpoint.http.client.jetty;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 import com.google.common.net.InetAddresses;
+import com.proofpoint.stats.CounterStat;
+import com.proofpoint.stats.TimeStat;
+import com.proofpoint.units.Duration;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.SocketAddressResolver;
 import org.eclipse.jetty.util.thread.Scheduler;
+import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * For IP address literals this SocketAddressResolver implementation does not dispatch the address resolution
  * to the executor. Under high load this helps offloading the executor, which may be shared by multiple different
  * HTTP clients.
+ * <p>
+ * Host names are resolved on the executor and the results are cached for the
+ * configured time to live, so connections to a host do not each wait for a
+ * lookup. A cached result which is used during the last quarter of its time to
+ * live is refreshed in the background while the cached addresses continue to be
+ * returned. A failed refresh keeps the cached addresses and is retried after the
+ * negative time to live. Unknown hosts are cached for the negative time to live.
+ * At most {@link #MAX_CACHED_HOSTS} hosts are cached; others are looked up for
+ * each resolution while the cache is full of unexpired entries. Concurrent
+ * lookups of the same host are coalesced, and successive resolutions of a host
+ * rotate the order of its addresses so that new connections are spread across
+ * them. A time to live of zero disables the cache.
  */
 class JettyAsyncSocketAddressResolver
         extends SocketAddressResolver.Async
 {
-    public JettyAsyncSocketAddressResolver(Executor executor, Scheduler scheduler, long timeout)
+    @VisibleForTesting
+    static final int MAX_CACHED_HOSTS = 1024;
+
+    private final Executor executor;
+    private final Scheduler scheduler;
+    private final long timeout;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final NameService nameService;
+    private final Ticker ticker;
+    private final ConcurrentMap<String, HostEntry> cache = new ConcurrentHashMap<>();
+    private final TimeStat lookupTime = new TimeStat();
+    private final CounterStat hits = new CounterStat();
+    private final CounterStat misses = new CounterStat();
+    private final CounterStat failures = new CounterStat();
+
+    JettyAsyncSocketAddressResolver(Executor executor, Scheduler scheduler, long timeout, Duration ttl, Duration negativeTtl)
+    {
+        this(executor, scheduler, timeout, ttl, negativeTtl, InetAddress::getAllByName, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    JettyAsyncSocketAddressResolver(Executor executor, Scheduler scheduler, long timeout, Duration ttl, Duration negativeTtl, NameService nameService, Ticker ticker)
     {
         super(executor, scheduler, timeout);
+        this.executor = requireNonNull(executor, "executor is null");
+        this.scheduler = requireNonNull(scheduler, "scheduler is null");
+        this.timeout = timeout;
+        ttlNanos = requireNonNull(ttl, "ttl is null").roundTo(NANOSECONDS);
+        negativeTtlNanos = requireNonNull(negativeTtl, "negativeTtl is null").roundTo(NANOSECONDS);
+        this.nameService = requireNonNull(nameService, "nameService is null");
+        this.ticker = requireNonNull(ticker, "ticker is null");
     }
 
     @Override
@@ -32,7 +108,64 @@ class JettyAsyncSocketAddressResolver
             promise.succeeded(List.of(new InetSocketAddress(address.get(), port)));
             return;
         }
-        super.resolve(host, port, promise);
+        if (ttlNanos == 0) {
+            super.resolve(host, port, promise);
+            return;
+        }
+
+        long now = ticker.read();
+        HostEntry entry = cache.get(host);
+        if (entry == null) {
+            if (cache.size() >= MAX_CACHED_HOSTS) {
+                cache.values().removeIf(cached -> cached.isExpired(now));
+            }
+            if (cache.size() < MAX_CACHED_HOSTS) {
+                entry = cache.computeIfAbsent(host, ignored -> new HostEntry());
+            }
+            else {
+                // the cache is full: look up without caching the result
+                entry = new HostEntry();
+            }
+        }
+
+        LookupResult result = entry.result;
+        if (result != null && !result.isExpired(now)) {
+            hits.add(1);
+            if (result.addresses != null && now - result.refreshAt >= 0) {
+                startLookup(host, entry);
+            }
+            complete(entry, result, port, promise);
+            return;
+        }
+
+        misses.add(1);
+        AtomicBoolean complete = new AtomicBoolean();
+        Scheduler.Task timeoutTask;
+        if (timeout > 0) {
+            timeoutTask = scheduler.schedule(() -> {
+                if (complete.compareAndSet(false, true)) {
+                    promise.failed(new TimeoutException("DNS timeout " + timeout + " ms"));
+                }
+            }, timeout, MILLISECONDS);
+        }
+        else {
+            timeoutTask = null;
+        }
+
+        HostEntry lookupEntry = entry;
+        startLookup(host, entry).whenComplete((lookupResult, throwable) -> {
+            if (complete.compareAndSet(false, true)) {
+                if (timeoutTask != null) {
+                    timeoutTask.cancel();
+                }
+                if (throwable != null) {
+                    promise.failed(throwable);
+                }
+                else {
+                    complete(lookupEntry, lookupResult, port, promise);
+                }
+            }
+        });
     }
 
     private static Optional<InetAddress> resolve(String host)
@@ -45,4 +178,151 @@ class JettyAsyncSocketAddressResolver
             return Optional.empty();
         }
     }
+
+    private CompletableFuture<LookupResult> startLookup(String host, HostEntry entry)
+    {
+        CompletableFuture<LookupResult> future;
+        synchronized (entry) {
+            if (entry.lookup != null) {
+                return entry.lookup;
+            }
+            future = new CompletableFuture<>();
+            entry.lookup = future;
+        }
+
+        try {
+            executor.execute(() -> lookup(host, entry, future));
+        }
+        catch (RuntimeException e) {
+            synchronized (entry) {
+                entry.lookup = null;
+            }
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void lookup(String host, HostEntry entry, CompletableFuture<LookupResult> future)
+    {
+        long start = ticker.read();
+        LookupResult result;
+        try {
+            List<InetAddress> addresses = List.of(nameService.getAllByName(host));
+            long now = ticker.read();
+            lookupTime.add(now - start, NANOSECONDS);
+            result = new LookupResult(addresses, null, now + ttlNanos, now + ttlNanos - ttlNanos / 4);
+        }
+        catch (Throwable e) {
+            long now = ticker.read();
+            lookupTime.add(now - start, NANOSECONDS);
+            failures.add(1);
+            LookupResult previous = entry.result;
+            if (previous != null && previous.addresses != null && !previous.isExpired(now)) {
+                // a failed background refresh does not discard addresses which are still
+                // valid, and is not retried by every connection until the negative TTL passes
+                result = new LookupResult(previous.addresses, null, previous.expiry, now + negativeTtlNanos);
+            }
+            else if (e instanceof UnknownHostException) {
+                result = new LookupResult(null, (UnknownHostException) e, now + negativeTtlNanos, now + negativeTtlNanos);
+            }
+            else {
+                synchronized (entry) {
+                    entry.lookup = null;
+                }
+                future.completeExceptionally(e);
+                return;
+            }
+        }
+
+        synchronized (entry) {
+            entry.result = result;
+            entry.lookup = null;
+        }
+        future.complete(result);
+    }
+
+    private static void complete(HostEntry entry, LookupResult result, int port, Promise<List<InetSocketAddress>> promise)
+    {
+        if (result.addresses == null) {
+            UnknownHostException exception = new UnknownHostException(result.failure.getMessage());
+            exception.initCause(result.failure);
+            promise.failed(exception);
+            return;
+        }
+
+        List<InetAddress> addresses = result.addresses;
+        int offset = Math.floorMod(entry.next.getAndIncrement(), addresses.size());
+        List<InetSocketAddress> socketAddresses = new ArrayList<>(addresses.size());
+        for (int i = 0; i < addresses.size(); i++) {
+            socketAddresses.add(new InetSocketAddress(addresses.get((offset + i) % addresses.size()), port));
+        }
+        promise.succeeded(socketAddresses);
+    }
+
+    @Nested
+    public TimeStat getLookupTime()
+    {
+        return lookupTime;
+    }
+
+    @Nested
+    public CounterStat getCacheHits()
+    {
+        return hits;
+    }
+
+    @Nested
+    public CounterStat getCacheMisses()
+    {
+        return misses;
+    }
+
+    @Nested
+    public CounterStat getLookupFailures()
+    {
+        return failures;
+    }
+
+    @VisibleForTesting
+    interface NameService
+    {
+        InetAddress[] getAllByName(String host)
+                throws UnknownHostException;
+    }
+
+    private static class HostEntry
+    {
+        private final AtomicInteger next = new AtomicInteger();
+        private volatile LookupResult result;
+        @GuardedBy("this")
+        private CompletableFuture<LookupResult> lookup;
+
+        synchronized boolean isExpired(long now)
+        {
+            return lookup == null && (result == null || result.isExpired(now));
+        }
+    }
+
+    private static class LookupResult
+    {
+        @Nullable
+        private final List<InetAddress> addresses;
+        @Nullable
+        private final UnknownHostException failure;
+        private final long expiry;
+        private final long refreshAt;
+
+        LookupResult(@Nullable List<InetAddress> addresses, @Nullable UnknownHostException failure, long expiry, long refreshAt)
+        {
+            this.addresses = addresses;
+            this.failure = failure;
+            this.expiry = expiry;
+            this.refreshAt = refreshAt;
+        }
+
+        boolean isExpired(long now)
+        {
+            return now - expiry >= 0;
+        }
+    }
 }
@@ -3,6 +3,7 @@ package com.proofpoint.http.client.jetty;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Ordering;
 import com.google.common.io.Closeables;
+import com.google.common.io.CountingInputStream;
 import com.google.common.net.HostAndPort;
 import com.google.common.primitives.Ints;
 import com.proofpoint.http.client.BodySource;
@@ -14,6 +15,7 @@ import com.proofpoint.http.client.Request;
 import com.proofpoint.http.client.RequestStats;
 import com.proofpoint.http.client.ResponseHandler;
 import com.proofpoint.http.client.StaticBodyGenerator;
+import com.proofpoint.http.client.StreamingResponseHandler;
 import com.proofpoint.log.Logger;
 import com.proofpoint.units.Duration;
 import org.eclipse.jetty.client.DuplexConnectionPool;
@@ -29,9 +31,11 @@ import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
 import org.eclipse.jetty.client.http.HttpConnectionOverHTTP;
 import org.eclipse.jetty.client.util.BytesContentProvider;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http2.client.HTTP2Client;
 import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
 import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.unixsocket.client.HttpClientTransportOverUnixSockets;
 import org.eclipse.jetty.util.HttpCookieStore;
 import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
@@ -96,6 +100,7 @@ public class JettyHttpClient
     private final long maxContentLength;
     private final Long requestTimeoutMillis;
     private final long idleTimeoutMillis;
+    private final boolean compressionEnabled;
     private final Stats stats;
     private final CachedDistribution queuedRequestsPerDestination;
     private final CachedDistribution activeConnectionsPerDestination;
@@ -146,6 +151,7 @@ public class JettyHttpClient
             requestTimeoutMillis = requestTimeout.toMillis();
         }
         idleTimeoutMillis = config.getIdleTimeout().toMillis();
+        compressionEnabled = config.isCompressionEnabled();
 
         creationLocation.fillInStackTrace();
 
@@ -166,7 +172,10 @@ public class JettyHttpClient
         }
 
         HttpClientTransport transport;
-        if (config.isHttp2Enabled()) {
+        if (config.getUnixSocketPath() != null) {
+            transport = new HttpClientTransportOverUnixSockets(config.getUnixSocketPath());
+        }
+        else if (config.isHttp2Enabled()) {
             HTTP2Client client = new HTTP2Client();
             client.setInitialSessionRecvWindow(toIntExact(config.getHttp2InitialSessionReceiveWindowSize().toBytes()));
             client.setInitialStreamRecvWindow(toIntExact(config.getHttp2InitialStreamReceiveWindowSize().toBytes()));
@@ -211,21 +220,19 @@ public class JettyHttpClient
 
         httpClient.setByteBufferPool(new MappedByteBufferPool());
         QueuedThreadPool executor = createExecutor(name, config.getMinThreads(), config.getMaxThreads());
-        stats = stats(executor);
         httpClient.setExecutor(executor);
         // add executor as a managed bean to get its state in the client dumps
         httpClient.addBean(executor, true);
         httpClient.setScheduler(createScheduler(name, config.getTimeoutConcurrency(), config.getTimeoutThreads()));
 
-        httpClient.setSocketAddressResolver(new JettyAsyncSocketAddressResolver(
-                httpClient.getExecutor(),
-                httpClient.getScheduler(),
-                config.getConnectTimeout().toMillis()));
-
-        httpClient.setSocketAddressResolver(new JettyAsyncSocketAddressResolver(
+        JettyAsyncSocketAddressResolver dnsResolver = new JettyAsyncSocketAddressResolver(
                 httpClient.getExecutor(),
                 httpClient.getScheduler(),
-                config.getConnectTimeout().toMillis()));
+                config.getConnectTimeout().toMillis(),
+                config.getDnsCacheTtl(),
+                config.getDnsCacheNegativeTtl());
+        httpClient.setSocketAddressResolver(dnsResolver);
+        stats = stats(executor, dnsResolver);
 
         // Jetty client connections can sometimes get stuck while closing which reduces
         // the available connections.  The Jetty Sweeper periodically scans the active
@@ -236,7 +243,8 @@ public class JettyHttpClient
         try {
             this.httpClient.start();
 
-            // remove the GZIP encoding from the client
+            // remove the GZIP encoding from the client, as responses are
+            // decompressed by JettyHttpClient when compression is enabled
             // TODO: there should be a better way to to do this
             this.httpClient.getContentDecoderFactories().clear();
         }
@@ -367,7 +375,8 @@ public class JettyHttpClient
         request = applyRequestFilters(request);
 
         // create jetty request and response listener
-        HttpRequest jettyRequest = buildJettyRequest(request, bytesWritten);
+        boolean acceptGzip = shouldAcceptGzip(request);
+        HttpRequest jettyRequest = buildJettyRequest(request, bytesWritten, acceptGzip);
         InputStreamResponseListener listener = new InputStreamResponseListener()
         {
             @Override
@@ -422,7 +431,13 @@ public class JettyHttpClient
         try {
             InputStream inputStream = listener.getInputStream();
             try {
-                jettyResponse = new JettyResponse(response, inputStream);
+                if (acceptGzip && isGzipEncoded(response)) {
+                    CountingInputStream compressed = new CountingInputStream(inputStream);
+                    jettyResponse = new JettyResponse(response, new GzipDecodingInputStream(compressed), compressed::getCount);
+                }
+                else {
+                    jettyResponse = new JettyResponse(response, inputStream);
+                }
                 value = responseHandler.handle(request, jettyResponse);
             }
             finally {
@@ -456,11 +471,18 @@ public class JettyHttpClient
 
         request = applyRequestFilters(request);
 
-        HttpRequest jettyRequest = buildJettyRequest(request, bytesWritten);
+        boolean acceptGzip = shouldAcceptGzip(request);
+        HttpRequest jettyRequest = buildJettyRequest(request, bytesWritten, acceptGzip);
 
         JettyResponseFuture<T, E> future = new JettyResponseFuture<>(this, request, jettyRequest, responseHandler, bytesWritten, stats);
 
-        BufferingResponseListener listener = new BufferingResponseListener(future, Ints.saturatedCast(maxContentLength));
+        Response.Listener listener;
+        if (responseHandler instanceof StreamingResponseHandler) {
+            listener = new StreamingResponseListener(future, Ints.saturatedCast(maxContentLength), acceptGzip);
+        }
+        else {
+            listener = new BufferingResponseListener(future, Ints.saturatedCast(maxContentLength), acceptGzip);
+        }
 
         try {
             jettyRequest.send(listener);
@@ -483,7 +505,30 @@ public class JettyHttpClient
         return request;
     }
 
-    private HttpRequest buildJettyRequest(Request finalRequest, AtomicLong bytesWritten)
+    /**
+     * Responses are only decompressed if the client negotiated the encoding,
+     * so a caller that sets its own Accept-Encoding sees the body as sent.
+     */
+    private boolean shouldAcceptGzip(Request request)
+    {
+        if (!compressionEnabled) {
+            return false;
+        }
+        for (String name : request.getHeaders().keySet()) {
+            if (HttpHeader.ACCEPT_ENCODING.is(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isGzipEncoded(Response response)
+    {
+        String encoding = response.getHeaders().get(HttpHeader.CONTENT_ENCODING);
+        return encoding != null && "gzip".equalsIgnoreCase(encoding.trim());
+    }
+
+    private HttpRequest buildJettyRequest(Request finalRequest, AtomicLong bytesWritten, boolean acceptGzip)
     {
         HttpRequest jettyRequest = (HttpRequest) httpClient.newRequest(finalRequest.getUri());
 
@@ -499,9 +544,16 @@ public class JettyHttpClient
         for (Entry<String, String> entry : finalRequest.getHeaders().entries()) {
             jettyRequest.header(entry.getKey(), entry.getValue());
         }
+        if (acceptGzip) {
+            jettyRequest.header(HttpHeader.ACCEPT_ENCODING, "gzip");
+        }
 
         BodySource bodySource = finalRequest.getBodySource();
         if (bodySource != null) {
+            String contentEncoding = bodySource.getContentEncoding();
+            if (contentEncoding != null) {
+                jettyRequest.header(HttpHeader.CONTENT_ENCODING, contentEncoding);
+            }
             if (bodySource instanceof StaticBodyGenerator) {
                 StaticBodyGenerator staticBodyGenerator = (StaticBodyGenerator) bodySource;
                 jettyRequest.content(new BytesContentProvider(staticBodyGenerator.getBody()));
@@ -761,11 +813,22 @@ public class JettyHttpClient
         Duration responseProcessingTime = Duration.nanosSince(responseStart);
         Duration requestProcessingTime = new Duration(responseStart - requestStart, NANOSECONDS);
 
-        requestStats.record(request.getMethod(),
-                response.getStatusCode(),
-                bytesWritten,
-                response.getBytesRead(),
-                requestProcessingTime,
-                responseProcessingTime);
+        if (response.isDecompressed()) {
+            requestStats.record(request.getMethod(),
+                    response.getStatusCode(),
+                    bytesWritten,
+                    response.getBytesRead(),
+                    response.getCompressedBytesRead(),
+                    requestProcessingTime,
+                    responseProcessingTime);
+        }
+        else {
+            requestStats.record(request.getMethod(),
+                    response.getStatusCode(),
+                    bytesWritten,
+                    response.getBytesRead(),
+                    requestProcessingTime,
+                    responseProcessingTime);
+        }
     }
 }
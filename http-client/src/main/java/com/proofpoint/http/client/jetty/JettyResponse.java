@@ -6,23 +6,62 @@ import com.google.common.io.CountingInputStream;
 import com.proofpoint.http.client.HeaderName;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
 
+import javax.annotation.Nullable;
 import java.io.InputStream;
+import java.util.function.LongSupplier;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkState;
 
 class JettyResponse
         implements com.proofpoint.http.client.Response
 {
     private final Response response;
+    @Nullable
     private final CountingInputStream inputStream;
+    private final LongSupplier bytesRead;
     private final ListMultimap<HeaderName, String> headers;
+    @Nullable
+    private final LongSupplier compressedBytesRead;
 
     JettyResponse(Response response, InputStream inputStream)
+    {
+        this(response, inputStream, null);
+    }
+
+    /**
+     * @param compressedBytesRead if not null, {@code inputStream} is the
+     * decompressed body and this supplies the number of bytes of the
+     * compressed body that have been read. The headers describing the
+     * compressed body are then omitted.
+     */
+    JettyResponse(Response response, InputStream inputStream, @Nullable LongSupplier compressedBytesRead)
+    {
+        this(response, new CountingInputStream(inputStream), null, compressedBytesRead);
+    }
+
+    private JettyResponse(Response response, @Nullable CountingInputStream inputStream, @Nullable LongSupplier bytesRead, @Nullable LongSupplier compressedBytesRead)
     {
         this.response = response;
-        this.inputStream = new CountingInputStream(inputStream);
-        this.headers = toHeadersMap(response.getHeaders());
+        this.inputStream = inputStream;
+        this.bytesRead = inputStream == null ? bytesRead : inputStream::getCount;
+        this.headers = toHeadersMap(response.getHeaders(), compressedBytesRead != null);
+        this.compressedBytesRead = compressedBytesRead;
+    }
+
+    /**
+     * Creates a response whose body is delivered to a
+     * {@link com.proofpoint.http.client.StreamingResponseHandler} rather than
+     * read from {@link #getInputStream()}.
+     *
+     * @param bytesRead supplies the number of bytes of the body that have
+     * been delivered
+     */
+    static JettyResponse streamedResponse(Response response, LongSupplier bytesRead, @Nullable LongSupplier compressedBytesRead)
+    {
+        return new JettyResponse(response, null, bytesRead, compressedBytesRead);
     }
 
     @Override
@@ -46,12 +85,26 @@ class JettyResponse
     @Override
     public long getBytesRead()
     {
-        return inputStream.getCount();
+        return bytesRead.getAsLong();
+    }
+
+    boolean isDecompressed()
+    {
+        return compressedBytesRead != null;
+    }
+
+    long getCompressedBytesRead()
+    {
+        if (compressedBytesRead == null) {
+            return getBytesRead();
+        }
+        return compressedBytesRead.getAsLong();
     }
 
     @Override
     public InputStream getInputStream()
     {
+        checkState(inputStream != null, "response body is delivered to the StreamingResponseHandler");
         return inputStream;
     }
 
@@ -65,10 +118,13 @@ class JettyResponse
                 .toString();
     }
 
-    private static ListMultimap<HeaderName, String> toHeadersMap(HttpFields headers)
+    private static ListMultimap<HeaderName, String> toHeadersMap(HttpFields headers, boolean decompressed)
     {
         ImmutableListMultimap.Builder<HeaderName, String> builder = ImmutableListMultimap.builder();
         for (String name : headers.getFieldNamesCollection()) {
+            if (decompressed && (HttpHeader.CONTENT_ENCODING.is(name) || HttpHeader.CONTENT_LENGTH.is(name))) {
+                continue;
+            }
             for (String value : headers.getValuesList(name)) {
                 builder.put(HeaderName.of(name), value);
             }
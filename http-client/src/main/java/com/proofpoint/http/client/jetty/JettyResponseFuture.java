@@ -5,15 +5,20 @@ import com.proofpoint.http.client.HttpClient.HttpResponseFuture;
 import com.proofpoint.http.client.Request;
 import com.proofpoint.http.client.RequestStats;
 import com.proofpoint.http.client.ResponseHandler;
+import com.proofpoint.http.client.StreamingResponseHandler;
+import com.proofpoint.http.client.StreamingResponseHandler.ContentConsumer;
 import com.proofpoint.tracetoken.TraceToken;
 import com.proofpoint.tracetoken.TraceTokenScope;
 import org.eclipse.jetty.client.api.Response;
 
+import javax.annotation.Nullable;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
@@ -43,6 +48,11 @@ class JettyResponseFuture<T, E extends Exception>
     private final RequestStats stats;
     private final TraceToken traceToken;
 
+    // used by the streaming methods, which are called in sequence by a single listener
+    private long responseStart;
+    private JettyResponse streamedResponse;
+    private ContentConsumer<T, E> contentConsumer;
+
     JettyResponseFuture(JettyHttpClient jettyHttpClient, Request request, org.eclipse.jetty.client.api.Request jettyRequest, ResponseHandler<T, E> responseHandler, AtomicLong bytesWritten, RequestStats stats)
     {
         this.jettyHttpClient = requireNonNull(jettyHttpClient, "jettyHttpClientf is null");
@@ -77,6 +87,11 @@ class JettyResponseFuture<T, E extends Exception>
     }
 
     void completed(Response response, InputStream content)
+    {
+        completed(response, content, null);
+    }
+
+    void completed(Response response, InputStream content, @Nullable LongSupplier compressedBytesRead)
     {
         if (state.get() == JettyAsyncHttpState.CANCELED) {
             return;
@@ -85,7 +100,7 @@ class JettyResponseFuture<T, E extends Exception>
         try (TraceTokenScope ignored = registerTraceToken(traceToken)) {
             T value;
             try {
-                value = processResponse(response, content);
+                value = processResponse(response, content, compressedBytesRead);
             }
             catch (Throwable e) {
                 // this will be an instance of E from the response handler or an Error
@@ -97,7 +112,7 @@ class JettyResponseFuture<T, E extends Exception>
         }
     }
 
-    private T processResponse(Response response, InputStream content)
+    private T processResponse(Response response, InputStream content, @Nullable LongSupplier compressedBytesRead)
             throws E
     {
         // this time will not include the data fetching portion of the response,
@@ -108,7 +123,7 @@ class JettyResponseFuture<T, E extends Exception>
         JettyResponse jettyResponse = null;
         T value;
         try {
-            jettyResponse = new JettyResponse(response, content);
+            jettyResponse = new JettyResponse(response, content, compressedBytesRead);
             value = responseHandler.handle(request, jettyResponse);
         }
         finally {
@@ -117,6 +132,86 @@ class JettyResponseFuture<T, E extends Exception>
         return value;
     }
 
+    /**
+     * Starts delivering the response body to the {@link StreamingResponseHandler}.
+     *
+     * @return false if the request was canceled or the handler failed, in
+     * which case no content should be delivered
+     */
+    boolean streamingStarted(Response response, LongSupplier bytesRead, @Nullable LongSupplier compressedBytesRead)
+    {
+        if (state.get() == JettyAsyncHttpState.CANCELED) {
+            return false;
+        }
+
+        try (TraceTokenScope ignored = registerTraceToken(traceToken)) {
+            responseStart = System.nanoTime();
+            state.set(JettyAsyncHttpState.PROCESSING_RESPONSE);
+            streamedResponse = JettyResponse.streamedResponse(response, bytesRead, compressedBytesRead);
+            try {
+                contentConsumer = ((StreamingResponseHandler<T, E>) responseHandler).start(request, streamedResponse);
+                return true;
+            }
+            catch (Throwable e) {
+                streamingFailed(e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return false if the request was canceled or the handler failed, in
+     * which case no more content should be delivered
+     */
+    boolean streamingContent(ByteBuffer content)
+    {
+        if (state.get() == JettyAsyncHttpState.CANCELED) {
+            return false;
+        }
+
+        try (TraceTokenScope ignored = registerTraceToken(traceToken)) {
+            contentConsumer.content(content);
+            return true;
+        }
+        catch (Throwable e) {
+            streamingFailed(e);
+            return false;
+        }
+    }
+
+    void streamingCompleted()
+    {
+        if (state.get() == JettyAsyncHttpState.CANCELED) {
+            return;
+        }
+
+        try (TraceTokenScope ignored = registerTraceToken(traceToken)) {
+            T value;
+            try {
+                value = contentConsumer.complete();
+            }
+            catch (Throwable e) {
+                streamingFailed(e);
+                return;
+            }
+            recordStreamedResponse();
+            state.set(JettyAsyncHttpState.DONE);
+            set(value);
+        }
+    }
+
+    private void streamingFailed(Throwable throwable)
+    {
+        recordStreamedResponse();
+        // this will be an instance of E from the response handler or an Error
+        storeException(throwable);
+    }
+
+    private void recordStreamedResponse()
+    {
+        JettyHttpClient.recordRequestComplete(stats, request, requestStart, bytesWritten.get(), streamedResponse, responseStart);
+    }
+
     void failed(Throwable throwable)
     {
         if (state.get() == JettyAsyncHttpState.CANCELED) {
@@ -27,7 +27,10 @@ abstract class Stats
     @Nested
     abstract IoPoolStats getIoPool();
 
-    static Stats stats(QueuedThreadPool executor) {
-        return new AutoValue_Stats(new IoPoolStats(executor));
+    @Nested
+    abstract JettyAsyncSocketAddressResolver getDnsResolver();
+
+    static Stats stats(QueuedThreadPool executor, JettyAsyncSocketAddressResolver dnsResolver) {
+        return new AutoValue_Stats(new IoPoolStats(executor), dnsResolver);
     }
 }
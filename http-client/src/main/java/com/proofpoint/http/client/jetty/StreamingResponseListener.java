@@ -0,0 +1,178 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.jetty;
+
+import com.proofpoint.http.client.ResponseTooLargeException;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Response.Listener;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpHeader;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.http.client.jetty.JettyHttpClient.isGzipEncoded;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Delivers each chunk of the response body to a
+ * {@link com.proofpoint.http.client.StreamingResponseHandler} as it arrives.
+ * Jetty does not read further content and releases the chunk's buffer once
+ * the handler returns, so a slow handler applies backpressure to the
+ * connection rather than causing content to be buffered.
+ */
+@ThreadSafe
+class StreamingResponseListener
+        extends Listener.Adapter
+{
+    private final JettyResponseFuture<?, ?> future;
+    private final int maxLength;
+    private final boolean decodeGzip;
+
+    @GuardedBy("this")
+    private boolean streaming;
+    // whether the future was completed by the response handler
+    @GuardedBy("this")
+    private boolean handlerDone;
+    @GuardedBy("this")
+    private long size;
+    @GuardedBy("this")
+    private GzipChunkDecoder decoder;
+    @GuardedBy("this")
+    private long compressedSize;
+    @GuardedBy("this")
+    private boolean tooLarge;
+
+    /**
+     * @param decodeGzip whether to decompress a gzip-encoded response as it
+     * is received, in which case {@code maxLength} limits the size of the
+     * decompressed body
+     */
+    StreamingResponseListener(JettyResponseFuture<?, ?> future, int maxLength, boolean decodeGzip)
+    {
+        this.future = requireNonNull(future, "future is null");
+        checkArgument(maxLength > 0, "maxLength must be greater than zero");
+        this.maxLength = maxLength;
+        this.decodeGzip = decodeGzip;
+    }
+
+    @Override
+    public synchronized void onHeaders(Response response)
+    {
+        long length = response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString());
+        if (length > maxLength) {
+            response.abort(new ResponseTooLargeException());
+            return;
+        }
+
+        if (decodeGzip && isGzipEncoded(response)) {
+            decoder = new GzipChunkDecoder(this::deliver);
+            streaming = future.streamingStarted(response, this::getSize, this::getCompressedSize);
+        }
+        else {
+            streaming = future.streamingStarted(response, this::getSize, null);
+        }
+        if (!streaming) {
+            handlerDone = true;
+            response.abort(new CancellationException());
+        }
+    }
+
+    @Override
+    public synchronized void onContent(Response response, ByteBuffer content)
+    {
+        if (!streaming) {
+            return;
+        }
+
+        if (decoder == null) {
+            if (!deliver(content)) {
+                abort(response);
+            }
+            return;
+        }
+
+        compressedSize += content.remaining();
+        try {
+            decoder.decodeContent(content);
+        }
+        catch (RuntimeException e) {
+            response.abort(e);
+            return;
+        }
+        if (!streaming || tooLarge) {
+            abort(response);
+        }
+    }
+
+    @Override
+    public synchronized void onComplete(Result result)
+    {
+        if (decoder != null) {
+            decoder.destroy();
+        }
+
+        Throwable throwable = result.getFailure();
+        if (throwable != null) {
+            if (!handlerDone) {
+                future.failed(throwable);
+            }
+        }
+        else if (streaming) {
+            future.streamingCompleted();
+        }
+    }
+
+    /**
+     * @return false if no more content should be delivered
+     */
+    private synchronized boolean deliver(ByteBuffer content)
+    {
+        size += content.remaining();
+        if (size > maxLength) {
+            tooLarge = true;
+            streaming = false;
+            return false;
+        }
+        streaming = future.streamingContent(content);
+        handlerDone = !streaming;
+        return streaming;
+    }
+
+    private void abort(Response response)
+    {
+        if (tooLarge) {
+            response.abort(new ResponseTooLargeException());
+        }
+        else {
+            // the future has already been completed by the handler
+            response.abort(new CancellationException());
+        }
+    }
+
+    private synchronized long getSize()
+    {
+        return size;
+    }
+
+    private synchronized long getCompressedSize()
+    {
+        return compressedSize;
+    }
+}
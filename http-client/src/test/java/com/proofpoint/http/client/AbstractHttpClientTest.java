@@ -1,11 +1,13 @@
 package com.proofpoint.http.client;
 
 import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
 import com.proofpoint.http.client.DynamicBodySource.Writer;
 import com.proofpoint.http.client.HttpClient.HttpResponseFuture;
 import com.proofpoint.http.client.StatusResponseHandler.StatusResponse;
 import com.proofpoint.http.client.StringResponseHandler.StringResponse;
 import com.proofpoint.http.client.jetty.JettyHttpClient;
+import com.proofpoint.json.JsonCodec;
 import com.proofpoint.log.Logging;
 import com.proofpoint.testing.Assertions;
 import com.proofpoint.testing.Closeables;
@@ -36,6 +38,8 @@ import org.testng.annotations.BeforeSuite;
 import org.testng.annotations.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -56,6 +60,7 @@ import java.net.UnknownHostException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.UnresolvedAddressException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -65,16 +70,20 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static com.google.common.base.Throwables.getStackTraceAsString;
 import static com.google.common.base.Throwables.propagateIfPossible;
 import static com.google.common.base.Throwables.throwIfUnchecked;
 import static com.google.common.net.HttpHeaders.ACCEPT_ENCODING;
 import static com.google.common.net.HttpHeaders.AUTHORIZATION;
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
 import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
 import static com.google.common.net.HttpHeaders.LOCATION;
 import static com.google.common.net.HttpHeaders.USER_AGENT;
 import static com.proofpoint.concurrent.Threads.threadsNamed;
+import static com.proofpoint.http.client.GzipBodySource.gzipJsonBodySource;
 import static com.proofpoint.http.client.Request.Builder.prepareDelete;
 import static com.proofpoint.http.client.Request.Builder.prepareGet;
 import static com.proofpoint.http.client.Request.Builder.preparePost;
@@ -84,6 +93,7 @@ import static com.proofpoint.http.client.StringResponseHandler.createStringRespo
 import static com.proofpoint.testing.Assertions.assertGreaterThan;
 import static com.proofpoint.testing.Assertions.assertGreaterThanOrEqual;
 import static com.proofpoint.testing.Assertions.assertLessThan;
+import static com.proofpoint.json.JsonCodec.listJsonCodec;
 import static com.proofpoint.testing.Closeables.closeQuietly;
 import static com.proofpoint.tracetoken.TraceTokenManager.createAndRegisterNewRequestToken;
 import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
@@ -696,6 +706,27 @@ public abstract class AbstractHttpClientTest
         assertEquals(stats.getWrittenBytes().getAllTime().getTotal(), 3.0);
     }
 
+    @Test
+    public void testPostMethodWithGzipBodySource()
+            throws Exception
+    {
+        JsonCodec<List<String>> codec = listJsonCodec(String.class);
+        List<String> body = Collections.nCopies(1000, "hello");
+        Request request = preparePost()
+                .setUri(baseURI)
+                .setBodySource(gzipJsonBodySource(codec, body))
+                .build();
+
+        int statusCode = executeRequest(request, createStatusResponseHandler()).getStatusCode();
+        assertEquals(statusCode, 200);
+        assertEquals(servlet.getRequestHeaders(CONTENT_ENCODING), List.of("gzip"));
+        byte[] compressed = servlet.getRequestBytes();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertEquals(ByteStreams.toByteArray(in), codec.toJsonBytes(body));
+        }
+        assertEquals(stats.getWrittenBytes().getAllTime().getTotal(), (double) compressed.length);
+    }
+
     @Test
     public void testPutMethodWithDynamicBodySourceEdgeCases()
             throws Exception
@@ -1181,6 +1212,74 @@ public abstract class AbstractHttpClientTest
         assertEquals(response.getBody(), json);
     }
 
+    @Test
+    public void testCompressionEnabled()
+            throws Exception
+    {
+        String json = "{\"foo\":\"bar\",\"baz\":\"quux\",\"hello\":\"world\"}";
+        byte[] compressed = gzip(json);
+        servlet.setResponseBody(compressed);
+        servlet.addResponseHeader(CONTENT_ENCODING, "gzip");
+        servlet.addResponseHeader(CONTENT_TYPE, "application/json");
+
+        Request request = prepareGet()
+                .setUri(baseURI)
+                .build();
+
+        StringResponse response = executeRequest(createClientConfig().setCompressionEnabled(true), request, createStringResponseHandler());
+        assertEquals(servlet.getRequestHeaders(ACCEPT_ENCODING), List.of("gzip"));
+        assertEquals(response.getHeader(CONTENT_TYPE), "application/json");
+        assertNull(response.getHeader(CONTENT_ENCODING));
+        assertEquals(response.getBody(), json);
+        assertEquals(stats.getReadBytes().getAllTime().getTotal(), (double) json.length());
+        assertEquals(stats.getCompressedReadBytes().getAllTime().getTotal(), (double) compressed.length);
+    }
+
+    @Test
+    public void testCompressionEnabledEmptyBody()
+            throws Exception
+    {
+        servlet.addResponseHeader(CONTENT_ENCODING, "gzip");
+
+        Request request = prepareGet()
+                .setUri(baseURI)
+                .build();
+
+        StringResponse response = executeRequest(createClientConfig().setCompressionEnabled(true), request, createStringResponseHandler());
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getBody(), "");
+    }
+
+    @Test
+    public void testCompressionEnabledWithExplicitAcceptEncoding()
+            throws Exception
+    {
+        byte[] compressed = gzip("hello");
+        servlet.setResponseBody(compressed);
+        servlet.addResponseHeader(CONTENT_ENCODING, "gzip");
+
+        Request request = prepareGet()
+                .setUri(baseURI)
+                .addHeader(ACCEPT_ENCODING, "identity")
+                .build();
+
+        StatusResponse response = executeRequest(createClientConfig().setCompressionEnabled(true), request, createStatusResponseHandler());
+        assertEquals(servlet.getRequestHeaders(ACCEPT_ENCODING), List.of("identity"));
+        assertEquals(response.getHeader(CONTENT_ENCODING), "gzip");
+        assertEquals(stats.getReadBytes().getAllTime().getTotal(), 0.0);
+        assertEquals(stats.getCompressedReadBytes().getAllTime().getCount(), 0.0);
+    }
+
+    protected static byte[] gzip(String value)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(value.getBytes(UTF_8));
+        }
+        return out.toByteArray();
+    }
+
     private ExecutorService executor;
 
     @BeforeClass
@@ -43,7 +43,7 @@ public final class EchoServlet
     private int responseStatusCode = 200;
     private String responseStatusMessage;
     private final ListMultimap<String, String> responseHeaders = ArrayListMultimap.create();
-    private String responseBody;
+    private byte[] responseBody;
     private final CountDownLatch countDownLatch = new CountDownLatch(1);
 
     @Override
@@ -95,7 +95,7 @@ public final class EchoServlet
         }
 
         if (responseBody != null) {
-            response.getOutputStream().write(responseBody.getBytes(UTF_8));
+            response.getOutputStream().write(responseBody);
         }
     }
 
@@ -141,7 +141,12 @@ public final class EchoServlet
 
     public void setResponseBody(String responseBody)
     {
-        this.responseBody = responseBody;
+        this.responseBody = responseBody.getBytes(UTF_8);
+    }
+
+    public void setResponseBody(byte[] responseBody)
+    {
+        this.responseBody = responseBody.clone();
     }
 
     public void countDown()
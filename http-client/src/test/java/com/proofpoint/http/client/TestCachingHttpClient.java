@@ -0,0 +1,344 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client;
+
+import com.proofpoint.http.client.HttpClient.HttpResponseFuture;
+import com.proofpoint.http.client.StringResponseHandler.StringResponse;
+import com.proofpoint.http.client.testing.TestingHttpClient;
+import com.proofpoint.testing.TestingTicker;
+import com.proofpoint.units.DataSize;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static com.proofpoint.concurrent.Threads.daemonThreadsNamed;
+import static com.proofpoint.http.client.Request.Builder.prepareGet;
+import static com.proofpoint.http.client.Request.Builder.preparePost;
+import static com.proofpoint.http.client.StringResponseHandler.createStringResponseHandler;
+import static com.proofpoint.http.client.testing.TestingResponse.mockResponse;
+import static com.proofpoint.units.DataSize.Unit.KILOBYTE;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class TestCachingHttpClient
+{
+    private static final URI CONFIG_URI = URI.create("http://example.com/v1/config");
+
+    private TestingTicker ticker;
+    private List<Request> requests;
+    private Function<Request, Response> responder;
+    private TestingHttpClient delegate;
+    private CachingHttpClient client;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        requests = new ArrayList<>();
+        delegate = new TestingHttpClient(request -> {
+            synchronized (requests) {
+                requests.add(request);
+            }
+            return responder.apply(request);
+        });
+        client = new CachingHttpClient(delegate, new DataSize(64, KILOBYTE), ticker);
+    }
+
+    @Test
+    public void testServesFreshResponseFromCache()
+    {
+        responder = request -> mockResponse()
+                .header("Cache-Control", "max-age=60")
+                .body("config")
+                .build();
+
+        assertEquals(get().getBody(), "config");
+        ticker.elapseTime(59, SECONDS);
+        assertEquals(get().getBody(), "config");
+
+        assertEquals(requests.size(), 1);
+        assertEquals(client.getCacheHits().getTotalCount(), 1);
+        assertEquals(client.getCacheMisses().getTotalCount(), 1);
+        assertEquals(client.getCacheBytesSaved().getTotalCount(), 6);
+    }
+
+    @Test
+    public void testNoStore()
+    {
+        responder = request -> mockResponse()
+                .header("Cache-Control", "no-store, max-age=60")
+                .body("config")
+                .build();
+
+        get();
+        get();
+
+        assertEquals(requests.size(), 2);
+        assertEquals(client.getCacheEntries(), 0);
+    }
+
+    @Test
+    public void testNonGetBypassesCache()
+    {
+        responder = request -> mockResponse()
+                .header("Cache-Control", "max-age=60")
+                .body("config")
+                .build();
+
+        client.execute(preparePost().setUri(CONFIG_URI).build(), createStringResponseHandler());
+        client.execute(preparePost().setUri(CONFIG_URI).build(), createStringResponseHandler());
+
+        assertEquals(requests.size(), 2);
+        assertEquals(client.getCacheEntries(), 0);
+    }
+
+    @Test
+    public void testRevalidatesWithEtag()
+    {
+        responder = request -> mockResponse()
+                .header("Cache-Control", "max-age=10")
+                .header("ETag", "\"v1\"")
+                .body("config")
+                .build();
+        assertEquals(get().getBody(), "config");
+
+        ticker.elapseTime(11, SECONDS);
+        responder = request -> mockResponse()
+                .status(HttpStatus.NOT_MODIFIED)
+                .header("Cache-Control", "max-age=10")
+                .build();
+        StringResponse response = get();
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getBody(), "config");
+        assertEquals(requests.size(), 2);
+        assertEquals(requests.get(1).getHeader("If-None-Match"), "\"v1\"");
+        assertEquals(client.getCacheNotModified().getTotalCount(), 1);
+
+        // The 304 refreshed the entry
+        ticker.elapseTime(5, SECONDS);
+        get();
+        assertEquals(requests.size(), 2);
+    }
+
+    @Test
+    public void testNoCacheAlwaysRevalidates()
+    {
+        responder = request -> mockResponse()
+                .header("Cache-Control", "no-cache")
+                .header("ETag", "\"v1\"")
+                .body("config")
+                .build();
+        get();
+        get();
+
+        assertEquals(requests.size(), 2);
+        assertNull(requests.get(0).getHeader("If-None-Match"));
+        assertEquals(requests.get(1).getHeader("If-None-Match"), "\"v1\"");
+    }
+
+    @Test
+    public void testStaleWhileRevalidate()
+    {
+        responder = request -> mockResponse()
+                .header("Cache-Control", "max-age=10, stale-while-revalidate=30")
+                .body("v1")
+                .build();
+        get();
+
+        ticker.elapseTime(20, SECONDS);
+        responder = request -> mockResponse()
+                .header("Cache-Control", "max-age=10, stale-while-revalidate=30")
+                .body("v2")
+                .build();
+
+        // served stale while the testing client revalidates on the direct executor
+        assertEquals(get().getBody(), "v1");
+        assertEquals(requests.size(), 2);
+        assertEquals(get().getBody(), "v2");
+        assertEquals(requests.size(), 2);
+    }
+
+    @Test
+    public void testMustRevalidateDisablesStaleWhileRevalidate()
+    {
+        responder = request -> mockResponse()
+                .header("Cache-Control", "max-age=10, stale-while-revalidate=30, must-revalidate")
+                .body("v1")
+                .build();
+        get();
+
+        ticker.elapseTime(20, SECONDS);
+        responder = request -> mockResponse()
+                .header("Cache-Control", "max-age=10")
+                .body("v2")
+                .build();
+
+        assertEquals(get().getBody(), "v2");
+        assertEquals(requests.size(), 2);
+    }
+
+    @Test
+    public void testVary()
+    {
+        responder = request -> mockResponse()
+                .header("Cache-Control", "max-age=60")
+                .header("Vary", "Accept")
+                .body(request.getHeader("Accept"))
+                .build();
+
+        assertEquals(get("application/json").getBody(), "application/json");
+        assertEquals(get("application/json").getBody(), "application/json");
+        assertEquals(get("text/plain").getBody(), "text/plain");
+        assertEquals(requests.size(), 2);
+    }
+
+    @Test
+    public void testLargeResponseNotStored()
+    {
+        String body = "x".repeat(9 * 1024);
+        responder = request -> mockResponse()
+                .header("Cache-Control", "max-age=60")
+                .body(body)
+                .build();
+
+        assertEquals(get().getBody(), body);
+        assertEquals(get().getBody(), body);
+        assertEquals(requests.size(), 2);
+        assertEquals(client.getCacheEntries(), 0);
+    }
+
+    @Test
+    public void testConcurrentMissesShareRequest()
+            throws Exception
+    {
+        CountDownLatch responding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        responder = request -> {
+            responding.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return mockResponse()
+                    .header("Cache-Control", "max-age=60")
+                    .body("config")
+                    .build();
+        };
+
+        ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-caching-%s"));
+        try {
+            Future<StringResponse> first = executor.submit(this::get);
+            responding.await();
+            Future<StringResponse> second = executor.submit(this::get);
+            HttpResponseFuture<StringResponse> third = client.executeAsync(prepareGet().setUri(CONFIG_URI).build(), createStringResponseHandler());
+            release.countDown();
+
+            assertEquals(first.get().getBody(), "config");
+            assertEquals(second.get().getBody(), "config");
+            assertEquals(third.get().getBody(), "config");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertEquals(requests.size(), 1);
+    }
+
+    @Test
+    public void testConcurrentNoStoreRequestsNotSerialized()
+            throws Exception
+    {
+        responder = request -> mockResponse()
+                .header("Cache-Control", "no-store")
+                .body("first")
+                .build();
+        assertEquals(get().getBody(), "first");
+
+        int concurrentRequests = 3;
+        CountDownLatch arrived = new CountDownLatch(concurrentRequests);
+        responder = request -> {
+            arrived.countDown();
+            boolean overlapped;
+            try {
+                overlapped = arrived.await(10, SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                overlapped = false;
+            }
+            return mockResponse()
+                    .header("Cache-Control", "no-store")
+                    .body(overlapped ? "overlapped" : "serialized")
+                    .build();
+        };
+
+        ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-caching-%s"));
+        try {
+            List<Future<StringResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < concurrentRequests; i++) {
+                futures.add(executor.submit(this::get));
+            }
+            for (Future<StringResponse> future : futures) {
+                assertEquals(future.get().getBody(), "overlapped");
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertEquals(requests.size(), concurrentRequests + 1);
+    }
+
+    @Test
+    public void testStorableResponseEndsPass()
+    {
+        responder = request -> mockResponse()
+                .header("Cache-Control", "no-store")
+                .body("first")
+                .build();
+        assertEquals(get().getBody(), "first");
+
+        responder = request -> mockResponse()
+                .header("Cache-Control", "max-age=60")
+                .body("second")
+                .build();
+        assertEquals(get().getBody(), "second");
+        assertEquals(get().getBody(), "second");
+
+        assertEquals(requests.size(), 2);
+        assertEquals(client.getCacheEntries(), 1);
+    }
+
+    private StringResponse get()
+    {
+        return client.execute(prepareGet().setUri(CONFIG_URI).build(), createStringResponseHandler());
+    }
+
+    private StringResponse get(String accept)
+    {
+        return client.execute(prepareGet().setUri(CONFIG_URI).setHeader("Accept", accept).build(), createStringResponseHandler());
+    }
+}
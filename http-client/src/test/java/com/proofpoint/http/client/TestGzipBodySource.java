@@ -0,0 +1,195 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.io.ByteStreams;
+import com.google.common.reflect.TypeToken;
+import com.proofpoint.http.client.AbstractCodecBodyGeneratorTest.JsonClass;
+import com.proofpoint.http.client.DynamicBodySource.Writer;
+import com.proofpoint.json.JsonCodec;
+import com.proofpoint.units.DataSize;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static com.google.common.base.Throwables.getRootCause;
+import static com.proofpoint.http.client.GzipBodySource.gzipJsonBodySource;
+import static com.proofpoint.http.client.GzipBodySource.gzipSmileBodySource;
+import static com.proofpoint.json.JsonCodec.jsonCodec;
+import static com.proofpoint.json.JsonCodec.listJsonCodec;
+import static com.proofpoint.testing.Assertions.assertInstanceOf;
+import static com.proofpoint.units.DataSize.Unit.BYTE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestGzipBodySource
+{
+    private static final JsonCodec<List<JsonClass>> CODEC = listJsonCodec(JsonClass.class);
+    private static final List<JsonClass> LARGE = Collections.nCopies(1000, new JsonClass("first", "second"));
+
+    @Test
+    public void testSmallBodyNotCompressed()
+    {
+        List<JsonClass> small = List.of(new JsonClass("first", "second"));
+
+        BodySource bodySource = gzipJsonBodySource(CODEC, small);
+        assertInstanceOf(bodySource, StaticBodyGenerator.class);
+        assertEquals(((StaticBodyGenerator) bodySource).getBody(), CODEC.toJsonBytes(small));
+        assertNull(bodySource.getContentEncoding());
+    }
+
+    @Test
+    public void testContentEncoding()
+    {
+        assertEquals(gzipJsonBodySource(CODEC, LARGE).getContentEncoding(), "gzip");
+    }
+
+    @Test
+    public void testSingleWriteSendsBody()
+            throws Exception
+    {
+        DynamicBodySource bodySource = (DynamicBodySource) gzipJsonBodySource(CODEC, LARGE);
+
+        ClosableByteArrayOutputStream out = new ClosableByteArrayOutputStream();
+        bodySource.start(out).write();
+        assertTrue(out.closed);
+        assertEquals(gunzip(out.toByteArray()), CODEC.toJsonBytes(LARGE));
+    }
+
+    @Test
+    public void testSerializationFailure()
+            throws Exception
+    {
+        List<FailingClass> instance = new ArrayList<>(Collections.nCopies(1000, new FailingClass(false)));
+        instance.add(new FailingClass(true));
+        DynamicBodySource bodySource = (DynamicBodySource) gzipJsonBodySource(listJsonCodec(FailingClass.class), instance);
+
+        ClosableByteArrayOutputStream out = new ClosableByteArrayOutputStream();
+        Writer writer = bodySource.start(out);
+        try {
+            while (true) {
+                writer.write();
+                assertFalse(out.closed, "failed body was ended");
+            }
+        }
+        catch (IOException e) {
+            assertEquals(getRootCause(e).getMessage(), "serialization failure");
+        }
+    }
+
+    @Test
+    public void testLargeJsonBodyCompressed()
+            throws Exception
+    {
+        BodySource bodySource = gzipJsonBodySource(CODEC, LARGE);
+        assertInstanceOf(bodySource, GzipBodySource.class);
+        assertEquals(bodySource.getLength(), -1);
+
+        byte[] compressed = writeBody((DynamicBodySource) bodySource);
+        byte[] expected = CODEC.toJsonBytes(LARGE);
+        assertTrue(compressed.length < expected.length);
+        assertEquals(gunzip(compressed), expected);
+
+        // the body can be sent again, as when a request is retried
+        assertEquals(gunzip(writeBody((DynamicBodySource) bodySource)), expected);
+    }
+
+    @Test
+    public void testMinCompressedSize()
+            throws Exception
+    {
+        JsonCodec<Map<String, String>> codec = jsonCodec(new TypeToken<Map<String, String>>() {});
+        Map<String, String> instance = Map.of("foo", "bar");
+
+        BodySource bodySource = gzipJsonBodySource(codec, instance, new DataSize(0, BYTE));
+        assertInstanceOf(bodySource, GzipBodySource.class);
+        assertEquals(gunzip(writeBody((DynamicBodySource) bodySource)), codec.toJsonBytes(instance));
+    }
+
+    @Test
+    public void testLargeSmileBodyCompressed()
+            throws Exception
+    {
+        BodySource bodySource = gzipSmileBodySource(CODEC, LARGE);
+        assertInstanceOf(bodySource, GzipBodySource.class);
+
+        byte[] body = gunzip(writeBody((DynamicBodySource) bodySource));
+        assertEquals(body, SmileBodyGenerator.smileBodyGenerator(CODEC, LARGE).getBody());
+        assertEquals(new ObjectMapper(new SmileFactory()).readValue(body, List.class).size(), LARGE.size());
+    }
+
+    private static byte[] writeBody(DynamicBodySource bodySource)
+            throws Exception
+    {
+        ClosableByteArrayOutputStream out = new ClosableByteArrayOutputStream();
+        Writer writer = bodySource.start(out);
+        while (!out.closed) {
+            writer.write();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] compressed)
+            throws Exception
+    {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    public static class FailingClass
+    {
+        private final boolean fail;
+
+        FailingClass(boolean fail)
+        {
+            this.fail = fail;
+        }
+
+        @JsonProperty
+        public String getValue()
+        {
+            if (fail) {
+                throw new IllegalStateException("serialization failure");
+            }
+            return "value";
+        }
+    }
+
+    private static class ClosableByteArrayOutputStream
+            extends ByteArrayOutputStream
+    {
+        private boolean closed;
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.PrivateBinder;
 import com.proofpoint.bootstrap.LifeCycleManager;
+import com.proofpoint.http.client.balancing.BalancingHttpClient;
 import com.proofpoint.http.client.jetty.JettyHttpClient;
 import com.proofpoint.reporting.ReportingModule;
 import org.testng.annotations.Test;
@@ -107,6 +108,23 @@ public class TestHttpClientBinder
         assertNotNull(injector.getInstance(Key.get(HttpClient.class, FooClient.class)));
     }
 
+    @Test
+    public void testWithCache()
+            throws Exception
+    {
+        Injector injector = bootstrapTest()
+                .withModules(
+                        binder -> httpClientBinder(binder).bindHttpClient("foo", FooClient.class)
+                                .withCache(),
+                        new ReportingModule()
+                )
+                .initialize();
+
+        HttpClient httpClient = injector.getInstance(Key.get(HttpClient.class, FooClient.class));
+        assertInstanceOf(httpClient, CachingHttpClient.class);
+        assertInstanceOf(((CachingHttpClient) httpClient).getDelegate(), JettyHttpClient.class);
+    }
+
     @Test
     public void testAliases()
             throws Exception
@@ -203,6 +221,23 @@ public class TestHttpClientBinder
         assertNotNull(injector.getInstance(Key.get(HttpClient.class, serviceType("foo"))));
     }
 
+    @Test
+    public void testBindBalancingHttpClientWithCache()
+            throws Exception
+    {
+        Injector injector = bootstrapTest()
+                .withModules(
+                        binder -> httpClientBinder(binder).bindBalancingHttpClient("foo", "http://nonexistent.nonexistent")
+                                .withCache(),
+                        new ReportingModule(),
+                        new TestingMBeanModule())
+                .initialize();
+
+        HttpClient httpClient = injector.getInstance(Key.get(HttpClient.class, serviceType("foo")));
+        assertInstanceOf(httpClient, CachingHttpClient.class);
+        assertInstanceOf(((CachingHttpClient) httpClient).getDelegate(), BalancingHttpClient.class);
+    }
+
     @Test
     public void testBindBalancingHttpClientSimple()
             throws Exception
@@ -19,6 +19,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.net.HostAndPort;
 import com.proofpoint.units.DataSize;
 import com.proofpoint.units.Duration;
+import jakarta.validation.constraints.AssertFalse;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import org.testng.annotations.Test;
@@ -55,6 +56,7 @@ public class TestHttpClientConfig
                 .setRequestBufferSize(new DataSize(4, KILOBYTE))
                 .setResponseBufferSize(new DataSize(16, KILOBYTE))
                 .setSocksProxy(null)
+                .setUnixSocketPath(null)
                 .setKeyStorePath(System.getProperty(JAVAX_NET_SSL_KEY_STORE))
                 .setKeyStorePassword(System.getProperty(JAVAX_NET_SSL_KEY_STORE_PASSWORD))
                 .setTrustStorePath(null)
@@ -66,7 +68,12 @@ public class TestHttpClientConfig
                 .setMaxThreads(200)
                 .setMinThreads(8)
                 .setTimeoutConcurrency(1)
-                .setTimeoutThreads(1));
+                .setTimeoutThreads(1)
+                .setCacheMaxSize(new DataSize(16, MEGABYTE))
+                .setCompressionEnabled(false)
+                .setCompactTraceTokenHeader(false)
+                .setDnsCacheTtl(new Duration(30, SECONDS))
+                .setDnsCacheNegativeTtl(new Duration(10, SECONDS)));
         ;
     }
 
@@ -84,6 +91,7 @@ public class TestHttpClientConfig
                 .put("http-client.request-buffer-size", "42kB")
                 .put("http-client.response-buffer-size", "43kB")
                 .put("http-client.socks-proxy", "localhost:1080")
+                .put("http-client.unix-socket-path", "/var/run/sidecar.sock")
                 .put("http-client.key-store-path", "key-store")
                 .put("http-client.key-store-password", "key-store-password")
                 .put("http-client.trust-store-path", "trust-store")
@@ -96,6 +104,11 @@ public class TestHttpClientConfig
                 .put("http-client.min-threads", "11")
                 .put("http-client.timeout-concurrency", "33")
                 .put("http-client.timeout-threads", "44")
+                .put("http-client.cache.max-size", "2MB")
+                .put("http-client.compression.enabled", "true")
+                .put("http-client.trace-token.compact-header", "true")
+                .put("http-client.dns-cache.ttl", "1m")
+                .put("http-client.dns-cache.negative-ttl", "2s")
                 .build();
 
         HttpClientConfig expected = new HttpClientConfig()
@@ -109,6 +122,7 @@ public class TestHttpClientConfig
                 .setRequestBufferSize(new DataSize(42, KILOBYTE))
                 .setResponseBufferSize(new DataSize(43, KILOBYTE))
                 .setSocksProxy(HostAndPort.fromParts("localhost", 1080))
+                .setUnixSocketPath("/var/run/sidecar.sock")
                 .setKeyStorePath("key-store")
                 .setKeyStorePassword("key-store-password")
                 .setTrustStorePath("trust-store")
@@ -121,7 +135,12 @@ public class TestHttpClientConfig
                 .setMaxThreads(33)
                 .setMinThreads(11)
                 .setTimeoutConcurrency(33)
-                .setTimeoutThreads(44);
+                .setTimeoutThreads(44)
+                .setCacheMaxSize(new DataSize(2, MEGABYTE))
+                .setCompressionEnabled(true)
+                .setCompactTraceTokenHeader(true)
+                .setDnsCacheTtl(new Duration(1, MINUTES))
+                .setDnsCacheNegativeTtl(new Duration(2, SECONDS));
 
         assertFullMapping(properties, expected);
     }
@@ -151,5 +170,6 @@ public class TestHttpClientConfig
         assertFailsValidation(new HttpClientConfig().setMaxConnectionsPerServer(0), "maxConnectionsPerServer", "must be greater than or equal to 1", Min.class);
         assertFailsValidation(new HttpClientConfig().setMaxRequestsQueuedPerDestination(0), "maxRequestsQueuedPerDestination", "must be greater than or equal to 1", Min.class);
         assertFailsValidation(new HttpClientConfig().setMaxContentLength(null), "maxContentLength", "must not be null", NotNull.class);
+        assertFailsValidation(new HttpClientConfig().setHttp2Enabled(true).setUnixSocketPath("/var/run/sidecar.sock"), "http2EnabledWithUnixSocket", "must be false", AssertFalse.class);
     }
 }
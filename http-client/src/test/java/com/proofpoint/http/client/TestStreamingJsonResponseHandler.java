@@ -0,0 +1,148 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client;
+
+import com.proofpoint.http.client.StreamingResponseHandler.ContentConsumer;
+import com.proofpoint.json.JsonCodec;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static com.google.common.net.MediaType.JSON_UTF_8;
+import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
+import static com.proofpoint.http.client.HttpStatus.INTERNAL_SERVER_ERROR;
+import static com.proofpoint.http.client.StreamingJsonResponseHandler.createStreamingJsonResponseHandler;
+import static com.proofpoint.http.client.TestFullJsonResponseHandler.User;
+import static com.proofpoint.http.client.testing.TestingResponse.mockResponse;
+import static com.proofpoint.json.JsonCodec.listJsonCodec;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class TestStreamingJsonResponseHandler
+{
+    private JsonCodec<User> codec;
+    private StreamingJsonResponseHandler<User> handler;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        codec = JsonCodec.jsonCodec(User.class);
+        handler = createStreamingJsonResponseHandler(codec);
+    }
+
+    @Test
+    public void testValidJson()
+    {
+        User user = new User("Joe", 25);
+        User response = handler.handle(null, mockResponse().jsonBody(user).build());
+
+        assertEquals(response.getName(), user.getName());
+        assertEquals(response.getAge(), user.getAge());
+    }
+
+    @Test
+    public void testIncrementalContent()
+    {
+        byte[] json = "{\"name\": \"J\u00f6e\", \"age\": 25}".getBytes(UTF_8);
+        ContentConsumer<User, RuntimeException> consumer = handler.start(null, mockResponse().contentType(JSON_UTF_8).build());
+        for (byte b : json) {
+            consumer.content(ByteBuffer.wrap(new byte[] {b}));
+        }
+        User response = consumer.complete();
+
+        assertEquals(response.getName(), "J\u00f6e");
+        assertEquals(response.getAge(), 25);
+    }
+
+    @Test
+    public void testList()
+    {
+        List<User> response = createStreamingJsonResponseHandler(listJsonCodec(User.class)).handle(null, mockResponse()
+                .contentType(JSON_UTF_8)
+                .body("[{\"name\": \"Joe\", \"age\": 25}, null, {\"name\": \"Jane\", \"age\": 30, \"tags\": [[1], {}]}]")
+                .build());
+
+        assertEquals(response.size(), 3);
+        assertEquals(response.get(0).getName(), "Joe");
+        assertEquals(response.get(1), null);
+        assertEquals(response.get(2).getName(), "Jane");
+        assertEquals(response.get(2).getAge(), 30);
+    }
+
+    @Test
+    public void testListElementBoundWhenComplete()
+    {
+        ContentConsumer<List<User>, RuntimeException> consumer = createStreamingJsonResponseHandler(listJsonCodec(User.class))
+                .start(null, mockResponse().contentType(JSON_UTF_8).build());
+        consumer.content(ByteBuffer.wrap("[{\"name\": \"Joe\", \"age\": 25}, ".getBytes(UTF_8)));
+        try {
+            consumer.content(ByteBuffer.wrap("{\"age\": \"foo\"}, ".getBytes(UTF_8)));
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals(e.getMessage(), "Unable to create " + listJsonCodec(User.class).getType() + " from JSON response");
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Unable to create .*User.* from JSON response")
+    public void testTruncatedList()
+    {
+        createStreamingJsonResponseHandler(listJsonCodec(User.class)).handle(null, mockResponse()
+                .contentType(JSON_UTF_8)
+                .body("[{\"name\": \"Joe\", \"age\": 25}")
+                .build());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Unable to create .*User from JSON response")
+    public void testInvalidJson()
+    {
+        handler.handle(null, mockResponse().contentType(JSON_UTF_8).body("{\"age\": \"foo\"}").build());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Unable to create .*User from JSON response")
+    public void testTruncatedJson()
+    {
+        handler.handle(null, mockResponse().contentType(JSON_UTF_8).body("{\"name\": \"Joe\"").build());
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class, expectedExceptionsMessageRegExp = "Expected application/json response from server but got text/plain; charset=utf-8")
+    public void testNonJsonResponse()
+    {
+        handler.handle(null, mockResponse()
+                .contentType(PLAIN_TEXT_UTF_8)
+                .body("hello")
+                .build());
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class, expectedExceptionsMessageRegExp = "Content-Type is not set for response")
+    public void testMissingContentType()
+    {
+        handler.handle(null, mockResponse().body("hello").build());
+    }
+
+    @Test(expectedExceptions = UnexpectedResponseException.class)
+    public void testJsonErrorResponse()
+    {
+        handler.handle(null, mockResponse()
+                .status(INTERNAL_SERVER_ERROR)
+                .contentType(JSON_UTF_8)
+                .body("{\"error\": true}")
+                .build());
+    }
+}
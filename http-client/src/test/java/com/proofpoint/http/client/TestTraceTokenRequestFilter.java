@@ -81,6 +81,31 @@ public class TestTraceTokenRequestFilter
         assertEquals(filtered.getHeaders().get(TRACETOKEN_HEADER), List.of("{\"id\":\"testBasic\",\"key-b\":\"value-b\",\"key-a\":\"value-a\"}"));
     }
 
+    @Test
+    public void testCompactHeader()
+    {
+        registerRequestToken("testBasic");
+        addTraceTokenProperties("key-b", "value-b", "_local-1", "value-1", "key-a", "value-a");
+        TraceTokenRequestFilter filter = new TraceTokenRequestFilter(true);
+        Request original = prepareGet().setUri(URI.create("http://example.com")).build();
+
+        Request filtered = filter.filterRequest(original);
+
+        assertEquals(filtered.getHeaders().get(TRACETOKEN_HEADER), List.of("~testBasic;key-b=value-b;key-a=value-a"));
+    }
+
+    @Test
+    public void testCompactHeaderWithoutProperties()
+    {
+        registerRequestToken("testBasic");
+        TraceTokenRequestFilter filter = new TraceTokenRequestFilter(true);
+        Request original = prepareGet().setUri(URI.create("http://example.com")).build();
+
+        Request filtered = filter.filterRequest(original);
+
+        assertEquals(filtered.getHeaders().get(TRACETOKEN_HEADER), List.of("testBasic"));
+    }
+
     @Test
     public void testSameRequestReturnedWhenTraceTokenNotSet()
     {
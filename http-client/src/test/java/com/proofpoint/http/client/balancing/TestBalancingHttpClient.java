@@ -1,6 +1,8 @@
 package com.proofpoint.http.client.balancing;
 
+import com.google.common.util.concurrent.AbstractFuture;
 import com.proofpoint.http.client.HttpClient;
+import com.proofpoint.http.client.HttpClient.HttpResponseFuture;
 import com.proofpoint.http.client.LimitedRetryable;
 import com.proofpoint.http.client.Request;
 import com.proofpoint.http.client.RequestStats;
@@ -9,14 +11,26 @@ import com.proofpoint.http.client.ResponseHandler;
 import org.testng.annotations.Test;
 
 import java.io.OutputStream;
+import java.net.ConnectException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.concurrent.Threads.daemonThreadsNamed;
 import static com.proofpoint.http.client.testing.BodySourceTester.writeBodySourceTo;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -94,6 +108,99 @@ public class TestBalancingHttpClient
         verifyNoMoreInteractions(mockClient, serviceBalancer);
     }
 
+    @Test
+    public void testAsyncRetries()
+            throws Exception
+    {
+        HttpClient mockClient = mock(HttpClient.class);
+        when(mockClient.executeAsync(any(Request.class), any()))
+                .thenAnswer(invocation -> respond(invocation.getArgument(0), invocation.getArgument(1), new ConnectException()))
+                .thenAnswer(invocation -> respond(invocation.getArgument(0), invocation.getArgument(1), response));
+        ScheduledExecutorService realExecutor = newSingleThreadScheduledExecutor(daemonThreadsNamed("test-retry-executor"));
+        ScheduledExecutorService retryExecutor = mock(ScheduledExecutorService.class);
+        when(retryExecutor.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class)))
+                .thenAnswer(invocation -> realExecutor.schedule((Runnable) invocation.getArguments()[0], 0, SECONDS));
+        ResponseHandler<String, Exception> responseHandler = mock(ResponseHandler.class);
+        when(responseHandler.handle(any(Request.class), same(response))).thenReturn("test response");
+
+        try {
+            balancingHttpClient = new BalancingHttpClient(serviceBalancer, mockClient, balancingHttpClientConfig.setAsyncRetriesEnabled(true), retryExecutor, testingTicker);
+            assertEquals(balancingHttpClient.execute(request, responseHandler), "test response");
+        }
+        finally {
+            realExecutor.shutdownNow();
+        }
+
+        verify(mockClient, never()).execute(any(Request.class), any());
+        verify(retryExecutor).schedule(any(Runnable.class), anyLong(), same(MILLISECONDS));
+        verify(serviceAttempt1).markBad("ConnectException");
+        verify(serviceAttempt2).markGood();
+    }
+
+    @Test
+    public void testAsyncRetriesInterrupted()
+            throws Exception
+    {
+        HttpClient mockClient = mock(HttpClient.class);
+        when(mockClient.executeAsync(any(Request.class), any()))
+                .thenAnswer(invocation -> respond(invocation.getArgument(0), invocation.getArgument(1), new ConnectException()));
+        ScheduledFuture<?> scheduledRetry = mock(ScheduledFuture.class);
+        ScheduledExecutorService retryExecutor = mock(ScheduledExecutorService.class);
+        doReturn(scheduledRetry).when(retryExecutor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        ResponseHandler<String, Exception> responseHandler = mock(ResponseHandler.class);
+        when(responseHandler.handleException(any(Request.class), any(InterruptedException.class))).thenReturn("interrupted");
+
+        balancingHttpClient = new BalancingHttpClient(serviceBalancer, mockClient, balancingHttpClientConfig.setAsyncRetriesEnabled(true), retryExecutor, testingTicker);
+        Thread.currentThread().interrupt();
+        String returnValue = balancingHttpClient.execute(request, responseHandler);
+        assertTrue(Thread.interrupted(), "interrupt flag restored");
+        assertEquals(returnValue, "interrupted");
+
+        verify(scheduledRetry).cancel(true);
+        verify(serviceAttempt1).markBad("ConnectException");
+        verify(serviceAttempt1, never()).next();
+    }
+
+    private static <T, E extends Exception> HttpResponseFuture<T> respond(Request request, ResponseHandler<T, E> responseHandler, Object response)
+    {
+        TestingResponseFuture<T> future = new TestingResponseFuture<>();
+        try {
+            if (response instanceof Exception) {
+                future.set(responseHandler.handleException(request, (Exception) response));
+            }
+            else {
+                future.set(responseHandler.handle(request, (Response) response));
+            }
+        }
+        catch (Exception e) {
+            future.setException(e);
+        }
+        return future;
+    }
+
+    private static class TestingResponseFuture<T>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        @Override
+        protected boolean set(T value)
+        {
+            return super.set(value);
+        }
+
+        @Override
+        protected boolean setException(Throwable throwable)
+        {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public String getState()
+        {
+            return "testing";
+        }
+    }
+
     class TestingHttpClient
             implements HttpClient, TestingClient
     {
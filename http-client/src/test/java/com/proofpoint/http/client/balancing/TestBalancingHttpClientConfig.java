@@ -30,7 +30,10 @@ public class TestBalancingHttpClientConfig
                 .setMaxBackoff(new Duration(10, SECONDS))
                 .setRetryBudgetRatio(new BigDecimal(2).movePointLeft(1))
                 .setRetryBudgetRatioPeriod(new Duration(10, SECONDS))
-                .setRetryBudgetMinPerSecond(10));
+                .setRetryBudgetMinPerSecond(10)
+                .setHedgingEnabled(false)
+                .setHedgeDelay(null)
+                .setAsyncRetriesEnabled(false));
     }
 
     @Test
@@ -43,6 +46,9 @@ public class TestBalancingHttpClientConfig
                 .put("http-client.retry-budget.ratio", "0.3")
                 .put("http-client.retry-budget.ratio-period", "15s")
                 .put("http-client.retry-budget.min-per-second", "19")
+                .put("http-client.hedging.enabled", "true")
+                .put("http-client.hedging.delay", "30ms")
+                .put("http-client.async-retries.enabled", "true")
                 .build();
 
         BalancingHttpClientConfig expected = new BalancingHttpClientConfig()
@@ -51,7 +57,10 @@ public class TestBalancingHttpClientConfig
                 .setMaxBackoff(new Duration(50, MILLISECONDS))
                 .setRetryBudgetRatio(new BigDecimal(3).movePointLeft(1))
                 .setRetryBudgetRatioPeriod(new Duration(15, SECONDS))
-                .setRetryBudgetMinPerSecond(19);
+                .setRetryBudgetMinPerSecond(19)
+                .setHedgingEnabled(true)
+                .setHedgeDelay(new Duration(30, MILLISECONDS))
+                .setAsyncRetriesEnabled(true);
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
@@ -108,4 +117,12 @@ public class TestBalancingHttpClientConfig
         assertFailsValidation(new BalancingHttpClientConfig().setRetryBudgetMinPerSecond(0),
                 "retryBudgetMinPerSecond", "must be greater than or equal to 1", Min.class);
     }
+
+    @Test
+    public void testHedgeDelayBeanValidation()
+    {
+        assertValidates(new BalancingHttpClientConfig().setHedgeDelay(new Duration(1, MILLISECONDS)));
+        assertFailsValidation(new BalancingHttpClientConfig().setHedgeDelay(new Duration(0, MILLISECONDS)),
+                "hedgeDelay", "{com.proofpoint.units.MinDuration.message}", MinDuration.class);
+    }
 }
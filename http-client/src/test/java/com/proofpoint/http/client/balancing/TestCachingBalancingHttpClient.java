@@ -0,0 +1,132 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.balancing;
+
+import com.proofpoint.http.client.CachingHttpClient;
+import com.proofpoint.http.client.HttpClient;
+import com.proofpoint.http.client.StringResponseHandler.StringResponse;
+import com.proofpoint.http.client.balancing.HttpServiceBalancerStats.Status;
+import com.proofpoint.http.client.testing.TestingHttpClient;
+import com.proofpoint.stats.SparseDistributionStat;
+import com.proofpoint.stats.SparseTimeStat;
+import com.proofpoint.testing.TestingTicker;
+import com.proofpoint.units.DataSize;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.proofpoint.http.client.Request.Builder.prepareGet;
+import static com.proofpoint.http.client.StringResponseHandler.createStringResponseHandler;
+import static com.proofpoint.http.client.testing.TestingResponse.mockResponse;
+import static com.proofpoint.units.DataSize.Unit.KILOBYTE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+
+public class TestCachingBalancingHttpClient
+{
+    private static final URI SLOW_URI = URI.create("http://slow.example.com/");
+    private static final Set<URI> URIS = Set.of(URI.create("http://apple-a.example.com/"), URI.create("http://apple-b.example.com/"), SLOW_URI);
+
+    private TestingTicker ticker;
+    private HttpServiceBalancerStats httpServiceBalancerStats;
+    private SparseTimeStat successTimeStat;
+    private SparseTimeStat ejectionStat;
+    private List<URI> requestedUris;
+    private HttpClient client;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        httpServiceBalancerStats = mock(HttpServiceBalancerStats.class);
+        successTimeStat = mock(SparseTimeStat.class);
+        ejectionStat = mock(SparseTimeStat.class);
+        when(httpServiceBalancerStats.requestTime(any(URI.class), eq(Status.SUCCESS))).thenReturn(successTimeStat);
+        when(httpServiceBalancerStats.ejection(any(URI.class))).thenReturn(ejectionStat);
+        when(httpServiceBalancerStats.latencyScore(any(URI.class))).thenReturn(mock(SparseDistributionStat.class));
+        when(httpServiceBalancerStats.successRate(any(URI.class))).thenReturn(mock(SparseDistributionStat.class));
+
+        HttpServiceBalancerImpl httpServiceBalancer = new HttpServiceBalancerImpl("type=[apple], pool=[pool]", httpServiceBalancerStats,
+                new HttpServiceBalancerConfig().setOutlierDetection(true), ticker);
+        httpServiceBalancer.updateHttpUris(URIS);
+
+        requestedUris = new ArrayList<>();
+        TestingHttpClient delegate = new TestingHttpClient(request -> {
+            URI uri = request.getUri();
+            requestedUris.add(uri);
+            ticker.elapseTime(uri.getHost().equals(SLOW_URI.getHost()) ? 100 : 1, MILLISECONDS);
+            return mockResponse()
+                    .header("Cache-Control", "max-age=60")
+                    .body("config")
+                    .build();
+        });
+        BalancingHttpClient balancingHttpClient = new BalancingHttpClient(httpServiceBalancer, delegate, new BalancingHttpClientConfig(),
+                mock(ScheduledExecutorService.class), ticker);
+        client = new CachingHttpClient(balancingHttpClient, new DataSize(64, KILOBYTE));
+    }
+
+    @Test
+    public void testHitsAreNotAttempts()
+    {
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(get("v1/config").getBody(), "config");
+        }
+
+        // the cache is keyed by the relative URI, whichever instance served it
+        assertEquals(requestedUris.size(), 1);
+        verify(successTimeStat, times(1)).add(anyLong(), eq(NANOSECONDS));
+        verify(ejectionStat, times(0)).add(any());
+    }
+
+    @Test
+    public void testOutlierDetectionSeesMisses()
+    {
+        for (int i = 0; i < 1000; i++) {
+            get("v1/config/" + i);
+            // hits in between do not dilute the latencies of the misses
+            get("v1/config/" + i);
+        }
+        assertEquals(requestedUris.size(), 1000);
+        verify(ejectionStat).add(any());
+
+        requestedUris.clear();
+        for (int i = 0; i < 100; i++) {
+            get("v1/other/" + i);
+        }
+        for (URI uri : requestedUris) {
+            assertNotEquals(uri.getHost(), SLOW_URI.getHost());
+        }
+    }
+
+    private StringResponse get(String uri)
+    {
+        return client.execute(prepareGet().setUri(URI.create(uri)).build(), createStringResponseHandler());
+    }
+}
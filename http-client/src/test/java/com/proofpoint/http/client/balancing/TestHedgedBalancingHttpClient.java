@@ -0,0 +1,341 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.balancing;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.proofpoint.http.client.HttpClient;
+import com.proofpoint.http.client.HttpClient.HttpResponseFuture;
+import com.proofpoint.http.client.Request;
+import com.proofpoint.http.client.ResponseHandler;
+import com.proofpoint.testing.TestingTicker;
+import com.proofpoint.units.Duration;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.proofpoint.http.client.Request.Builder.prepareGet;
+import static com.proofpoint.http.client.Request.Builder.preparePost;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestHedgedBalancingHttpClient
+{
+    private static final URI PRIMARY_URI = URI.create("http://s1.example.com/");
+    private static final URI HEDGE_URI = URI.create("http://s2.example.com/");
+
+    private HttpServiceBalancer serviceBalancer;
+    private HttpServiceAttempt primaryAttempt;
+    private HttpServiceAttempt hedgeAttempt;
+    private HttpClient httpClient;
+    private List<SettableResponseFuture> responseFutures;
+    private ScheduledExecutorService retryExecutor;
+    private BalancingHttpClientConfig config;
+    private ResponseHandler<String, Exception> responseHandler;
+    private TestingTicker ticker;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        primaryAttempt = mock(HttpServiceAttempt.class);
+        when(primaryAttempt.getUri()).thenReturn(PRIMARY_URI);
+        hedgeAttempt = mock(HttpServiceAttempt.class);
+        when(hedgeAttempt.getUri()).thenReturn(HEDGE_URI);
+        serviceBalancer = mock(HttpServiceBalancer.class);
+        when(serviceBalancer.createAttempt()).thenReturn(primaryAttempt);
+        when(serviceBalancer.createAttempt(anySet())).thenReturn(hedgeAttempt);
+
+        responseFutures = new ArrayList<>();
+        httpClient = mock(HttpClient.class);
+        when(httpClient.executeAsync(any(Request.class), any())).thenAnswer(invocation -> {
+            SettableResponseFuture future = new SettableResponseFuture();
+            responseFutures.add(future);
+            return future;
+        });
+
+        retryExecutor = mock(ScheduledExecutorService.class);
+        doReturn(mock(ScheduledFuture.class)).when(retryExecutor).schedule(any(Runnable.class), anyLong(), any());
+
+        config = new BalancingHttpClientConfig()
+                .setHedgingEnabled(true)
+                .setHedgeDelay(new Duration(10, MILLISECONDS));
+        //noinspection unchecked
+        responseHandler = mock(ResponseHandler.class);
+    }
+
+    @Test
+    public void testHedgeWins()
+            throws Exception
+    {
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        HttpResponseFuture<String> future = balancingHttpClient.executeAsync(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+        assertEquals(responseFutures.size(), 1);
+
+        runScheduledHedge();
+        verify(serviceBalancer).createAttempt(Set.of(PRIMARY_URI));
+        assertEquals(responseFutures.size(), 2);
+        assertEquals(balancingHttpClient.getHedges().getTotalCount(), 1);
+
+        responseFutures.get(1).set("hedge result");
+        assertEquals(future.get(), "hedge result");
+        assertTrue(responseFutures.get(0).isCancelled());
+        verify(hedgeAttempt).markGood();
+        verify(primaryAttempt).markCanceled();
+        assertEquals(balancingHttpClient.getHedgeWins().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testPrimaryFailureWaitsForHedge()
+            throws Exception
+    {
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        HttpResponseFuture<String> future = balancingHttpClient.executeAsync(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+        runScheduledHedge();
+
+        responseFutures.get(0).setException(new InnerHandlerException(new Exception("primary failure"), "failure"));
+        assertFalse(future.isDone());
+        assertFalse(responseFutures.get(1).isCancelled());
+
+        responseFutures.get(1).set("hedge result");
+        assertEquals(future.get(), "hedge result");
+        verify(primaryAttempt).markBad("failure", "Exception");
+        verify(hedgeAttempt).markGood();
+        assertEquals(balancingHttpClient.getHedgeWins().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testBothAttemptsFail()
+    {
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        HttpResponseFuture<String> future = balancingHttpClient.executeAsync(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+        runScheduledHedge();
+
+        Exception hedgeFailure = new Exception("hedge failure");
+        responseFutures.get(1).setException(new InnerHandlerException(hedgeFailure, "failure"));
+        assertFalse(future.isDone());
+
+        responseFutures.get(0).setException(new InnerHandlerException(new Exception("primary failure"), "failure"));
+        try {
+            future.get();
+            fail("expected exception");
+        }
+        catch (ExecutionException e) {
+            assertEquals(e.getCause().getMessage(), "primary failure");
+        }
+        catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        assertEquals(balancingHttpClient.getHedgeWins().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testFailedHedgeNotWin()
+    {
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        HttpResponseFuture<String> future = balancingHttpClient.executeAsync(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+        runScheduledHedge();
+
+        responseFutures.get(0).setException(new InnerHandlerException(new Exception("primary failure"), "failure"));
+        responseFutures.get(1).setException(new InnerHandlerException(new Exception("hedge failure"), "failure"));
+        assertTrue(future.isDone());
+        assertEquals(balancingHttpClient.getHedgeWins().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testSyncRequestNotHedged()
+            throws Exception
+    {
+        when(httpClient.execute(any(Request.class), any())).thenReturn("primary result");
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+
+        assertEquals(balancingHttpClient.execute(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler), "primary result");
+        verify(httpClient, never()).executeAsync(any(Request.class), any());
+        verify(retryExecutor, never()).schedule(any(Runnable.class), anyLong(), any());
+        verify(primaryAttempt).markGood();
+    }
+
+    @Test
+    public void testSyncRequestHedgedWithAsyncRetries()
+    {
+        config.setAsyncRetriesEnabled(true);
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        Thread thread = new Thread(() -> {
+            try {
+                balancingHttpClient.execute(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+            }
+            catch (Exception ignored) {
+            }
+        });
+        thread.start();
+        try {
+            verify(retryExecutor, timeout(10_000)).schedule(any(Runnable.class), eq(MILLISECONDS.toNanos(10)), eq(NANOSECONDS));
+        }
+        finally {
+            thread.interrupt();
+        }
+    }
+
+    @Test
+    public void testPrimaryWinsBeforeDelay()
+            throws Exception
+    {
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        HttpResponseFuture<String> future = balancingHttpClient.executeAsync(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+
+        responseFutures.get(0).set("primary result");
+        assertEquals(future.get(), "primary result");
+
+        runScheduledHedge();
+        verify(serviceBalancer, never()).createAttempt(anySet());
+        assertEquals(responseFutures.size(), 1);
+        verify(primaryAttempt).markGood();
+        assertEquals(balancingHttpClient.getHedges().getTotalCount(), 0);
+        assertEquals(balancingHttpClient.getHedgeWins().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testCancelCancelsBothAttempts()
+    {
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        HttpResponseFuture<String> future = balancingHttpClient.executeAsync(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+        runScheduledHedge();
+
+        assertTrue(future.cancel(true));
+        assertTrue(responseFutures.get(0).isCancelled());
+        assertTrue(responseFutures.get(1).isCancelled());
+        verify(primaryAttempt).markCanceled();
+        verify(hedgeAttempt).markCanceled();
+    }
+
+    @Test
+    public void testPostNotHedged()
+    {
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        balancingHttpClient.executeAsync(preparePost().setUri(URI.create("v1/service")).build(), responseHandler);
+
+        verify(retryExecutor, never()).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    public void testNoHedgeWithoutRetryBudget()
+    {
+        config.setRetryBudgetRatio(BigDecimal.ZERO)
+                .setRetryBudgetMinPerSecond(0);
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        balancingHttpClient.executeAsync(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+
+        runScheduledHedge();
+        verify(serviceBalancer, never()).createAttempt(anySet());
+        assertEquals(responseFutures.size(), 1);
+        assertEquals(balancingHttpClient.getHedges().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testNoHedgeUntilDelayObserved()
+    {
+        config.setHedgeDelay(null);
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        HttpResponseFuture<String> future = balancingHttpClient.executeAsync(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+
+        verify(retryExecutor, never()).schedule(any(Runnable.class), anyLong(), any());
+        responseFutures.get(0).set("primary result");
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void testObservedDelayFromPrimaryAttempts()
+            throws Exception
+    {
+        config.setHedgeDelay(null);
+        BalancingHttpClient balancingHttpClient = createBalancingHttpClient();
+        for (int i = 0; i < 101; i++) {
+            HttpResponseFuture<String> future = balancingHttpClient.executeAsync(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+            ticker.elapseTime(20, MILLISECONDS);
+            responseFutures.get(i).set("primary result");
+            assertEquals(future.get(), "primary result");
+        }
+        verify(retryExecutor, never()).schedule(any(Runnable.class), anyLong(), any());
+
+        HttpResponseFuture<String> future = balancingHttpClient.executeAsync(prepareGet().setUri(URI.create("v1/service")).build(), responseHandler);
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryExecutor).schedule(captor.capture(), eq(MILLISECONDS.toNanos(20)), eq(NANOSECONDS));
+
+        ticker.elapseTime(20, MILLISECONDS);
+        captor.getValue().run();
+        ticker.elapseTime(1, MILLISECONDS);
+        responseFutures.get(102).set("hedge result");
+        assertEquals(future.get(), "hedge result");
+        assertEquals(balancingHttpClient.getHedgeWins().getTotalCount(), 1);
+    }
+
+    private BalancingHttpClient createBalancingHttpClient()
+    {
+        return new BalancingHttpClient(serviceBalancer, httpClient, config, retryExecutor, ticker);
+    }
+
+    private void runScheduledHedge()
+    {
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryExecutor).schedule(captor.capture(), eq(MILLISECONDS.toNanos(10)), eq(NANOSECONDS));
+        captor.getValue().run();
+    }
+
+    private static class SettableResponseFuture
+            extends AbstractFuture<String>
+            implements HttpResponseFuture<String>
+    {
+        @Override
+        public boolean set(String value)
+        {
+            return super.set(value);
+        }
+
+        @Override
+        public boolean setException(Throwable throwable)
+        {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public String getState()
+        {
+            return "testing";
+        }
+    }
+}
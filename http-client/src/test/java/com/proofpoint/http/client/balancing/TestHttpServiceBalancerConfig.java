@@ -4,6 +4,9 @@ import com.google.common.collect.ImmutableMap;
 import com.proofpoint.configuration.testing.ConfigAssertions;
 import com.proofpoint.units.Duration;
 import jakarta.validation.constraints.AssertFalse;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import org.testng.annotations.Test;
 
@@ -23,7 +26,12 @@ public class TestHttpServiceBalancerConfig
         ConfigAssertions.assertRecordedDefaults(ConfigAssertions.recordDefaults(HttpServiceBalancerConfig.class)
                 .setConsecutiveFailures(5)
                 .setMinBackoff(new Duration(5, SECONDS))
-                .setMaxBackoff(new Duration(2, MINUTES)));
+                .setMaxBackoff(new Duration(2, MINUTES))
+                .setPowerOfTwoChoices(false)
+                .setOutlierDetection(false)
+                .setOutlierLatencyMultiplier(5.0)
+                .setOutlierSuccessRateRatio(0.8)
+                .setOutlierMaxEjectionPercent(10));
     }
 
     @Test
@@ -33,12 +41,22 @@ public class TestHttpServiceBalancerConfig
                 .put("consecutive-failures", "4")
                 .put("min-backoff", "20ms")
                 .put("max-backoff", "50ms")
+                .put("power-of-two-choices.enabled", "true")
+                .put("outlier-detection.enabled", "true")
+                .put("outlier-detection.latency-multiplier", "3.5")
+                .put("outlier-detection.success-rate-ratio", "0.5")
+                .put("outlier-detection.max-ejection-percent", "20")
                 .build();
 
         HttpServiceBalancerConfig expected = new HttpServiceBalancerConfig()
                 .setConsecutiveFailures(4)
                 .setMinBackoff(new Duration(20, MILLISECONDS))
-                .setMaxBackoff(new Duration(50, MILLISECONDS));
+                .setMaxBackoff(new Duration(50, MILLISECONDS))
+                .setPowerOfTwoChoices(true)
+                .setOutlierDetection(true)
+                .setOutlierLatencyMultiplier(3.5)
+                .setOutlierSuccessRateRatio(0.5)
+                .setOutlierMaxEjectionPercent(20);
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
@@ -59,5 +77,8 @@ public class TestHttpServiceBalancerConfig
         assertValidates(new HttpServiceBalancerConfig().setMinBackoff(new Duration(20, MILLISECONDS)).setMaxBackoff(new Duration(20, MILLISECONDS)));
         assertFailsValidation(new HttpServiceBalancerConfig().setMinBackoff(new Duration(20, MILLISECONDS)).setMaxBackoff(new Duration(19, MILLISECONDS)),
                 "maxBackoffLessThanMinBackoff", "must be false", AssertFalse.class);
+        assertFailsValidation(new HttpServiceBalancerConfig().setOutlierLatencyMultiplier(0.5), "outlierLatencyMultiplier", "must be greater than or equal to 1.0", DecimalMin.class);
+        assertFailsValidation(new HttpServiceBalancerConfig().setOutlierSuccessRateRatio(1.5), "outlierSuccessRateRatio", "must be less than or equal to 1.0", DecimalMax.class);
+        assertFailsValidation(new HttpServiceBalancerConfig().setOutlierMaxEjectionPercent(101), "outlierMaxEjectionPercent", "must be less than or equal to 100", Max.class);
     }
 }
@@ -17,6 +17,7 @@ package com.proofpoint.http.client.balancing;
 
 import com.proofpoint.http.client.balancing.HttpServiceBalancerStats.Status;
 import com.proofpoint.stats.SparseCounterStat;
+import com.proofpoint.stats.SparseDistributionStat;
 import com.proofpoint.stats.SparseTimeStat;
 import com.proofpoint.testing.TestingTicker;
 import org.mockito.Mock;
@@ -496,4 +497,165 @@ public class TestHttpServiceBalancerImpl
         verifyNoMoreInteractions(good1RemovalStat);
         verifyNoMoreInteractions(good2RemovalStat);
     }
+
+    @Test
+    public void testPowerOfTwoChoicesMinimizesConcurrentAttempts()
+    {
+        URI firstUri = URI.create("http://apple-a.example.com");
+        URI secondUri = URI.create("https://apple-a.example.com");
+        httpServiceBalancer = createPowerOfTwoChoicesBalancer();
+        httpServiceBalancer.updateHttpUris(Set.of(firstUri, secondUri));
+
+        for (int i = 0; i < 10; ++i) {
+            HttpServiceAttempt attempt1 = httpServiceBalancer.createAttempt();
+            HttpServiceAttempt attempt2 = httpServiceBalancer.createAttempt();
+            assertNotEquals(attempt2.getUri(), attempt1.getUri(), "concurrent attempt");
+
+            attempt2.markBad("testing failure");
+            attempt2 = attempt2.next();
+            assertEquals(attempt2.getUri(), attempt1.getUri());
+
+            attempt1.markGood();
+            attempt2.markGood();
+        }
+        assertEquals(httpServiceBalancer.getConcurrency().get(), 0);
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesConcurrencyIsTotalInProgress()
+    {
+        httpServiceBalancer = createPowerOfTwoChoicesBalancer();
+        httpServiceBalancer.updateHttpUris(Set.of(URI.create("http://apple-a.example.com"), URI.create("https://apple-a.example.com")));
+
+        HttpServiceAttempt attempt1 = httpServiceBalancer.createAttempt();
+        HttpServiceAttempt attempt2 = httpServiceBalancer.createAttempt();
+        HttpServiceAttempt attempt3 = httpServiceBalancer.createAttempt();
+        assertEquals(httpServiceBalancer.getConcurrency().get(), 3);
+
+        attempt1.markGood();
+        attempt2.markBad("testing failure");
+        assertEquals(httpServiceBalancer.getConcurrency().get(), 1);
+
+        attempt3.markCanceled();
+        assertEquals(httpServiceBalancer.getConcurrency().get(), 0);
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesWeighted()
+    {
+        URI uriLowWeight = URI.create("http://apple-a.example.com");
+        URI uriHighWeight = URI.create("https://apple-a.example.com");
+        URI uriOther = URI.create("http://apple-b.example.com");
+        httpServiceBalancer = createPowerOfTwoChoicesBalancer();
+        httpServiceBalancer.updateHttpUris(List.of(uriLowWeight, uriHighWeight, uriHighWeight, uriHighWeight, uriHighWeight, uriOther));
+
+        // With no requests outstanding, the first sampled URI wins
+        assertThat(frequencyOfUri(uriHighWeight)).isBetween(60.0, 73.0);
+        assertThat(frequencyOfUri(uriLowWeight)).isBetween(10.0, 23.0);
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesFailingInstanceRemovedAndProbed()
+    {
+        URI goodUri = URI.create("http://good.example.com");
+        URI badUri = URI.create("https://bad.example.com");
+        SparseTimeStat removalStat = mock(SparseTimeStat.class);
+        when(httpServiceBalancerStats.removal(badUri)).thenReturn(removalStat);
+        SparseCounterStat probeStat = mock(SparseCounterStat.class);
+        when(httpServiceBalancerStats.probe(badUri)).thenReturn(probeStat);
+        SparseCounterStat revivalStat = mock(SparseCounterStat.class);
+        when(httpServiceBalancerStats.revival(badUri)).thenReturn(revivalStat);
+        httpServiceBalancer = createPowerOfTwoChoicesBalancer();
+        httpServiceBalancer.updateHttpUris(Set.of(goodUri, badUri));
+
+        // Increase concurrency on goodUri to 1
+        HttpServiceAttempt attempt = httpServiceBalancer.createAttempt();
+        while (attempt.getUri().equals(badUri)) {
+            attempt.markGood();
+            attempt = httpServiceBalancer.createAttempt();
+        }
+
+        // Mark badUri as down
+        for (int i = 0; i < 5; i++) {
+            attempt = httpServiceBalancer.createAttempt();
+            assertEquals(attempt.getUri(), badUri);
+            attempt.markBad("testing failure");
+        }
+        verify(removalStat).add(any());
+
+        for (int i = 0; i < 100; i++) {
+            attempt = httpServiceBalancer.createAttempt();
+            assertEquals(attempt.getUri(), goodUri);
+            attempt.markGood();
+        }
+
+        testingTicker.elapseTime(10, TimeUnit.SECONDS);
+
+        attempt = httpServiceBalancer.createAttempt();
+        assertEquals(attempt.getUri(), badUri);
+        verify(probeStat).add(1);
+        attempt.markGood();
+        verify(revivalStat).add(1);
+
+        attempt = httpServiceBalancer.createAttempt();
+        assertEquals(attempt.getUri(), badUri);
+        attempt.markGood();
+        verifyNoMoreInteractions(removalStat, probeStat, revivalStat);
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesTakesUpdates()
+    {
+        URI firstUri = URI.create("http://apple-a.example.com");
+        URI secondUri = URI.create("https://apple-a.example.com");
+        httpServiceBalancer = createPowerOfTwoChoicesBalancer();
+        httpServiceBalancer.updateHttpUris(Set.of(firstUri));
+
+        HttpServiceAttempt attempt = httpServiceBalancer.createAttempt();
+        assertEquals(attempt.getUri(), firstUri);
+        attempt.markBad("testing failure");
+
+        httpServiceBalancer.updateHttpUris(Set.of(firstUri, secondUri));
+        attempt = attempt.next();
+        assertEquals(attempt.getUri(), secondUri);
+        attempt.markGood();
+
+        httpServiceBalancer.updateHttpUris(Set.of(secondUri));
+        for (int i = 0; i < 10; i++) {
+            attempt = httpServiceBalancer.createAttempt();
+            assertEquals(attempt.getUri(), secondUri);
+            attempt.markGood();
+        }
+    }
+
+    @Test
+    public void testOutlierDetectionEjectsSlowInstance()
+    {
+        URI slowUri = URI.create("http://slow.example.com");
+        Set<URI> uris = Set.of(URI.create("http://apple-a.example.com"), URI.create("http://apple-b.example.com"), slowUri);
+        SparseTimeStat ejectionStat = mock(SparseTimeStat.class);
+        when(httpServiceBalancerStats.ejection(slowUri)).thenReturn(ejectionStat);
+        when(httpServiceBalancerStats.latencyScore(any(URI.class))).thenReturn(mock(SparseDistributionStat.class));
+        when(httpServiceBalancerStats.successRate(any(URI.class))).thenReturn(mock(SparseDistributionStat.class));
+        httpServiceBalancer = new HttpServiceBalancerImpl("type=[apple], pool=[pool]", httpServiceBalancerStats, new HttpServiceBalancerConfig().setOutlierDetection(true), testingTicker);
+        httpServiceBalancer.updateHttpUris(uris);
+
+        for (int i = 0; i < 1000; i++) {
+            HttpServiceAttempt attempt = httpServiceBalancer.createAttempt();
+            testingTicker.elapseTime(attempt.getUri().equals(slowUri) ? 100 : 1, TimeUnit.MILLISECONDS);
+            attempt.markGood();
+        }
+        verify(ejectionStat).add(any());
+
+        for (int i = 0; i < 100; i++) {
+            HttpServiceAttempt attempt = httpServiceBalancer.createAttempt();
+            assertNotEquals(attempt.getUri(), slowUri);
+            attempt.markGood();
+        }
+    }
+
+    private HttpServiceBalancerImpl createPowerOfTwoChoicesBalancer()
+    {
+        return new HttpServiceBalancerImpl("type=[apple], pool=[pool]", httpServiceBalancerStats, new HttpServiceBalancerConfig().setConsecutiveFailures(5).setPowerOfTwoChoices(true), testingTicker);
+    }
 }
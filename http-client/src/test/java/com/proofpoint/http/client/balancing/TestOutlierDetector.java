@@ -0,0 +1,239 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.balancing;
+
+import com.proofpoint.stats.SparseDistributionStat;
+import com.proofpoint.stats.SparseTimeStat;
+import com.proofpoint.units.Duration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.Set;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestOutlierDetector
+{
+    private static final URI URI_A = URI.create("http://a.example.com");
+    private static final URI URI_B = URI.create("http://b.example.com");
+    private static final URI URI_C = URI.create("http://c.example.com");
+    private static final URI URI_D = URI.create("http://d.example.com");
+    private static final URI URI_E = URI.create("http://e.example.com");
+
+    private HttpServiceBalancerStats stats;
+    private SparseTimeStat ejectionStat;
+    private SparseDistributionStat successRateStat;
+    private OutlierDetector detector;
+
+    @BeforeMethod
+    public void setup()
+    {
+        stats = mock(HttpServiceBalancerStats.class);
+        ejectionStat = mock(SparseTimeStat.class);
+        when(stats.ejection(any())).thenReturn(ejectionStat);
+        when(stats.latencyScore(any())).thenReturn(mock(SparseDistributionStat.class));
+        successRateStat = mock(SparseDistributionStat.class);
+        when(stats.successRate(any())).thenReturn(successRateStat);
+        detector = createDetector(10);
+        detector.updateInstances(Set.of(URI_A, URI_B, URI_C, URI_D));
+    }
+
+    @Test
+    public void testEjectsSlowInstance()
+    {
+        recordSamples(URI_A, 10, true);
+        recordSamples(URI_B, 12, true);
+        recordSamples(URI_C, 11, true);
+        recordSamples(URI_D, 100, true);
+
+        detector.analyze(0);
+
+        assertTrue(detector.isEjected(URI_D, 0));
+        assertFalse(detector.isEjected(URI_A, 0));
+        assertFalse(detector.isEjected(URI_B, 0));
+        assertFalse(detector.isEjected(URI_C, 0));
+        verify(stats).ejection(URI_D);
+        verify(ejectionStat).add(any(Duration.class));
+
+        // Returns after the backoff
+        assertFalse(detector.isEjected(URI_D, SECONDS.toNanos(10)));
+    }
+
+    @Test
+    public void testEjectsFailingInstance()
+    {
+        recordSamples(URI_A, 10, true);
+        recordSamples(URI_B, 10, true);
+        recordSamples(URI_C, 10, true);
+        recordSamples(URI_D, 10, false);
+
+        detector.analyze(0);
+
+        assertTrue(detector.isEjected(URI_D, 0));
+        assertFalse(detector.isEjected(URI_A, 0));
+    }
+
+    @Test
+    public void testMaxEjectionPercent()
+    {
+        detector = createDetector(20);
+        detector.updateInstances(Set.of(URI_A, URI_B, URI_C, URI_D, URI_E));
+        recordSamples(URI_A, 10, true);
+        recordSamples(URI_B, 10, true);
+        recordSamples(URI_C, 10, true);
+        recordSamples(URI_D, 100, true);
+        recordSamples(URI_E, 200, true);
+
+        detector.analyze(0);
+
+        // The slowest outlier is ejected first
+        assertTrue(detector.isEjected(URI_E, 0));
+        assertFalse(detector.isEjected(URI_D, 0));
+        verify(ejectionStat, times(1)).add(any(Duration.class));
+    }
+
+    @Test
+    public void testRequiresEnoughSamplesAndInstances()
+    {
+        recordSamples(URI_A, 10, true);
+        recordSamples(URI_B, 10, true);
+        for (int i = 0; i < 5; i++) {
+            detector.record(URI_D, MILLISECONDS.toNanos(100), true, 0);
+        }
+
+        detector.analyze(0);
+
+        assertFalse(detector.isEjected(URI_D, 0));
+        verify(stats, never()).ejection(any());
+    }
+
+    @Test
+    public void testReturnedInstanceJudgedOnNewRequests()
+    {
+        recordSamples(URI_A, 10, true);
+        recordSamples(URI_B, 10, true);
+        recordSamples(URI_C, 10, true);
+        recordSamples(URI_D, 100, true);
+        detector.analyze(0);
+        assertTrue(detector.isEjected(URI_D, 0));
+
+        long later = MINUTES.toNanos(5);
+        detector.analyze(later);
+        assertFalse(detector.isEjected(URI_D, later));
+
+        // The samples from before the ejection are not used again
+        recordSamples(URI_A, 10, true);
+        recordSamples(URI_B, 10, true);
+        recordSamples(URI_C, 10, true);
+        detector.analyze(later);
+        assertFalse(detector.isEjected(URI_D, later));
+    }
+
+    @Test
+    public void testReturnedInstanceSamplesBeforeAnalysisCount()
+    {
+        recordSamples(URI_A, 10, true);
+        recordSamples(URI_B, 10, true);
+        recordSamples(URI_C, 10, true);
+        recordSamples(URI_D, 100, true);
+        detector.analyze(0);
+        assertTrue(detector.isEjected(URI_D, 0));
+
+        // Requests sent before the ejection complete while ejected
+        recordSamples(URI_D, 10, true, 1);
+
+        // Returned after the backoff but before the next periodic analysis
+        long later = SECONDS.toNanos(8);
+        recordSamples(URI_A, 10, true, later);
+        recordSamples(URI_B, 10, true, later);
+        recordSamples(URI_C, 10, true, later);
+        recordSamples(URI_D, 100, true, later);
+        detector.analyze(later);
+        assertTrue(detector.isEjected(URI_D, later));
+    }
+
+    @Test
+    public void testSuccessRateRelativeToMedian()
+    {
+        recordSamples(URI_A, 10, true);
+        recordSamples(URI_B, 10, true);
+        recordSamples(URI_C, 10, true);
+        recordSamples(URI_D, 10, false);
+
+        detector.analyze(0);
+
+        verify(successRateStat, times(3)).add(100);
+        verify(successRateStat).add(longThat(value -> value < 20));
+    }
+
+    @Test
+    public void testSuccessRateNotExportedForZeroMedian()
+    {
+        recordSamples(URI_A, 10, false);
+        recordSamples(URI_B, 10, false);
+        recordSamples(URI_C, 10, false);
+        recordSamples(URI_D, 10, false);
+
+        detector.analyze(0);
+
+        verify(successRateStat, never()).add(anyLong());
+        verify(stats, never()).ejection(any());
+    }
+
+    @Test
+    public void testRemovedInstanceForgotten()
+    {
+        recordSamples(URI_A, 10, true);
+        recordSamples(URI_B, 10, true);
+        recordSamples(URI_C, 10, true);
+        recordSamples(URI_D, 100, true);
+        detector.analyze(0);
+        assertTrue(detector.isEjected(URI_D, 0));
+
+        detector.updateInstances(Set.of(URI_A, URI_B, URI_C));
+        assertFalse(detector.isEjected(URI_D, 0));
+    }
+
+    private OutlierDetector createDetector(int maxEjectionPercent)
+    {
+        return new OutlierDetector(stats, new DecorrelatedJitteredBackoffPolicy(new Duration(5, SECONDS), new Duration(5, SECONDS)), 5.0, 0.8, maxEjectionPercent, 0);
+    }
+
+    private void recordSamples(URI uri, long latencyMillis, boolean success)
+    {
+        recordSamples(uri, latencyMillis, success, 0);
+    }
+
+    private void recordSamples(URI uri, long latencyMillis, boolean success, long now)
+    {
+        for (int i = 0; i < 20; i++) {
+            detector.record(uri, MILLISECONDS.toNanos(latencyMillis), success, now);
+        }
+    }
+}
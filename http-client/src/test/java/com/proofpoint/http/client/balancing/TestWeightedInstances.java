@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.balancing;
+
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestWeightedInstances
+{
+    @Test
+    public void testEmpty()
+    {
+        WeightedInstances<String> instances = new WeightedInstances<>(List.of(), new int[0]);
+        assertTrue(instances.isEmpty());
+        assertEquals(instances.size(), 0);
+    }
+
+    @Test
+    public void testSingle()
+    {
+        WeightedInstances<String> instances = new WeightedInstances<>(List.of("a"), new int[] {100});
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(instances.sample(random), 0);
+        }
+        assertEquals(instances.get(0), "a");
+        assertEquals(instances.getWeight(0), 100);
+    }
+
+    @Test
+    public void testProportionalToWeight()
+    {
+        int[] weights = {1, 3, 100, 6, 10};
+        WeightedInstances<String> instances = new WeightedInstances<>(List.of("a", "b", "c", "d", "e"), weights);
+        Random random = new Random(1);
+        int[] counts = new int[weights.length];
+        int samples = 1_200_000;
+        for (int i = 0; i < samples; i++) {
+            counts[instances.sample(random)]++;
+        }
+
+        for (int i = 0; i < weights.length; i++) {
+            double expected = samples * weights[i] / 120.0;
+            assertThat((double) counts[i]).isBetween(expected * 0.95, expected * 1.05);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "weight is not positive")
+    public void testZeroWeight()
+    {
+        new WeightedInstances<>(List.of("a", "b"), new int[] {1, 0});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "instances and weights have different sizes")
+    public void testMismatchedSizes()
+    {
+        new WeightedInstances<>(List.of("a", "b"), new int[] {1});
+    }
+}
@@ -1,5 +1,6 @@
 package com.proofpoint.http.client.jetty;
 
+import com.google.common.base.Strings;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.proofpoint.http.client.AbstractHttpClientTest;
 import com.proofpoint.http.client.HttpClient.HttpResponseFuture;
@@ -8,22 +9,42 @@ import com.proofpoint.http.client.Request;
 import com.proofpoint.http.client.RequestStats;
 import com.proofpoint.http.client.Response;
 import com.proofpoint.http.client.ResponseHandler;
+import com.proofpoint.http.client.ResponseTooLargeException;
+import com.proofpoint.http.client.StreamingResponseHandler;
+import com.proofpoint.http.client.StreamingResponseHandler.ContentConsumer;
 import com.proofpoint.http.client.TestingRequestFilter;
+import com.proofpoint.json.JsonCodec;
 import com.proofpoint.tracetoken.TraceToken;
+import com.proofpoint.units.DataSize;
 import com.proofpoint.units.Duration;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
 import static com.proofpoint.http.client.Request.Builder.prepareGet;
+import static com.proofpoint.http.client.ResponseHandlerUtils.propagate;
+import static com.proofpoint.http.client.StreamingJsonResponseHandler.createStreamingJsonResponseHandler;
+import static com.proofpoint.json.JsonCodec.listJsonCodec;
+import static com.proofpoint.testing.Assertions.assertInstanceOf;
+import static com.proofpoint.testing.Assertions.assertLessThan;
 import static com.proofpoint.tracetoken.TraceTokenManager.createAndRegisterNewRequestToken;
 import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
 import static com.proofpoint.tracetoken.TraceTokenManager.registerTraceToken;
+import static com.proofpoint.units.DataSize.Unit.KILOBYTE;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 public class TestAsyncJettyHttpClient
@@ -180,4 +201,188 @@ public class TestAsyncJettyHttpClient
         listenerLatch.await();
         assertEquals(callbackToken.get(), token);
     }
+
+    @Test
+    public void testDecompressedResponseTooLarge()
+            throws Exception
+    {
+        servlet.setResponseBody(gzip(Strings.repeat("x", 10_000)));
+        servlet.addResponseHeader(CONTENT_ENCODING, "gzip");
+
+        HttpClientConfig config = createClientConfig()
+                .setCompressionEnabled(true)
+                .setMaxContentLength(new DataSize(1, KILOBYTE));
+        Request request = prepareGet()
+                .setUri(baseURI)
+                .build();
+
+        try {
+            executeRequest(config, request, new CaptureExceptionResponseHandler());
+            fail("expected exception");
+        }
+        catch (CapturedException e) {
+            assertInstanceOf(e.getCause(), ResponseTooLargeException.class);
+        }
+    }
+
+    @Test
+    public void testStreamingResponseHandler()
+            throws Exception
+    {
+        String body = Strings.repeat("0123456789", 10_000);
+        servlet.setResponseBody(body);
+        Request request = prepareGet()
+                .setUri(baseURI)
+                .build();
+
+        CollectingResponseHandler handler = new CollectingResponseHandler();
+        byte[] content = executeRequest(request, handler);
+        assertEquals(new String(content, UTF_8), body);
+        assertEquals(handler.status, 200);
+        assertEquals(stats.getReadBytes().getAllTime().getTotal(), (double) body.length());
+    }
+
+    @Test
+    public void testStreamingResponseHandlerCompressed()
+            throws Exception
+    {
+        String body = Strings.repeat("0123456789", 10_000);
+        servlet.setResponseBody(gzip(body));
+        servlet.addResponseHeader(CONTENT_ENCODING, "gzip");
+        Request request = prepareGet()
+                .setUri(baseURI)
+                .build();
+
+        byte[] content = executeRequest(createClientConfig().setCompressionEnabled(true), request, new CollectingResponseHandler());
+        assertEquals(new String(content, UTF_8), body);
+        assertEquals(stats.getReadBytes().getAllTime().getTotal(), (double) body.length());
+        assertLessThan(stats.getCompressedReadBytes().getAllTime().getTotal(), (double) body.length());
+    }
+
+    @Test
+    public void testStreamingResponseHandlerFailure()
+            throws Exception
+    {
+        servlet.setResponseBody(Strings.repeat("x", 100_000));
+        Request request = prepareGet()
+                .setUri(baseURI)
+                .build();
+
+        IllegalStateException expected = new IllegalStateException("test");
+        try {
+            executeRequest(request, new CollectingResponseHandler()
+            {
+                @Override
+                public void content(ByteBuffer content)
+                {
+                    throw expected;
+                }
+            });
+            fail("expected exception");
+        }
+        catch (IllegalStateException e) {
+            assertSame(e, expected);
+        }
+    }
+
+    @Test
+    public void testStreamingJsonResponseHandler()
+            throws Exception
+    {
+        JsonCodec<List<String>> codec = listJsonCodec(String.class);
+        List<String> value = Collections.nCopies(10_000, "hello");
+        servlet.setResponseBody(codec.toJson(value));
+        servlet.addResponseHeader(CONTENT_TYPE, "application/json");
+        Request request = prepareGet()
+                .setUri(baseURI)
+                .build();
+
+        assertEquals(executeRequest(request, createStreamingJsonResponseHandler(codec)), value);
+    }
+
+    @Test
+    public void testStreamingJsonResponseHandlerCompressedFailure()
+            throws Exception
+    {
+        JsonCodec<List<String>> codec = listJsonCodec(String.class);
+        String validItems = Strings.repeat("\"hello\",", 10_000);
+        servlet.setResponseBody(gzip("[" + validItems + "invalid," + validItems + "\"hello\"]"));
+        servlet.addResponseHeader(CONTENT_ENCODING, "gzip");
+        servlet.addResponseHeader(CONTENT_TYPE, "application/json");
+        Request request = prepareGet()
+                .setUri(baseURI)
+                .build();
+
+        CountingResponseHandler<List<String>> handler = new CountingResponseHandler<>(createStreamingJsonResponseHandler(codec));
+        try {
+            executeRequest(createClientConfig().setCompressionEnabled(true), request, handler);
+            fail("expected exception");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Unable to create "), e.getMessage());
+        }
+        // the failure of the handler is not reported again as a failure of the request
+        assertEquals(handler.exceptions.get(), 0);
+        assertEquals(stats.getReadBytes().getAllTime().getCount(), 1.0);
+        assertEquals(stats.getCompressedReadBytes().getAllTime().getCount(), 1.0);
+    }
+
+    private static class CountingResponseHandler<T>
+            implements StreamingResponseHandler<T, RuntimeException>
+    {
+        private final StreamingResponseHandler<T, RuntimeException> delegate;
+        private final AtomicInteger exceptions = new AtomicInteger();
+
+        CountingResponseHandler(StreamingResponseHandler<T, RuntimeException> delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public T handleException(Request request, Exception exception)
+        {
+            exceptions.incrementAndGet();
+            return delegate.handleException(request, exception);
+        }
+
+        @Override
+        public ContentConsumer<T, RuntimeException> start(Request request, Response response)
+        {
+            return delegate.start(request, response);
+        }
+    }
+
+    private static class CollectingResponseHandler
+            implements StreamingResponseHandler<byte[], RuntimeException>, ContentConsumer<byte[], RuntimeException>
+    {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int status;
+
+        @Override
+        public byte[] handleException(Request request, Exception exception)
+        {
+            throw propagate(request, exception);
+        }
+
+        @Override
+        public ContentConsumer<byte[], RuntimeException> start(Request request, Response response)
+        {
+            status = response.getStatusCode();
+            return this;
+        }
+
+        @Override
+        public void content(ByteBuffer content)
+        {
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public byte[] complete()
+        {
+            return out.toByteArray();
+        }
+    }
 }
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.jetty;
+
+import com.proofpoint.testing.TestingTicker;
+import com.proofpoint.units.Duration;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.net.InetAddresses.forString;
+import static com.proofpoint.http.client.jetty.JettyAsyncSocketAddressResolver.MAX_CACHED_HOSTS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestJettyAsyncSocketAddressResolver
+{
+    private static final InetAddress ADDRESS_1 = forString("10.0.0.1");
+    private static final InetAddress ADDRESS_2 = forString("10.0.0.2");
+    private static final InetAddress ADDRESS_3 = forString("10.0.0.3");
+
+    private TestingTicker ticker;
+    private StubNameService nameService;
+    private List<Runnable> pending;
+    private JettyAsyncSocketAddressResolver resolver;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        nameService = new StubNameService();
+        pending = new ArrayList<>();
+        resolver = new JettyAsyncSocketAddressResolver(pending::add, mock(Scheduler.class), 0,
+                new Duration(30, SECONDS), new Duration(10, SECONDS), nameService, ticker);
+    }
+
+    @Test
+    public void testAddressLiteral()
+            throws Exception
+    {
+        FuturePromise<List<InetSocketAddress>> promise = resolve("10.1.2.3");
+        assertEquals(promise.get(), List.of(new InetSocketAddress(forString("10.1.2.3"), 8080)));
+        assertTrue(pending.isEmpty());
+        assertEquals(resolver.getCacheMisses().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testCachesAddresses()
+            throws Exception
+    {
+        nameService.put("example.com", ADDRESS_1);
+
+        FuturePromise<List<InetSocketAddress>> promise = resolve("example.com");
+        assertFalse(promise.isDone());
+        runPending();
+        assertEquals(promise.get(), List.of(new InetSocketAddress(ADDRESS_1, 8080)));
+
+        ticker.elapseTime(20, SECONDS);
+        promise = resolve("example.com");
+        assertEquals(promise.get(), List.of(new InetSocketAddress(ADDRESS_1, 8080)));
+        assertTrue(pending.isEmpty());
+
+        assertEquals(nameService.getLookups(), 1);
+        assertEquals(resolver.getCacheHits().getTotalCount(), 1);
+        assertEquals(resolver.getCacheMisses().getTotalCount(), 1);
+        assertEquals(resolver.getLookupTime().getAllTime().getCount(), 1.0);
+    }
+
+    @Test
+    public void testExpiry()
+            throws Exception
+    {
+        nameService.put("example.com", ADDRESS_1);
+        resolve("example.com");
+        runPending();
+
+        nameService.put("example.com", ADDRESS_2);
+        ticker.elapseTime(30, SECONDS);
+        FuturePromise<List<InetSocketAddress>> promise = resolve("example.com");
+        assertFalse(promise.isDone());
+        runPending();
+        assertEquals(promise.get(), List.of(new InetSocketAddress(ADDRESS_2, 8080)));
+        assertEquals(resolver.getCacheMisses().getTotalCount(), 2);
+    }
+
+    @Test
+    public void testRefreshBeforeExpiry()
+            throws Exception
+    {
+        nameService.put("example.com", ADDRESS_1);
+        resolve("example.com");
+        runPending();
+
+        nameService.put("example.com", ADDRESS_2);
+        ticker.elapseTime(25, SECONDS);
+        FuturePromise<List<InetSocketAddress>> promise = resolve("example.com");
+        assertEquals(promise.get(), List.of(new InetSocketAddress(ADDRESS_1, 8080)));
+        assertEquals(pending.size(), 1);
+
+        resolve("example.com");
+        assertEquals(pending.size(), 1, "refresh in progress is not repeated");
+        runPending();
+
+        ticker.elapseTime(10, SECONDS);
+        promise = resolve("example.com");
+        assertEquals(promise.get(), List.of(new InetSocketAddress(ADDRESS_2, 8080)));
+        assertEquals(nameService.getLookups(), 2);
+        assertEquals(resolver.getCacheMisses().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testFailedRefreshKeepsAddresses()
+            throws Exception
+    {
+        nameService.put("example.com", ADDRESS_1);
+        resolve("example.com");
+        runPending();
+
+        nameService.remove("example.com");
+        ticker.elapseTime(25, SECONDS);
+        resolve("example.com");
+        runPending();
+
+        FuturePromise<List<InetSocketAddress>> promise = resolve("example.com");
+        assertEquals(promise.get(), List.of(new InetSocketAddress(ADDRESS_1, 8080)));
+        assertEquals(resolver.getLookupFailures().getTotalCount(), 1);
+        assertTrue(pending.isEmpty(), "failed refresh is not retried by the next connection");
+
+        ticker.elapseTime(4, SECONDS);
+        promise = resolve("example.com");
+        assertEquals(promise.get(), List.of(new InetSocketAddress(ADDRESS_1, 8080)));
+        assertTrue(pending.isEmpty());
+        assertEquals(nameService.getLookups(), 2);
+
+        // looked up again once the addresses expire
+        nameService.put("example.com", ADDRESS_2);
+        ticker.elapseTime(1, SECONDS);
+        promise = resolve("example.com");
+        assertEquals(pending.size(), 1);
+        runPending();
+        assertEquals(promise.get(), List.of(new InetSocketAddress(ADDRESS_2, 8080)));
+        assertEquals(nameService.getLookups(), 3);
+    }
+
+    @Test
+    public void testLookupFailureTimed()
+            throws Exception
+    {
+        nameService.fail("example.com", new SecurityException("denied"));
+        FuturePromise<List<InetSocketAddress>> promise = resolve("example.com");
+        runPending();
+
+        assertTrue(promise.isDone());
+        try {
+            promise.get();
+            throw new AssertionError("expected SecurityException");
+        }
+        catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(SecurityException.class);
+        }
+        assertEquals(resolver.getLookupFailures().getTotalCount(), 1);
+        assertEquals(resolver.getLookupTime().getAllTime().getCount(), 1.0);
+    }
+
+    @Test
+    public void testMaxCachedHosts()
+            throws Exception
+    {
+        for (int i = 0; i <= MAX_CACHED_HOSTS; i++) {
+            nameService.put("host" + i + ".example.com", ADDRESS_1);
+            resolve("host" + i + ".example.com");
+            runPending();
+        }
+
+        // the cache is full of unexpired entries, so the last host was not cached
+        FuturePromise<List<InetSocketAddress>> promise = resolve("host" + MAX_CACHED_HOSTS + ".example.com");
+        assertEquals(pending.size(), 1);
+        runPending();
+        assertEquals(promise.get(), List.of(new InetSocketAddress(ADDRESS_1, 8080)));
+
+        assertEquals(resolve("host0.example.com").get(), List.of(new InetSocketAddress(ADDRESS_1, 8080)));
+        assertTrue(pending.isEmpty());
+
+        // expired entries are evicted to make room
+        ticker.elapseTime(30, SECONDS);
+        resolve("host" + MAX_CACHED_HOSTS + ".example.com");
+        runPending();
+        resolve("host" + MAX_CACHED_HOSTS + ".example.com");
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test
+    public void testNegativeCaching()
+            throws Exception
+    {
+        FuturePromise<List<InetSocketAddress>> promise = resolve("unknown.example.com");
+        runPending();
+        assertUnknownHost(promise);
+
+        ticker.elapseTime(5, SECONDS);
+        nameService.put("unknown.example.com", ADDRESS_1);
+        promise = resolve("unknown.example.com");
+        assertTrue(pending.isEmpty());
+        assertUnknownHost(promise);
+
+        ticker.elapseTime(5, SECONDS);
+        promise = resolve("unknown.example.com");
+        runPending();
+        assertEquals(promise.get(), List.of(new InetSocketAddress(ADDRESS_1, 8080)));
+        assertEquals(nameService.getLookups(), 2);
+        assertEquals(resolver.getLookupFailures().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testRoundRobin()
+            throws Exception
+    {
+        nameService.put("example.com", ADDRESS_1, ADDRESS_2, ADDRESS_3);
+        FuturePromise<List<InetSocketAddress>> promise = resolve("example.com");
+        runPending();
+        assertEquals(promise.get(), List.of(
+                new InetSocketAddress(ADDRESS_1, 8080),
+                new InetSocketAddress(ADDRESS_2, 8080),
+                new InetSocketAddress(ADDRESS_3, 8080)));
+        assertEquals(resolve("example.com").get(), List.of(
+                new InetSocketAddress(ADDRESS_2, 8080),
+                new InetSocketAddress(ADDRESS_3, 8080),
+                new InetSocketAddress(ADDRESS_1, 8080)));
+        assertEquals(resolve("example.com").get(), List.of(
+                new InetSocketAddress(ADDRESS_3, 8080),
+                new InetSocketAddress(ADDRESS_1, 8080),
+                new InetSocketAddress(ADDRESS_2, 8080)));
+        assertEquals(resolve("example.com").get().get(0), new InetSocketAddress(ADDRESS_1, 8080));
+    }
+
+    @Test
+    public void testConcurrentLookupsCoalesced()
+            throws Exception
+    {
+        nameService.put("example.com", ADDRESS_1);
+        FuturePromise<List<InetSocketAddress>> first = resolve("example.com");
+        FuturePromise<List<InetSocketAddress>> second = resolve("example.com");
+        assertEquals(pending.size(), 1);
+        runPending();
+
+        assertEquals(first.get(), List.of(new InetSocketAddress(ADDRESS_1, 8080)));
+        assertEquals(second.get(), List.of(new InetSocketAddress(ADDRESS_1, 8080)));
+        assertEquals(nameService.getLookups(), 1);
+        assertEquals(resolver.getCacheMisses().getTotalCount(), 2);
+    }
+
+    private FuturePromise<List<InetSocketAddress>> resolve(String host)
+    {
+        FuturePromise<List<InetSocketAddress>> promise = new FuturePromise<>();
+        resolver.resolve(host, 8080, promise);
+        return promise;
+    }
+
+    private void runPending()
+    {
+        List<Runnable> tasks = new ArrayList<>(pending);
+        pending.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private static void assertUnknownHost(FuturePromise<List<InetSocketAddress>> promise)
+            throws InterruptedException
+    {
+        assertTrue(promise.isDone());
+        try {
+            promise.get();
+        }
+        catch (ExecutionException e) {
+            assertThat(e.getCause())
+                    .isInstanceOf(UnknownHostException.class)
+                    .hasMessage("unknown.example.com");
+            return;
+        }
+        throw new AssertionError("expected UnknownHostException");
+    }
+
+    private static class StubNameService
+            implements JettyAsyncSocketAddressResolver.NameService
+    {
+        private final Map<String, InetAddress[]> hosts = new HashMap<>();
+        private final Map<String, RuntimeException> failures = new HashMap<>();
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        void put(String host, InetAddress... addresses)
+        {
+            hosts.put(host, addresses);
+        }
+
+        void fail(String host, RuntimeException exception)
+        {
+            failures.put(host, exception);
+        }
+
+        void remove(String host)
+        {
+            hosts.remove(host);
+        }
+
+        int getLookups()
+        {
+            return lookups.get();
+        }
+
+        @Override
+        public InetAddress[] getAllByName(String host)
+                throws UnknownHostException
+        {
+            lookups.incrementAndGet();
+            RuntimeException failure = failures.get(host);
+            if (failure != null) {
+                throw failure;
+            }
+            InetAddress[] addresses = hosts.get(host);
+            if (addresses == null) {
+                throw new UnknownHostException(host);
+            }
+            return addresses.clone();
+        }
+    }
+}
@@ -16,32 +16,71 @@
 package com.proofpoint.http.server;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
 
-import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static com.proofpoint.http.server.InetNetwork.bit;
+
+/**
+ * An immutable set of IPv4 and IPv6 CIDR blocks.
+ * <p>
+ * Membership is tested with a binary prefix trie, so a lookup visits at most
+ * one node per bit of the longest matching prefix, independent of the number
+ * of blocks in the set.
+ */
 public class CidrSet
 {
-    private final Set<Inet4Network> cidrs;
+    private static final int IPV4_ROOT = 0;
+    private static final int IPV6_ROOT = 1;
+
+    private final Set<InetNetwork> cidrs;
 
-    private CidrSet(Collection<Inet4Network> cidrs) {
+    // children[2 * node + bit] is the index of the child node, or 0 if there is none
+    private final int[] children;
+    // set for nodes at the end of a prefix in the set
+    private final BitSet terminal;
+
+    private CidrSet(Collection<InetNetwork> cidrs) {
         this.cidrs = Set.copyOf(cidrs);
+
+        int[] children = new int[8];
+        BitSet terminal = new BitSet();
+        int nodeCount = 2;
+        for (InetNetwork cidr : this.cidrs) {
+            byte[] address = cidr.getAddress();
+            int node = address.length == 4 ? IPV4_ROOT : IPV6_ROOT;
+            for (int i = 0; i < cidr.getBits() && !terminal.get(node); i++) {
+                int slot = 2 * node + bit(address, i);
+                if (children[slot] == 0) {
+                    if (2 * nodeCount + 2 > children.length) {
+                        children = Arrays.copyOf(children, children.length * 2);
+                    }
+                    children[slot] = nodeCount++;
+                }
+                node = children[slot];
+            }
+            terminal.set(node);
+        }
+        this.children = Arrays.copyOf(children, 2 * nodeCount);
+        this.terminal = terminal;
     }
 
     /**
      * Returns a {@link CidrSet} from a string.
      *
-     * @param cidrList Comma-separated list of IPv4 CIDR blocks. For now only IPv4 CIDR blocks are supported.
+     * @param cidrList Comma-separated list of IPv4 or IPv6 CIDR blocks.
      * @return A {@link CidrSet} identifying all addresses in the blocks in {@code cidrList}.
      */
     public static CidrSet fromString(String cidrList) {
-        Set<Inet4Network> uris = Arrays.stream(cidrList.split("\\s*,\\s*"))
-                        .map(Inet4Network::fromCidr)
+        Set<InetNetwork> uris = Arrays.stream(cidrList.split("\\s*,\\s*"))
+                        .map(InetNetwork::fromCidr)
                         .collect(ImmutableSet.toImmutableSet());
         return new CidrSet(uris);
     }
@@ -62,22 +101,51 @@ public class CidrSet
      */
     public boolean containsAddress(InetAddress address)
     {
-        if (!(address instanceof Inet4Address)) {
-            return false;
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 4) {
+            return containsIpv4Address(Ints.fromByteArray(bytes));
         }
 
-        Inet4Address inet4Address = (Inet4Address) address;
-        for (Inet4Network cidr : cidrs) {
-            if (cidr.containsAddress(inet4Address)) {
+        int node = IPV6_ROOT;
+        for (int i = 0; ; i++) {
+            if (terminal.get(node)) {
                 return true;
             }
+            if (i == bytes.length * 8) {
+                return false;
+            }
+            node = children[2 * node + bit(bytes, i)];
+            if (node == 0) {
+                return false;
+            }
         }
+    }
 
-        return false;
+    /**
+     * Determines whether an IPv4 address is contained in this {@link CidrSet}.
+     *
+     * @param address The address to check, in network byte order.
+     * @return true iff the address is contained in the {@link CidrSet}.
+     */
+    boolean containsIpv4Address(int address)
+    {
+        int node = IPV4_ROOT;
+        for (int i = 0; ; i++) {
+            if (terminal.get(node)) {
+                return true;
+            }
+            if (i == 32) {
+                return false;
+            }
+            node = children[2 * node + ((address >>> (31 - i)) & 1)];
+            if (node == 0) {
+                return false;
+            }
+        }
     }
 
     public CidrSet union(CidrSet other) {
-        return new CidrSet(ImmutableSet.<Inet4Network>builder()
+        return new CidrSet(ImmutableSet.<InetNetwork>builder()
                 .addAll(cidrs)
                 .addAll(other.cidrs)
                 .build());
@@ -107,7 +175,7 @@ public class CidrSet
     public String toString()
     {
         return cidrs.stream()
-                .map(Inet4Network::toString)
+                .map(InetNetwork::toString)
                 .collect(Collectors.joining(","));
     }
 }
@@ -15,65 +15,171 @@
  */
 package com.proofpoint.http.server;
 
-import com.google.common.base.Splitter;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 import com.google.common.net.InetAddresses;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+
+import static com.proofpoint.http.server.InetNetwork.parseIpv4;
 
 public class ClientAddressExtractor
 {
+    private static final String CLIENT_ADDRESS_ATTRIBUTE = ClientAddressExtractor.class.getName() + ".clientAddress";
+
     private static final CidrSet PRIVATE_NETWORKS = CidrSet.fromString(
             "127.0.0.0/8," +
             "169.254.0.0/16," +
             "192.168.0.0/16," +
             "172.16.0.0/12," +
             "10.0.0.0/8," +
-            "100.64.0.0/10");
+            "100.64.0.0/10," +
+            "::1/128," +
+            "fe80::/10," +
+            "fc00::/7");
+
+    private static final int INVALID = -1;
+    private static final int UNTRUSTED = 0;
+    private static final int TRUSTED = 1;
 
     private final CidrSet trustedNetworks;
+    private final boolean unixSocketTrusted;
 
     public ClientAddressExtractor()
     {
         trustedNetworks = PRIVATE_NETWORKS;
+        unixSocketTrusted = false;
     }
 
     @Inject
     public ClientAddressExtractor(InternalNetworkConfig config)
     {
         trustedNetworks = PRIVATE_NETWORKS.union(config.getInternalNetworks());
+        unixSocketTrusted = config.isUnixSocketTrusted();
     }
 
+    /**
+     * Determines the address of the client, skipping over trusted proxies
+     * listed in X-Forwarded-For headers. The result is cached in a request
+     * attribute, so subsequent calls for the same request are cheap.
+     */
     public String clientAddressFor(HttpServletRequest request)
     {
-        ImmutableList.Builder<String> builder = ImmutableList.builder();
-        for (Enumeration<String> e = request.getHeaders("X-FORWARDED-FOR"); e != null && e.hasMoreElements(); ) {
-            String forwardedFor = e.nextElement();
-            builder.addAll(Splitter.on(',').trimResults().omitEmptyStrings().split(forwardedFor));
+        Object cached = request.getAttribute(CLIENT_ADDRESS_ATTRIBUTE);
+        if (cached instanceof String) {
+            return (String) cached;
+        }
+        String clientAddress = extractClientAddress(request);
+        if (clientAddress != null) {
+            request.setAttribute(CLIENT_ADDRESS_ATTRIBUTE, clientAddress);
+        }
+        return clientAddress;
+    }
+
+    /**
+     * Determines whether the request was received directly from a trusted
+     * proxy, so headers describing the original client may be believed.
+     */
+    public boolean isFromTrustedProxy(HttpServletRequest request)
+    {
+        return isTrustedPeer(request.getRemoteAddr());
+    }
+
+    private boolean isTrustedPeer(String remoteAddr)
+    {
+        if (remoteAddr == null) {
+            return true;
         }
-        if (request.getRemoteAddr() != null) {
-            builder.add(request.getRemoteAddr());
+        // Connections over a Unix domain socket have no remote address
+        if (remoteAddr.isEmpty()) {
+            return unixSocketTrusted;
         }
-        String clientAddress = null;
-        ImmutableList<String> clientAddresses = builder.build();
-        for (String address : Lists.reverse(clientAddresses)) {
-            try {
-                if (!trustedNetworks.containsAddress(InetAddresses.forString(address))) {
-                    clientAddress = address;
-                    break;
+        return classify(remoteAddr, 0, remoteAddr.length()) == TRUSTED;
+    }
+
+    private String extractClientAddress(HttpServletRequest request)
+    {
+        String remoteAddr = request.getRemoteAddr();
+        if (!isTrustedPeer(remoteAddr)) {
+            return remoteAddr;
+        }
+
+        // Walk the forwarded hops from the nearest to the farthest, scanning each
+        // header value in place rather than splitting it
+        String candidate = remoteAddr;
+        int candidateStart = 0;
+        int candidateEnd = remoteAddr == null ? 0 : remoteAddr.length();
+        Enumeration<String> e = request.getHeaders("X-FORWARDED-FOR");
+        String lastHeader = null;
+        List<String> earlierHeaders = null;
+        while (e != null && e.hasMoreElements()) {
+            if (lastHeader != null) {
+                if (earlierHeaders == null) {
+                    earlierHeaders = new ArrayList<>();
                 }
-                clientAddress = address;
+                earlierHeaders.add(lastHeader);
             }
-            catch (IllegalArgumentException ignored) {
-                break;
+            lastHeader = e.nextElement();
+        }
+        int earlierCount = earlierHeaders == null ? 0 : earlierHeaders.size();
+        for (int i = lastHeader == null ? -1 : earlierCount; i >= 0; i--) {
+            String header = i == earlierCount ? lastHeader : earlierHeaders.get(i);
+            int end = header.length();
+            while (end > 0) {
+                int start = header.lastIndexOf(',', end - 1) + 1;
+                int tokenStart = start;
+                int tokenEnd = end;
+                while (tokenStart < tokenEnd && Character.isWhitespace(header.charAt(tokenStart))) {
+                    tokenStart++;
+                }
+                while (tokenEnd > tokenStart && Character.isWhitespace(header.charAt(tokenEnd - 1))) {
+                    tokenEnd--;
+                }
+                end = start - 1;
+                if (tokenStart == tokenEnd) {
+                    continue;
+                }
+
+                int classification = classify(header, tokenStart, tokenEnd);
+                if (classification == INVALID) {
+                    return substring(candidate, candidateStart, candidateEnd);
+                }
+                candidate = header;
+                candidateStart = tokenStart;
+                candidateEnd = tokenEnd;
+                if (classification == UNTRUSTED) {
+                    return substring(candidate, candidateStart, candidateEnd);
+                }
             }
         }
-        if (clientAddress == null) {
-            clientAddress = request.getRemoteAddr();
+        return substring(candidate, candidateStart, candidateEnd);
+    }
+
+    private int classify(String string, int start, int end)
+    {
+        long ipv4 = parseIpv4(string, start, end);
+        if (ipv4 >= 0) {
+            return trustedNetworks.containsIpv4Address((int) ipv4) ? TRUSTED : UNTRUSTED;
         }
-        return clientAddress;
+        int colon = string.indexOf(':', start);
+        if (colon < 0 || colon >= end) {
+            return INVALID;
+        }
+        try {
+            return trustedNetworks.containsAddress(InetAddresses.forString(string.substring(start, end))) ? TRUSTED : UNTRUSTED;
+        }
+        catch (IllegalArgumentException ignored) {
+            return INVALID;
+        }
+    }
+
+    private static String substring(String string, int start, int end)
+    {
+        if (string == null) {
+            return null;
+        }
+        return string.substring(start, end);
     }
 }
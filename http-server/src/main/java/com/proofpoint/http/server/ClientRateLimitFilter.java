@@ -0,0 +1,239 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.proofpoint.reporting.Gauge;
+import com.proofpoint.stats.CounterStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.http.server.HealthCheckPaths.isHealthCheckPath;
+import static java.lang.Math.max;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Limits the request rate of each client, keyed by the client address or by the
+ * value of a configured request header. The header is only used for requests
+ * received from a trusted proxy, as otherwise a client could pick any number of
+ * keys for itself.
+ * <p>
+ * Each client has a token bucket implemented with the generic cell rate
+ * algorithm, so the entire state of a bucket is a single atomically updated
+ * theoretical arrival time. A bucket whose theoretical arrival time has passed
+ * is full and indistinguishable from a new one, so such idle buckets are
+ * discarded whenever the number of tracked clients exceeds the configured
+ * maximum. If every tracked client is active, additional clients share a single
+ * bucket, so clients cannot escape the limit by presenting new keys.
+ */
+public class ClientRateLimitFilter
+        implements Filter
+{
+    private static final int TOP_OFFENDER_COUNT = 10;
+    private static final long MIN_EVICTION_INTERVAL_NANOS = SECONDS.toNanos(1);
+
+    private final ClientAddressExtractor clientAddressExtractor;
+    @Nullable
+    private final String keyHeader;
+    private final long emissionInterval;
+    private final long burstTolerance;
+    private final int maxClients;
+    private final Ticker ticker;
+    private final ConcurrentMap<String, ClientBucket> buckets = new ConcurrentHashMap<>();
+    private final ClientBucket overflowBucket;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private volatile long nextEviction;
+    private final CounterStat rejected = new CounterStat();
+    private final CounterStat untracked = new CounterStat();
+
+    ClientRateLimitFilter(ClientAddressExtractor clientAddressExtractor, @Nullable String keyHeader, int ratePerSecond, int burst, int maxClients)
+    {
+        this(clientAddressExtractor, keyHeader, ratePerSecond, burst, maxClients, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ClientRateLimitFilter(ClientAddressExtractor clientAddressExtractor, @Nullable String keyHeader, int ratePerSecond, int burst, int maxClients, Ticker ticker)
+    {
+        checkArgument(ratePerSecond >= 1, "ratePerSecond must be at least 1");
+        checkArgument(burst >= 1, "burst must be at least 1");
+        checkArgument(maxClients >= 1, "maxClients must be at least 1");
+        this.clientAddressExtractor = requireNonNull(clientAddressExtractor, "clientAddressExtractor is null");
+        this.keyHeader = keyHeader;
+        emissionInterval = SECONDS.toNanos(1) / ratePerSecond;
+        burstTolerance = emissionInterval * (burst - 1);
+        this.maxClients = maxClients;
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        nextEviction = ticker.read();
+        overflowBucket = new ClientBucket(nextEviction);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig)
+    {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException
+    {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        if (isHealthCheckPath(request.getPathInfo())) {
+            chain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        long retryAfterNanos = tryAcquire(clientKey(request));
+        if (retryAfterNanos > 0) {
+            rejected.add(1);
+            HttpServletResponse response = (HttpServletResponse) servletResponse;
+            response.setStatus(429);
+            response.setIntHeader("Retry-After", (int) max(1, (retryAfterNanos + SECONDS.toNanos(1) - 1) / SECONDS.toNanos(1)));
+            response.setContentLength(0);
+            return;
+        }
+
+        chain.doFilter(servletRequest, servletResponse);
+    }
+
+    @Override
+    public void destroy()
+    {
+    }
+
+    private String clientKey(HttpServletRequest request)
+    {
+        if (keyHeader != null && clientAddressExtractor.isFromTrustedProxy(request)) {
+            String key = request.getHeader(keyHeader);
+            if (key != null) {
+                return key;
+            }
+        }
+        return clientAddressExtractor.clientAddressFor(request);
+    }
+
+    /**
+     * @return zero if the request is permitted, otherwise the number of
+     * nanoseconds after which a request from the client would be permitted
+     */
+    @VisibleForTesting
+    long tryAcquire(String key)
+    {
+        long now = ticker.read();
+        ClientBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxClients) {
+                evictIdle(now);
+                if (buckets.size() >= maxClients) {
+                    untracked.add(1);
+                    bucket = overflowBucket;
+                }
+            }
+            if (bucket == null) {
+                bucket = buckets.computeIfAbsent(key, k -> new ClientBucket(now));
+            }
+        }
+
+        for (;;) {
+            long arrival = bucket.theoreticalArrival.get();
+            long earliest = max(arrival, now);
+            long waitTime = earliest - burstTolerance - now;
+            if (waitTime > 0) {
+                bucket.rejected.increment();
+                return waitTime;
+            }
+            if (bucket.theoreticalArrival.compareAndSet(arrival, earliest + emissionInterval)) {
+                return 0;
+            }
+        }
+    }
+
+    private void evictIdle(long now)
+    {
+        // Bound the cost of scanning when every tracked client is active
+        if (now - nextEviction < 0 || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            buckets.values().removeIf(bucket -> bucket.theoreticalArrival.get() <= now);
+            nextEviction = now + MIN_EVICTION_INTERVAL_NANOS;
+        }
+        finally {
+            evicting.set(false);
+        }
+    }
+
+    @Nested
+    public CounterStat getRejected()
+    {
+        return rejected;
+    }
+
+    @Nested
+    public CounterStat getUntracked()
+    {
+        return untracked;
+    }
+
+    @Gauge
+    public int getTrackedClients()
+    {
+        return buckets.size();
+    }
+
+    @Managed
+    public String getTopOffenders()
+    {
+        return buckets.entrySet().stream()
+                .filter(entry -> entry.getValue().rejected.sum() > 0)
+                .sorted(Comparator.comparingLong((Entry<String, ClientBucket> entry) -> entry.getValue().rejected.sum()).reversed())
+                .limit(TOP_OFFENDER_COUNT)
+                .map(entry -> entry.getKey() + "=" + entry.getValue().rejected.sum())
+                .collect(joining("\n"));
+    }
+
+    private static class ClientBucket
+    {
+        private final AtomicLong theoreticalArrival;
+        private final LongAdder rejected = new LongAdder();
+
+        ClientBucket(long now)
+        {
+            theoreticalArrival = new AtomicLong(now);
+        }
+    }
+}
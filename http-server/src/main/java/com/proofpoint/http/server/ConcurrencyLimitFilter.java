@@ -0,0 +1,264 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.proofpoint.reporting.Gauge;
+import com.proofpoint.stats.CounterStat;
+import com.proofpoint.units.Duration;
+import org.eclipse.jetty.server.Request;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.http.server.HealthCheckPaths.isHealthCheckPath;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Admission filter that sheds load before the handler does any work.
+ * <p>
+ * Maintains a concurrency limit using additive-increase/multiplicative-decrease
+ * driven by the latency gradient: a short-window moving average of request
+ * latency is compared with a long-window one. The limit grows by one while the
+ * short-window average stays within {@link #LATENCY_TOLERANCE} times the
+ * long-window average and the server is using at least half of the limit, and
+ * shrinks by {@link #BACKOFF_RATIO} when it does not. Because both averages
+ * are taken over the same mix of requests, resources with very different
+ * latencies do not by themselves look like congestion. Requests arriving while
+ * the limit is reached, or which waited in the thread pool queue for longer
+ * than the configured maximum, are rejected with an empty 503 response.
+ * <p>
+ * The health check resources are never rejected. The filter is not installed
+ * on the admin connector.
+ */
+public class ConcurrencyLimitFilter
+        implements Filter
+{
+    private static final int INITIAL_LIMIT = 20;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double SHORT_WINDOW_WEIGHT = 0.1;
+    private static final double LONG_WINDOW_WEIGHT = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+    @Nullable
+    private final Long maxQueuedTimeMillis;
+    private final Ticker ticker;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final CounterStat rejected = new CounterStat();
+
+    private volatile int limit;
+
+    @GuardedBy("this")
+    private long samples;
+    @GuardedBy("this")
+    private double shortLatency;
+    @GuardedBy("this")
+    private double longLatency;
+    @GuardedBy("this")
+    private long lastDecrease;
+
+    ConcurrencyLimitFilter(int minLimit, int maxLimit, @Nullable Duration maxQueuedTime)
+    {
+        this(minLimit, maxLimit, maxQueuedTime, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ConcurrencyLimitFilter(int minLimit, int maxLimit, @Nullable Duration maxQueuedTime, Ticker ticker)
+    {
+        checkArgument(minLimit >= 1, "minLimit must be at least 1");
+        checkArgument(maxLimit >= minLimit, "maxLimit is less than minLimit");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueuedTimeMillis = maxQueuedTime == null ? null : maxQueuedTime.roundTo(MILLISECONDS);
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        limit = max(minLimit, min(maxLimit, INITIAL_LIMIT));
+        lastDecrease = ticker.read();
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig)
+    {
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException
+    {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        if (isHealthCheckPath(request.getPathInfo())) {
+            chain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        if (maxQueuedTimeMillis != null && queuedTimeMillis(request) > maxQueuedTimeMillis) {
+            reject((HttpServletResponse) servletResponse);
+            return;
+        }
+
+        if (!tryAcquire()) {
+            reject((HttpServletResponse) servletResponse);
+            return;
+        }
+
+        long start = ticker.read();
+        boolean async = false;
+        try {
+            chain.doFilter(servletRequest, servletResponse);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingAsyncListener(start));
+                async = true;
+            }
+        }
+        finally {
+            if (!async) {
+                release(start);
+            }
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+    }
+
+    @VisibleForTesting
+    boolean tryAcquire()
+    {
+        for (;;) {
+            int current = inflight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void release(long start)
+    {
+        long now = ticker.read();
+        int current = inflight.getAndDecrement();
+        updateLimit(start, now - start, current);
+    }
+
+    private synchronized void updateLimit(long start, long latency, int inflightAtCompletion)
+    {
+        // Until enough samples have been seen, each average is the mean of all samples
+        ++samples;
+        shortLatency += (latency - shortLatency) * max(SHORT_WINDOW_WEIGHT, 1.0 / samples);
+        longLatency += (latency - longLatency) * max(LONG_WINDOW_WEIGHT, 1.0 / samples);
+
+        if (shortLatency > longLatency * LATENCY_TOLERANCE) {
+            // Requests that started before the previous decrease reflect the old limit
+            if (start > lastDecrease) {
+                limit = max(minLimit, (int) (limit * BACKOFF_RATIO));
+                lastDecrease = ticker.read();
+            }
+        }
+        else if (inflightAtCompletion * 2 >= limit) {
+            limit = min(maxLimit, limit + 1);
+        }
+    }
+
+    private void reject(HttpServletResponse response)
+    {
+        rejected.add(1);
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setContentLength(0);
+    }
+
+    private static long queuedTimeMillis(HttpServletRequest request)
+    {
+        Request baseRequest = Request.getBaseRequest(request);
+        if (baseRequest == null || baseRequest.getTimeStamp() == 0) {
+            return 0;
+        }
+        return System.currentTimeMillis() - baseRequest.getTimeStamp();
+    }
+
+    @Gauge
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    @Gauge
+    public int getInflight()
+    {
+        return inflight.get();
+    }
+
+    @Nested
+    public CounterStat getRejected()
+    {
+        return rejected;
+    }
+
+    private class ReleasingAsyncListener
+            implements AsyncListener
+    {
+        private final long start;
+
+        ReleasingAsyncListener(long start)
+        {
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+            release(start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import java.util.Set;
+
+final class HealthCheckPaths
+{
+    private static final Set<String> HEALTH_CHECK_PATHS = Set.of("/inrotation.txt", "/liveness");
+
+    private HealthCheckPaths()
+    {
+    }
+
+    static boolean isHealthCheckPath(String path)
+    {
+        return path != null && HEALTH_CHECK_PATHS.contains(path);
+    }
+}
@@ -30,13 +30,16 @@ import java.security.Principal;
 import java.time.Instant;
 import java.util.Map;
 
+import static com.proofpoint.http.server.ThreadResourceUsage.ALLOCATED_BYTES_ATTRIBUTE;
+import static com.proofpoint.http.server.ThreadResourceUsage.CPU_TIME_ATTRIBUTE;
 import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
 import static java.lang.Math.max;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 @JsonPropertyOrder({ "t", "tt", "ip", "m", "u", "user",
         "c", "qs", "rs",
-        "td", "tq", "tr", "rc", "tl"})
+        "td", "tq", "tr", "rc", "tl", "cpu", "ab"})
 class HttpRequestEvent
 {
     static HttpRequestEvent createHttpRequestEvent(
@@ -86,7 +89,9 @@ class HttpRequestEvent
                 responseContentInterarrivalStats,
                 request.getHttpVersion().toString(),
                 sslSession == null ? null : sslSession.getProtocol(),
-                sslSession == null ? null : sslSession.getCipherSuite()
+                sslSession == null ? null : sslSession.getCipherSuite(),
+                (Long) request.getAttribute(CPU_TIME_ATTRIBUTE),
+                (Long) request.getAttribute(ALLOCATED_BYTES_ATTRIBUTE)
         );
     }
 
@@ -108,6 +113,8 @@ class HttpRequestEvent
     private final String protocolVersion;
     private final String tlsProtocolVersion;
     private final String tlsCipherSuite;
+    private final Long cpuTimeNanos;
+    private final Long allocatedBytes;
 
     private HttpRequestEvent(
             Instant timeStamp,
@@ -127,7 +134,9 @@ class HttpRequestEvent
             DoubleSummaryStats responseContentInterarrivalStats,
             String protocolVersion,
             String tlsProtocolVersion,
-            String tlsCipherSuite)
+            String tlsCipherSuite,
+            @Nullable Long cpuTimeNanos,
+            @Nullable Long allocatedBytes)
     {
         this.timeStamp = timeStamp;
         this.traceToken = traceToken;
@@ -147,6 +156,8 @@ class HttpRequestEvent
         this.protocolVersion = protocolVersion;
         this.tlsProtocolVersion = tlsProtocolVersion;
         this.tlsCipherSuite = tlsCipherSuite;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.allocatedBytes = allocatedBytes;
     }
 
     @JsonProperty("t")
@@ -270,4 +281,21 @@ class HttpRequestEvent
     {
         return tlsCipherSuite;
     }
+
+    @Nullable
+    @JsonProperty("cpu")
+    public Duration getCpuTime()
+    {
+        if (cpuTimeNanos == null) {
+            return null;
+        }
+        return new Duration(cpuTimeNanos, NANOSECONDS);
+    }
+
+    @Nullable
+    @JsonProperty("ab")
+    public Long getAllocatedBytes()
+    {
+        return allocatedBytes;
+    }
 }
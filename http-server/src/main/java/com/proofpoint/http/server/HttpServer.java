@@ -46,6 +46,7 @@ import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.unixsocket.UnixSocketConnector;
 import org.eclipse.jetty.util.security.Constraint;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
@@ -104,6 +105,9 @@ public class HttpServer
     private final MaxGauge busyThreads = new MaxGauge();
     private final RequestLog requestLog;
     private final ClientAddressExtractor clientAddressExtractor;
+    private final ConcurrencyLimitFilter concurrencyLimitFilter;
+    private final ClientRateLimitFilter clientRateLimitFilter;
+    private final SlowRequestWatchdog slowRequestWatchdog;
 
     private final HttpServerInfo httpServerInfo;
     private final NodeInfo nodeInfo;
@@ -140,6 +144,29 @@ public class HttpServer
         requireNonNull(detailedRequestStats, "detailedRequestStats is null");
         this.requestLog = requestLog;
         this.clientAddressExtractor = requireNonNull(clientAddressExtractor, "clientAddressExtractor is null");
+        if (config.isConcurrencyLimitEnabled()) {
+            concurrencyLimitFilter = new ConcurrencyLimitFilter(config.getConcurrencyLimitMin(), config.getConcurrencyLimitMax(), config.getMaxQueuedTime());
+        }
+        else {
+            concurrencyLimitFilter = null;
+        }
+        if (config.isSlowRequestWatchdogEnabled()) {
+            slowRequestWatchdog = new SlowRequestWatchdog(config.getSlowRequestThreshold(), config.getSlowRequestMaxLogsPerMinute());
+        }
+        else {
+            slowRequestWatchdog = null;
+        }
+        if (config.isClientRateLimitEnabled()) {
+            clientRateLimitFilter = new ClientRateLimitFilter(
+                    clientAddressExtractor,
+                    config.getClientRateLimitKeyHeader(),
+                    config.getClientRateLimitRate(),
+                    config.getClientRateLimitBurst(),
+                    config.getClientRateLimitMaxClients());
+        }
+        else {
+            clientRateLimitFilter = null;
+        }
 
         QueuedThreadPool threadPool = new QueuedThreadPool(config.getMaxThreads())
         {
@@ -175,6 +202,8 @@ public class HttpServer
          *    |--- statistics handler
          *           |--- context handler
          *           |       |--- (no) admin filter
+         *           |       |--- client rate limit filter (if enabled)
+         *           |       |--- concurrency limit filter (if enabled)
          *           |       |--- timing filter
          *           |       |--- query string filter
          *           |       |--- trace token filter
@@ -203,7 +232,7 @@ public class HttpServer
             handlers.addHandler(gzipHandler);
         }
 
-        handlers.addHandler(createServletContext(theServlet, parameters, false, filters, queryStringFilter, loginService, nodeInfo, "http", "https"));
+        handlers.addHandler(createServletContext(theServlet, parameters, false, filters, queryStringFilter, loginService, nodeInfo, "http", "https", "unix-socket"));
 
         RequestLogHandler statsRecorder = new RequestLogHandler();
         statsRecorder.setRequestLog(new StatsRecordingHandler(stats, detailedRequestStats));
@@ -284,10 +313,16 @@ public class HttpServer
             // Filter out any /admin JAX-RS resources that were implicitly bound.
             // May be removed once we require explicit JAX-RS binding.
             context.addFilter(new FilterHolder(new AdminFilter(false)), "/*", null);
+            if (clientRateLimitFilter != null) {
+                context.addFilter(new FilterHolder(clientRateLimitFilter), "/*", null);
+            }
+            if (concurrencyLimitFilter != null) {
+                context.addFilter(new FilterHolder(concurrencyLimitFilter), "/*", null);
+            }
         }
-        context.addFilter(new FilterHolder(new TimingFilter()), "/*", null);
+        context.addFilter(new FilterHolder(new TimingFilter(isAdmin ? 0 : config.getResourceUsageSampleInterval())), "/*", null);
         context.addFilter(new FilterHolder(queryStringFilter), "/*", null);
-        context.addFilter(new FilterHolder(new TraceTokenFilter(nodeInfo.getInternalIp(), clientAddressExtractor)), "/*", null);
+        context.addFilter(new FilterHolder(new TraceTokenFilter(nodeInfo.getInternalIp(), clientAddressExtractor, isAdmin ? null : slowRequestWatchdog)), "/*", null);
 
         // -- gzip handler
         context.setGzipHandler(new GzipHandler());
@@ -358,11 +393,8 @@ public class HttpServer
         // disable async error notifications to work around https://github.com/jersey/jersey/issues/3691
         baseHttpConfiguration.setNotifyRemoteAsyncErrors(false);
 
-        // register a channel listener if logging is enabled
-        HttpServerChannelListener channelListener = null;
-        if (requestLog != null) {
-            channelListener = new HttpServerChannelListener(requestLog, clientAddressExtractor);
-        }
+        // register a channel listener to record request phase timings and log requests
+        HttpServerChannelListener channelListener = new HttpServerChannelListener(requestLog, clientAddressExtractor, stats, slowRequestWatchdog);
 
         // set up HTTP connector
         ServerConnector httpConnector;
@@ -397,9 +429,7 @@ public class HttpServer
             httpConnector.setHost(nodeInfo.getBindIp().getHostAddress());
             httpConnector.setAcceptQueueSize(config.getHttpAcceptQueueSize());
 
-            if (channelListener != null) {
-                httpConnector.addBean(channelListener);
-            }
+            httpConnector.addBean(channelListener);
 
             server.addConnector(httpConnector);
         }
@@ -424,13 +454,39 @@ public class HttpServer
             httpsConnector.setHost(nodeInfo.getBindIp().getHostAddress());
             httpsConnector.setAcceptQueueSize(config.getHttpAcceptQueueSize());
 
-            if (channelListener != null) {
-                httpsConnector.addBean(channelListener);
-            }
+            httpsConnector.addBean(channelListener);
 
             server.addConnector(httpsConnector);
         }
 
+        // set up Unix domain socket connector for co-located clients
+        if (config.getUnixSocketPath() != null) {
+            HttpConfiguration unixSocketConfiguration = new HttpConfiguration(baseHttpConfiguration);
+            HttpConnectionFactory http1 = new HttpConnectionFactory(unixSocketConfiguration);
+            HTTP2CServerConnectionFactory http2c = new HTTP2CServerConnectionFactory(unixSocketConfiguration);
+            http2c.setInitialSessionRecvWindow(toIntExact(config.getHttp2InitialSessionReceiveWindowSize().toBytes()));
+            http2c.setInitialStreamRecvWindow(toIntExact(config.getHttp2InitialStreamReceiveWindowSize().toBytes()));
+            http2c.setMaxConcurrentStreams(config.getHttp2MaxConcurrentStreams());
+            http2c.setInputBufferSize(toIntExact(config.getHttp2InputBufferSize().toBytes()));
+            http2c.setStreamIdleTimeout(config.getHttp2StreamIdleTimeout().toMillis());
+            UnixSocketConnector unixSocketConnector = new UnixSocketConnector(
+                    server,
+                    null,
+                    null,
+                    null,
+                    requireNonNullElse(config.getHttpSelectorThreads(), -1),
+                    http1,
+                    http2c);
+            unixSocketConnector.setName("unix-socket");
+            unixSocketConnector.setUnixSocket(config.getUnixSocketPath());
+            unixSocketConnector.setIdleTimeout(config.getNetworkMaxIdleTime().toMillis());
+            unixSocketConnector.setAcceptQueueSize(config.getHttpAcceptQueueSize());
+
+            unixSocketConnector.addBean(channelListener);
+
+            server.addConnector(unixSocketConnector);
+        }
+
         // set up NIO-based Admin connector
         ServerConnector adminConnector;
         if (config.isAdminEnabled()) {
@@ -474,6 +530,9 @@ public class HttpServer
         }
 
         server.start();
+        if (slowRequestWatchdog != null) {
+            slowRequestWatchdog.start();
+        }
         // clear the error handler registered by start()
         if (!registerErrorHandler) {
             server.setErrorHandler(null);
@@ -485,6 +544,9 @@ public class HttpServer
     public void stop()
             throws Exception
     {
+        if (slowRequestWatchdog != null) {
+            slowRequestWatchdog.stop();
+        }
         server.stop();
         if (requestLog != null) {
             requestLog.stop();
@@ -503,6 +565,27 @@ public class HttpServer
         return busyThreads;
     }
 
+    @Nested
+    @Nullable
+    public ConcurrencyLimitFilter getConcurrencyLimit()
+    {
+        return concurrencyLimitFilter;
+    }
+
+    @Nested
+    @Nullable
+    public ClientRateLimitFilter getClientRateLimit()
+    {
+        return clientRateLimitFilter;
+    }
+
+    @Nested
+    @Nullable
+    public SlowRequestWatchdog getSlowRequestWatchdog()
+    {
+        return slowRequestWatchdog;
+    }
+
     private static Set<X509Certificate> loadAllX509Certificates(HttpServerConfig config)
     {
         ImmutableSet.Builder<X509Certificate> certificates = ImmutableSet.builder();
@@ -13,134 +13,223 @@
  */
 package com.proofpoint.http.server;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 import org.eclipse.jetty.server.HttpChannel.Listener;
 import org.eclipse.jetty.server.Request;
 
 import javax.annotation.Nullable;
 import javax.net.ssl.SSLSession;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.DoubleSummaryStatistics;
-import java.util.List;
 
 import static com.proofpoint.http.server.HttpRequestEvent.createHttpRequestEvent;
+import static java.lang.Math.max;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+/**
+ * Records the timing of each phase of a request into {@link RequestStats}
+ * and, if request logging is enabled, logs the request. The timestamps of a
+ * request are kept in a single {@link RequestTiming} request attribute.
+ */
 final class HttpServerChannelListener
         implements Listener
 {
-    private static final String REQUEST_BEGIN_ATTRIBUTE = HttpServerChannelListener.class.getName() + ".begin";
-    private static final String REQUEST_BEGIN_TO_DISPATCH_ATTRIBUTE = HttpServerChannelListener.class.getName() + ".begin_to_dispatch";
-    private static final String REQUEST_BEGIN_TO_END_ATTRIBUTE = HttpServerChannelListener.class.getName() + ".begin_to_end";
-    private static final String RESPONSE_CONTENT_TIMESTAMPS_ATTRIBUTE = HttpServerChannelListener.class.getName() + ".response_content_timestamps";
+    private static final String REQUEST_TIMING_ATTRIBUTE = HttpServerChannelListener.class.getName() + ".timing";
     private static final String REQUEST_SSL_SESSION_ATTRIBUTE = "org.eclipse.jetty.servlet.request.ssl_session";
 
+    @Nullable
     private final RequestLog logger;
     private final ClientAddressExtractor clientAddressExtractor;
+    private final RequestStats stats;
+    @Nullable
+    private final SlowRequestWatchdog slowRequestWatchdog;
+    private final Ticker ticker;
 
-    HttpServerChannelListener(RequestLog logger, ClientAddressExtractor clientAddressExtractor)
+    HttpServerChannelListener(@Nullable RequestLog logger, ClientAddressExtractor clientAddressExtractor, RequestStats stats, @Nullable SlowRequestWatchdog slowRequestWatchdog)
     {
-        this.logger = requireNonNull(logger, "logger is null");
+        this(logger, clientAddressExtractor, stats, slowRequestWatchdog, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    HttpServerChannelListener(@Nullable RequestLog logger, ClientAddressExtractor clientAddressExtractor, RequestStats stats, @Nullable SlowRequestWatchdog slowRequestWatchdog, Ticker ticker)
+    {
+        this.logger = logger;
         this.clientAddressExtractor = requireNonNull(clientAddressExtractor, "clientAddressExtractor is null");
+        this.stats = requireNonNull(stats, "stats is null");
+        this.slowRequestWatchdog = slowRequestWatchdog;
+        this.ticker = requireNonNull(ticker, "ticker is null");
     }
 
     @Override
     public void onRequestBegin(Request request)
     {
-        request.setAttribute(REQUEST_BEGIN_ATTRIBUTE, System.nanoTime());
+        request.setAttribute(REQUEST_TIMING_ATTRIBUTE, new RequestTiming(ticker.read()));
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void onBeforeDispatch(Request request)
     {
-        long requestBeginTime = getRequestBeginTime(request);
-        request.setAttribute(REQUEST_BEGIN_TO_DISPATCH_ATTRIBUTE, System.nanoTime() - requestBeginTime);
+        RequestTiming timing = getTiming(request);
+        long now = ticker.read();
+        timing.beginToDispatch = now - timing.begin;
+        // async redispatches are part of the handler phase
+        if (!timing.dispatched) {
+            timing.dispatched = true;
+            timing.dispatch = now;
+        }
+        if (slowRequestWatchdog != null) {
+            slowRequestWatchdog.dispatched(request, timing.begin);
+        }
+    }
+
+    @Override
+    public void onAfterDispatch(Request request)
+    {
+        if (slowRequestWatchdog != null) {
+            slowRequestWatchdog.undispatched();
+        }
+    }
+
+    @Override
+    public void onRequestContent(Request request, ByteBuffer content)
+    {
+        RequestTiming timing = getTiming(request);
+        if (!timing.requestContentReceived) {
+            timing.requestContentReceived = true;
+            timing.requestFirstContent = ticker.read();
+        }
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void onRequestEnd(Request request)
     {
-        long requestBeginTime = getRequestBeginTime(request);
-        request.setAttribute(REQUEST_BEGIN_TO_END_ATTRIBUTE, System.nanoTime() - requestBeginTime);
+        RequestTiming timing = getTiming(request);
+        timing.ended = true;
+        timing.beginToEnd = ticker.read() - timing.begin;
     }
 
-    private long getRequestBeginTime(Request request)
+    private RequestTiming getTiming(Request request)
     {
-        Object requestBeginAttribute = request.getAttribute(REQUEST_BEGIN_ATTRIBUTE);
-        if (requestBeginAttribute != null) {
-            return (long) (Long) requestBeginAttribute;
+        RequestTiming timing = (RequestTiming) request.getAttribute(REQUEST_TIMING_ATTRIBUTE);
+        if (timing == null) {
+            timing = new RequestTiming(ticker.read());
+            request.setAttribute(REQUEST_TIMING_ATTRIBUTE, timing);
         }
-        long currentTime = System.nanoTime();
-        request.setAttribute(REQUEST_BEGIN_ATTRIBUTE, currentTime);
-        return currentTime;
+        return timing;
     }
 
     @Override
     public void onResponseBegin(Request request)
     {
-        if (request.getAttribute(REQUEST_BEGIN_TO_END_ATTRIBUTE) == null) {
+        RequestTiming timing = getTiming(request);
+        if (!timing.ended) {
             onRequestEnd(request);
         }
-        request.setAttribute(RESPONSE_CONTENT_TIMESTAMPS_ATTRIBUTE, new ArrayList<Long>());
+        timing.responseBegun = true;
+        timing.responseBegin = ticker.read();
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void onResponseContent(Request request, ByteBuffer content)
     {
-        List<Long> contentTimestamps = (List<Long>) request.getAttribute(RESPONSE_CONTENT_TIMESTAMPS_ATTRIBUTE);
-        contentTimestamps.add(System.nanoTime());
+        RequestTiming timing = getTiming(request);
+        long now = ticker.read();
+        if (!timing.responseContentSent) {
+            timing.responseContentSent = true;
+            timing.responseFirstContent = now;
+        }
+        else if (logger != null) {
+            if (timing.responseContentIntervals == null) {
+                timing.responseContentIntervals = new DoubleSummaryStatistics();
+            }
+            timing.responseContentIntervals.accept(NANOSECONDS.toMillis(now - timing.responseLastContent));
+        }
+        timing.responseLastContent = now;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void onComplete(Request request)
     {
-        List<Long> contentTimestamps = (List<Long>) request.getAttribute(RESPONSE_CONTENT_TIMESTAMPS_ATTRIBUTE);
+        RequestTiming timing = getTiming(request);
+        recordPhases(timing, ticker.read());
+        if (logger != null) {
+            logRequest(request, timing, logger);
+        }
+    }
+
+    private void recordPhases(RequestTiming timing, long completeTime)
+    {
+        if (!timing.responseBegun) {
+            // request failed before a response could be generated
+            return;
+        }
+        // response headers without content are the first byte
+        long firstContent = timing.responseContentSent ? timing.responseFirstContent : timing.responseBegin;
+
+        long requestRead = 0;
+        if (timing.requestContentReceived) {
+            long requestEnd = timing.ended ? timing.begin + timing.beginToEnd : timing.responseBegin;
+            requestRead = max(0, requestEnd - timing.requestFirstContent);
+        }
+
+        if (timing.dispatched) {
+            stats.recordDispatch(timing.dispatch - timing.begin, timing.responseBegin - timing.dispatch);
+        }
+        stats.recordTransfer(
+                requestRead,
+                completeTime - timing.responseBegin,
+                firstContent - timing.begin);
+    }
+
+    private void logRequest(Request request, RequestTiming timing, RequestLog logger)
+    {
         long firstToLastContentTimeInMillis = -1;
-        if (contentTimestamps.size() > 0) {
-            firstToLastContentTimeInMillis = NANOSECONDS.toMillis(contentTimestamps.get(contentTimestamps.size() - 1) - contentTimestamps.get(0));
+        if (timing.responseContentSent) {
+            firstToLastContentTimeInMillis = NANOSECONDS.toMillis(timing.responseLastContent - timing.responseFirstContent);
         }
-        long beginToDispatchMillis = NANOSECONDS.toMillis((Long) request.getAttribute(REQUEST_BEGIN_TO_DISPATCH_ATTRIBUTE));
-        long beginToEndMillis = NANOSECONDS.toMillis((Long) request.getAttribute(REQUEST_BEGIN_TO_END_ATTRIBUTE));
         SSLSession sslSession = (SSLSession) request.getAttribute(REQUEST_SSL_SESSION_ATTRIBUTE);
         HttpRequestEvent event = createHttpRequestEvent(
                 request,
                 request.getResponse(),
                 sslSession,
                 System.currentTimeMillis(),
-                beginToDispatchMillis,
-                beginToEndMillis,
+                NANOSECONDS.toMillis(timing.beginToDispatch),
+                NANOSECONDS.toMillis(timing.beginToEnd),
                 firstToLastContentTimeInMillis,
-                processContentTimestamps(contentTimestamps),
+                // no content (HTTP 204) or there was a single response chunk (so no interarrival time)
+                timing.responseContentIntervals == null ? null : new DoubleSummaryStats(timing.responseContentIntervals),
                 clientAddressExtractor
         );
         logger.log(event);
     }
 
     /**
-     * Calculate the summary statistics for the interarrival time of the onResponseContent callbacks.
+     * Timestamps of the phases of one request, from the request's ticker.
      */
-    @Nullable
-    private static DoubleSummaryStats processContentTimestamps(List<Long> contentTimestamps)
+    private static final class RequestTiming
     {
-        requireNonNull(contentTimestamps, "contentTimestamps is null");
-
-        // no content (HTTP 204) or there was a single response chunk (so no interarrival time)
-        if (contentTimestamps.size() == 0 || contentTimestamps.size() == 1) {
-            return null;
-        }
-
-        DoubleSummaryStatistics statistics = new DoubleSummaryStatistics();
-        long previousTimestamp = contentTimestamps.get(0);
-        for (int i = 1; i < contentTimestamps.size(); i++) {
-            long timestamp = contentTimestamps.get(i);
-            statistics.accept(NANOSECONDS.toMillis(timestamp - previousTimestamp));
-            previousTimestamp = timestamp;
+        private final long begin;
+        private long beginToDispatch;
+        private boolean dispatched;
+        private long dispatch;
+        private boolean ended;
+        private long beginToEnd;
+        private boolean requestContentReceived;
+        private long requestFirstContent;
+        private boolean responseBegun;
+        private long responseBegin;
+        private boolean responseContentSent;
+        private long responseFirstContent;
+        private long responseLastContent;
+        // interarrival times of the response content, only kept for the request log
+        @Nullable
+        private DoubleSummaryStatistics responseContentIntervals;
+
+        RequestTiming(long begin)
+        {
+            this.begin = begin;
         }
-        return new DoubleSummaryStats(statistics);
     }
 }
@@ -24,6 +24,7 @@ import com.proofpoint.units.Duration;
 import com.proofpoint.units.MaxDataSize;
 import com.proofpoint.units.MinDataSize;
 import com.proofpoint.units.MinDuration;
+import jakarta.validation.constraints.AssertFalse;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 
@@ -64,6 +65,8 @@ public class HttpServerConfig
     */
     private int httpAcceptQueueSize = 10;
 
+    private String unixSocketPath;
+
     private boolean httpsEnabled = false;
     private int httpsPort = 8443;
     private String keystorePath = "etc/keystore.jks";
@@ -106,6 +109,23 @@ public class HttpServerConfig
 
     private boolean showStackTrace = false;
 
+    private boolean concurrencyLimitEnabled = false;
+    private int concurrencyLimitMin = 10;
+    private int concurrencyLimitMax = 200;
+    private Duration maxQueuedTime;
+
+    private boolean clientRateLimitEnabled = false;
+    private int clientRateLimitRate = 100;
+    private int clientRateLimitBurst = 100;
+    private String clientRateLimitKeyHeader;
+    private int clientRateLimitMaxClients = 10_000;
+
+    private boolean slowRequestWatchdogEnabled = false;
+    private Duration slowRequestThreshold = new Duration(10, SECONDS);
+    private int slowRequestMaxLogsPerMinute = 10;
+
+    private int resourceUsageSampleInterval = 0;
+
     public boolean isHttpEnabled()
     {
         return httpEnabled;
@@ -142,6 +162,19 @@ public class HttpServerConfig
         return this;
     }
 
+    public String getUnixSocketPath()
+    {
+        return unixSocketPath;
+    }
+
+    @Config("http-server.unix-socket.path")
+    @ConfigDescription("Path of a Unix domain socket on which to accept HTTP connections, if any")
+    public HttpServerConfig setUnixSocketPath(String unixSocketPath)
+    {
+        this.unixSocketPath = unixSocketPath;
+        return this;
+    }
+
     public boolean isHttpsEnabled()
     {
         return httpsEnabled;
@@ -577,6 +610,190 @@ public class HttpServerConfig
         return this;
     }
 
+    public boolean isConcurrencyLimitEnabled()
+    {
+        return concurrencyLimitEnabled;
+    }
+
+    @Config("http-server.concurrency-limit.enabled")
+    @ConfigDescription("Reject requests with 503 when over a concurrency limit adapted from observed latency")
+    public HttpServerConfig setConcurrencyLimitEnabled(boolean concurrencyLimitEnabled)
+    {
+        this.concurrencyLimitEnabled = concurrencyLimitEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getConcurrencyLimitMin()
+    {
+        return concurrencyLimitMin;
+    }
+
+    @Config("http-server.concurrency-limit.min")
+    @ConfigDescription("Lower bound of the adaptive concurrency limit")
+    public HttpServerConfig setConcurrencyLimitMin(int concurrencyLimitMin)
+    {
+        this.concurrencyLimitMin = concurrencyLimitMin;
+        return this;
+    }
+
+    @Min(1)
+    public int getConcurrencyLimitMax()
+    {
+        return concurrencyLimitMax;
+    }
+
+    @Config("http-server.concurrency-limit.max")
+    @ConfigDescription("Upper bound of the adaptive concurrency limit")
+    public HttpServerConfig setConcurrencyLimitMax(int concurrencyLimitMax)
+    {
+        this.concurrencyLimitMax = concurrencyLimitMax;
+        return this;
+    }
+
+    public Duration getMaxQueuedTime()
+    {
+        return maxQueuedTime;
+    }
+
+    @Config("http-server.concurrency-limit.max-queued-time")
+    @ConfigDescription("Reject requests that waited longer than this before being dispatched")
+    public HttpServerConfig setMaxQueuedTime(Duration maxQueuedTime)
+    {
+        this.maxQueuedTime = maxQueuedTime;
+        return this;
+    }
+
+    @AssertFalse
+    public boolean isConcurrencyLimitMaxLessThanMin()
+    {
+        return concurrencyLimitMax < concurrencyLimitMin;
+    }
+
+    public boolean isClientRateLimitEnabled()
+    {
+        return clientRateLimitEnabled;
+    }
+
+    @Config("http-server.client-rate-limit.enabled")
+    @ConfigDescription("Reject requests with 429 when a client exceeds its request rate")
+    public HttpServerConfig setClientRateLimitEnabled(boolean clientRateLimitEnabled)
+    {
+        this.clientRateLimitEnabled = clientRateLimitEnabled;
+        return this;
+    }
+
+    @Min(1)
+    public int getClientRateLimitRate()
+    {
+        return clientRateLimitRate;
+    }
+
+    @Config("http-server.client-rate-limit.rate")
+    @ConfigDescription("Sustained number of requests per second permitted for each client")
+    public HttpServerConfig setClientRateLimitRate(int clientRateLimitRate)
+    {
+        this.clientRateLimitRate = clientRateLimitRate;
+        return this;
+    }
+
+    @Min(1)
+    public int getClientRateLimitBurst()
+    {
+        return clientRateLimitBurst;
+    }
+
+    @Config("http-server.client-rate-limit.burst")
+    @ConfigDescription("Number of requests a client may make in a burst above the sustained rate")
+    public HttpServerConfig setClientRateLimitBurst(int clientRateLimitBurst)
+    {
+        this.clientRateLimitBurst = clientRateLimitBurst;
+        return this;
+    }
+
+    public String getClientRateLimitKeyHeader()
+    {
+        return clientRateLimitKeyHeader;
+    }
+
+    @Config("http-server.client-rate-limit.key-header")
+    @ConfigDescription("Request header identifying the client, instead of the client address")
+    public HttpServerConfig setClientRateLimitKeyHeader(String clientRateLimitKeyHeader)
+    {
+        this.clientRateLimitKeyHeader = clientRateLimitKeyHeader;
+        return this;
+    }
+
+    @Min(1)
+    public int getClientRateLimitMaxClients()
+    {
+        return clientRateLimitMaxClients;
+    }
+
+    @Config("http-server.client-rate-limit.max-clients")
+    @ConfigDescription("Maximum number of clients for which rate limiting state is kept")
+    public HttpServerConfig setClientRateLimitMaxClients(int clientRateLimitMaxClients)
+    {
+        this.clientRateLimitMaxClients = clientRateLimitMaxClients;
+        return this;
+    }
+
+    public boolean isSlowRequestWatchdogEnabled()
+    {
+        return slowRequestWatchdogEnabled;
+    }
+
+    @Config("http-server.slow-request-watchdog.enabled")
+    @ConfigDescription("Log the stack traces of requests that take longer than the threshold")
+    public HttpServerConfig setSlowRequestWatchdogEnabled(boolean slowRequestWatchdogEnabled)
+    {
+        this.slowRequestWatchdogEnabled = slowRequestWatchdogEnabled;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("10ms")
+    public Duration getSlowRequestThreshold()
+    {
+        return slowRequestThreshold;
+    }
+
+    @Config("http-server.slow-request-watchdog.threshold")
+    @ConfigDescription("Time after which a request that is still being handled is considered slow")
+    public HttpServerConfig setSlowRequestThreshold(Duration slowRequestThreshold)
+    {
+        this.slowRequestThreshold = slowRequestThreshold;
+        return this;
+    }
+
+    @Min(1)
+    public int getSlowRequestMaxLogsPerMinute()
+    {
+        return slowRequestMaxLogsPerMinute;
+    }
+
+    @Config("http-server.slow-request-watchdog.max-logs-per-minute")
+    @ConfigDescription("Maximum number of slow requests logged per minute")
+    public HttpServerConfig setSlowRequestMaxLogsPerMinute(int slowRequestMaxLogsPerMinute)
+    {
+        this.slowRequestMaxLogsPerMinute = slowRequestMaxLogsPerMinute;
+        return this;
+    }
+
+    @Min(0)
+    public int getResourceUsageSampleInterval()
+    {
+        return resourceUsageSampleInterval;
+    }
+
+    @Config("http-server.resource-usage.sample-interval")
+    @ConfigDescription("Measure the CPU time and allocated bytes of one in this many requests, or none if 0")
+    public HttpServerConfig setResourceUsageSampleInterval(int resourceUsageSampleInterval)
+    {
+        this.resourceUsageSampleInterval = resourceUsageSampleInterval;
+        return this;
+    }
+
     public enum LogFormat
     {
         TSV(DelimitedRequestLog::new),
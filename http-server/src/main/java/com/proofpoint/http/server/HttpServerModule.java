@@ -25,6 +25,7 @@ import javax.servlet.Filter;
 
 import static com.google.inject.multibindings.Multibinder.newSetBinder;
 import static com.proofpoint.configuration.ConfigBinder.bindConfig;
+import static com.proofpoint.reporting.HealthBinder.healthBinder;
 import static com.proofpoint.reporting.ReportBinder.reportBinder;
 import static org.weakref.jmx.guice.ExportBinder.newExporter;
 
@@ -38,6 +39,7 @@ import static org.weakref.jmx.guice.ExportBinder.newExporter;
  * <li>Basic Auth</li>
  * <li>Request logging</li>
  * <li>JMX</li>
+ * <li>JIT warm-up before the server is put in rotation</li>
  * </ul>
  * Configuration options are provided via {@link HttpServerConfig}
  * <p>
@@ -77,6 +79,12 @@ public class HttpServerModule
         bindConfig(binder).bind(HttpServerConfig.class);
         bindConfig(binder).bind(InternalNetworkConfig.class);
 
+        bindConfig(binder).bind(WarmupConfig.class);
+        binder.bind(RequestReplayWarmup.class).in(Scopes.SINGLETON);
+        healthBinder(binder).export(RequestReplayWarmup.class);
+        reportBinder(binder).export(RequestReplayWarmup.class).withNamePrefix("HttpServer.Warmup");
+        reportBinder(binder).bindReportCollection(WarmupStats.class).withNamePrefix("HttpServer.Warmup");
+
         binder.bind(AnnouncementHttpServerInfo.class).to(LocalAnnouncementHttpServerInfo.class).in(Scopes.SINGLETON);
     }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2010 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.google.common.net.InetAddresses;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+final class InetNetwork
+{
+    private final byte[] address;
+    private final int bits;
+
+    private InetNetwork(byte[] address, int bits)
+    {
+        this.address = address;
+        this.bits = bits;
+    }
+
+    byte[] getAddress()
+    {
+        return address.clone();
+    }
+
+    int getBits()
+    {
+        return bits;
+    }
+
+    public boolean containsAddress(InetAddress inetAddress)
+    {
+        byte[] bytes = inetAddress.getAddress();
+        if (bytes.length != address.length) {
+            return false;
+        }
+        for (int i = 0; i < bits; i++) {
+            if (bit(bytes, i) != bit(address, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return InetAddresses.toAddrString(toInetAddress(address)) + "/" + bits;
+    }
+
+    @Override
+    @SuppressWarnings("RedundantIfStatement")
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        InetNetwork that = (InetNetwork) o;
+
+        if (bits != that.bits) {
+            return false;
+        }
+        if (!Arrays.equals(address, that.address)) {
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = Arrays.hashCode(address);
+        result = 31 * result + bits;
+        return result;
+    }
+
+    @SuppressWarnings("StringSplitter")
+    public static InetNetwork fromCidr(String cidr)
+    {
+        String[] parts = cidr.split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("invalid CIDR format: " + cidr);
+        }
+
+        byte[] address = InetAddresses.forString(parts[0]).getAddress();
+        int bits = Integer.parseInt(parts[1]);
+
+        if ((bits < 0) || (bits > address.length * 8)) {
+            throw new IllegalArgumentException("invalid prefix size: " + bits);
+        }
+
+        for (int i = bits; i < address.length * 8; i++) {
+            if (bit(address, i) != 0) {
+                throw new IllegalArgumentException("invalid prefix for prefix size: " + bits);
+            }
+        }
+
+        return new InetNetwork(address, bits);
+    }
+
+    static int bit(byte[] address, int index)
+    {
+        return (address[index >> 3] >> (7 - (index & 7))) & 1;
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 address from a region of a string without
+     * allocating. Accepts the same syntax as {@link InetAddresses#forString}.
+     *
+     * @return the address as an unsigned value, or -1 if the region is not an
+     * IPv4 address
+     */
+    static long parseIpv4(String string, int start, int end)
+    {
+        long result = 0;
+        int octets = 0;
+        int position = start;
+        while (position < end) {
+            int octetStart = position;
+            int octet = 0;
+            while (position < end && string.charAt(position) != '.') {
+                char c = string.charAt(position);
+                if (c < '0' || c > '9' || position - octetStart >= 3) {
+                    return -1;
+                }
+                octet = octet * 10 + (c - '0');
+                position++;
+            }
+            int length = position - octetStart;
+            if (length == 0 || octet > 255 || (length > 1 && string.charAt(octetStart) == '0') || ++octets > 4) {
+                return -1;
+            }
+            result = (result << 8) | octet;
+            if (position < end) {
+                // skip the '.', which must be followed by another octet
+                if (++position == end) {
+                    return -1;
+                }
+            }
+        }
+        if (octets != 4) {
+            return -1;
+        }
+        return result;
+    }
+
+    private static InetAddress toInetAddress(byte[] address)
+    {
+        try {
+            return InetAddress.getByAddress(address);
+        }
+        catch (UnknownHostException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.proofpoint.configuration.ConfigDescription;
 public class InternalNetworkConfig
 {
     CidrSet internalNetworks = CidrSet.empty();
+    boolean unixSocketTrusted = false;
 
     public CidrSet getInternalNetworks()
     {
@@ -34,4 +35,17 @@ public class InternalNetworkConfig
         this.internalNetworks = internalNetworks;
         return this;
     }
+
+    public boolean isUnixSocketTrusted()
+    {
+        return unixSocketTrusted;
+    }
+
+    @Config("http-server.internal-networks.unix-socket-trusted")
+    @ConfigDescription("Trust X-Forward-For: on connections received over a Unix domain socket")
+    public InternalNetworkConfig setUnixSocketTrusted(boolean unixSocketTrusted)
+    {
+        this.unixSocketTrusted = unixSocketTrusted;
+        return this;
+    }
 }
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.proofpoint.bootstrap.AcceptRequests;
+import com.proofpoint.json.JsonCodec;
+import com.proofpoint.log.Logger;
+import com.proofpoint.reporting.Gauge;
+import com.proofpoint.reporting.HealthCheckRemoveFromRotation;
+import com.proofpoint.stats.CounterStat;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.proofpoint.http.server.HttpServerConfig.LogFormat.TSV;
+import static com.proofpoint.json.JsonCodec.jsonCodec;
+import static java.lang.Math.abs;
+import static java.lang.Math.min;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Warms up the JIT compiler before the server is put in rotation by
+ * replaying a sample of requests against the local HTTP port.
+ * <p>
+ * The sample is taken from the configured request file or, if there is none,
+ * from the JSON request log left by the previous run. The sample is replayed
+ * in rounds until the median latency of a round is within
+ * {@link #STABLE_TOLERANCE} of the previous round's or the time budget runs
+ * out. Until then, the server reports that it is not in rotation.
+ * <p>
+ * The warm-up runs in an {@link AcceptRequests} method, after the server has
+ * started and before {@link com.proofpoint.bootstrap.Bootstrap#initialize()}
+ * returns, so the application announces itself only once it is warm.
+ */
+public class RequestReplayWarmup
+{
+    private static final Logger log = Logger.get(RequestReplayWarmup.class);
+    private static final JsonCodec<WarmupRequest> WARMUP_REQUEST_CODEC = jsonCodec(WarmupRequest.class);
+    private static final double STABLE_TOLERANCE = 0.1;
+    private static final int MIN_ROUNDS = 3;
+    private static final long MAX_REQUEST_TIME_NANOS = SECONDS.toNanos(10);
+
+    private final WarmupConfig config;
+    private final HttpServerInfo httpServerInfo;
+    private final WarmupStats stats;
+    private final Ticker ticker;
+    private final String requestFile;
+    private final AtomicInteger rounds = new AtomicInteger();
+    private final CounterStat requests = new CounterStat();
+    private final CounterStat failures = new CounterStat();
+    private volatile boolean complete;
+
+    @Inject
+    public RequestReplayWarmup(WarmupConfig config, HttpServerConfig httpServerConfig, HttpServerInfo httpServerInfo, HttpServer httpServer, WarmupStats stats)
+    {
+        // The server is a dependency so that it is started before warmUp() is called
+        this(config, httpServerConfig, httpServerInfo, stats, Ticker.systemTicker());
+        requireNonNull(httpServer, "httpServer is null");
+    }
+
+    @VisibleForTesting
+    RequestReplayWarmup(WarmupConfig config, HttpServerConfig httpServerConfig, HttpServerInfo httpServerInfo, WarmupStats stats, Ticker ticker)
+    {
+        this.config = requireNonNull(config, "config is null");
+        this.httpServerInfo = requireNonNull(httpServerInfo, "httpServerInfo is null");
+        this.stats = requireNonNull(stats, "stats is null");
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        if (config.getRequestFile() != null) {
+            requestFile = config.getRequestFile();
+        }
+        else if (httpServerConfig.isLogEnabled() && httpServerConfig.getLogFormat() != TSV) {
+            requestFile = httpServerConfig.getLogPath();
+        }
+        else {
+            requestFile = null;
+        }
+        complete = !config.isEnabled();
+    }
+
+    @AcceptRequests
+    public void warmUp()
+    {
+        if (complete) {
+            return;
+        }
+        try {
+            URI baseUri = httpServerInfo.getHttpUri();
+            if (baseUri == null) {
+                log.warn("Skipping warm-up because HTTP is not enabled");
+                return;
+            }
+            if (requestFile == null) {
+                log.warn("Skipping warm-up because there is neither a request file nor a JSON request log");
+                return;
+            }
+            List<WarmupRequest> sample = readSample(Paths.get(requestFile), config.getSampleSize());
+            if (sample.isEmpty()) {
+                log.info("Skipping warm-up because %s has no replayable requests", requestFile);
+                return;
+            }
+            replay(baseUri, sample);
+        }
+        catch (IOException e) {
+            log.warn(e, "Skipping warm-up");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            complete = true;
+        }
+    }
+
+    private void replay(URI baseUri, List<WarmupRequest> sample)
+            throws InterruptedException
+    {
+        long deadline = ticker.read() + config.getMaxTime().roundTo(NANOSECONDS);
+        ExecutorService executor = newFixedThreadPool(config.getConcurrency(),
+                new ThreadFactoryBuilder().setNameFormat("http-server-warmup-%s").setDaemon(true).build());
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .build();
+            long previousMedian = -1;
+            while (ticker.read() - deadline < 0) {
+                long[] latencies = replayRound(client, executor, baseUri, sample, deadline);
+                int round = rounds.incrementAndGet();
+                if (latencies.length == 0) {
+                    break;
+                }
+                long median = latencies[latencies.length / 2];
+                log.debug("Warm-up round %s median latency %sms", round, NANOSECONDS.toMillis(median));
+                if (round >= MIN_ROUNDS && abs(median - previousMedian) <= previousMedian * STABLE_TOLERANCE) {
+                    break;
+                }
+                previousMedian = median;
+            }
+            log.info("Warm-up finished after %s rounds of %s requests", rounds.get(), sample.size());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long[] replayRound(HttpClient client, ExecutorService executor, URI baseUri, List<WarmupRequest> sample, long deadline)
+            throws InterruptedException
+    {
+        AtomicInteger next = new AtomicInteger();
+        List<Future<List<Long>>> workers = new ArrayList<>();
+        for (int i = 0; i < config.getConcurrency(); i++) {
+            workers.add(executor.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                for (int index = next.getAndIncrement(); index < sample.size(); index = next.getAndIncrement()) {
+                    long remaining = deadline - ticker.read();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Long latency = send(client, baseUri, sample.get(index), min(remaining, MAX_REQUEST_TIME_NANOS));
+                    if (latency != null) {
+                        latencies.add(latency);
+                    }
+                }
+                return latencies;
+            }));
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        for (Future<List<Long>> worker : workers) {
+            try {
+                latencies.addAll(worker.get());
+            }
+            catch (ExecutionException e) {
+                log.warn(e.getCause(), "Warm-up worker failed");
+            }
+        }
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private Long send(HttpClient client, URI baseUri, WarmupRequest request, long timeoutNanos)
+            throws InterruptedException
+    {
+        requests.add(1);
+        long start = ticker.read();
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(baseUri.resolve(request.getUri()))
+                    .timeout(Duration.ofNanos(timeoutNanos))
+                    .method(request.getMethod(), request.getBody() == null ? BodyPublishers.noBody() : BodyPublishers.ofString(request.getBody(), UTF_8));
+            for (Entry<String, String> header : request.getHeaders().entrySet()) {
+                builder.header(header.getKey(), header.getValue());
+            }
+            client.send(builder.build(), BodyHandlers.discarding());
+        }
+        catch (IOException | RuntimeException e) {
+            failures.add(1);
+            return null;
+        }
+        long latency = ticker.read() - start;
+        stats.latency(request.getMethod(), request.getPath()).add(latency, NANOSECONDS);
+        return latency;
+    }
+
+    /**
+     * Reservoir-samples replayable requests from a file of JSON lines,
+     * skipping lines that cannot be parsed.
+     */
+    @VisibleForTesting
+    static List<WarmupRequest> readSample(Path file, int sampleSize)
+            throws IOException
+    {
+        List<WarmupRequest> sample = new ArrayList<>();
+        Random random = new Random();
+        int seen = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                WarmupRequest request;
+                try {
+                    request = WARMUP_REQUEST_CODEC.fromJson(line);
+                }
+                catch (IllegalArgumentException e) {
+                    continue;
+                }
+                if (!request.isReplayable()) {
+                    continue;
+                }
+                ++seen;
+                if (sample.size() < sampleSize) {
+                    sample.add(request);
+                }
+                else {
+                    int slot = random.nextInt(seen);
+                    if (slot < sampleSize) {
+                        sample.set(slot, request);
+                    }
+                }
+            }
+        }
+        return sample;
+    }
+
+    @HealthCheckRemoveFromRotation("Warm-up")
+    public String getWarmupState()
+    {
+        if (complete) {
+            return null;
+        }
+        return "Warming up";
+    }
+
+    @Managed
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    @Gauge
+    public int getRounds()
+    {
+        return rounds.get();
+    }
+
+    @Nested
+    public CounterStat getRequests()
+    {
+        return requests;
+    }
+
+    @Nested
+    public CounterStat getFailures()
+    {
+        return failures;
+    }
+}
@@ -21,12 +21,20 @@ import com.proofpoint.units.Duration;
 import org.weakref.jmx.Nested;
 
 import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class RequestStats
 {
     private final TimeStat requestTime;
     private final DistributionStat readBytes;
     private final DistributionStat writtenBytes;
+    private final TimeStat queueTime;
+    private final TimeStat requestReadTime;
+    private final TimeStat handlerTime;
+    private final TimeStat responseWriteTime;
+    private final TimeStat timeToFirstByte;
 
     @Inject
     public RequestStats()
@@ -34,6 +42,11 @@ public class RequestStats
         requestTime = new TimeStat();
         readBytes = new DistributionStat();
         writtenBytes = new DistributionStat();
+        queueTime = new TimeStat();
+        requestReadTime = new TimeStat();
+        handlerTime = new TimeStat();
+        responseWriteTime = new TimeStat();
+        timeToFirstByte = new TimeStat();
     }
 
     public void record(long requestSizeInBytes, long responseSizeInBytes, Duration requestProcessingTime)
@@ -43,6 +56,41 @@ public class RequestStats
         writtenBytes.add(responseSizeInBytes);
     }
 
+    public void record(long requestSizeInBytes, long responseSizeInBytes, long requestProcessingTime, TimeUnit timeUnit)
+    {
+        requestTime.add(requestProcessingTime, timeUnit);
+        readBytes.add(requestSizeInBytes);
+        writtenBytes.add(responseSizeInBytes);
+    }
+
+    /**
+     * Records the phases of a request that was dispatched to a handler.
+     *
+     * @param queueNanos time from the start of the request until it was dispatched to a thread
+     * @param handlerNanos time from the dispatch until the response was committed
+     */
+    public void recordDispatch(long queueNanos, long handlerNanos)
+    {
+        queueTime.add(queueNanos, NANOSECONDS);
+        handlerTime.add(handlerNanos, NANOSECONDS);
+    }
+
+    /**
+     * Records the phases of a request spent transferring data to and from the client.
+     *
+     * @param requestReadNanos time from the first content of the request until its content was fully read,
+     * or zero for a request without content. The content is read while the request is being handled, so
+     * this overlaps the handler phase.
+     * @param responseWriteNanos time from the commit of the response until it was fully written
+     * @param timeToFirstByteNanos time from the start of the request until the first byte of the response was written
+     */
+    public void recordTransfer(long requestReadNanos, long responseWriteNanos, long timeToFirstByteNanos)
+    {
+        requestReadTime.add(requestReadNanos, NANOSECONDS);
+        responseWriteTime.add(responseWriteNanos, NANOSECONDS);
+        timeToFirstByte.add(timeToFirstByteNanos, NANOSECONDS);
+    }
+
     @Nested
     public TimeStat getRequestTime()
     {
@@ -60,4 +108,34 @@ public class RequestStats
     {
         return writtenBytes;
     }
+
+    @Nested
+    public TimeStat getQueueTime()
+    {
+        return queueTime;
+    }
+
+    @Nested
+    public TimeStat getRequestReadTime()
+    {
+        return requestReadTime;
+    }
+
+    @Nested
+    public TimeStat getHandlerTime()
+    {
+        return handlerTime;
+    }
+
+    @Nested
+    public TimeStat getResponseWriteTime()
+    {
+        return responseWriteTime;
+    }
+
+    @Nested
+    public TimeStat getTimeToFirstByte()
+    {
+        return timeToFirstByte;
+    }
 }
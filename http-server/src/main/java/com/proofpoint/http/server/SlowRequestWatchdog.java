@@ -0,0 +1,304 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.proofpoint.log.Logger;
+import com.proofpoint.stats.CounterStat;
+import com.proofpoint.units.Duration;
+import org.eclipse.jetty.server.Request;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.http.server.TraceTokenFilter.TRACE_TOKEN_ATTRIBUTE;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Logs the stacks of threads handling requests which take longer than a
+ * threshold.
+ * <p>
+ * Each thread that handles requests has a slot, created the first time it is
+ * dispatched a request, in which it publishes the method, URI, trace token and
+ * begin time of the request it is handling. These are captured on the request
+ * thread and published together with a single volatile write, so the
+ * background thread never reads a request object which Jetty may be
+ * recycling. A background thread periodically scans the slots and samples the
+ * stack of each thread that has been handling the same request for longer
+ * than the threshold. After
+ * {@link #SAMPLES} samples, or once the thread stops handling the request, it
+ * logs the request's method, URI, trace token, and sampled stacks, at most a
+ * configured number of times per minute.
+ * <p>
+ * Requests are only tracked while dispatched to a thread, so an asynchronous
+ * request waiting for its response is not sampled.
+ */
+public class SlowRequestWatchdog
+{
+    private static final Logger log = Logger.get(SlowRequestWatchdog.class);
+    private static final int SAMPLES = 3;
+    private static final long MIN_CHECK_INTERVAL_NANOS = MILLISECONDS.toNanos(10);
+    private static final long MAX_CHECK_INTERVAL_NANOS = SECONDS.toNanos(1);
+    private static final long LOG_WINDOW_NANOS = MINUTES.toNanos(1);
+
+    private final long thresholdNanos;
+    private final int maxLogsPerMinute;
+    private final Ticker ticker;
+    private final Set<Slot> slots = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Slot> threadSlot = ThreadLocal.withInitial(this::createSlot);
+    private final CounterStat slowRequests = new CounterStat();
+    private final CounterStat suppressedLogs = new CounterStat();
+
+    @GuardedBy("this")
+    private ScheduledExecutorService executor;
+
+    // only accessed by the checking thread
+    private long logWindowStart;
+    private int logsInWindow;
+
+    SlowRequestWatchdog(Duration threshold, int maxLogsPerMinute)
+    {
+        this(threshold, maxLogsPerMinute, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    SlowRequestWatchdog(Duration threshold, int maxLogsPerMinute, Ticker ticker)
+    {
+        checkArgument(maxLogsPerMinute >= 1, "maxLogsPerMinute must be at least 1");
+        thresholdNanos = requireNonNull(threshold, "threshold is null").roundTo(NANOSECONDS);
+        this.maxLogsPerMinute = maxLogsPerMinute;
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        logWindowStart = ticker.read();
+    }
+
+    synchronized void start()
+    {
+        if (executor != null) {
+            return;
+        }
+        long checkIntervalNanos = max(MIN_CHECK_INTERVAL_NANOS, min(MAX_CHECK_INTERVAL_NANOS, thresholdNanos / 4));
+        executor = newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("http-server-slow-request-watchdog").setDaemon(true).build());
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                check();
+            }
+            catch (RuntimeException e) {
+                log.error(e, "Error checking for slow requests");
+            }
+        }, checkIntervalNanos, checkIntervalNanos, NANOSECONDS);
+    }
+
+    synchronized void stop()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Called on the thread to which the request is being dispatched.
+     */
+    void dispatched(Request request, long beginNanos)
+    {
+        threadSlot.get().current = new TrackedRequest(
+                request,
+                beginNanos,
+                request.getMethod(),
+                request.getRequestURI(),
+                (String) request.getAttribute(TRACE_TOKEN_ATTRIBUTE));
+    }
+
+    /**
+     * Called on the thread handling a request once its trace token is registered.
+     */
+    void traceTokenRegistered(String traceToken)
+    {
+        Slot slot = threadSlot.get();
+        TrackedRequest current = slot.current;
+        if (current != null) {
+            slot.current = current.withTraceToken(traceToken);
+        }
+    }
+
+    /**
+     * Called on the thread to which the request was dispatched, after the dispatch returns.
+     */
+    void undispatched()
+    {
+        threadSlot.get().current = null;
+    }
+
+    private Slot createSlot()
+    {
+        Slot slot = new Slot(Thread.currentThread());
+        slots.add(slot);
+        return slot;
+    }
+
+    @VisibleForTesting
+    void check()
+    {
+        long now = ticker.read();
+        for (Slot slot : slots) {
+            TrackedRequest current = slot.current;
+
+            if (slot.samples != null && !slot.sampled.isSameRequest(current)) {
+                // the thread finished handling the request before all samples were taken
+                report(slot);
+            }
+            if (!slot.thread.isAlive()) {
+                slots.remove(slot);
+                continue;
+            }
+            if (current == null || now - current.beginNanos < thresholdNanos) {
+                continue;
+            }
+
+            if (slot.samples == null) {
+                if (current.isSameRequest(slot.reported)) {
+                    continue;
+                }
+                slowRequests.add(1);
+                slot.samples = new ArrayList<>(SAMPLES);
+            }
+            // the trace token may have been registered since the previous sample
+            slot.sampled = current;
+            slot.samples.add(slot.thread.getStackTrace());
+            slot.lastSampleNanos = now;
+            if (slot.samples.size() >= SAMPLES) {
+                report(slot);
+            }
+        }
+    }
+
+    private void report(Slot slot)
+    {
+        List<StackTraceElement[]> samples = slot.samples;
+        TrackedRequest request = slot.sampled;
+        slot.reported = request;
+        slot.sampled = null;
+        slot.samples = null;
+
+        if (!tryAcquireLog(slot.lastSampleNanos)) {
+            suppressedLogs.add(1);
+            return;
+        }
+
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < samples.size(); i++) {
+            message.append("\n  sample ").append(i + 1).append(':');
+            for (StackTraceElement element : samples.get(i)) {
+                message.append("\n\tat ").append(element);
+            }
+        }
+        log.warn("Slow request: %s %s with trace token %s still running after %s on thread %s%s",
+                request.method,
+                request.uri,
+                request.traceToken,
+                Duration.succinctNanos(slot.lastSampleNanos - request.beginNanos),
+                slot.thread.getName(),
+                message);
+    }
+
+    private boolean tryAcquireLog(long now)
+    {
+        if (now - logWindowStart >= LOG_WINDOW_NANOS) {
+            logWindowStart = now;
+            logsInWindow = 0;
+        }
+        if (logsInWindow >= maxLogsPerMinute) {
+            return false;
+        }
+        ++logsInWindow;
+        return true;
+    }
+
+    @Nested
+    public CounterStat getSlowRequests()
+    {
+        return slowRequests;
+    }
+
+    @Nested
+    public CounterStat getSuppressedLogs()
+    {
+        return suppressedLogs;
+    }
+
+    private static class Slot
+    {
+        private final Thread thread;
+        private volatile TrackedRequest current;
+
+        // only accessed by the checking thread
+        private TrackedRequest sampled;
+        private List<StackTraceElement[]> samples;
+        private long lastSampleNanos;
+        private TrackedRequest reported;
+
+        Slot(Thread thread)
+        {
+            this.thread = thread;
+        }
+    }
+
+    private static class TrackedRequest
+    {
+        // only used to tell requests apart, as Jetty recycles request objects
+        private final Request request;
+        private final long beginNanos;
+        private final String method;
+        private final String uri;
+        @Nullable
+        private final String traceToken;
+
+        TrackedRequest(Request request, long beginNanos, String method, String uri, @Nullable String traceToken)
+        {
+            this.request = request;
+            this.beginNanos = beginNanos;
+            this.method = method;
+            this.uri = uri;
+            this.traceToken = traceToken;
+        }
+
+        TrackedRequest withTraceToken(String traceToken)
+        {
+            return new TrackedRequest(request, beginNanos, method, uri, traceToken);
+        }
+
+        boolean isSameRequest(@Nullable TrackedRequest other)
+        {
+            return other != null && request == other.request && beginNanos == other.beginNanos;
+        }
+    }
+}
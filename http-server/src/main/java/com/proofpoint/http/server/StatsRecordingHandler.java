@@ -15,42 +15,152 @@
  */
 package com.proofpoint.http.server;
 
-import com.proofpoint.units.Duration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.proofpoint.stats.SparseCounterStat;
+import com.proofpoint.stats.SparseTimeStat;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.RequestLog;
 import org.eclipse.jetty.server.Response;
 
 import javax.net.ssl.SSLSession;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static java.lang.Math.max;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
+/**
+ * Records request statistics.
+ * <p>
+ * The stats returned by the {@link DetailedRequestStats} report collection are
+ * resolved once and held in an array indexed by status code and in a small
+ * table of TLS protocol and cipher suite pairs, looked up by identity since the
+ * TLS implementation uses constant strings. A report collection unexports stats
+ * which have not been looked up for a while, so each held stat is looked up
+ * again after {@link #REFRESH_INTERVAL_NANOS}.
+ */
 public class StatsRecordingHandler
         implements RequestLog
 {
     private static final String REQUEST_SSL_SESSION_ATTRIBUTE = "org.eclipse.jetty.servlet.request.ssl_session";
+    private static final long REFRESH_INTERVAL_NANOS = MINUTES.toNanos(1);
+    private static final int MAX_STATUS_CODE = 599;
+    private static final int MAX_TLS_HANDLES = 32;
 
     private final RequestStats stats;
     private final DetailedRequestStats detailedRequestStats;
+    private final Ticker ticker;
+    private final AtomicReferenceArray<StatusHandle> statusHandles = new AtomicReferenceArray<>(MAX_STATUS_CODE + 1);
+    private volatile TlsHandle[] tlsHandles = new TlsHandle[0];
 
     public StatsRecordingHandler(RequestStats stats, DetailedRequestStats detailedRequestStats)
+    {
+        this(stats, detailedRequestStats, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    StatsRecordingHandler(RequestStats stats, DetailedRequestStats detailedRequestStats, Ticker ticker)
     {
         this.stats = requireNonNull(stats, "stats is null");
         this.detailedRequestStats = requireNonNull(detailedRequestStats, "detailedRequestStats is null");
+        this.ticker = requireNonNull(ticker, "ticker is null");
     }
 
     @Override
     public void log(Request request, Response response)
     {
-        Duration requestTime = new Duration(max(0, System.currentTimeMillis() - request.getTimeStamp()), TimeUnit.MILLISECONDS);
+        long requestTimeMillis = max(0, System.currentTimeMillis() - request.getTimeStamp());
         SSLSession sslSession = (SSLSession) request.getAttribute(REQUEST_SSL_SESSION_ATTRIBUTE);
 
-        stats.record(request.getContentRead(), response.getContentCount(), requestTime);
-        detailedRequestStats.requestTimeByCode(response.getStatus(), response.getStatus() / 100).add(requestTime);
+        stats.record(request.getContentRead(), response.getContentCount(), requestTimeMillis, MILLISECONDS);
+        requestTimeByCode(response.getStatus()).add(requestTimeMillis, MILLISECONDS);
 
         if (sslSession != null) {
-            detailedRequestStats.tlsRequest(sslSession.getProtocol(), sslSession.getCipherSuite()).add(1);
+            tlsRequest(sslSession.getProtocol(), sslSession.getCipherSuite()).add(1);
+        }
+    }
+
+    private SparseTimeStat requestTimeByCode(int status)
+    {
+        if (status < 0 || status > MAX_STATUS_CODE) {
+            return detailedRequestStats.requestTimeByCode(status, status / 100);
+        }
+
+        long now = ticker.read();
+        StatusHandle handle = statusHandles.get(status);
+        if (handle == null || now - handle.refreshTime > 0) {
+            handle = new StatusHandle(detailedRequestStats.requestTimeByCode(status, status / 100), now + REFRESH_INTERVAL_NANOS);
+            statusHandles.set(status, handle);
+        }
+        return handle.stat;
+    }
+
+    private SparseCounterStat tlsRequest(String protocol, String cipherSuite)
+    {
+        long now = ticker.read();
+        TlsHandle[] handles = tlsHandles;
+        for (TlsHandle handle : handles) {
+            if (handle.protocol == protocol && handle.cipherSuite == cipherSuite) {
+                if (now - handle.refreshTime > 0) {
+                    return refreshTlsHandle(protocol, cipherSuite, now);
+                }
+                return handle.stat;
+            }
+        }
+        if (handles.length >= MAX_TLS_HANDLES) {
+            return detailedRequestStats.tlsRequest(protocol, cipherSuite);
+        }
+        return refreshTlsHandle(protocol, cipherSuite, now);
+    }
+
+    private synchronized SparseCounterStat refreshTlsHandle(String protocol, String cipherSuite, long now)
+    {
+        TlsHandle newHandle = new TlsHandle(protocol, cipherSuite, detailedRequestStats.tlsRequest(protocol, cipherSuite), now + REFRESH_INTERVAL_NANOS);
+        TlsHandle[] handles = tlsHandles;
+        for (int i = 0; i < handles.length; i++) {
+            if (handles[i].protocol == protocol && handles[i].cipherSuite == cipherSuite) {
+                TlsHandle[] newHandles = handles.clone();
+                newHandles[i] = newHandle;
+                tlsHandles = newHandles;
+                return newHandle.stat;
+            }
+        }
+        if (handles.length < MAX_TLS_HANDLES) {
+            TlsHandle[] newHandles = new TlsHandle[handles.length + 1];
+            System.arraycopy(handles, 0, newHandles, 0, handles.length);
+            newHandles[handles.length] = newHandle;
+            tlsHandles = newHandles;
+        }
+        return newHandle.stat;
+    }
+
+    private static class StatusHandle
+    {
+        private final SparseTimeStat stat;
+        private final long refreshTime;
+
+        StatusHandle(SparseTimeStat stat, long refreshTime)
+        {
+            this.stat = stat;
+            this.refreshTime = refreshTime;
+        }
+    }
+
+    private static class TlsHandle
+    {
+        private final String protocol;
+        private final String cipherSuite;
+        private final SparseCounterStat stat;
+        private final long refreshTime;
+
+        TlsHandle(String protocol, String cipherSuite, SparseCounterStat stat, long refreshTime)
+        {
+            this.protocol = protocol;
+            this.cipherSuite = cipherSuite;
+            this.stat = stat;
+            this.refreshTime = refreshTime;
         }
     }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the CPU time used and heap memory allocated by the current thread,
+ * for attributing them to requests.
+ * <p>
+ * The HTTP server measures the resource usage of a sample of requests,
+ * which it marks with the {@link #SAMPLED_ATTRIBUTE} request attribute, and
+ * logs it in the request log.
+ */
+public final class ThreadResourceUsage
+{
+    /**
+     * Request attribute which is {@link Boolean#TRUE} if the resource usage
+     * of the request is being measured.
+     */
+    public static final String SAMPLED_ATTRIBUTE = ThreadResourceUsage.class.getName() + ".sampled";
+    static final String CPU_TIME_ATTRIBUTE = ThreadResourceUsage.class.getName() + ".cpu_time";
+    static final String ALLOCATED_BYTES_ATTRIBUTE = ThreadResourceUsage.class.getName() + ".allocated_bytes";
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean EXTENDED_THREAD_MX_BEAN;
+    private static final boolean CPU_TIME_SUPPORTED;
+
+    static {
+        CPU_TIME_SUPPORTED = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+        if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemoryEnabled()) {
+            EXTENDED_THREAD_MX_BEAN = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+        }
+        else {
+            EXTENDED_THREAD_MX_BEAN = null;
+        }
+    }
+
+    private ThreadResourceUsage()
+    {
+    }
+
+    /**
+     * @return the CPU time used by the current thread in nanoseconds, or -1
+     * if not supported by the JVM
+     */
+    public static long getCurrentThreadCpuTime()
+    {
+        if (!CPU_TIME_SUPPORTED) {
+            return -1;
+        }
+        return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * @return the number of bytes of heap memory allocated by the current
+     * thread, or -1 if not supported by the JVM
+     */
+    public static long getCurrentThreadAllocatedBytes()
+    {
+        if (EXTENDED_THREAD_MX_BEAN == null) {
+            return -1;
+        }
+        return EXTENDED_THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -17,6 +17,7 @@ package com.proofpoint.http.server;
 
 import com.google.common.base.Preconditions;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -30,12 +31,37 @@ import javax.servlet.http.HttpServletResponseWrapper;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.http.server.ThreadResourceUsage.ALLOCATED_BYTES_ATTRIBUTE;
+import static com.proofpoint.http.server.ThreadResourceUsage.CPU_TIME_ATTRIBUTE;
+import static com.proofpoint.http.server.ThreadResourceUsage.SAMPLED_ATTRIBUTE;
+import static com.proofpoint.http.server.ThreadResourceUsage.getCurrentThreadAllocatedBytes;
+import static com.proofpoint.http.server.ThreadResourceUsage.getCurrentThreadCpuTime;
 
 class TimingFilter
         implements Filter
 {
     public static final String FIRST_BYTE_TIME = TimingFilter.class.getName() + ".FIRST_BYTE_TIME";
 
+    private final int resourceUsageSampleInterval;
+
+    TimingFilter()
+    {
+        this(0);
+    }
+
+    /**
+     * @param resourceUsageSampleInterval measure the CPU time and allocated
+     * bytes of one in this many requests, or none if zero
+     */
+    TimingFilter(int resourceUsageSampleInterval)
+    {
+        checkArgument(resourceUsageSampleInterval >= 0, "resourceUsageSampleInterval is negative");
+        this.resourceUsageSampleInterval = resourceUsageSampleInterval;
+    }
+
     @Override
     public void init(FilterConfig filterConfig)
     {
@@ -45,6 +71,13 @@ class TimingFilter
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
             throws IOException, ServletException
     {
+        long startCpuTime = -1;
+        long startAllocatedBytes = -1;
+        if (isSampled(servletRequest)) {
+            startCpuTime = getCurrentThreadCpuTime();
+            startAllocatedBytes = getCurrentThreadAllocatedBytes();
+        }
+
         TimedResponse response = new TimedResponse((HttpServletResponse) servletResponse);
         try {
             chain.doFilter(servletRequest, response);
@@ -54,7 +87,35 @@ class TimingFilter
             if (firstByteTime != null) {
                 servletRequest.setAttribute(FIRST_BYTE_TIME, firstByteTime);
             }
+            if (startCpuTime >= 0) {
+                addUsage(servletRequest, CPU_TIME_ATTRIBUTE, getCurrentThreadCpuTime() - startCpuTime);
+            }
+            if (startAllocatedBytes >= 0) {
+                addUsage(servletRequest, ALLOCATED_BYTES_ATTRIBUTE, getCurrentThreadAllocatedBytes() - startAllocatedBytes);
+            }
+        }
+    }
+
+    private boolean isSampled(ServletRequest request)
+    {
+        if (resourceUsageSampleInterval == 0) {
+            return false;
         }
+        if (request.getDispatcherType() == DispatcherType.REQUEST) {
+            if (ThreadLocalRandom.current().nextInt(resourceUsageSampleInterval) != 0) {
+                return false;
+            }
+            request.setAttribute(SAMPLED_ATTRIBUTE, Boolean.TRUE);
+            return true;
+        }
+        // usage of asynchronous dispatches accumulates into that of the initial dispatch
+        return request.getAttribute(SAMPLED_ATTRIBUTE) != null;
+    }
+
+    private static void addUsage(ServletRequest request, String attribute, long usage)
+    {
+        Long previousUsage = (Long) request.getAttribute(attribute);
+        request.setAttribute(attribute, previousUsage == null ? usage : previousUsage + usage);
     }
 
     @Override
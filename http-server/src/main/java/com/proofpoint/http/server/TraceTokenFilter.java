@@ -15,9 +15,12 @@
  */
 package com.proofpoint.http.server;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.net.InetAddresses;
 import com.proofpoint.json.JsonCodec;
 import com.proofpoint.tracetoken.TraceToken;
 
+import javax.annotation.Nullable;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -33,8 +36,12 @@ import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Base64.Encoder;
+import java.util.SplittableRandom;
 
 import static com.proofpoint.json.JsonCodec.jsonCodec;
+import static com.proofpoint.tracetoken.TraceTokenHeader.decode;
+import static com.proofpoint.tracetoken.TraceTokenHeader.isCompact;
+import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
 import static com.proofpoint.tracetoken.TraceTokenManager.registerRequestToken;
 import static com.proofpoint.tracetoken.TraceTokenManager.registerTraceToken;
 import static java.util.Objects.requireNonNull;
@@ -42,17 +49,34 @@ import static java.util.Objects.requireNonNull;
 class TraceTokenFilter
         implements Filter
 {
+    static final String TRACE_TOKEN_ATTRIBUTE = TraceTokenFilter.class.getName() + ".trace_token";
+
     private static final JsonCodec<TraceToken> TRACE_TOKEN_JSON_CODEC = jsonCodec(TraceToken.class);
     private static final Encoder BASE64_URL_ENCODER = Base64.getUrlEncoder();
-    private static final ThreadLocal<SecureRandom> SECURE_RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+    private static final char[] BASE64_URL_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final SecureRandom SEED_RANDOM = new SecureRandom();
+    private static final ThreadLocal<TokenGenerator> TOKEN_GENERATOR = ThreadLocal.withInitial(TokenGenerator::new);
 
     private final ClientAddressExtractor clientAddressExtractor;
     private final String tokenPrefix;
+    @Nullable
+    private final SlowRequestWatchdog slowRequestWatchdog;
 
     TraceTokenFilter(InetAddress internalIp, ClientAddressExtractor clientAddressExtractor)
+    {
+        this(internalIp, clientAddressExtractor, null);
+    }
+
+    /**
+     * @param slowRequestWatchdog watchdog to notify of the request token, which is
+     * also kept in the {@link #TRACE_TOKEN_ATTRIBUTE} request attribute for
+     * asynchronous redispatches of the request
+     */
+    TraceTokenFilter(InetAddress internalIp, ClientAddressExtractor clientAddressExtractor, @Nullable SlowRequestWatchdog slowRequestWatchdog)
     {
         tokenPrefix = encodeAddress(requireNonNull(internalIp, "internalIp is null"));
         this.clientAddressExtractor = requireNonNull(clientAddressExtractor, "clientAddressExtractor is null");
+        this.slowRequestWatchdog = slowRequestWatchdog;
     }
 
     @Override
@@ -71,6 +95,14 @@ class TraceTokenFilter
         if (token == null || token.isEmpty()) {
             registerNewRequestToken(request);
         }
+        else if (isCompact(token)) {
+            try {
+                registerTraceToken(decode(token));
+            }
+            catch (RuntimeException e) {
+                registerNewRequestToken(request);
+            }
+        }
         else if (token.charAt(0) == '{') {
             try {
                 registerTraceToken(TRACE_TOKEN_JSON_CODEC.fromJson(token));
@@ -82,6 +114,12 @@ class TraceTokenFilter
         else {
             registerRequestToken(token);
         }
+        if (slowRequestWatchdog != null) {
+            TraceToken traceToken = getCurrentTraceToken();
+            String tokenString = traceToken == null ? null : traceToken.toString();
+            request.setAttribute(TRACE_TOKEN_ATTRIBUTE, tokenString);
+            slowRequestWatchdog.traceTokenRegistered(tokenString);
+        }
         chain.doFilter(request, response);
     }
 
@@ -116,11 +154,75 @@ class TraceTokenFilter
     private void registerNewRequestToken(HttpServletRequest request)
             throws UnknownHostException
     {
-        byte[] randomBytes = new byte[15];
-        SECURE_RANDOM.get().nextBytes(randomBytes);
-        registerRequestToken(tokenPrefix
-                + encodeAddress(InetAddress.getByName(clientAddressExtractor.clientAddressFor(request)))
-                + BASE64_URL_ENCODER.encodeToString(randomBytes)
-        );
+        registerRequestToken(createToken(clientAddressExtractor.clientAddressFor(request)));
+    }
+
+    /**
+     * Creates a token from the encoded server address, the encoded client
+     * address, and 120 bits encoded as 20 characters: the low 40 bits of the
+     * current time in milliseconds followed by 80 bits from a per-thread
+     * {@link SplittableRandom} seeded from a {@link SecureRandom}. Tokens
+     * created in different milliseconds cannot collide, and tokens created
+     * in the same millisecond collide only if 80 random bits do.
+     */
+    @VisibleForTesting
+    String createToken(String clientAddress)
+            throws UnknownHostException
+    {
+        TokenGenerator generator = TOKEN_GENERATOR.get();
+        long time = System.currentTimeMillis() & 0xFF_FFFF_FFFFL;
+        long random = generator.random.nextLong();
+        int moreRandom = generator.random.nextInt();
+
+        StringBuilder builder = new StringBuilder(tokenPrefix.length() + 32)
+                .append(tokenPrefix)
+                .append(generator.encodeClientAddress(clientAddress));
+        appendBase64(builder, (time << 2) | (moreRandom & 0x3), 7);
+        appendBase64(builder, random >>> 4, 10);
+        appendBase64(builder, (moreRandom >>> 2) & 0x3_FFFF, 3);
+        return builder.toString();
+    }
+
+    private static void appendBase64(StringBuilder builder, long value, int characters)
+    {
+        for (int shift = (characters - 1) * 6; shift >= 0; shift -= 6) {
+            builder.append(BASE64_URL_ALPHABET[(int) (value >>> shift) & 0x3f]);
+        }
+    }
+
+    private static class TokenGenerator
+    {
+        private final SplittableRandom random = new SplittableRandom(SEED_RANDOM.nextLong());
+        private String lastClientAddress;
+        private String lastEncodedClientAddress;
+
+        String encodeClientAddress(String clientAddress)
+                throws UnknownHostException
+        {
+            // Consecutive requests on a thread often come from the same client or proxy
+            if (clientAddress != null && clientAddress.equals(lastClientAddress)) {
+                return lastEncodedClientAddress;
+            }
+            String encoded = encodeAddress(parseAddress(clientAddress));
+            if (clientAddress != null) {
+                lastClientAddress = clientAddress;
+                lastEncodedClientAddress = encoded;
+            }
+            return encoded;
+        }
+
+        private static InetAddress parseAddress(String clientAddress)
+                throws UnknownHostException
+        {
+            if (clientAddress == null || clientAddress.isEmpty()) {
+                return InetAddress.getLoopbackAddress();
+            }
+            try {
+                return InetAddresses.forString(clientAddress);
+            }
+            catch (IllegalArgumentException e) {
+                return InetAddress.getByName(clientAddress);
+            }
+        }
     }
 }
@@ -25,7 +25,7 @@ import java.time.Instant;
 
 @JsonPropertyOrder({ "time", "traceToken", "sourceIp", "method", "requestUri", "username", "userAgent",
         "responseCode", "requestSize", "responseSize", "protocolVersion", "tlsProtocolVersion", "tlsCipherSuite",
-        "timeToDispatch", "timeToRequestEnd", "timeResponseContent", "responseContentChunk", "timeToLastByte"})
+        "timeToDispatch", "timeToRequestEnd", "timeResponseContent", "responseContentChunk", "timeToLastByte", "cpuTime", "allocatedBytes"})
 class VerboseHttpRequestEvent
 {
 
@@ -150,4 +150,18 @@ class VerboseHttpRequestEvent
     {
         return delegate.getTlsCipherSuite();
     }
+
+    @Nullable
+    @JsonProperty
+    public Duration getCpuTime()
+    {
+        return delegate.getCpuTime();
+    }
+
+    @Nullable
+    @JsonProperty
+    public Long getAllocatedBytes()
+    {
+        return delegate.getAllocatedBytes();
+    }
 }
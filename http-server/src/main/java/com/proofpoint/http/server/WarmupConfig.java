@@ -0,0 +1,103 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.proofpoint.configuration.Config;
+import com.proofpoint.configuration.ConfigDescription;
+import com.proofpoint.units.Duration;
+import com.proofpoint.units.MinDuration;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+public class WarmupConfig
+{
+    private boolean enabled = false;
+    private String requestFile;
+    private int sampleSize = 500;
+    private int concurrency = 4;
+    private Duration maxTime = new Duration(2, MINUTES);
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Config("http-server.warmup.enabled")
+    @ConfigDescription("Replay a sample of requests against the server before it is put in rotation")
+    public WarmupConfig setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+        return this;
+    }
+
+    public String getRequestFile()
+    {
+        return requestFile;
+    }
+
+    @Config("http-server.warmup.request-file")
+    @ConfigDescription("File of JSON requests to replay. Defaults to the JSON request log")
+    public WarmupConfig setRequestFile(String requestFile)
+    {
+        this.requestFile = requestFile;
+        return this;
+    }
+
+    @Min(1)
+    public int getSampleSize()
+    {
+        return sampleSize;
+    }
+
+    @Config("http-server.warmup.sample-size")
+    @ConfigDescription("Maximum number of distinct requests to replay")
+    public WarmupConfig setSampleSize(int sampleSize)
+    {
+        this.sampleSize = sampleSize;
+        return this;
+    }
+
+    @Min(1)
+    public int getConcurrency()
+    {
+        return concurrency;
+    }
+
+    @Config("http-server.warmup.concurrency")
+    @ConfigDescription("Number of warm-up requests to have outstanding at once")
+    public WarmupConfig setConcurrency(int concurrency)
+    {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1s")
+    public Duration getMaxTime()
+    {
+        return maxTime;
+    }
+
+    @Config("http-server.warmup.max-time")
+    @ConfigDescription("Maximum time to spend warming up")
+    public WarmupConfig setMaxTime(Duration maxTime)
+    {
+        this.maxTime = maxTime;
+        return this;
+    }
+}
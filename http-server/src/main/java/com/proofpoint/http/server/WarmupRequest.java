@@ -0,0 +1,93 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.Objects.requireNonNullElse;
+
+/**
+ * A request to replay during warm-up. Reads both lines of the JSON request
+ * log, which have only a method and URI, and fixture entries, which may also
+ * have headers and a body.
+ */
+class WarmupRequest
+{
+    private final String method;
+    private final String uri;
+    private final Map<String, String> headers;
+    @Nullable
+    private final String body;
+
+    @JsonCreator
+    WarmupRequest(
+            @JsonProperty("method") @JsonAlias("m") String method,
+            @JsonProperty("uri") @JsonAlias({"u", "requestUri"}) String uri,
+            @JsonProperty("headers") @Nullable Map<String, String> headers,
+            @JsonProperty("body") @Nullable String body)
+    {
+        this.method = requireNonNull(method, "method is null");
+        this.uri = requireNonNull(uri, "uri is null");
+        this.headers = Map.copyOf(requireNonNullElse(headers, Map.of()));
+        this.body = body;
+    }
+
+    String getMethod()
+    {
+        return method;
+    }
+
+    String getUri()
+    {
+        return uri;
+    }
+
+    String getPath()
+    {
+        int queryStart = uri.indexOf('?');
+        if (queryStart < 0) {
+            return uri;
+        }
+        return uri.substring(0, queryStart);
+    }
+
+    Map<String, String> getHeaders()
+    {
+        return headers;
+    }
+
+    @Nullable
+    String getBody()
+    {
+        return body;
+    }
+
+    /**
+     * Requests without a body are only replayed if their method is safe, as a
+     * request log does not record bodies and replaying a mutation could have
+     * side effects. Fixture entries with a body are replayed as written.
+     */
+    boolean isReplayable()
+    {
+        return body != null || "GET".equals(method) || "HEAD".equals(method);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.proofpoint.json.JsonCodec;
+import com.proofpoint.tracetoken.TraceToken;
+import com.proofpoint.tracetoken.TraceTokenHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static com.proofpoint.json.JsonCodec.jsonCodec;
+
+/**
+ * Compares the per-request cost of creating and parsing trace tokens with
+ * the implementation TraceTokenFilter used previously, which is reproduced in
+ * the legacy benchmarks.
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkTraceTokenFilter
+{
+    private static final String CLIENT_ADDRESS = "10.2.3.4";
+    private static final JsonCodec<TraceToken> TRACE_TOKEN_JSON_CODEC = jsonCodec(TraceToken.class);
+    private static final ThreadLocal<SecureRandom> SECURE_RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private TraceTokenFilter filter;
+    private String legacyPrefix;
+    private String jsonHeader;
+    private String compactHeader;
+
+    @Setup
+    public void setup()
+            throws UnknownHostException
+    {
+        InetAddress internalIp = InetAddress.getByName("10.0.0.1");
+        filter = new TraceTokenFilter(internalIp, new ClientAddressExtractor());
+        legacyPrefix = Base64.getUrlEncoder().encodeToString(new byte[] {0, 0, 1}) + "=";
+
+        TraceToken token = TRACE_TOKEN_JSON_CODEC.fromJson("{\"id\":\"testBasic\",\"key-b\":\"value-b\",\"key-a\":\"value-a\"}");
+        jsonHeader = TRACE_TOKEN_JSON_CODEC.toJson(token);
+        compactHeader = TraceTokenHeader.encode(token);
+    }
+
+    @Benchmark
+    public String legacyCreateToken()
+            throws UnknownHostException
+    {
+        byte[] randomBytes = new byte[15];
+        SECURE_RANDOM.get().nextBytes(randomBytes);
+        byte[] address = InetAddress.getByName(CLIENT_ADDRESS).getAddress();
+        byte[] shortAddress = new byte[] {address[1], address[2], address[3]};
+        return legacyPrefix
+                + Base64.getUrlEncoder().encodeToString(shortAddress) + "="
+                + Base64.getUrlEncoder().encodeToString(randomBytes);
+    }
+
+    @Benchmark
+    public String createToken()
+            throws UnknownHostException
+    {
+        return filter.createToken(CLIENT_ADDRESS);
+    }
+
+    @Benchmark
+    public TraceToken legacyParseJsonHeader()
+    {
+        return TRACE_TOKEN_JSON_CODEC.fromJson(jsonHeader);
+    }
+
+    @Benchmark
+    public TraceToken parseCompactHeader()
+    {
+        return TraceTokenHeader.decode(compactHeader);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkTraceTokenFilter.class.getSimpleName() + ".*")
+                .build();
+
+        new Runner(options).run();
+    }
+}
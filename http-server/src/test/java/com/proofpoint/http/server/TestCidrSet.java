@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.google.common.net.InetAddresses;
+import org.testng.annotations.Test;
+
+import static com.proofpoint.testing.EquivalenceTester.equivalenceTester;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestCidrSet
+{
+    @Test
+    public void testEmpty()
+    {
+        assertFalse(contains(CidrSet.empty(), "0.0.0.0"));
+        assertFalse(contains(CidrSet.empty(), "::"));
+    }
+
+    @Test
+    public void testContainsAddress()
+    {
+        CidrSet cidrSet = CidrSet.fromString("10.0.0.0/8, 192.168.1.0/24,8.8.8.8/32, 2001:db8::/32, ::1/128");
+
+        assertTrue(contains(cidrSet, "10.0.0.0"));
+        assertTrue(contains(cidrSet, "10.255.255.255"));
+        assertTrue(contains(cidrSet, "192.168.1.17"));
+        assertTrue(contains(cidrSet, "8.8.8.8"));
+        assertTrue(contains(cidrSet, "2001:db8::1"));
+        assertTrue(contains(cidrSet, "2001:db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+        assertTrue(contains(cidrSet, "::1"));
+
+        assertFalse(contains(cidrSet, "11.0.0.0"));
+        assertFalse(contains(cidrSet, "192.168.2.1"));
+        assertFalse(contains(cidrSet, "8.8.8.9"));
+        assertFalse(contains(cidrSet, "2001:db9::"));
+        assertFalse(contains(cidrSet, "::2"));
+        assertFalse(contains(cidrSet, "::"));
+    }
+
+    @Test
+    public void testNestedPrefixes()
+    {
+        CidrSet cidrSet = CidrSet.fromString("10.1.2.0/24,10.0.0.0/8,10.1.0.0/16");
+
+        assertTrue(contains(cidrSet, "10.1.2.3"));
+        assertTrue(contains(cidrSet, "10.1.3.3"));
+        assertTrue(contains(cidrSet, "10.2.3.3"));
+        assertFalse(contains(cidrSet, "11.1.2.3"));
+    }
+
+    @Test
+    public void testAllAddresses()
+    {
+        CidrSet cidrSet = CidrSet.fromString("0.0.0.0/0");
+
+        assertTrue(contains(cidrSet, "0.0.0.0"));
+        assertTrue(contains(cidrSet, "255.255.255.255"));
+        assertFalse(contains(cidrSet, "::1"));
+
+        cidrSet = cidrSet.union(CidrSet.fromString("::/0"));
+        assertTrue(contains(cidrSet, "::1"));
+    }
+
+    @Test
+    public void testUnion()
+    {
+        CidrSet cidrSet = CidrSet.fromString("10.0.0.0/8").union(CidrSet.fromString("fc00::/7"));
+
+        assertTrue(contains(cidrSet, "10.1.2.3"));
+        assertTrue(contains(cidrSet, "fd00::1"));
+        assertFalse(contains(cidrSet, "11.1.2.3"));
+        assertFalse(contains(cidrSet, "fe00::1"));
+    }
+
+    @Test
+    public void testEquals()
+    {
+        equivalenceTester()
+                .addEquivalentGroup(CidrSet.empty())
+                .addEquivalentGroup(CidrSet.fromString("10.0.0.0/8,fc00::/7"), CidrSet.fromString("fc00::/7").union(CidrSet.fromString("10.0.0.0/8")))
+                .addEquivalentGroup(CidrSet.fromString("10.0.0.0/8"))
+                .check();
+    }
+
+    private static boolean contains(CidrSet cidrSet, String address)
+    {
+        return cidrSet.containsAddress(InetAddresses.forString(address));
+    }
+}
@@ -23,9 +23,15 @@ import org.testng.annotations.Test;
 import java.util.Collections;
 import java.util.List;
 
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestClientAddressExtractor
 {
@@ -46,6 +52,16 @@ public class TestClientAddressExtractor
         assertEquals(new ClientAddressExtractor().clientAddressFor(request), "9.9.9.9");
     }
 
+    @Test
+    public void testIsFromTrustedProxy()
+    {
+        when(request.getRemoteAddr()).thenReturn("9.9.9.9");
+        assertFalse(new ClientAddressExtractor().isFromTrustedProxy(request));
+
+        when(request.getRemoteAddr()).thenReturn("10.10.10.10");
+        assertTrue(new ClientAddressExtractor().isFromTrustedProxy(request));
+    }
+
     @Test
     public void testUseForwardedFor()
     {
@@ -100,6 +116,61 @@ public class TestClientAddressExtractor
         assertEquals(new ClientAddressExtractor().clientAddressFor(request), "10.14.15.16");
     }
 
+    @Test
+    public void testEmptyForwardedForEntries()
+    {
+        when(request.getRemoteAddr()).thenReturn("10.10.10.10");
+        when(request.getHeaders("X-FORWARDED-FOR")).thenReturn(Collections.enumeration(List.of("1.1.1.1, ,2.2.2.2,", " , ")));
+
+        assertEquals(new ClientAddressExtractor().clientAddressFor(request), "2.2.2.2");
+    }
+
+    @Test
+    public void testUseForwardedForIpv6()
+    {
+        when(request.getRemoteAddr()).thenReturn("::1");
+        when(request.getHeaders("X-FORWARDED-FOR")).thenReturn(Collections.enumeration(List.of("2001:db8::1, fd00::1")));
+
+        assertEquals(new ClientAddressExtractor().clientAddressFor(request), "2001:db8::1");
+    }
+
+    @Test
+    public void testIgnoreForwardedForUnixSocket()
+    {
+        when(request.getRemoteAddr()).thenReturn("");
+        when(request.getHeaders("X-FORWARDED-FOR")).thenReturn(Collections.enumeration(List.of("1.1.1.1, 2.2.2.2")));
+
+        assertEquals(new ClientAddressExtractor().clientAddressFor(request), "");
+        assertFalse(new ClientAddressExtractor().isFromTrustedProxy(request));
+    }
+
+    @Test
+    public void testUseForwardedForTrustedUnixSocket()
+    {
+        when(request.getRemoteAddr()).thenReturn("");
+        when(request.getHeaders("X-FORWARDED-FOR")).thenReturn(Collections.enumeration(List.of("1.1.1.1, 2.2.2.2")));
+        ClientAddressExtractor extractor = new ClientAddressExtractor(new InternalNetworkConfig().setUnixSocketTrusted(true));
+
+        assertEquals(extractor.clientAddressFor(request), "2.2.2.2");
+        assertTrue(extractor.isFromTrustedProxy(request));
+    }
+
+    @Test
+    public void testCachesClientAddress()
+    {
+        when(request.getRemoteAddr()).thenReturn("10.10.10.10");
+        when(request.getHeaders("X-FORWARDED-FOR")).thenReturn(Collections.enumeration(List.of("1.1.1.1")));
+
+        ClientAddressExtractor extractor = new ClientAddressExtractor();
+        assertEquals(extractor.clientAddressFor(request), "1.1.1.1");
+        verify(request).setAttribute(anyString(), eq("1.1.1.1"));
+
+        Request cachedRequest = mock(Request.class);
+        when(cachedRequest.getAttribute(anyString())).thenReturn("2.2.2.2");
+        assertEquals(extractor.clientAddressFor(cachedRequest), "2.2.2.2");
+        verify(cachedRequest, never()).getRemoteAddr();
+    }
+
     @DataProvider(name = "addresses")
     public Object[][] addresses()
     {
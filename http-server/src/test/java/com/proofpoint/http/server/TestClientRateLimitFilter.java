@@ -0,0 +1,152 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.proofpoint.testing.TestingTicker;
+import org.eclipse.jetty.server.Request;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestClientRateLimitFilter
+{
+    private TestingTicker ticker;
+    private ClientRateLimitFilter filter;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        filter = new ClientRateLimitFilter(new ClientAddressExtractor(), "X-Client-Id", 10, 3, 2, ticker);
+    }
+
+    @Test
+    public void testBurstThenRate()
+    {
+        assertEquals(filter.tryAcquire("a"), 0);
+        assertEquals(filter.tryAcquire("a"), 0);
+        assertEquals(filter.tryAcquire("a"), 0);
+        assertEquals(filter.tryAcquire("a"), MILLISECONDS.toNanos(100));
+
+        ticker.elapseTime(100, MILLISECONDS);
+        assertEquals(filter.tryAcquire("a"), 0);
+        assertTrue(filter.tryAcquire("a") > 0);
+    }
+
+    @Test
+    public void testClientsIndependent()
+    {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(filter.tryAcquire("a"), 0);
+        }
+        assertTrue(filter.tryAcquire("a") > 0);
+        assertEquals(filter.tryAcquire("b"), 0);
+    }
+
+    @Test
+    public void testEvictsIdleClients()
+    {
+        assertEquals(filter.tryAcquire("a"), 0);
+        assertEquals(filter.tryAcquire("b"), 0);
+        assertEquals(filter.getTrackedClients(), 2);
+
+        ticker.elapseTime(1, MILLISECONDS);
+        assertEquals(filter.tryAcquire("c"), 0);
+        assertEquals(filter.getUntracked().getTotalCount(), 1);
+
+        ticker.elapseTime(2, SECONDS);
+        assertEquals(filter.tryAcquire("c"), 0);
+        assertEquals(filter.getTrackedClients(), 1);
+    }
+
+    @Test
+    public void testNewClientsLimitedWhenFull()
+    {
+        filter = new ClientRateLimitFilter(new ClientAddressExtractor(), "X-Client-Id", 10, 3, 2, ticker);
+        assertEquals(filter.tryAcquire("a"), 0);
+        assertEquals(filter.tryAcquire("b"), 0);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(filter.tryAcquire("new-" + i), 0);
+        }
+        assertTrue(filter.tryAcquire("new-3") > 0);
+        assertEquals(filter.getTrackedClients(), 2);
+        assertEquals(filter.getUntracked().getTotalCount(), 4);
+    }
+
+    @Test
+    public void testKeyHeaderIgnoredFromUntrustedPeer()
+            throws Exception
+    {
+        FilterChain chain = mock(FilterChain.class);
+        for (int i = 0; i < 4; i++) {
+            Request request = mock(Request.class);
+            when(request.getPathInfo()).thenReturn("/foo");
+            when(request.getRemoteAddr()).thenReturn("1.2.3.4");
+            when(request.getHeader("X-Client-Id")).thenReturn("client-" + i);
+            filter.doFilter(request, mock(HttpServletResponse.class), chain);
+        }
+
+        verify(chain, times(3)).doFilter(any(), any());
+        assertEquals(filter.getTopOffenders(), "1.2.3.4=1");
+    }
+
+    @Test
+    public void testTopOffenders()
+    {
+        for (int i = 0; i < 5; i++) {
+            filter.tryAcquire("a");
+            filter.tryAcquire("b");
+        }
+        filter.tryAcquire("a");
+        assertEquals(filter.getTopOffenders(), "a=3\nb=2");
+    }
+
+    @Test
+    public void testRejectsWithRetryAfter()
+            throws Exception
+    {
+        Request request = mock(Request.class);
+        when(request.getPathInfo()).thenReturn("/foo");
+        when(request.getHeader("X-Client-Id")).thenReturn("client");
+        FilterChain chain = mock(FilterChain.class);
+
+        for (int i = 0; i < 3; i++) {
+            filter.doFilter(request, mock(HttpServletResponse.class), chain);
+        }
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        filter.doFilter(request, response, chain);
+
+        verify(response).setStatus(429);
+        verify(response).setIntHeader("Retry-After", 1);
+        verify(chain, never()).doFilter(request, response);
+        verify(chain, times(3)).doFilter(any(), any());
+        assertEquals(filter.getRejected().getTotalCount(), 1);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.proofpoint.testing.TestingTicker;
+import com.proofpoint.units.Duration;
+import org.eclipse.jetty.server.Request;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestConcurrencyLimitFilter
+{
+    private TestingTicker ticker;
+    private ConcurrencyLimitFilter filter;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        filter = new ConcurrencyLimitFilter(2, 10, new Duration(1, SECONDS), ticker);
+    }
+
+    @Test
+    public void testInitialLimit()
+    {
+        assertEquals(new ConcurrencyLimitFilter(2, 100, null, ticker).getLimit(), 20);
+        assertEquals(new ConcurrencyLimitFilter(30, 100, null, ticker).getLimit(), 30);
+        assertEquals(filter.getLimit(), 10);
+    }
+
+    @Test
+    public void testRejectsOverLimit()
+    {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(filter.tryAcquire());
+        }
+        assertFalse(filter.tryAcquire());
+        assertEquals(filter.getInflight(), 10);
+    }
+
+    @Test
+    public void testIncreasesWhenLatencyStable()
+    {
+        filter = new ConcurrencyLimitFilter(2, 100, null, ticker);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(filter.tryAcquire());
+        }
+        long start = ticker.read();
+        ticker.elapseTime(10, MILLISECONDS);
+        filter.release(start);
+        assertEquals(filter.getLimit(), 21);
+        assertEquals(filter.getInflight(), 19);
+    }
+
+    @Test
+    public void testDecreasesWhenLatencyIncreases()
+    {
+        filter = new ConcurrencyLimitFilter(2, 100, null, ticker);
+        for (int i = 0; i < 30; i++) {
+            int acquired = 0;
+            while (filter.tryAcquire()) {
+                ++acquired;
+            }
+            long start = ticker.read();
+            ticker.elapseTime(10, MILLISECONDS);
+            for (int j = 0; j < acquired; j++) {
+                filter.release(start);
+            }
+        }
+        int grownLimit = filter.getLimit();
+        assertEquals(grownLimit, 100);
+
+        ticker.elapseTime(1, MILLISECONDS);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(filter.tryAcquire());
+        }
+        long start = ticker.read();
+        ticker.elapseTime(100, MILLISECONDS);
+        filter.release(start);
+        assertEquals(filter.getLimit(), grownLimit, "one slow request is smoothed out");
+
+        // Requests started before the decrease do not decrease again
+        for (int i = 0; i < 4; i++) {
+            filter.release(start);
+        }
+        assertEquals(filter.getLimit(), (int) (grownLimit * 0.9));
+    }
+
+    @Test
+    public void testMixedLatencyDoesNotCollapse()
+    {
+        filter = new ConcurrencyLimitFilter(2, 100, null, ticker);
+        for (int i = 0; i < 30; i++) {
+            int acquired = 0;
+            while (filter.tryAcquire()) {
+                ++acquired;
+            }
+            ticker.elapseTime(50, MILLISECONDS);
+            for (int j = 0; j < acquired; j++) {
+                // Requests to a fast and a slow resource complete interleaved
+                long latency = MILLISECONDS.toNanos(j % 2 == 0 ? 1 : 50);
+                filter.release(ticker.read() - latency);
+            }
+        }
+        assertEquals(filter.getLimit(), 100);
+    }
+
+    @Test
+    public void testRejectsRequestQueuedTooLong()
+            throws Exception
+    {
+        Request request = mock(Request.class);
+        when(request.getPathInfo()).thenReturn("/foo");
+        when(request.getTimeStamp()).thenReturn(System.currentTimeMillis() - 5_000);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+
+        filter.doFilter(request, response, chain);
+
+        verify(response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        verify(chain, never()).doFilter(any(), any());
+        assertEquals(filter.getRejected().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testHealthCheckExempt()
+            throws Exception
+    {
+        assertTrue(filter.tryAcquire());
+        assertTrue(filter.tryAcquire());
+
+        Request request = mock(Request.class);
+        when(request.getPathInfo()).thenReturn("/inrotation.txt");
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+
+        filter.doFilter(request, response, chain);
+
+        verify(chain).doFilter(request, response);
+        assertEquals(filter.getRejected().getTotalCount(), 0);
+    }
+}
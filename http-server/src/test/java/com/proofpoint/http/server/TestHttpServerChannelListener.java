@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.proofpoint.testing.TestingTicker;
+import org.eclipse.jetty.server.Request;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class TestHttpServerChannelListener
+{
+    private TestingTicker ticker;
+    private RequestStats stats;
+    private HttpServerChannelListener listener;
+    private Request request;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        stats = new RequestStats();
+        listener = new HttpServerChannelListener(null, new ClientAddressExtractor(), stats, null, ticker);
+
+        Map<String, Object> attributes = new HashMap<>();
+        request = mock(Request.class);
+        when(request.getAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(request).setAttribute(anyString(), any());
+    }
+
+    @Test
+    public void testRecordsPhases()
+    {
+        listener.onRequestBegin(request);
+        ticker.elapseTime(1, MILLISECONDS);
+        listener.onBeforeDispatch(request);
+        listener.onRequestContent(request, ByteBuffer.allocate(1));
+        ticker.elapseTime(2, MILLISECONDS);
+        listener.onRequestEnd(request);
+        ticker.elapseTime(4, MILLISECONDS);
+        listener.onBeforeDispatch(request);
+        ticker.elapseTime(8, MILLISECONDS);
+        listener.onResponseBegin(request);
+        ticker.elapseTime(16, MILLISECONDS);
+        listener.onResponseContent(request, ByteBuffer.allocate(1));
+        ticker.elapseTime(32, MILLISECONDS);
+        listener.onResponseContent(request, ByteBuffer.allocate(1));
+        ticker.elapseTime(64, MILLISECONDS);
+        listener.onComplete(request);
+
+        assertEquals(stats.getQueueTime().getAllTime().getMax(), 0.001, 1e-9);
+        assertEquals(stats.getRequestReadTime().getAllTime().getMax(), 0.002, 1e-9);
+        assertEquals(stats.getHandlerTime().getAllTime().getMax(), 0.014, 1e-9);
+        assertEquals(stats.getResponseWriteTime().getAllTime().getMax(), 0.112, 1e-9);
+        assertEquals(stats.getTimeToFirstByte().getAllTime().getMax(), 0.031, 1e-9);
+    }
+
+    @Test
+    public void testRequestReadExcludesQueueTime()
+    {
+        listener.onRequestBegin(request);
+        ticker.elapseTime(10, MILLISECONDS);
+        listener.onBeforeDispatch(request);
+        ticker.elapseTime(1, MILLISECONDS);
+        listener.onRequestContent(request, ByteBuffer.allocate(1));
+        ticker.elapseTime(2, MILLISECONDS);
+        listener.onRequestContent(request, ByteBuffer.allocate(1));
+        ticker.elapseTime(4, MILLISECONDS);
+        listener.onRequestEnd(request);
+        listener.onResponseBegin(request);
+        listener.onComplete(request);
+
+        assertEquals(stats.getQueueTime().getAllTime().getMax(), 0.010, 1e-9);
+        assertEquals(stats.getRequestReadTime().getAllTime().getMax(), 0.006, 1e-9);
+    }
+
+    @Test
+    public void testResponseWithoutContent()
+    {
+        listener.onRequestBegin(request);
+        listener.onBeforeDispatch(request);
+        ticker.elapseTime(5, MILLISECONDS);
+        listener.onResponseBegin(request);
+        ticker.elapseTime(1, MILLISECONDS);
+        listener.onComplete(request);
+
+        assertEquals(stats.getRequestReadTime().getAllTime().getMax(), 0.0, 1e-9);
+        assertEquals(stats.getTimeToFirstByte().getAllTime().getMax(), 0.005, 1e-9);
+        assertEquals(stats.getResponseWriteTime().getAllTime().getMax(), 0.001, 1e-9);
+    }
+
+    @Test
+    public void testFailedBeforeDispatch()
+    {
+        listener.onRequestBegin(request);
+        ticker.elapseTime(5, MILLISECONDS);
+        listener.onResponseBegin(request);
+        listener.onComplete(request);
+
+        assertEquals(stats.getQueueTime().getAllTime().getCount(), 0.0);
+        assertEquals(stats.getTimeToFirstByte().getAllTime().getCount(), 1.0);
+    }
+}
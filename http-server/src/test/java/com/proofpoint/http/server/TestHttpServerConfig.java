@@ -20,6 +20,7 @@ import com.proofpoint.configuration.testing.ConfigAssertions;
 import com.proofpoint.http.server.HttpServerConfig.LogFormat;
 import com.proofpoint.units.DataSize;
 import com.proofpoint.units.Duration;
+import jakarta.validation.constraints.AssertFalse;
 import org.testng.annotations.Test;
 
 import java.util.Map;
@@ -27,6 +28,8 @@ import java.util.Map;
 import static com.proofpoint.configuration.testing.ConfigAssertions.assertFullMapping;
 import static com.proofpoint.configuration.testing.ConfigAssertions.assertLegacyEquivalence;
 import static com.proofpoint.configuration.testing.ConfigAssertions.assertRecordedDefaults;
+import static com.proofpoint.testing.ValidationAssertions.assertFailsValidation;
+import static com.proofpoint.testing.ValidationAssertions.assertValidates;
 import static com.proofpoint.units.DataSize.Unit.GIGABYTE;
 import static com.proofpoint.units.DataSize.Unit.KILOBYTE;
 import static com.proofpoint.units.DataSize.Unit.MEGABYTE;
@@ -44,6 +47,7 @@ public class TestHttpServerConfig
                 .setHttpEnabled(true)
                 .setHttpPort(8080)
                 .setHttpAcceptQueueSize(10)
+                .setUnixSocketPath(null)
                 .setHttpsEnabled(false)
                 .setHttpsPort(8443)
                 .setSslSessionTimeout(new Duration(4, HOURS))
@@ -78,6 +82,19 @@ public class TestHttpServerConfig
                 .setHttp2InputBufferSize(new DataSize(8, KILOBYTE))
                 .setHttp2InitialStreamReceiveWindowSize(new DataSize(16, MEGABYTE))
                 .setHttp2StreamIdleTimeout(new Duration(15, SECONDS))
+                .setConcurrencyLimitEnabled(false)
+                .setConcurrencyLimitMin(10)
+                .setConcurrencyLimitMax(200)
+                .setMaxQueuedTime(null)
+                .setClientRateLimitEnabled(false)
+                .setClientRateLimitRate(100)
+                .setClientRateLimitBurst(100)
+                .setClientRateLimitKeyHeader(null)
+                .setClientRateLimitMaxClients(10_000)
+                .setSlowRequestWatchdogEnabled(false)
+                .setSlowRequestThreshold(new Duration(10, SECONDS))
+                .setSlowRequestMaxLogsPerMinute(10)
+                .setResourceUsageSampleInterval(0)
         );
     }
  
@@ -88,6 +105,7 @@ public class TestHttpServerConfig
                 .put("http-server.http.enabled", "false")
                 .put("http-server.http.port", "1")
                 .put("http-server.accept-queue-size", "1024")
+                .put("http-server.unix-socket.path", "/var/run/http.sock")
                 .put("http-server.https.enabled", "true")
                 .put("http-server.https.port", "2")
                 .put("http-server.https.keystore.path", "/keystore")
@@ -122,12 +140,26 @@ public class TestHttpServerConfig
                 .put("http-server.http2.stream-receive-window-size", "4MB")
                 .put("http-server.http2.input-buffer-size", "4MB")
                 .put("http-server.http2.stream-idle-timeout", "23s")
+                .put("http-server.concurrency-limit.enabled", "true")
+                .put("http-server.concurrency-limit.min", "5")
+                .put("http-server.concurrency-limit.max", "50")
+                .put("http-server.concurrency-limit.max-queued-time", "2s")
+                .put("http-server.client-rate-limit.enabled", "true")
+                .put("http-server.client-rate-limit.rate", "7")
+                .put("http-server.client-rate-limit.burst", "8")
+                .put("http-server.client-rate-limit.key-header", "X-Client-Id")
+                .put("http-server.client-rate-limit.max-clients", "9")
+                .put("http-server.slow-request-watchdog.enabled", "true")
+                .put("http-server.slow-request-watchdog.threshold", "3s")
+                .put("http-server.slow-request-watchdog.max-logs-per-minute", "4")
+                .put("http-server.resource-usage.sample-interval", "100")
                 .build();
 
         HttpServerConfig expected = new HttpServerConfig()
                 .setHttpEnabled(false)
                 .setHttpPort(1)
                 .setHttpAcceptQueueSize(1024)
+                .setUnixSocketPath("/var/run/http.sock")
                 .setHttpsEnabled(true)
                 .setHttpsPort(2)
                 .setSslSessionTimeout(new Duration(7, HOURS))
@@ -161,11 +193,32 @@ public class TestHttpServerConfig
                 .setHttp2InitialSessionReceiveWindowSize(new DataSize(4, MEGABYTE))
                 .setHttp2InitialStreamReceiveWindowSize(new DataSize(4, MEGABYTE))
                 .setHttp2InputBufferSize(new DataSize(4, MEGABYTE))
-                .setHttp2StreamIdleTimeout(new Duration(23, SECONDS));
+                .setHttp2StreamIdleTimeout(new Duration(23, SECONDS))
+                .setConcurrencyLimitEnabled(true)
+                .setConcurrencyLimitMin(5)
+                .setConcurrencyLimitMax(50)
+                .setMaxQueuedTime(new Duration(2, SECONDS))
+                .setClientRateLimitEnabled(true)
+                .setClientRateLimitRate(7)
+                .setClientRateLimitBurst(8)
+                .setClientRateLimitKeyHeader("X-Client-Id")
+                .setClientRateLimitMaxClients(9)
+                .setSlowRequestWatchdogEnabled(true)
+                .setSlowRequestThreshold(new Duration(3, SECONDS))
+                .setSlowRequestMaxLogsPerMinute(4)
+                .setResourceUsageSampleInterval(100);
 
         assertFullMapping(properties, expected);
     }
 
+    @Test
+    public void testConcurrencyLimitValidation()
+    {
+        assertValidates(new HttpServerConfig().setConcurrencyLimitMin(20).setConcurrencyLimitMax(20));
+        assertFailsValidation(new HttpServerConfig().setConcurrencyLimitMin(20).setConcurrencyLimitMax(19),
+                "concurrencyLimitMaxLessThanMin", "must be false", AssertFalse.class);
+    }
+
     @Test
     public void testLegacyProperties()
     {
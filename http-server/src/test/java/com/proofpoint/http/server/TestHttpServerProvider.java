@@ -37,6 +37,7 @@ import org.testng.annotations.Test;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
@@ -262,6 +263,25 @@ public class TestHttpServerProvider
         verify(requestLog, times(2)).log(any());
     }
 
+    @Test
+    public void testUnixSocket()
+            throws Exception
+    {
+        String socketPath = new File(tempDir, "http.sock").getAbsolutePath();
+        config.setUnixSocketPath(socketPath);
+        createServer();
+        lifeCycleManager.start();
+
+        try (JettyHttpClient httpClient = new JettyHttpClient(new HttpClientConfig().setUnixSocketPath(socketPath))) {
+            StatusResponse response = httpClient.execute(prepareGet().setUri(URI.create("http://localhost/")).build(), createStatusResponseHandler());
+
+            assertEquals(response.getStatusCode(), HttpServletResponse.SC_OK);
+            assertEquals(response.getHeader("X-Protocol"), "HTTP/1.1");
+        }
+        server.stop();
+        verify(requestLog).log(any());
+    }
+
     @Test
     public void testHttps()
             throws Exception
@@ -488,6 +508,24 @@ public class TestHttpServerProvider
         }
     }
 
+    @Test
+    public void testCompactTraceTokenWithProperties()
+            throws Exception
+    {
+        createServer();
+        lifeCycleManager.start();
+
+        try (JettyHttpClient client = new JettyHttpClient()) {
+            StatusResponse response = client.execute(prepareGet()
+                    .setUri(httpServerInfo.getHttpUri())
+                    .setHeader("X-Proofpoint-TraceToken", "~testBasic;key-b=value-b;_local-1=value-1;key-a=value%3Da")
+                    .build(), createStatusResponseHandler());
+
+            String token = response.getHeader("X-Trace-Token-Was");
+            assertEquals(token, "{id=testBasic, key-b=value-b, key-a=value=a}");
+        }
+    }
+
     @Test
     public void testTraceTokenIgnoresLocalProperties()
             throws Exception
@@ -19,14 +19,12 @@ import com.google.common.net.InetAddresses;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
-import java.net.Inet4Address;
-
 import static com.proofpoint.testing.EquivalenceTester.equivalenceTester;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
-public class TestInet4Network
+public class TestInetNetwork
 {
     @Test
     public void testFromCidrValid()
@@ -37,11 +35,15 @@ public class TestInet4Network
         assertCidrValid("8.8.8.0/24");
         assertCidrValid("8.8.8.8/32");
         assertCidrValid("255.255.255.255/32");
+        assertCidrValid("::/0");
+        assertCidrValid("::1/128");
+        assertCidrValid("2001:db8::/32");
+        assertCidrValid("fe80::/10");
     }
 
     private static void assertCidrValid(String cidr)
     {
-        assertEquals(Inet4Network.fromCidr(cidr).toString(), cidr);
+        assertEquals(InetNetwork.fromCidr(cidr).toString(), cidr);
     }
 
     @DataProvider(name = "invalidCidr")
@@ -67,6 +69,10 @@ public class TestInet4Network
                 {"0.0.0.0/"},
                 {"/0"},
                 {"0.0.0.0"},
+                {"::/129"},
+                {"::1/127"},
+                {"fe80::/8"},
+                {"2001:db8::/x"},
                 {""}
         };
     }
@@ -74,7 +80,7 @@ public class TestInet4Network
     @Test(expectedExceptions = IllegalArgumentException.class, dataProvider = "invalidCidr")
     public void testFromCidrInvalid(String cidr)
     {
-        Inet4Network.fromCidr(cidr);
+        InetNetwork.fromCidr(cidr);
     }
 
     @Test
@@ -110,19 +116,23 @@ public class TestInet4Network
     }
 
     @Test
-    public void testAddressToLong()
+    public void testParseIpv4()
     {
-        assertAddressToLong("0.0.0.0", 0L);
-        assertAddressToLong("255.255.255.255", 4294967295L);
-        assertAddressToLong("8.8.8.8", 134744072L);
-        assertAddressToLong("202.12.128.0", 3389816832L);
-        assertAddressToLong("202.12.128.254", 3389817086L);
-    }
-
-    private static void assertAddressToLong(String address, long ip)
-    {
-        Inet4Address addr = (Inet4Address) InetAddresses.forString(address);
-        assertEquals(Inet4Network.addressToLong(addr), ip);
+        assertEquals(InetNetwork.parseIpv4("0.0.0.0", 0, 7), 0L);
+        assertEquals(InetNetwork.parseIpv4("255.255.255.255", 0, 15), 4294967295L);
+        assertEquals(InetNetwork.parseIpv4("8.8.8.8", 0, 7), 134744072L);
+        assertEquals(InetNetwork.parseIpv4(" 202.12.128.254,", 1, 15), 3389817086L);
+
+        assertEquals(InetNetwork.parseIpv4("", 0, 0), -1L);
+        assertEquals(InetNetwork.parseIpv4("1.2.3", 0, 5), -1L);
+        assertEquals(InetNetwork.parseIpv4("1.2.3.4.5", 0, 9), -1L);
+        assertEquals(InetNetwork.parseIpv4("1.2.3.", 0, 6), -1L);
+        assertEquals(InetNetwork.parseIpv4("1..2.3", 0, 6), -1L);
+        assertEquals(InetNetwork.parseIpv4("256.0.0.0", 0, 9), -1L);
+        assertEquals(InetNetwork.parseIpv4("1.2.3.1234", 0, 10), -1L);
+        assertEquals(InetNetwork.parseIpv4("01.2.3.4", 0, 8), -1L);
+        assertEquals(InetNetwork.parseIpv4("1.2.3.x", 0, 7), -1L);
+        assertEquals(InetNetwork.parseIpv4("::1", 0, 3), -1L);
     }
 
     @Test
@@ -143,23 +153,37 @@ public class TestInet4Network
         assertFalse(containsAddress("8.8.8.8/32", "8.8.8.9"));
         assertFalse(containsAddress("202.12.128.0/18", "202.12.127.255"));
         assertFalse(containsAddress("202.12.128.0/18", "202.12.192.0"));
+
+        assertTrue(containsAddress("::/0", "::"));
+        assertTrue(containsAddress("::/0", "2001:db8::1"));
+        assertTrue(containsAddress("2001:db8::/32", "2001:db8:ffff::1"));
+        assertTrue(containsAddress("fe80::/10", "febf::1"));
+        assertTrue(containsAddress("::1/128", "::1"));
+
+        assertFalse(containsAddress("::/0", "1.2.3.4"));
+        assertFalse(containsAddress("0.0.0.0/0", "::1"));
+        assertFalse(containsAddress("2001:db8::/32", "2001:db9::"));
+        assertFalse(containsAddress("fe80::/10", "fec0::1"));
+        assertFalse(containsAddress("::1/128", "::2"));
     }
 
     private static boolean containsAddress(String cidr, String address)
     {
-        Inet4Address addr = (Inet4Address) InetAddresses.forString(address);
-        return Inet4Network.fromCidr(cidr).containsAddress(addr);
+        return InetNetwork.fromCidr(cidr).containsAddress(InetAddresses.forString(address));
     }
 
     @Test
     public void testEquals()
     {
         equivalenceTester()
-                .addEquivalentGroup(Inet4Network.fromCidr("8.0.0.0/8"))
-                .addEquivalentGroup(Inet4Network.fromCidr("9.0.0.0/8"))
-                .addEquivalentGroup(Inet4Network.fromCidr("8.0.0.0/9"))
-                .addEquivalentGroup(Inet4Network.fromCidr("8.8.8.0/24"))
-                .addEquivalentGroup(Inet4Network.fromCidr("8.8.8.8/32"))
+                .addEquivalentGroup(InetNetwork.fromCidr("8.0.0.0/8"))
+                .addEquivalentGroup(InetNetwork.fromCidr("9.0.0.0/8"))
+                .addEquivalentGroup(InetNetwork.fromCidr("8.0.0.0/9"))
+                .addEquivalentGroup(InetNetwork.fromCidr("8.8.8.0/24"))
+                .addEquivalentGroup(InetNetwork.fromCidr("8.8.8.8/32"))
+                .addEquivalentGroup(InetNetwork.fromCidr("::/0"))
+                .addEquivalentGroup(InetNetwork.fromCidr("2001:db8::/32"), InetNetwork.fromCidr("2001:0db8:0::/32"))
+                .addEquivalentGroup(InetNetwork.fromCidr("2001:db8::/33"))
                 .check();
     }
 
@@ -172,10 +196,12 @@ public class TestInet4Network
         assertToString("8.8.8.0/24");
         assertToString("8.8.8.8/32");
         assertToString("255.254.0.0/16");
+        assertToString("2001:db8::/32");
+        assertToString("::1/128");
     }
 
     private static void assertToString(String cidr)
     {
-        assertEquals(Inet4Network.fromCidr(cidr).toString(), cidr);
+        assertEquals(InetNetwork.fromCidr(cidr).toString(), cidr);
     }
 }
@@ -29,7 +29,8 @@ public class TestInternalNetworkConfig
     public void testDefaults()
     {
         ConfigAssertions.assertRecordedDefaults(ConfigAssertions.recordDefaults(InternalNetworkConfig.class)
-                .setInternalNetworks(CidrSet.empty()));
+                .setInternalNetworks(CidrSet.empty())
+                .setUnixSocketTrusted(false));
     }
 
     @Test
@@ -37,10 +38,12 @@ public class TestInternalNetworkConfig
     {
         Map<String, String> properties = ImmutableMap.<String, String>builder()
                 .put("http-server.internal-networks", "8.8.0.0/16 , 9.0.0.0/8")
+                .put("http-server.internal-networks.unix-socket-trusted", "true")
                 .build();
 
         InternalNetworkConfig expected = new InternalNetworkConfig()
-                .setInternalNetworks(CidrSet.fromString("9.0.0.0/8").union(CidrSet.fromString("8.8.0.0/16")));
+                .setInternalNetworks(CidrSet.fromString("9.0.0.0/8").union(CidrSet.fromString("8.8.0.0/16")))
+                .setUnixSocketTrusted(true);
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.google.common.base.Ticker;
+import com.proofpoint.http.server.testing.TestingHttpServer;
+import com.proofpoint.node.NodeInfo;
+import com.proofpoint.node.testing.TestingNodeModule;
+import com.proofpoint.stats.SparseTimeStat;
+import com.proofpoint.units.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.io.MoreFiles.deleteRecursively;
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestRequestReplayWarmup
+{
+    private Path tempDir;
+    private Path requestFile;
+    private CountingServlet servlet;
+    private TestingHttpServer server;
+    private HttpServerInfo httpServerInfo;
+    private Map<String, SparseTimeStat> latencies;
+
+    @BeforeMethod
+    public void setup()
+            throws Exception
+    {
+        tempDir = Files.createTempDirectory("warmup");
+        requestFile = tempDir.resolve("requests.json");
+        servlet = new CountingServlet();
+        NodeInfo nodeInfo = TestingNodeModule.createNodeInfo();
+        HttpServerConfig config = new HttpServerConfig().setHttpPort(0);
+        httpServerInfo = new HttpServerInfo(config, nodeInfo);
+        server = new TestingHttpServer(httpServerInfo, nodeInfo, config, servlet, Map.of());
+        server.start();
+        latencies = new ConcurrentHashMap<>();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown()
+            throws Exception
+    {
+        server.stop();
+        deleteRecursively(tempDir, ALLOW_INSECURE);
+    }
+
+    @Test
+    public void testReadSample()
+            throws IOException
+    {
+        Files.write(requestFile, List.of(
+                "{\"time\":\"2022-01-01T00:00:00.000Z\",\"m\":\"GET\",\"u\":\"/v1/foo?bar=1\",\"s\":200}",
+                "{\"m\":\"POST\",\"u\":\"/v1/foo\"}",
+                "{\"method\":\"PUT\",\"uri\":\"/v1/foo\",\"headers\":{\"Content-Type\":\"application/json\"},\"body\":\"{}\"}",
+                "{\"method\":\"HEAD\",\"requestUri\":\"/v1/bar\"}",
+                "truncated {\"m\":"));
+
+        List<WarmupRequest> sample = RequestReplayWarmup.readSample(requestFile, 10);
+        assertEquals(sample.size(), 3);
+        assertEquals(sample.get(0).getMethod(), "GET");
+        assertEquals(sample.get(0).getPath(), "/v1/foo");
+        assertEquals(sample.get(1).getMethod(), "PUT");
+        assertEquals(sample.get(1).getHeaders(), Map.of("Content-Type", "application/json"));
+        assertEquals(sample.get(1).getBody(), "{}");
+        assertEquals(sample.get(2).getUri(), "/v1/bar");
+
+        assertEquals(RequestReplayWarmup.readSample(requestFile, 2).size(), 2);
+    }
+
+    @Test
+    public void testReplaysUntilStable()
+            throws IOException
+    {
+        Files.write(requestFile, List.of(
+                "{\"m\":\"GET\",\"u\":\"/v1/foo\"}",
+                "{\"m\":\"GET\",\"u\":\"/v1/bar?baz=1\"}"));
+        RequestReplayWarmup warmup = createWarmup(new WarmupConfig()
+                .setEnabled(true)
+                .setRequestFile(requestFile.toString())
+                .setMaxTime(new Duration(30, SECONDS)));
+
+        assertFalse(warmup.isComplete());
+        assertNotNull(warmup.getWarmupState());
+
+        warmup.warmUp();
+
+        assertTrue(warmup.isComplete());
+        assertNull(warmup.getWarmupState());
+        assertTrue(warmup.getRounds() >= 3);
+        assertEquals(servlet.getPaths(), Set.of("/v1/foo", "/v1/bar"));
+        assertEquals(servlet.getCount(), warmup.getRequests().getTotalCount());
+        assertEquals(warmup.getFailures().getTotalCount(), 0);
+        assertEquals(latencies.keySet(), Set.of("GET /v1/foo", "GET /v1/bar"));
+    }
+
+    @Test
+    public void testStopsAtTimeBudget()
+            throws IOException
+    {
+        Files.write(requestFile, List.of("{\"m\":\"GET\",\"u\":\"/v1/foo\"}"));
+        RequestReplayWarmup warmup = new RequestReplayWarmup(
+                new WarmupConfig()
+                        .setEnabled(true)
+                        .setRequestFile(requestFile.toString()),
+                new HttpServerConfig(),
+                httpServerInfo,
+                this::latency,
+                new Ticker()
+                {
+                    private long time;
+
+                    @Override
+                    public long read()
+                    {
+                        // each read advances past the default two minute budget
+                        time += SECONDS.toNanos(100);
+                        return time;
+                    }
+                });
+
+        warmup.warmUp();
+
+        assertTrue(warmup.isComplete());
+        assertEquals(servlet.getCount(), warmup.getRequests().getTotalCount());
+        assertTrue(warmup.getRequests().getTotalCount() <= 1);
+    }
+
+    @Test
+    public void testDisabled()
+            throws IOException
+    {
+        Files.write(requestFile, List.of("{\"m\":\"GET\",\"u\":\"/v1/foo\"}"));
+        RequestReplayWarmup warmup = createWarmup(new WarmupConfig()
+                .setRequestFile(requestFile.toString()));
+
+        assertTrue(warmup.isComplete());
+        assertNull(warmup.getWarmupState());
+        warmup.warmUp();
+        assertEquals(servlet.getCount(), 0);
+    }
+
+    @Test
+    public void testMissingRequestFile()
+    {
+        RequestReplayWarmup warmup = createWarmup(new WarmupConfig()
+                .setEnabled(true)
+                .setRequestFile(tempDir.resolve("missing.json").toString()));
+
+        warmup.warmUp();
+
+        assertTrue(warmup.isComplete());
+        assertEquals(servlet.getCount(), 0);
+    }
+
+    private RequestReplayWarmup createWarmup(WarmupConfig config)
+    {
+        return new RequestReplayWarmup(config, new HttpServerConfig(), httpServerInfo, this::latency, Ticker.systemTicker());
+    }
+
+    private SparseTimeStat latency(String method, String path)
+    {
+        return latencies.computeIfAbsent(method + " " + path, key -> new SparseTimeStat());
+    }
+
+    private static class CountingServlet
+            extends HttpServlet
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        private final Set<String> paths = ConcurrentHashMap.newKeySet();
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+        {
+            count.incrementAndGet();
+            paths.add(request.getPathInfo());
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+
+        int getCount()
+        {
+            return count.get();
+        }
+
+        Set<String> getPaths()
+        {
+            return paths;
+        }
+    }
+}
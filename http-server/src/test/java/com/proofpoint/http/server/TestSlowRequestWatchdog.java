@@ -0,0 +1,132 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.proofpoint.testing.TestingTicker;
+import com.proofpoint.units.Duration;
+import org.eclipse.jetty.server.Request;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static com.proofpoint.http.server.TraceTokenFilter.TRACE_TOKEN_ATTRIBUTE;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class TestSlowRequestWatchdog
+{
+    private TestingTicker ticker;
+    private SlowRequestWatchdog watchdog;
+    private Request request;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        watchdog = new SlowRequestWatchdog(new Duration(5, SECONDS), 1, ticker);
+        request = mock(Request.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getRequestURI()).thenReturn("/slow");
+        when(request.getAttribute(TRACE_TOKEN_ATTRIBUTE)).thenReturn("token");
+    }
+
+    @Test
+    public void testFastRequestNotReported()
+    {
+        watchdog.dispatched(request, ticker.read());
+        ticker.elapseTime(4, SECONDS);
+        watchdog.check();
+        watchdog.undispatched();
+        ticker.elapseTime(10, SECONDS);
+        watchdog.check();
+
+        assertEquals(watchdog.getSlowRequests().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testSlowRequestReportedOnce()
+    {
+        watchdog.dispatched(request, ticker.read());
+        for (int i = 0; i < 10; i++) {
+            ticker.elapseTime(5, SECONDS);
+            watchdog.check();
+        }
+        watchdog.undispatched();
+        watchdog.check();
+
+        assertEquals(watchdog.getSlowRequests().getTotalCount(), 1);
+        assertEquals(watchdog.getSuppressedLogs().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testReportedWhenFinishedBeforeAllSamples()
+    {
+        watchdog.dispatched(request, ticker.read());
+        ticker.elapseTime(6, SECONDS);
+        watchdog.check();
+        watchdog.undispatched();
+        watchdog.check();
+
+        // a new request on the same thread is tracked separately
+        watchdog.dispatched(request, ticker.read());
+        ticker.elapseTime(6, SECONDS);
+        watchdog.check();
+        watchdog.undispatched();
+        watchdog.check();
+
+        assertEquals(watchdog.getSlowRequests().getTotalCount(), 2);
+        assertEquals(watchdog.getSuppressedLogs().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testRequestNotReadByCheckingThread()
+    {
+        watchdog.dispatched(request, ticker.read());
+        clearInvocations(request);
+        for (int i = 0; i < 3; i++) {
+            ticker.elapseTime(5, SECONDS);
+            watchdog.check();
+        }
+        watchdog.undispatched();
+        watchdog.check();
+
+        verifyNoMoreInteractions(request);
+        assertEquals(watchdog.getSlowRequests().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testTraceTokenRegisteredAfterDispatch()
+    {
+        Request newRequest = mock(Request.class);
+        when(newRequest.getMethod()).thenReturn("GET");
+        when(newRequest.getRequestURI()).thenReturn("/slow");
+        watchdog.dispatched(newRequest, ticker.read());
+        ticker.elapseTime(6, SECONDS);
+        watchdog.check();
+        watchdog.traceTokenRegistered("token");
+        ticker.elapseTime(1, SECONDS);
+        watchdog.check();
+
+        // registering the token does not start tracking a different request
+        assertEquals(watchdog.getSlowRequests().getTotalCount(), 1);
+        watchdog.undispatched();
+        watchdog.check();
+        assertEquals(watchdog.getSlowRequests().getTotalCount(), 1);
+    }
+}
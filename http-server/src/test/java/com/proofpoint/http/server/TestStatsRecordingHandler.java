@@ -0,0 +1,119 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import com.proofpoint.stats.SparseCounterStat;
+import com.proofpoint.stats.SparseTimeStat;
+import com.proofpoint.testing.TestingTicker;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.net.ssl.SSLSession;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class TestStatsRecordingHandler
+{
+    private static final String REQUEST_SSL_SESSION_ATTRIBUTE = "org.eclipse.jetty.servlet.request.ssl_session";
+
+    private TestingTicker ticker;
+    private RequestStats stats;
+    private DetailedRequestStats detailedRequestStats;
+    private SparseTimeStat okTime;
+    private SparseCounterStat tlsCount;
+    private StatsRecordingHandler handler;
+
+    @BeforeMethod
+    public void setup()
+    {
+        ticker = new TestingTicker();
+        stats = new RequestStats();
+        okTime = new SparseTimeStat();
+        tlsCount = new SparseCounterStat();
+        detailedRequestStats = mock(DetailedRequestStats.class);
+        when(detailedRequestStats.requestTimeByCode(anyInt(), anyInt())).thenReturn(new SparseTimeStat());
+        when(detailedRequestStats.requestTimeByCode(200, 2)).thenReturn(okTime);
+        when(detailedRequestStats.tlsRequest(anyString(), anyString())).thenReturn(tlsCount);
+        handler = new StatsRecordingHandler(stats, detailedRequestStats, ticker);
+    }
+
+    @Test
+    public void testResolvesStatsOnce()
+    {
+        SSLSession sslSession = mock(SSLSession.class);
+        when(sslSession.getProtocol()).thenReturn("TLSv1.3");
+        when(sslSession.getCipherSuite()).thenReturn("TLS_AES_128_GCM_SHA256");
+
+        for (int i = 0; i < 3; i++) {
+            handler.log(request(sslSession), response(200));
+        }
+        handler.log(request(null), response(404));
+
+        verify(detailedRequestStats, times(1)).requestTimeByCode(200, 2);
+        verify(detailedRequestStats, times(1)).requestTimeByCode(404, 4);
+        verify(detailedRequestStats, times(1)).tlsRequest("TLSv1.3", "TLS_AES_128_GCM_SHA256");
+        assertEquals(stats.getRequestTime().getAllTime().getCount(), 4.0);
+    }
+
+    @Test
+    public void testRefreshesStats()
+    {
+        SSLSession sslSession = mock(SSLSession.class);
+        when(sslSession.getProtocol()).thenReturn("TLSv1.3");
+        when(sslSession.getCipherSuite()).thenReturn("TLS_AES_128_GCM_SHA256");
+
+        handler.log(request(sslSession), response(200));
+        ticker.elapseTime(2, MINUTES);
+        handler.log(request(sslSession), response(200));
+        handler.log(request(sslSession), response(200));
+
+        verify(detailedRequestStats, times(2)).requestTimeByCode(200, 2);
+        verify(detailedRequestStats, times(2)).tlsRequest("TLSv1.3", "TLS_AES_128_GCM_SHA256");
+    }
+
+    @Test
+    public void testOutOfRangeStatus()
+    {
+        handler.log(request(null), response(1000));
+        handler.log(request(null), response(1000));
+
+        verify(detailedRequestStats, times(2)).requestTimeByCode(1000, 10);
+    }
+
+    private static Request request(SSLSession sslSession)
+    {
+        Request request = mock(Request.class);
+        when(request.getTimeStamp()).thenReturn(System.currentTimeMillis());
+        when(request.getAttribute(REQUEST_SSL_SESSION_ATTRIBUTE)).thenReturn(sslSession);
+        return request;
+    }
+
+    private static Response response(int status)
+    {
+        Response response = mock(Response.class);
+        when(response.getStatus()).thenReturn(status);
+        return response;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.proofpoint.http.server.ThreadResourceUsage.ALLOCATED_BYTES_ATTRIBUTE;
+import static com.proofpoint.http.server.ThreadResourceUsage.CPU_TIME_ATTRIBUTE;
+import static com.proofpoint.http.server.ThreadResourceUsage.SAMPLED_ATTRIBUTE;
+import static com.proofpoint.http.server.ThreadResourceUsage.getCurrentThreadAllocatedBytes;
+import static com.proofpoint.http.server.ThreadResourceUsage.getCurrentThreadCpuTime;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestTimingFilter
+{
+    private Map<String, Object> attributes;
+    private HttpServletRequest request;
+    private FilterChain chain;
+
+    @BeforeMethod
+    public void setup()
+    {
+        attributes = new HashMap<>();
+        request = mock(HttpServletRequest.class);
+        when(request.getAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(request).setAttribute(anyString(), any());
+        chain = (servletRequest, servletResponse) -> {
+            List<byte[]> allocated = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                allocated.add(new byte[100]);
+            }
+            servletRequest.setAttribute("allocated", allocated);
+        };
+    }
+
+    @Test
+    public void testNotSampled()
+            throws Exception
+    {
+        when(request.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        new TimingFilter(0).doFilter(request, mock(HttpServletResponse.class), chain);
+
+        assertNull(attributes.get(SAMPLED_ATTRIBUTE));
+        assertNull(attributes.get(CPU_TIME_ATTRIBUTE));
+        assertNull(attributes.get(ALLOCATED_BYTES_ATTRIBUTE));
+    }
+
+    @Test
+    public void testSampled()
+            throws Exception
+    {
+        TimingFilter filter = new TimingFilter(1);
+        when(request.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        filter.doFilter(request, mock(HttpServletResponse.class), chain);
+
+        assertEquals(attributes.get(SAMPLED_ATTRIBUTE), Boolean.TRUE);
+        if (getCurrentThreadCpuTime() >= 0) {
+            assertTrue((Long) attributes.get(CPU_TIME_ATTRIBUTE) >= 0);
+        }
+        if (getCurrentThreadAllocatedBytes() >= 0) {
+            long allocatedBytes = (Long) attributes.get(ALLOCATED_BYTES_ATTRIBUTE);
+            assertTrue(allocatedBytes >= 100_000, "allocated " + allocatedBytes);
+
+            // usage of an asynchronous dispatch accumulates
+            when(request.getDispatcherType()).thenReturn(DispatcherType.ASYNC);
+            filter.doFilter(request, mock(HttpServletResponse.class), chain);
+            assertTrue((Long) attributes.get(ALLOCATED_BYTES_ATTRIBUTE) >= allocatedBytes + 100_000);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.server;
+
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestTraceTokenFilter
+{
+    @Test
+    public void testCreateToken()
+            throws Exception
+    {
+        TraceTokenFilter filter = new TraceTokenFilter(InetAddress.getByName("127.0.0.1"), new ClientAddressExtractor());
+
+        String token = filter.createToken("10.2.3.4");
+        assertEquals(token.length(), 32);
+        assertEquals(token.substring(0, 12), "fwAAAQ=AgME=");
+        assertTrue(token.substring(12).matches("[A-Za-z0-9_-]{20}"), token);
+
+        assertEquals(filter.createToken("10.2.3.4").substring(0, 12), "fwAAAQ=AgME=");
+        assertEquals(filter.createToken("10.5.6.7").substring(0, 12), "fwAAAQ=BQYH=");
+        assertTrue(filter.createToken(null).startsWith("fwAAAQ=fwAAAQ="));
+        assertTrue(filter.createToken("::1").startsWith("fwAAAQ=AAAAAAAB="));
+    }
+
+    @Test
+    public void testTokensUnique()
+            throws Exception
+    {
+        TraceTokenFilter filter = new TraceTokenFilter(InetAddress.getByName("127.0.0.1"), new ClientAddressExtractor());
+
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(tokens.add(filter.createToken("10.2.3.4")));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.jaxrs;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.proofpoint.concurrent.BoundedExecutor;
+import com.proofpoint.reporting.Gauge;
+import com.proofpoint.stats.CounterStat;
+import com.proofpoint.stats.TimeStat;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.ServiceUnavailableException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.proofpoint.concurrent.Threads.daemonThreadsNamed;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Isolates a group of JAX-RS resources from the rest of the server, so that
+ * slow requests to them cannot occupy all of the server's threads.
+ * <p>
+ * Resource methods annotated with {@link UseBulkhead} are admitted only while
+ * fewer than the configured maximum concurrency of such requests are in
+ * progress. Asynchronous resources may instead hand their work to
+ * {@link #submit(Callable)}, which runs it on the bulkhead's own threads and
+ * returns a future suitable for
+ * {@link com.proofpoint.http.server.AsyncResponseHandler#bindAsyncResponse},
+ * so that no server thread is held while the work is queued or running.
+ * <p>
+ * Both forms reject with {@link ServiceUnavailableException} when the
+ * bulkhead is full.
+ */
+public class Bulkhead
+{
+    private final String name;
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final ExecutorService coreExecutor;
+    private final Executor executor;
+    private final Ticker ticker;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final CounterStat rejected = new CounterStat();
+    private final TimeStat queueTime = new TimeStat();
+
+    public Bulkhead(String name, BulkheadConfig config)
+    {
+        this(name, config, newCachedThreadPool(daemonThreadsNamed("bulkhead-" + name + "-%s")), Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    Bulkhead(String name, BulkheadConfig config, ExecutorService coreExecutor, Ticker ticker)
+    {
+        this.name = requireNonNull(name, "name is null");
+        requireNonNull(config, "config is null");
+        maxConcurrency = config.getMaxConcurrency();
+        maxQueued = config.getMaxQueued();
+        this.coreExecutor = requireNonNull(coreExecutor, "coreExecutor is null");
+        executor = new BoundedExecutor(coreExecutor, maxConcurrency);
+        this.ticker = requireNonNull(ticker, "ticker is null");
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        coreExecutor.shutdownNow();
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Runs a task on the bulkhead's threads.
+     * <p>
+     * If the returned future is cancelled before the task starts, for example
+     * by {@link com.proofpoint.http.server.AsyncResponseHandler#withTimeout},
+     * the task is not run.
+     *
+     * @return a future for the result of the task, which fails with
+     * {@link ServiceUnavailableException} if the bulkhead's queue is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task)
+    {
+        requireNonNull(task, "task is null");
+        if (pendingTasks.incrementAndGet() > maxConcurrency + maxQueued) {
+            pendingTasks.decrementAndGet();
+            return CompletableFuture.failedFuture(reject());
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long submitTime = ticker.read();
+        try {
+            executor.execute(() -> {
+                try {
+                    queueTime.add(ticker.read() - submitTime, NANOSECONDS);
+                    if (future.isDone()) {
+                        return;
+                    }
+                    runningTasks.incrementAndGet();
+                    try {
+                        future.complete(task.call());
+                    }
+                    catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                    finally {
+                        runningTasks.decrementAndGet();
+                    }
+                }
+                finally {
+                    pendingTasks.decrementAndGet();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            pendingTasks.decrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    boolean tryAdmit()
+    {
+        for (;;) {
+            int current = activeRequests.get();
+            if (current >= maxConcurrency) {
+                rejected.add(1);
+                return false;
+            }
+            if (activeRequests.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release()
+    {
+        activeRequests.decrementAndGet();
+    }
+
+    private ServiceUnavailableException reject()
+    {
+        rejected.add(1);
+        return new ServiceUnavailableException("Bulkhead " + name + " is full");
+    }
+
+    @Gauge
+    public int getActiveRequests()
+    {
+        return activeRequests.get();
+    }
+
+    @Gauge
+    public int getRunningTasks()
+    {
+        return runningTasks.get();
+    }
+
+    @Gauge
+    public int getQueuedTasks()
+    {
+        return pendingTasks.get() - runningTasks.get();
+    }
+
+    @Nested
+    public CounterStat getRejected()
+    {
+        return rejected;
+    }
+
+    @Nested
+    public TimeStat getQueueTime()
+    {
+        return queueTime;
+    }
+}
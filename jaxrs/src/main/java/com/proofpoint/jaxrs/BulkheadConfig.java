@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.jaxrs;
+
+import com.proofpoint.configuration.Config;
+import com.proofpoint.configuration.ConfigDescription;
+
+import jakarta.validation.constraints.Min;
+
+public class BulkheadConfig
+{
+    private int maxConcurrency = 10;
+    private int maxQueued = 100;
+
+    @Min(1)
+    public int getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    @Config("max-concurrency")
+    @ConfigDescription("Maximum number of requests or tasks running concurrently in the bulkhead")
+    public BulkheadConfig setMaxConcurrency(int maxConcurrency)
+    {
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    @Min(0)
+    public int getMaxQueued()
+    {
+        return maxQueued;
+    }
+
+    @Config("max-queued")
+    @ConfigDescription("Maximum number of submitted tasks waiting for a bulkhead thread")
+    public BulkheadConfig setMaxQueued(int maxQueued)
+    {
+        this.maxQueued = maxQueued;
+        return this;
+    }
+}
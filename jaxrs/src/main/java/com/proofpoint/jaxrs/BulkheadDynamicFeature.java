@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.jaxrs;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.inject.Inject;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+@Provider
+class BulkheadDynamicFeature
+        implements DynamicFeature
+{
+    private final Map<String, Bulkhead> bulkheads;
+
+    @Inject
+    public BulkheadDynamicFeature(Map<String, Bulkhead> bulkheads)
+    {
+        this.bulkheads = ImmutableMap.copyOf(bulkheads);
+    }
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext featureContext)
+    {
+        Class<?> resourceClass = resourceInfo.getResourceClass();
+        Method resourceMethod = resourceInfo.getResourceMethod();
+
+        if (resourceClass == null || resourceMethod == null) {
+            return;
+        }
+
+        if (TimingWrapped.class.isAssignableFrom(resourceClass)) {
+            try {
+                resourceClass = resourceClass.getDeclaredField("delegate").getType();
+            }
+            catch (NoSuchFieldException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        UseBulkhead annotation = resourceMethod.getAnnotation(UseBulkhead.class);
+        if (annotation == null) {
+            annotation = resourceClass.getAnnotation(UseBulkhead.class);
+        }
+        if (annotation == null) {
+            return;
+        }
+
+        Bulkhead bulkhead = bulkheads.get(annotation.value());
+        checkArgument(bulkhead != null, "%s uses bulkhead %s, which is not bound", resourceMethod, annotation.value());
+        featureContext.register(new BulkheadFilter(bulkhead));
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.jaxrs;
+
+import javax.annotation.Priority;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Response;
+
+import static java.util.Objects.requireNonNull;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+// Runs after TimingFilter so that rejected requests are timed.
+// Admitted requests are released by BulkheadReleaseListener.
+@Priority(200)
+class BulkheadFilter
+        implements ContainerRequestFilter
+{
+    static final String ADMITTED_KEY = BulkheadFilter.class.getName() + ".admitted";
+
+    private final Bulkhead bulkhead;
+
+    BulkheadFilter(Bulkhead bulkhead)
+    {
+        this.bulkhead = requireNonNull(bulkhead, "bulkhead is null");
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request)
+    {
+        if (!bulkhead.tryAdmit()) {
+            request.abortWith(Response.status(SERVICE_UNAVAILABLE).build());
+            return;
+        }
+        request.setProperty(ADMITTED_KEY, bulkhead);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.jaxrs;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.proofpoint.reporting.ReportExporter;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import static java.util.Objects.requireNonNull;
+
+class BulkheadProvider
+        implements Provider<Bulkhead>
+{
+    private final String name;
+    private final Key<BulkheadConfig> configKey;
+    private ReportExporter reportExporter;
+    private Injector injector;
+
+    BulkheadProvider(String name, Key<BulkheadConfig> configKey)
+    {
+        this.name = requireNonNull(name, "name is null");
+        this.configKey = requireNonNull(configKey, "configKey is null");
+    }
+
+    @Inject
+    public void setReportExporter(ReportExporter reportExporter)
+    {
+        this.reportExporter = requireNonNull(reportExporter, "reportExporter is null");
+    }
+
+    @Inject
+    public void setInjector(Injector injector)
+    {
+        this.injector = requireNonNull(injector, "injector is null");
+    }
+
+    @Override
+    public Bulkhead get()
+    {
+        Bulkhead bulkhead = new Bulkhead(name, injector.getInstance(configKey));
+        reportExporter.export(bulkhead, false, "Bulkhead", ImmutableMap.of("name", name));
+        return bulkhead;
+    }
+}
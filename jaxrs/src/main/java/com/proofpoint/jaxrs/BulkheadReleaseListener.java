@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.jaxrs;
+
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import javax.inject.Inject;
+import javax.ws.rs.ext.Provider;
+import java.util.Map;
+
+import static com.proofpoint.jaxrs.BulkheadFilter.ADMITTED_KEY;
+
+/**
+ * Releases the bulkhead permit of a request admitted by {@link BulkheadFilter}.
+ * <p>
+ * Jersey skips response filters when a resource throws an exception that
+ * has no mapper, but always delivers the {@link RequestEvent.Type#FINISHED}
+ * event, so the permit is released from there.
+ */
+@Provider
+class BulkheadReleaseListener
+        implements ApplicationEventListener
+{
+    private static final RequestEventListener RELEASING_LISTENER = event -> {
+        if (event.getType() == RequestEvent.Type.FINISHED) {
+            ContainerRequest request = event.getContainerRequest();
+            Object bulkhead = request.getProperty(ADMITTED_KEY);
+            if (bulkhead != null) {
+                request.removeProperty(ADMITTED_KEY);
+                ((Bulkhead) bulkhead).release();
+            }
+        }
+    };
+
+    private final boolean enabled;
+
+    @Inject
+    public BulkheadReleaseListener(Map<String, Bulkhead> bulkheads)
+    {
+        enabled = !bulkheads.isEmpty();
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event)
+    {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent)
+    {
+        if (!enabled) {
+            return null;
+        }
+        return RELEASING_LISTENER;
+    }
+}
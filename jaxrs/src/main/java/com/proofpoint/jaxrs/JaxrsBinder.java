@@ -11,6 +11,8 @@ import java.util.function.Supplier;
 import static com.google.inject.Scopes.SINGLETON;
 import static com.google.inject.multibindings.MapBinder.newMapBinder;
 import static com.google.inject.multibindings.Multibinder.newSetBinder;
+import static com.google.inject.name.Names.named;
+import static com.proofpoint.configuration.ConfigBinder.bindConfig;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -60,6 +62,14 @@ import static java.util.Objects.requireNonNull;
  * {@code InjectedContextObjectSupplier}, which must implement
  * {@code Supplier<InjectedContextObject>}.
  *
+ * <pre>
+ *     jaxrsBinder(binder).bindBulkhead("reports");</pre>
+ *
+ * Binds a {@link Bulkhead} named {@code reports}, configured by properties
+ * with the prefix {@code jaxrs.bulkhead.reports}. Resources annotated with
+ * {@code @UseBulkhead("reports")} are limited by it, and it may be injected
+ * with {@code @Named("reports") Bulkhead}.
+ *
  */
 public class JaxrsBinder
 {
@@ -69,6 +79,7 @@ public class JaxrsBinder
     private final Multibinder<JaxrsBinding> keyBinder;
     private final Multibinder<Class<?>> applicationPrefixedBinder;
     private final MapBinder<Class<?>, Supplier<?>> injectionProviderBinder;
+    private final MapBinder<String, Bulkhead> bulkheadBinder;
 
     private JaxrsBinder(Binder binder)
     {
@@ -78,6 +89,7 @@ public class JaxrsBinder
         this.keyBinder = newSetBinder(binder, JaxrsBinding.class, JaxrsResource.class).permitDuplicates();
         this.applicationPrefixedBinder = newSetBinder(binder, new TypeLiteral<Class<?>>() {}, JaxrsApplicationPrefixed.class).permitDuplicates();
         injectionProviderBinder = newMapBinder(binder, new TypeLiteral<Class<?>>() {}, new TypeLiteral<Supplier<?>>() {}, JaxrsInjectionProvider.class);
+        bulkheadBinder = newMapBinder(binder, String.class, Bulkhead.class);
     }
 
     /**
@@ -141,4 +153,17 @@ public class JaxrsBinder
     public <T> LinkedInjectionProviderBindingBuilder<T> bindInjectionProvider(Class<T> type) {
         return new LinkedInjectionProviderBindingBuilder<>(type, injectionProviderBinder);
     }
+
+    /**
+     * See the EDSL description at {@link JaxrsBinder}.
+     */
+    public void bindBulkhead(String name)
+    {
+        requireNonNull(name, "name is null");
+        Key<Bulkhead> key = Key.get(Bulkhead.class, named(name));
+        Key<BulkheadConfig> configKey = Key.get(BulkheadConfig.class, named(name));
+        bindConfig(binder).bind(BulkheadConfig.class).annotatedWith(named(name)).prefixedWith("jaxrs.bulkhead." + name);
+        binder.bind(key).toProvider(new BulkheadProvider(name, configKey)).in(SINGLETON);
+        bulkheadBinder.addBinding(name).to(key);
+    }
 }
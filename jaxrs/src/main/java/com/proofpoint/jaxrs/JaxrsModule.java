@@ -99,6 +99,8 @@ public class JaxrsModule
             jaxrsBinder(binder).bind(OverrideMethodFilter.class);
         }
         jaxrsBinder(binder).bind(TimingResourceDynamicFeature.class);
+        jaxrsBinder(binder).bind(BulkheadDynamicFeature.class);
+        jaxrsBinder(binder).bind(BulkheadReleaseListener.class);
         if (!enableOptions) {
             jaxrsBinder(binder).bind(DisallowOptionsModelProcessor.class);
         }
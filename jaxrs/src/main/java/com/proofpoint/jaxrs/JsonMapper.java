@@ -17,7 +17,6 @@ package com.proofpoint.jaxrs;
 
 
 import com.fasterxml.jackson.core.JsonEncoding;
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -25,6 +24,7 @@ import com.fasterxml.jackson.core.SerializableString;
 import com.fasterxml.jackson.core.io.CharacterEscapes;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.net.HttpHeaders;
@@ -47,9 +47,15 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static com.proofpoint.jaxrs.JsonMapperParsingException.jsonMapperParsingException;
+import static com.proofpoint.jaxrs.StreamingEntities.closeEntity;
+import static com.proofpoint.jaxrs.StreamingEntities.flushingIterator;
+import static com.proofpoint.jaxrs.StreamingEntities.streamingIterator;
 import static com.proofpoint.jaxrs.ValidationUtils.validateObject;
 
 // This code is based on JacksonJsonProvider
@@ -75,9 +81,24 @@ public class JsonMapper
             .add(javax.ws.rs.core.StreamingOutput.class)
             .add(Response.class)
             .build();
+    private static final ClassValue<Boolean> READABLE_OR_WRITABLE = new ClassValue<>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            return computeCanReadOrWrite(type);
+        }
+    };
     public static final Logger log = Logger.get(JsonMapper.class);
 
     private final ObjectMapper objectMapper;
+    private final ObjectWriter compactWriter;
+    private final ObjectWriter prettyWriter;
+
+    // The set of types is bounded by the resource method signatures
+    private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Type, ObjectWriter> compactWriters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Type, ObjectWriter> prettyWriters = new ConcurrentHashMap<>();
 
     private final AtomicReference<UriInfo> uriInfo = new AtomicReference<>();
 
@@ -85,6 +106,9 @@ public class JsonMapper
     public JsonMapper(ObjectMapper objectMapper)
     {
         this.objectMapper = objectMapper;
+        // The escapes are set on the writers rather than the shared JsonFactory
+        compactWriter = objectMapper.writer().with(HTMLCharacterEscapes.INSTANCE);
+        prettyWriter = compactWriter.withDefaultPrettyPrinter();
     }
 
     @Context
@@ -111,6 +135,11 @@ public class JsonMapper
     }
 
     private static boolean canReadOrWrite(Class<?> type)
+    {
+        return READABLE_OR_WRITABLE.get(type);
+    }
+
+    private static boolean computeCanReadOrWrite(Class<?> type)
     {
         if (IO_CLASSES.contains(type)) {
             return false;
@@ -141,7 +170,7 @@ public class JsonMapper
             // mapping, so we need to instruct parser:
             jsonParser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
 
-            object = objectMapper.readValue(jsonParser, objectMapper.getTypeFactory().constructType(genericType));
+            object = readers.computeIfAbsent(genericType, this::createReader).readValue(jsonParser);
         }
         catch (Exception e) {
             // We want to handle parsing exceptions differently than regular IOExceptions so just rethrow IOExceptions
@@ -182,56 +211,69 @@ public class JsonMapper
         // Prevent broken browser from attempting to render the json as html
         httpHeaders.add(HttpHeaders.X_CONTENT_TYPE_OPTIONS, "nosniff");
 
-        JsonFactory jsonFactory = objectMapper.getFactory();
-        jsonFactory.setCharacterEscapes(HTMLCharacterEscapes.INSTANCE);
-
-        JsonGenerator jsonGenerator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8);
+        JsonGenerator jsonGenerator = objectMapper.getFactory().createGenerator(outputStream, JsonEncoding.UTF8);
 
         // Important: we are NOT to close the underlying stream after
         // mapping, so we need to instruct generator:
         jsonGenerator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
 
-        // Pretty print?
-        if (isPrettyPrintRequested()) {
-            jsonGenerator.useDefaultPrettyPrinter();
-        }
-
-        // 04-Mar-2010, tatu: How about type we were given? (if any)
-        JavaType rootType = null;
-        if (genericType != null && value != null) {
-            // 10-Jan-2011, tatu: as per [JACKSON-456], it's not safe to just force root
-            //    type since it prevents polymorphic type serialization. Since we really
-            //    just need this for generics, let's only use generic type if it's truly
-            //    generic.
-            if (genericType.getClass() != Class.class) { // generic types are other implementations of 'java.lang.reflect.Type'
-                // This is still not exactly right; should root type be further
-                // specialized with 'value.getClass()'? Let's see how well this works before
-                // trying to come up with more complete solution.
-                rootType = objectMapper.getTypeFactory().constructType(genericType);
-                // 26-Feb-2011, tatu: To help with [JACKSON-518], we better recognize cases where
-                //    type degenerates back into "Object.class" (as is the case with plain TypeVariable,
-                //    for example), and not use that.
-                //
-                if (rootType.getRawClass() == Object.class) {
-                    rootType = null;
-                }
+        boolean pretty = isPrettyPrintRequested();
+        Iterator<?> streamingIterator = streamingIterator(value, genericType);
+        if (streamingIterator != null) {
+            try {
+                (pretty ? prettyWriter : compactWriter).writeValue(jsonGenerator, flushingIterator(streamingIterator, jsonGenerator));
+            }
+            finally {
+                closeEntity(value);
             }
-        }
-
-        ObjectWriter writer;
-        if (rootType != null) {
-            writer = objectMapper.writerFor(rootType);
         }
         else {
-            writer = objectMapper.writer();
-        }
+            ObjectWriter writer;
+            if (pretty) {
+                writer = writerFor(prettyWriter, prettyWriters, value, genericType);
+            }
+            else {
+                writer = writerFor(compactWriter, compactWriters, value, genericType);
+            }
 
-        writer.writeValue(jsonGenerator, value);
+            writer.writeValue(jsonGenerator, value);
+        }
 
         // add a newline so when you use curl it looks nice
         outputStream.write('\n');
     }
 
+    private ObjectReader createReader(Type genericType)
+    {
+        return objectMapper.readerFor(objectMapper.getTypeFactory().constructType(genericType));
+    }
+
+    private ObjectWriter writerFor(ObjectWriter baseWriter, ConcurrentMap<Type, ObjectWriter> writers, Object value, Type genericType)
+    {
+        // 04-Mar-2010, tatu: How about type we were given? (if any)
+        // 10-Jan-2011, tatu: as per [JACKSON-456], it's not safe to just force root
+        //    type since it prevents polymorphic type serialization. Since we really
+        //    just need this for generics, let's only use generic type if it's truly
+        //    generic.
+        if (genericType == null || value == null || genericType.getClass() == Class.class) { // generic types are other implementations of 'java.lang.reflect.Type'
+            return baseWriter;
+        }
+        return writers.computeIfAbsent(genericType, type -> {
+            // This is still not exactly right; should root type be further
+            // specialized with 'value.getClass()'? Let's see how well this works before
+            // trying to come up with more complete solution.
+            JavaType rootType = objectMapper.getTypeFactory().constructType(type);
+            // 26-Feb-2011, tatu: To help with [JACKSON-518], we better recognize cases where
+            //    type degenerates back into "Object.class" (as is the case with plain TypeVariable,
+            //    for example), and not use that.
+            //
+            if (rootType.getRawClass() == Object.class) {
+                return baseWriter;
+            }
+            return baseWriter.forType(rootType);
+        });
+    }
+
     private boolean isPrettyPrintRequested()
     {
         UriInfo uriInfo = getUriInfo();
@@ -20,6 +20,8 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -42,9 +44,15 @@ import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.proofpoint.jaxrs.JsonMapperParsingException.jsonMapperParsingException;
+import static com.proofpoint.jaxrs.StreamingEntities.closeEntity;
+import static com.proofpoint.jaxrs.StreamingEntities.flushingIterator;
+import static com.proofpoint.jaxrs.StreamingEntities.streamingIterator;
 import static com.proofpoint.jaxrs.ValidationUtils.validateObject;
 
 // This code is based on JacksonJsonProvider
@@ -70,10 +78,23 @@ public class SmileMapper
             .add(javax.ws.rs.core.StreamingOutput.class)
             .add(Response.class)
             .build();
+    private static final ClassValue<Boolean> READABLE_OR_WRITABLE = new ClassValue<>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            return computeCanReadOrWrite(type);
+        }
+    };
 
     public static final Logger log = Logger.get(SmileMapper.class);
 
     private final ObjectMapper objectMapper;
+    private final SmileFactory smileFactory = new SmileFactory();
+
+    // The set of types is bounded by the resource method signatures
+    private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
 
     @Inject
     public SmileMapper(ObjectMapper objectMapper)
@@ -94,6 +115,11 @@ public class SmileMapper
     }
 
     private static boolean canReadOrWrite(Class<?> type)
+    {
+        return READABLE_OR_WRITABLE.get(type);
+    }
+
+    private static boolean computeCanReadOrWrite(Class<?> type)
     {
         if (IO_CLASSES.contains(type)) {
             return false;
@@ -118,13 +144,13 @@ public class SmileMapper
     {
         Object object;
         try {
-            JsonParser jsonParser = new SmileFactory().createParser(inputStream);
+            JsonParser jsonParser = smileFactory.createParser(inputStream);
 
             // Important: we are NOT to close the underlying stream after
             // mapping, so we need to instruct parser:
             jsonParser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
 
-            object = objectMapper.readValue(jsonParser, objectMapper.getTypeFactory().constructType(genericType));
+            object = readers.computeIfAbsent(genericType, this::createReader).readValue(jsonParser);
         }
         catch (Exception e) {
             // we want to return a 400 for bad JSON but not for a real IO exception
@@ -162,42 +188,55 @@ public class SmileMapper
             OutputStream outputStream)
             throws IOException
     {
-        JsonGenerator jsonGenerator = new SmileFactory().createGenerator(outputStream);
+        JsonGenerator jsonGenerator = smileFactory.createGenerator(outputStream);
 
         // Important: we are NOT to close the underlying stream after
         // mapping, so we need to instruct generator:
         jsonGenerator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
 
         // 04-Mar-2010, tatu: How about type we were given? (if any)
-        JavaType rootType = null;
-        if (genericType != null && value != null) {
-            // 10-Jan-2011, tatu: as per [JACKSON-456], it's not safe to just force root
-            // type since it prevents polymorphic type serialization. Since we really
-            // just need this for generics, let's only use generic type if it's truly
-            // generic.
-            if (genericType.getClass() != Class.class) { // generic types are other implementations of 'java.lang.reflect.Type'
-                // This is still not exactly right; should root type be further
-                // specialized with 'value.getClass()'? Let's see how well this works before
-                // trying to come up with more complete solution.
-                rootType = objectMapper.getTypeFactory().constructType(genericType);
-                // 26-Feb-2011, tatu: To help with [JACKSON-518], we better recognize cases where
-                // type degenerates back into "Object.class" (as is the case with plain TypeVariable,
-                // for example), and not use that.
-                //
-                if (rootType.getRawClass() == Object.class) {
-                    rootType = null;
-                }
+        // 10-Jan-2011, tatu: as per [JACKSON-456], it's not safe to just force root
+        // type since it prevents polymorphic type serialization. Since we really
+        // just need this for generics, let's only use generic type if it's truly
+        // generic.
+        Iterator<?> streamingIterator = streamingIterator(value, genericType);
+        if (streamingIterator != null) {
+            try {
+                objectMapper.writeValue(jsonGenerator, flushingIterator(streamingIterator, jsonGenerator));
+            }
+            finally {
+                closeEntity(value);
             }
         }
-
-        if (rootType != null) {
-            objectMapper.writerFor(rootType).writeValue(jsonGenerator, value);
+        else if (genericType != null && value != null && genericType.getClass() != Class.class) { // generic types are other implementations of 'java.lang.reflect.Type'
+            writers.computeIfAbsent(genericType, this::createWriter).writeValue(jsonGenerator, value);
         }
         else {
             objectMapper.writeValue(jsonGenerator, value);
         }
     }
 
+    private ObjectReader createReader(Type genericType)
+    {
+        return objectMapper.readerFor(objectMapper.getTypeFactory().constructType(genericType));
+    }
+
+    private ObjectWriter createWriter(Type genericType)
+    {
+        // This is still not exactly right; should root type be further
+        // specialized with 'value.getClass()'? Let's see how well this works before
+        // trying to come up with more complete solution.
+        JavaType rootType = objectMapper.getTypeFactory().constructType(genericType);
+        // 26-Feb-2011, tatu: To help with [JACKSON-518], we better recognize cases where
+        // type degenerates back into "Object.class" (as is the case with plain TypeVariable,
+        // for example), and not use that.
+        //
+        if (rootType.getRawClass() == Object.class) {
+            return objectMapper.writer();
+        }
+        return objectMapper.writerFor(rootType);
+    }
+
     private static List<String> messagesFor(Collection<? extends ConstraintViolation<?>> violations)
     {
         ImmutableList.Builder<String> messages = new ImmutableList.Builder<>();
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.jaxrs;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.reflect.TypeToken;
+import com.proofpoint.log.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Support for entities that are written as JSON arrays one element at a time
+ * rather than being materialized first: {@link Stream}s, {@link Iterator}s,
+ * and values of resource methods declared to return {@link Iterable}.
+ * <p>
+ * Elements are pulled from the entity only as the generator is ready to write
+ * them, so the memory used is bounded by the generator's buffer. The
+ * generator is flushed after the first element, so the response starts
+ * promptly, and periodically thereafter. If producing or writing an element
+ * fails, the array is left unterminated and the exception is propagated, so
+ * the client sees a truncated response rather than a valid partial result.
+ */
+final class StreamingEntities
+{
+    private static final Logger log = Logger.get(StreamingEntities.class);
+    private static final int FLUSH_INTERVAL = 1000;
+
+    private StreamingEntities()
+    {}
+
+    /**
+     * @return an iterator over the elements of the entity if it is to be
+     * streamed, otherwise null
+     */
+    @Nullable
+    static Iterator<?> streamingIterator(@Nullable Object value, @Nullable Type genericType)
+    {
+        if (value instanceof Stream) {
+            return ((Stream<?>) value).iterator();
+        }
+        if (value instanceof Iterator) {
+            return (Iterator<?>) value;
+        }
+        // Many types that implement Iterable, such as JsonNode and Path, are not serialized
+        // as arrays, so only stream values of methods declared to return Iterable itself
+        if (value instanceof Iterable && genericType != null && TypeToken.of(genericType).getRawType() == Iterable.class) {
+            return ((Iterable<?>) value).iterator();
+        }
+        return null;
+    }
+
+    static Iterator<?> flushingIterator(Iterator<?> iterator, JsonGenerator jsonGenerator)
+    {
+        return new FlushingIterator<>(iterator, jsonGenerator);
+    }
+
+    /**
+     * Releases any resources held by a streamed entity, such as a database
+     * cursor backing a {@link Stream}.
+     */
+    static void closeEntity(Object value)
+    {
+        if (value instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) value).close();
+            }
+            catch (Exception e) {
+                log.warn(e, "Failed to close streamed entity");
+            }
+        }
+    }
+
+    private static class FlushingIterator<T>
+            implements Iterator<T>
+    {
+        private final Iterator<T> delegate;
+        private final JsonGenerator jsonGenerator;
+        private long count;
+
+        FlushingIterator(Iterator<T> delegate, JsonGenerator jsonGenerator)
+        {
+            this.delegate = requireNonNull(delegate, "delegate is null");
+            this.jsonGenerator = requireNonNull(jsonGenerator, "jsonGenerator is null");
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public T next()
+        {
+            // All elements before this one have been written
+            if (count == 1 || (count > 0 && count % FLUSH_INTERVAL == 0)) {
+                try {
+                    jsonGenerator.flush();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            ++count;
+            return delegate.next();
+        }
+    }
+}
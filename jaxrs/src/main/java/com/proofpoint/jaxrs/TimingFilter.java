@@ -18,20 +18,40 @@ package com.proofpoint.jaxrs;
 import com.google.common.base.Ticker;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.proofpoint.stats.SparseDistributionStat;
 import com.proofpoint.stats.SparseTimeStat;
-import com.proofpoint.units.Duration;
 
+import javax.annotation.Nullable;
 import javax.annotation.Priority;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
 import javax.ws.rs.container.ContainerResponseContext;
 import javax.ws.rs.container.ContainerResponseFilter;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import static com.proofpoint.http.server.ThreadResourceUsage.SAMPLED_ATTRIBUTE;
+import static com.proofpoint.http.server.ThreadResourceUsage.getCurrentThreadAllocatedBytes;
+import static com.proofpoint.http.server.ThreadResourceUsage.getCurrentThreadCpuTime;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+/**
+ * Records the time taken by a resource method.
+ * <p>
+ * The stat for each response code is resolved once and then reused, so
+ * timing a request without custom tags does not build a cache key. The
+ * resolved stats are looked up again every minute, which keeps them from
+ * expiring out of the loading cache while in use. For resource methods which
+ * complete synchronously, the start time is kept in a thread local rather
+ * than in a request property.
+ */
 @Priority(100)
 class TimingFilter
         implements ContainerRequestFilter, ContainerResponseFilter
@@ -39,39 +59,184 @@ class TimingFilter
     static final String TAGS_KEY = TimingFilter.class.getName() + ".tags";
 
     private static final String START_TIME_KEY = TimingFilter.class.getName() + ".start-time";
+    private static final String START_THREAD_KEY = TimingFilter.class.getName() + ".start-thread";
+    private static final String START_CPU_TIME_KEY = TimingFilter.class.getName() + ".start-cpu-time";
+    private static final String START_ALLOCATED_BYTES_KEY = TimingFilter.class.getName() + ".start-allocated-bytes";
+    private static final int MAX_STATUS = 600;
+    private static final int MAX_TAGGED_HANDLES = 1000;
+    private static final long HANDLE_REFRESH_NANOS = MINUTES.toNanos(1);
+    private static final ThreadLocal<StartTime> START_TIME = ThreadLocal.withInitial(StartTime::new);
+
     private final String methodName;
+    private final boolean synchronous;
     private final LoadingCache<List<Optional<String>>, SparseTimeStat> loadingCache;
+    private final LoadingCache<List<Optional<String>>, SparseTimeStat> cpuTimeCache;
+    private final LoadingCache<List<Optional<String>>, SparseDistributionStat> allocatedBytesCache;
     private final Ticker ticker;
+    private final AtomicReferenceArray<StatHandle> statusHandles = new AtomicReferenceArray<>(MAX_STATUS);
+    private final ConcurrentMap<TaggedKey, StatHandle> taggedHandles = new ConcurrentHashMap<>();
 
-    TimingFilter(String methodName, LoadingCache<List<Optional<String>>, SparseTimeStat> loadingCache, Ticker ticker)
+    TimingFilter(String methodName,
+            boolean synchronous,
+            LoadingCache<List<Optional<String>>, SparseTimeStat> loadingCache,
+            LoadingCache<List<Optional<String>>, SparseTimeStat> cpuTimeCache,
+            LoadingCache<List<Optional<String>>, SparseDistributionStat> allocatedBytesCache,
+            Ticker ticker)
     {
         this.methodName = requireNonNull(methodName, "methodName is null");
+        this.synchronous = synchronous;
         this.loadingCache = requireNonNull(loadingCache, "loadingCache is null");
+        this.cpuTimeCache = requireNonNull(cpuTimeCache, "cpuTimeCache is null");
+        this.allocatedBytesCache = requireNonNull(allocatedBytesCache, "allocatedBytesCache is null");
         this.ticker = requireNonNull(ticker, "ticker is null");
     }
 
     @Override
     public void filter(ContainerRequestContext request)
     {
-        request.setProperty(START_TIME_KEY, ticker.read());
+        long startTime = ticker.read();
+        if (synchronous) {
+            StartTime slot = START_TIME.get();
+            slot.request = request;
+            slot.startTime = startTime;
+        }
+        else {
+            request.setProperty(START_TIME_KEY, startTime);
+        }
+        // the HTTP server marks the requests for which resource usage is measured
+        if (request.getProperty(SAMPLED_ATTRIBUTE) != null) {
+            request.setProperty(START_THREAD_KEY, Thread.currentThread());
+            request.setProperty(START_CPU_TIME_KEY, getCurrentThreadCpuTime());
+            request.setProperty(START_ALLOCATED_BYTES_KEY, getCurrentThreadAllocatedBytes());
+        }
     }
 
     @Override
     public void filter(ContainerRequestContext request, ContainerResponseContext response)
     {
-        Long startTime = (Long) request.getProperty(START_TIME_KEY);
+        long now = ticker.read();
+        long startTime;
+        StartTime slot = synchronous ? START_TIME.get() : null;
+        if (slot != null && slot.request == request) {
+            startTime = slot.startTime;
+            slot.request = null;
+        }
+        else {
+            Long startTimeProperty = (Long) request.getProperty(START_TIME_KEY);
+            if (startTimeProperty == null) {
+                // a resource method thought to be synchronous completed on another thread
+                return;
+            }
+            startTime = startTimeProperty;
+        }
 
-        ImmutableList.Builder<Optional<String>> builder = ImmutableList.builder();
-        builder.add(Optional.of(methodName), Optional.of(Integer.toString(response.getStatus())), Optional.of(Integer.toString(response.getStatus()/100)));
+        StatHandle handle = handleFor(response.getStatus(), (Collection<Optional<Object>>) request.getProperty(TAGS_KEY), now);
+        handle.requestTime.add(now - startTime, NANOSECONDS);
+
+        // usage can only be measured if the resource method completed synchronously
+        if (request.getProperty(START_THREAD_KEY) == Thread.currentThread()) {
+            long startCpuTime = (Long) request.getProperty(START_CPU_TIME_KEY);
+            if (startCpuTime >= 0) {
+                cpuTimeCache.getUnchecked(handle.key).add(getCurrentThreadCpuTime() - startCpuTime, NANOSECONDS);
+            }
+            long startAllocatedBytes = (Long) request.getProperty(START_ALLOCATED_BYTES_KEY);
+            if (startAllocatedBytes >= 0) {
+                allocatedBytesCache.getUnchecked(handle.key).add(getCurrentThreadAllocatedBytes() - startAllocatedBytes);
+            }
+        }
+    }
+
+    private StatHandle handleFor(int status, @Nullable Collection<Optional<Object>> tags, long now)
+    {
+        if (tags == null || tags.isEmpty()) {
+            if (status < 0 || status >= MAX_STATUS) {
+                return createHandle(status, null, now);
+            }
+            StatHandle handle = statusHandles.get(status);
+            if (handle == null || now - handle.refreshTime >= 0) {
+                handle = createHandle(status, null, now);
+                statusHandles.set(status, handle);
+            }
+            return handle;
+        }
+
+        TaggedKey taggedKey = new TaggedKey(status, tags.toArray());
+        StatHandle handle = taggedHandles.get(taggedKey);
+        if (handle == null || now - handle.refreshTime >= 0) {
+            boolean cached = handle != null;
+            handle = createHandle(status, tags, now);
+            // bound the memory used by methods with high-cardinality tags
+            if (cached || taggedHandles.size() < MAX_TAGGED_HANDLES) {
+                taggedHandles.put(taggedKey, handle);
+            }
+        }
+        return handle;
+    }
 
-        Collection<Optional<Object>> tags = (Collection<Optional<Object>>) request.getProperty(TAGS_KEY);
+    private StatHandle createHandle(int status, @Nullable Collection<Optional<Object>> tags, long now)
+    {
+        ImmutableList.Builder<Optional<String>> builder = ImmutableList.builder();
+        builder.add(Optional.of(methodName), Optional.of(Integer.toString(status)), Optional.of(Integer.toString(status / 100)));
         if (tags != null) {
             for (Optional<Object> tag : tags) {
                 builder.add(tag.map(Object::toString));
             }
         }
 
-        loadingCache.getUnchecked(builder.build())
-                .add(Duration.succinctNanos(ticker.read() - startTime));
+        List<Optional<String>> key = builder.build();
+        return new StatHandle(key, loadingCache.getUnchecked(key), now + HANDLE_REFRESH_NANOS);
+    }
+
+    private static class StartTime
+    {
+        private ContainerRequestContext request;
+        private long startTime;
+    }
+
+    private static class StatHandle
+    {
+        private final List<Optional<String>> key;
+        private final SparseTimeStat requestTime;
+        private final long refreshTime;
+
+        StatHandle(List<Optional<String>> key, SparseTimeStat requestTime, long refreshTime)
+        {
+            this.key = key;
+            this.requestTime = requestTime;
+            this.refreshTime = refreshTime;
+        }
+    }
+
+    private static class TaggedKey
+    {
+        private final int status;
+        private final Object[] tags;
+        private final int hashCode;
+
+        TaggedKey(int status, Object[] tags)
+        {
+            this.status = status;
+            this.tags = tags;
+            hashCode = 31 * status + Arrays.hashCode(tags);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            TaggedKey that = (TaggedKey) o;
+            return status == that.status && Arrays.equals(tags, that.tags);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
     }
 }
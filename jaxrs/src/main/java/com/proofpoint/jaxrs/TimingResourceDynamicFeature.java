@@ -25,6 +25,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.proofpoint.reporting.ReportExporter;
+import com.proofpoint.stats.SparseDistributionStat;
 import com.proofpoint.stats.SparseTimeStat;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -32,8 +33,10 @@ import javax.inject.Inject;
 import javax.ws.rs.Path;
 import javax.ws.rs.container.DynamicFeature;
 import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.FeatureContext;
 import javax.ws.rs.ext.Provider;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
@@ -42,7 +45,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static java.util.Objects.requireNonNull;
 
@@ -100,13 +106,43 @@ class TimingResourceDynamicFeature
             }
         }
 
-        LoadingCache<List<Optional<String>>, SparseTimeStat> loadingCache = new CacheImplementation(
-                applicationPrefixedClasses.contains(resourceClass),
+        boolean applicationPrefix = applicationPrefixedClasses.contains(resourceClass);
+        List<String> keyNames = builder.build();
+        LoadingCache<List<Optional<String>>, SparseTimeStat> loadingCache = new CacheImplementation<>(
+                applicationPrefix,
                 resourceClass.getSimpleName() + ".RequestTime",
-                builder.build()
+                keyNames,
+                SparseTimeStat::new
+        ).getLoadingCache();
+        LoadingCache<List<Optional<String>>, SparseTimeStat> cpuTimeCache = new CacheImplementation<>(
+                applicationPrefix,
+                resourceClass.getSimpleName() + ".CpuTime",
+                keyNames,
+                SparseTimeStat::new
+        ).getLoadingCache();
+        LoadingCache<List<Optional<String>>, SparseDistributionStat> allocatedBytesCache = new CacheImplementation<>(
+                applicationPrefix,
+                resourceClass.getSimpleName() + ".AllocatedBytes",
+                keyNames,
+                SparseDistributionStat::new
         ).getLoadingCache();
 
-        featureContext.register(new TimingFilter(resourceMethod.getName(), loadingCache, ticker));
+        featureContext.register(new TimingFilter(resourceMethod.getName(), isSynchronous(resourceMethod), loadingCache, cpuTimeCache, allocatedBytesCache, ticker));
+    }
+
+    private static boolean isSynchronous(Method method)
+    {
+        if (CompletionStage.class.isAssignableFrom(method.getReturnType()) || Future.class.isAssignableFrom(method.getReturnType())) {
+            return false;
+        }
+        for (Annotation[] parameterAnnotations : method.getParameterAnnotations()) {
+            for (Annotation annotation : parameterAnnotations) {
+                if (annotation instanceof Suspended) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     private static boolean isJaxRsResource(Class<?> type)
@@ -130,29 +166,29 @@ class TimingResourceDynamicFeature
         return false;
     }
 
-    private class CacheImplementation
+    private class CacheImplementation<T>
     {
-        private final LoadingCache<List<Optional<String>>, SparseTimeStat> loadingCache;
+        private final LoadingCache<List<Optional<String>>, T> loadingCache;
         @GuardedBy("registeredMap")
-        private final Map<List<Optional<String>>, SparseTimeStat> registeredMap = new HashMap<>();
+        private final Map<List<Optional<String>>, T> registeredMap = new HashMap<>();
         @GuardedBy("registeredMap")
-        private final Set<SparseTimeStat> reinsertedSet = new HashSet<>();
+        private final Set<T> reinsertedSet = new HashSet<>();
 
-        CacheImplementation(boolean applicationPrefix, String namePrefix, List<String> keyNames)
+        CacheImplementation(boolean applicationPrefix, String namePrefix, List<String> keyNames, Supplier<T> statFactory)
         {
             loadingCache = CacheBuilder.newBuilder()
                     .ticker(ticker)
                     .expireAfterAccess(15, TimeUnit.MINUTES)
                     .removalListener(new UnexportRemovalListener())
-                    .build(new CacheLoader<List<Optional<String>>, SparseTimeStat>()
+                    .build(new CacheLoader<List<Optional<String>>, T>()
                     {
                         @Override
-                        public SparseTimeStat load(List<Optional<String>> key)
+                        public T load(List<Optional<String>> key)
                         {
-                            SparseTimeStat returnValue = new SparseTimeStat();
+                            T returnValue = statFactory.get();
 
                             synchronized (registeredMap) {
-                                SparseTimeStat existingStat = registeredMap.get(key);
+                                T existingStat = registeredMap.get(key);
                                 if (existingStat != null) {
                                     reinsertedSet.add(existingStat);
                                     return existingStat;
@@ -172,15 +208,15 @@ class TimingResourceDynamicFeature
                     });
         }
 
-        LoadingCache<List<Optional<String>>, SparseTimeStat> getLoadingCache()
+        LoadingCache<List<Optional<String>>, T> getLoadingCache()
         {
             return loadingCache;
         }
 
-        private class UnexportRemovalListener implements RemovalListener<List<Optional<String>>, SparseTimeStat>
+        private class UnexportRemovalListener implements RemovalListener<List<Optional<String>>, T>
         {
             @Override
-            public void onRemoval(RemovalNotification<List<Optional<String>>, SparseTimeStat> notification)
+            public void onRemoval(RemovalNotification<List<Optional<String>>, T> notification)
             {
                 synchronized (registeredMap) {
                     if (reinsertedSet.remove(notification.getValue())) {
@@ -32,22 +32,39 @@ public class ValidationUtils
 {
     private static final Validator VALIDATOR = Validation.byProvider(HibernateValidator.class).configure().buildValidatorFactory().getValidator();
 
+    // Whether validating an instance of the class could produce any violation
+    private static final ClassValue<Boolean> BEAN_CONSTRAINED = new ClassValue<>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            return VALIDATOR.getConstraintsForClass(type).isBeanConstrained();
+        }
+    };
+
     private ValidationUtils() {}
 
     public static void validateObject(Type genericType, Object object)
             throws BeanValidationException
     {
-        Set<ConstraintViolation<Object>> violations = VALIDATOR.validate(object);
+        Class<?> rawType = TypeToken.of(genericType).getRawType();
+        Set<ConstraintViolation<Object>> violations = validateBean(object);
 
-        if (violations.isEmpty() && List.class.isAssignableFrom(TypeToken.of(genericType).getRawType())) {
-            violations = VALIDATOR.validate(new ValidatableList((List<?>) object));
+        if (violations.isEmpty() && List.class.isAssignableFrom(rawType)) {
+            if (!allUnconstrained((List<?>) object)) {
+                violations = VALIDATOR.validate(new ValidatableList((List<?>) object));
+            }
         }
-        else if (violations.isEmpty() && Collection.class.isAssignableFrom(TypeToken.of(genericType).getRawType())) {
-            violations = VALIDATOR.validate(new ValidatableCollection((Collection<?>) object));
+        else if (violations.isEmpty() && Collection.class.isAssignableFrom(rawType)) {
+            if (!allUnconstrained((Collection<?>) object)) {
+                violations = VALIDATOR.validate(new ValidatableCollection((Collection<?>) object));
+            }
         }
 
-        if (violations.isEmpty() && Map.class.isAssignableFrom(TypeToken.of(genericType).getRawType())) {
-            violations = VALIDATOR.validate(new ValidatableMap((Map<?, ?>) object));
+        if (violations.isEmpty() && Map.class.isAssignableFrom(rawType)) {
+            if (!allUnconstrained(((Map<?, ?>) object).values())) {
+                violations = VALIDATOR.validate(new ValidatableMap((Map<?, ?>) object));
+            }
         }
 
         if (!violations.isEmpty()) {
@@ -55,6 +72,30 @@ public class ValidationUtils
         }
     }
 
+    private static Set<ConstraintViolation<Object>> validateBean(Object object)
+    {
+        if (object != null && !BEAN_CONSTRAINED.get(object.getClass())) {
+            return Set.of();
+        }
+        return VALIDATOR.validate(object);
+    }
+
+    private static boolean allUnconstrained(Collection<?> elements)
+    {
+        for (Object element : elements) {
+            if (element == null) {
+                continue;
+            }
+            Class<?> elementClass = element.getClass();
+            // Be conservative about nested containers
+            if (elementClass.isArray() || Iterable.class.isAssignableFrom(elementClass) || Map.class.isAssignableFrom(elementClass)
+                    || BEAN_CONSTRAINED.get(elementClass)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static class ValidatableList
     {
         @Valid
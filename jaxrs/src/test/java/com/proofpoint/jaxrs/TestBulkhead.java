@@ -0,0 +1,122 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.jaxrs;
+
+import com.proofpoint.testing.TestingTicker;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.ServiceUnavailableException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestBulkhead
+{
+    private ExecutorService executor;
+    private Bulkhead bulkhead;
+
+    @BeforeMethod
+    public void setup()
+    {
+        executor = newCachedThreadPool();
+        bulkhead = new Bulkhead("test", new BulkheadConfig().setMaxConcurrency(1).setMaxQueued(1), executor, new TestingTicker());
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown()
+    {
+        bulkhead.stop();
+    }
+
+    @Test
+    public void testAdmission()
+    {
+        assertTrue(bulkhead.tryAdmit());
+        assertFalse(bulkhead.tryAdmit());
+        assertEquals(bulkhead.getActiveRequests(), 1);
+        assertEquals(bulkhead.getRejected().getTotalCount(), 1);
+
+        bulkhead.release();
+        assertTrue(bulkhead.tryAdmit());
+    }
+
+    @Test
+    public void testSubmitQueuesAndRejects()
+            throws Exception
+    {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = bulkhead.submit(() -> {
+            started.countDown();
+            release.await();
+            return "first";
+        });
+        assertTrue(started.await(10, SECONDS));
+
+        CompletableFuture<String> queued = bulkhead.submit(() -> "second");
+        CompletableFuture<String> rejected = bulkhead.submit(() -> "third");
+
+        assertEquals(bulkhead.getRunningTasks(), 1);
+        assertEquals(bulkhead.getQueuedTasks(), 1);
+        try {
+            rejected.get();
+            fail("expected ServiceUnavailableException");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServiceUnavailableException);
+        }
+
+        release.countDown();
+        assertEquals(running.get(10, SECONDS), "first");
+        assertEquals(queued.get(10, SECONDS), "second");
+        assertEquals(bulkhead.getRejected().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testCancelledTaskNotRun()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> running = bulkhead.submit(() -> {
+            release.await();
+            return null;
+        });
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Void> queued = bulkhead.submit(() -> {
+            ran.set(true);
+            return null;
+        });
+
+        queued.cancel(false);
+        release.countDown();
+        running.get(10, SECONDS);
+        CompletableFuture<Void> next = bulkhead.submit(() -> null);
+        next.get(10, SECONDS);
+
+        assertFalse(ran.get());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.jaxrs;
+
+import com.google.common.collect.ImmutableMap;
+import jakarta.validation.constraints.Min;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static com.proofpoint.configuration.testing.ConfigAssertions.assertFullMapping;
+import static com.proofpoint.configuration.testing.ConfigAssertions.assertRecordedDefaults;
+import static com.proofpoint.configuration.testing.ConfigAssertions.recordDefaults;
+import static com.proofpoint.testing.ValidationAssertions.assertFailsValidation;
+import static com.proofpoint.testing.ValidationAssertions.assertValidates;
+
+public class TestBulkheadConfig
+{
+    @Test
+    public void testDefaults()
+    {
+        assertRecordedDefaults(recordDefaults(BulkheadConfig.class)
+                .setMaxConcurrency(10)
+                .setMaxQueued(100));
+    }
+
+    @Test
+    public void testExplicitPropertyMappings()
+    {
+        Map<String, String> properties = new ImmutableMap.Builder<String, String>()
+                .put("max-concurrency", "3")
+                .put("max-queued", "7")
+                .build();
+
+        BulkheadConfig expected = new BulkheadConfig()
+                .setMaxConcurrency(3)
+                .setMaxQueued(7);
+
+        assertFullMapping(properties, expected);
+    }
+
+    @Test
+    public void testValidations()
+    {
+        assertValidates(new BulkheadConfig().setMaxQueued(0));
+        assertFailsValidation(new BulkheadConfig().setMaxConcurrency(0), "maxConcurrency", "must be greater than or equal to 1", Min.class);
+        assertFailsValidation(new BulkheadConfig().setMaxQueued(-1), "maxQueued", "must be greater than or equal to 0", Min.class);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.jaxrs;
+
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.proofpoint.bootstrap.LifeCycleManager;
+import com.proofpoint.http.client.HttpClient;
+import com.proofpoint.http.client.StatusResponseHandler.StatusResponse;
+import com.proofpoint.http.client.jetty.JettyHttpClient;
+import com.proofpoint.http.server.testing.TestingHttpServer;
+import com.proofpoint.http.server.testing.TestingHttpServerModule;
+import com.proofpoint.json.JsonModule;
+import com.proofpoint.node.testing.TestingNodeModule;
+import com.proofpoint.reporting.ReportingModule;
+import com.proofpoint.testing.Closeables;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+
+import static com.google.inject.name.Names.named;
+import static com.proofpoint.bootstrap.Bootstrap.bootstrapTest;
+import static com.proofpoint.http.client.Request.Builder.prepareGet;
+import static com.proofpoint.http.client.StatusResponseHandler.createStatusResponseHandler;
+import static com.proofpoint.jaxrs.JaxrsBinder.jaxrsBinder;
+import static com.proofpoint.jaxrs.JaxrsModule.explicitJaxrsModule;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+
+@Test(singleThreaded = true)
+public class TestBulkheadInHttpServer
+{
+    private final HttpClient client = new JettyHttpClient();
+
+    private LifeCycleManager lifeCycleManager;
+    private TestingHttpServer server;
+    private Bulkhead bulkhead;
+
+    @BeforeMethod
+    public void setup()
+            throws Exception
+    {
+        Injector injector = bootstrapTest()
+                .withModules(
+                        new TestingNodeModule(),
+                        explicitJaxrsModule(),
+                        new JsonModule(),
+                        new ReportingModule(),
+                        binder -> binder.bind(MBeanServer.class).toInstance(mock(MBeanServer.class)),
+                        new TestingHttpServerModule(),
+                        binder -> {
+                            jaxrsBinder(binder).bindBulkhead("test");
+                            jaxrsBinder(binder).bind(BulkheadResource.class);
+                        })
+                .setRequiredConfigurationProperty("jaxrs.bulkhead.test.max-concurrency", "1")
+                .initialize();
+        lifeCycleManager = injector.getInstance(LifeCycleManager.class);
+        server = injector.getInstance(TestingHttpServer.class);
+        bulkhead = injector.getInstance(Key.get(Bulkhead.class, named("test")));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown()
+            throws Exception
+    {
+        if (lifeCycleManager != null) {
+            lifeCycleManager.stop();
+        }
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void teardownClass()
+    {
+        Closeables.closeQuietly(client);
+    }
+
+    @Test
+    public void testReleasesPermit()
+            throws Exception
+    {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(get("/bulkhead/ok").getStatusCode(), 200);
+            assertNoActiveRequests();
+        }
+    }
+
+    @Test
+    public void testReleasesPermitOnUnmappedException()
+            throws Exception
+    {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(get("/bulkhead/fail").getStatusCode(), 500);
+            assertNoActiveRequests();
+        }
+        assertEquals(get("/bulkhead/ok").getStatusCode(), 200);
+        assertEquals(bulkhead.getRejected().getTotalCount(), 0);
+    }
+
+    private void assertNoActiveRequests()
+            throws InterruptedException
+    {
+        // the permit is released once Jersey finishes the request, which may be after the response is sent
+        long deadline = System.nanoTime() + SECONDS.toNanos(10);
+        while (bulkhead.getActiveRequests() != 0 && System.nanoTime() - deadline < 0) {
+            MILLISECONDS.sleep(10);
+        }
+        assertEquals(bulkhead.getActiveRequests(), 0);
+    }
+
+    private StatusResponse get(String path)
+    {
+        return client.execute(prepareGet().setUri(server.getBaseUrl().resolve(path)).build(), createStatusResponseHandler());
+    }
+
+    @Path("/bulkhead")
+    @UseBulkhead("test")
+    public static class BulkheadResource
+    {
+        @GET
+        @Path("ok")
+        public String ok()
+        {
+            return "ok";
+        }
+
+        @GET
+        @Path("fail")
+        public String fail()
+        {
+            throw new RuntimeException("unmapped");
+        }
+    }
+}
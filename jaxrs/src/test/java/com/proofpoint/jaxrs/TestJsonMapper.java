@@ -15,16 +15,35 @@
  */
 package com.proofpoint.jaxrs;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.net.HttpHeaders;
+import com.google.common.reflect.TypeToken;
+import com.proofpoint.jaxrs.testing.GuavaMultivaluedMap;
 import com.proofpoint.json.JsonCodec;
 import com.proofpoint.json.ObjectMapperProvider;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
 
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 public class TestJsonMapper
     extends AbstractMapperTest<JsonMapper>
@@ -48,4 +67,111 @@ public class TestJsonMapper
 
         assertEquals(headers.getFirst(HttpHeaders.X_CONTENT_TYPE_OPTIONS), "nosniff");
     }
+
+    @Test
+    public void testDoesNotModifySharedFactory()
+            throws IOException
+    {
+        ObjectMapper objectMapper = new ObjectMapperProvider().get();
+        mapper = new JsonMapper(objectMapper);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        mapper.writeTo("<tag>", String.class, null, null, null, new GuavaMultivaluedMap<>(), outputStream);
+
+        assertEquals(outputStream.toString(UTF_8), "\"\\u003Ctag\\u003E\"\n");
+        assertNull(objectMapper.getFactory().getCharacterEscapes());
+    }
+
+    @Test
+    public void testPrettyAndCompactGenericType()
+            throws IOException
+    {
+        Type listType = new TypeToken<List<String>>()
+        {
+        }.getType();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        mapper.writeTo(List.of("a", "<b>"), List.class, listType, null, null, new GuavaMultivaluedMap<>(), outputStream);
+        assertEquals(outputStream.toString(UTF_8), "[\"a\",\"\\u003Cb\\u003E\"]\n");
+
+        UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getQueryParameters()).thenReturn(new GuavaMultivaluedMap<>(ImmutableListMultimap.of("pretty", "")));
+        mapper.setUriInfo(uriInfo);
+        outputStream = new ByteArrayOutputStream();
+        mapper.writeTo(List.of("a", "<b>"), List.class, listType, null, null, new GuavaMultivaluedMap<>(), outputStream);
+        assertEquals(outputStream.toString(UTF_8), "[ \"a\", \"\\u003Cb\\u003E\" ]\n");
+    }
+
+    @Test
+    public void testStreamingStream()
+            throws IOException
+    {
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<String> stream = Stream.of("a", "<b>").onClose(() -> closed.set(true));
+        Type streamType = new TypeToken<Stream<String>>()
+        {
+        }.getType();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        mapper.writeTo(stream, Stream.class, streamType, null, null, new GuavaMultivaluedMap<>(), outputStream);
+
+        assertEquals(outputStream.toString(UTF_8), "[\"a\",\"\\u003Cb\\u003E\"]\n");
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testStreamingIterator()
+            throws IOException
+    {
+        Iterator<Integer> iterator = IntStream.range(0, 2500).iterator();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        mapper.writeTo(iterator, Iterator.class, Iterator.class, null, null, new GuavaMultivaluedMap<>(), outputStream);
+
+        String json = outputStream.toString(UTF_8);
+        assertTrue(json.startsWith("[0,1,2,"));
+        assertTrue(json.endsWith(",2498,2499]\n"));
+    }
+
+    @Test
+    public void testStreamingIterable()
+            throws IOException
+    {
+        Iterable<String> iterable = () -> List.of("a", "b").iterator();
+        Type iterableType = new TypeToken<Iterable<String>>()
+        {
+        }.getType();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        mapper.writeTo(iterable, Iterable.class, iterableType, null, null, new GuavaMultivaluedMap<>(), outputStream);
+
+        assertEquals(outputStream.toString(UTF_8), "[\"a\",\"b\"]\n");
+    }
+
+    @Test
+    public void testStreamingFailureLeavesArrayUnterminated()
+    {
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<String> stream = Stream.of("a", "b", "c")
+                .map(value -> {
+                    if (value.equals("c")) {
+                        throw new IllegalStateException("test failure");
+                    }
+                    return value;
+                })
+                .onClose(() -> closed.set(true));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            mapper.writeTo(stream, Stream.class, Stream.class, null, null, new GuavaMultivaluedMap<>(), outputStream);
+            fail("expected IOException");
+        }
+        catch (IOException ignored) {
+        }
+
+        String json = outputStream.toString(UTF_8);
+        assertTrue(json.startsWith("[\"a\""), json);
+        assertFalse(json.contains("]"), json);
+        assertTrue(closed.get());
+    }
 }
@@ -51,9 +51,12 @@ import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
 import java.net.URI;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static com.google.inject.multibindings.OptionalBinder.newOptionalBinder;
 import static com.proofpoint.bootstrap.Bootstrap.bootstrapTest;
@@ -146,6 +149,37 @@ public class TestTimingFilter
         assertTimingMeasurement(prepareDelete(), "testDelete", 9.0);
     }
 
+    @Test
+    public void testCompletionStage()
+    {
+        // completes on another thread, so the start time must come from the request property
+        StatusResponse response = client.execute(
+                prepareGet().setUri(uriFor("/testing/stage")).build(),
+                createStatusResponseHandler());
+
+        assertEquals(response.getStatusCode(), NO_CONTENT.getStatusCode());
+
+        Table<String, Map<String, String>, Object> data = reportingTester.collectData();
+
+        assertEquals(data.row("TestingTimingResource.RequestTime.Max"), ImmutableMap.of(ImmutableMap.of("method", "testCompletionStage", "responseCode", "204", "responseCodeFamily", "2"), 9.0));
+        assertEquals(data.row("TestingTimingResource.RequestTime.Count"), ImmutableMap.of(ImmutableMap.of("method", "testCompletionStage", "responseCode", "204", "responseCodeFamily", "2"), 1.0));
+    }
+
+    @Test
+    public void testRepeatedRequestsShareStat()
+    {
+        for (int i = 0; i < 3; i++) {
+            StatusResponse response = client.execute(
+                    prepareGet().setUri(uriFor("/testing")).build(),
+                    createStatusResponseHandler());
+            assertEquals(response.getStatusCode(), NO_CONTENT.getStatusCode());
+        }
+
+        Table<String, Map<String, String>, Object> data = reportingTester.collectData();
+
+        assertEquals(data.row("TestingTimingResource.RequestTime.Count"), ImmutableMap.of(ImmutableMap.of("method", "testGet", "responseCode", "204", "responseCodeFamily", "2"), 3.0));
+    }
+
     private void assertTimingMeasurement(Builder requestBuilder, String expectedMethod, double expectedValue)
     {
         StatusResponse response = client.execute(
@@ -173,6 +207,24 @@ public class TestTimingFilter
         assertEquals(data.row("TestingAnnotatedTimingResource.RequestTime.Max"), ImmutableMap.of(ImmutableMap.of("method", "testGet", "responseCode", "204", "responseCodeFamily", "2", "tag", "value1"), 1.0));
     }
 
+    @Test
+    public void testAnnotatedGetDistinctTagValues()
+    {
+        for (String value : ImmutableList.of("value1", "value2", "value1")) {
+            StatusResponse response = client.execute(
+                    prepareGet().setUri(uriFor("/annotated?param1=" + value)).build(),
+                    createStatusResponseHandler());
+            assertEquals(response.getStatusCode(), NO_CONTENT.getStatusCode());
+        }
+
+        Table<String, Map<String, String>, Object> data = reportingTester.collectData();
+
+        assertEquals(data.row("TestingAnnotatedTimingResource.RequestTime.Count"), ImmutableMap.of(
+                ImmutableMap.of("method", "testGet", "responseCode", "204", "responseCodeFamily", "2", "tag", "value1"), 2.0,
+                ImmutableMap.of("method", "testGet", "responseCode", "204", "responseCodeFamily", "2", "tag", "value2"), 1.0
+        ));
+    }
+
     @Test
     public void testAnnotatedPut()
     {
@@ -306,6 +358,25 @@ public class TestTimingFilter
             ticker.elapseTime(4, SECONDS);
             completeOnNewThread(asyncResponse);
         }
+
+        @GET
+        @Path("stage")
+        public CompletionStage<Response> testCompletionStage()
+        {
+            ticker.elapseTime(4, SECONDS);
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            new Thread(() -> {
+                try {
+                    sleep(10);
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                ticker.elapseTime(5, SECONDS);
+                future.complete(noContent().build());
+            }).start();
+            return future;
+        }
     }
 
     private static void completeOnNewThread(AsyncResponse asyncResponse)
@@ -23,6 +23,7 @@ import com.google.common.reflect.TypeToken;
 import com.proofpoint.json.LengthLimitedWriter.LengthLimitExceededException;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.lang.reflect.Type;
 import java.util.List;
@@ -220,6 +221,21 @@ public class JsonCodec<T>
         }
     }
 
+    /**
+     * Writes the specified instance as json (UTF-8) to an output stream,
+     * without first converting it to an intermediate array.
+     *
+     * @param outputStream the stream to write to
+     * @param instance the instance to convert to json
+     * @throws IOException if the specified instance can not be converted to
+     * json or the stream can not be written
+     */
+    public void writeJson(OutputStream outputStream, T instance)
+            throws IOException
+    {
+        mapper.writeValue(outputStream, instance);
+    }
+
     @SuppressWarnings("unchecked")
     TypeToken<T> getTypeToken()
     {
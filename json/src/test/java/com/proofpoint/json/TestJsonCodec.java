@@ -19,6 +19,7 @@ import com.google.common.base.Strings;
 import com.google.common.reflect.TypeToken;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -240,4 +241,16 @@ public class TestJsonCodec
         assertFalse(jsonCodec.toJsonWithLengthLimit(people, 10381).isPresent());
         assertTrue(jsonCodec.toJsonWithLengthLimit(people, 10382).isPresent());
     }
+
+    @Test
+    public void testWriteJson()
+            throws Exception
+    {
+        JsonCodec<List<ImmutablePerson>> jsonCodec = listJsonCodec(jsonCodec(ImmutablePerson.class));
+        List<ImmutablePerson> people = Collections.nCopies(10, new ImmutablePerson("dain", true));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        jsonCodec.writeJson(out, people);
+        assertEquals(out.toByteArray(), jsonCodec.toJsonBytes(people));
+    }
 }
@@ -28,6 +28,7 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Multimap;
 import com.proofpoint.configuration.PropertiesBuilder;
+import com.proofpoint.tracetoken.TraceTokenManager;
 import com.proofpoint.units.DataSize;
 import com.proofpoint.units.Duration;
 
@@ -387,6 +388,8 @@ public class Logging
         if (config.getBootstrapLogPath() != null) {
             setupBootstrapLog(config.getBootstrapLogPath());
         }
+
+        TraceTokenManager.setThreadRenamingEnabled(config.isThreadRenamingEnabled());
     }
 
     private static void setupBootstrapLog(String logPath)
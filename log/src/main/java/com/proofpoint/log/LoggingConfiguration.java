@@ -34,6 +34,7 @@ public class LoggingConfiguration
     private int queueSize = 0;
     private String levelsFile = null;
     private DataSize maxTotalSize = new DataSize(1, Unit.GIGABYTE);
+    private boolean threadRenamingEnabled = false;
 
     public boolean isConsoleEnabled()
     {
@@ -134,5 +135,17 @@ public class LoggingConfiguration
         this.maxTotalSize = maxTotalSize;
         return this;
     }
-}
 
+    public boolean isThreadRenamingEnabled()
+    {
+        return threadRenamingEnabled;
+    }
+
+    @Config("log.thread-renaming.enabled")
+    @ConfigDescription("Include the trace token in the names of threads handling requests")
+    public LoggingConfiguration setThreadRenamingEnabled(boolean threadRenamingEnabled)
+    {
+        this.threadRenamingEnabled = threadRenamingEnabled;
+        return this;
+    }
+}
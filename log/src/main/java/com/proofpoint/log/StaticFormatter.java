@@ -1,5 +1,7 @@
 package com.proofpoint.log;
 
+import com.proofpoint.tracetoken.TraceToken;
+
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.time.Instant;
@@ -12,6 +14,7 @@ import java.util.Locale;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
 
+import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
 import static java.time.temporal.ChronoField.DAY_OF_MONTH;
 import static java.time.temporal.ChronoField.HOUR_OF_DAY;
 import static java.time.temporal.ChronoField.MILLI_OF_SECOND;
@@ -54,6 +57,7 @@ class StaticFormatter
     public String format(LogRecord record)
     {
         ZonedDateTime timestamp = ZonedDateTime.ofInstant(Instant.ofEpochMilli(record.getMillis()), SYSTEM_ZONE);
+        TraceToken traceToken = getCurrentTraceToken();
 
         StringWriter stringWriter = new StringWriter()
                 .append(TIMESTAMP_FORMATTER.format(timestamp))
@@ -64,7 +68,7 @@ class StaticFormatter
                 .append('\t')
                 .append(record.getLoggerName())
                 .append('\t')
-                // Trace token used to be here
+                .append(traceToken == null ? "" : traceToken.toString())
                 .append('\t')
                 .append(record.getMessage());
 
@@ -23,6 +23,7 @@ public class TestLoggingConfiguration
                 .setQueueSize(0)
                 .setLevelsFile(null)
                 .setMaxTotalSize(new DataSize(1, Unit.GIGABYTE))
+                .setThreadRenamingEnabled(false)
         );
     }
 
@@ -38,6 +39,7 @@ public class TestLoggingConfiguration
                 .put("log.queue-size", "10000")
                 .put("log.levels-file", "var/log/log-levels-test.cfg")
                 .put("log.max-total-size", "5GB")
+                .put("log.thread-renaming.enabled", "true")
                 .build();
 
         LoggingConfiguration expected = new LoggingConfiguration()
@@ -48,7 +50,8 @@ public class TestLoggingConfiguration
                 .setMaxHistory(25)
                 .setQueueSize(10_000)
                 .setLevelsFile("var/log/log-levels-test.cfg")
-                .setMaxTotalSize(new DataSize(5, Unit.GIGABYTE));
+                .setMaxTotalSize(new DataSize(5, Unit.GIGABYTE))
+                .setThreadRenamingEnabled(true);
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
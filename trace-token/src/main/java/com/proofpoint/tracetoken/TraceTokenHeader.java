@@ -0,0 +1,153 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.tracetoken;
+
+import java.net.URLDecoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compact encoding of a {@link TraceToken} for the trace token request header.
+ * <p>
+ * A token with no properties other than its id is encoded as the id itself. A
+ * token with other properties is encoded as {@code ~id;key=value;key=value},
+ * with any {@code %}, {@code ;}, {@code =}, {@code +}, whitespace, control, or
+ * non-ASCII characters percent-encoded as UTF-8. Properties with keys starting
+ * with {@code _} are local to the process and are not encoded.
+ */
+public final class TraceTokenHeader
+{
+    private static final char COMPACT_PREFIX = '~';
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private TraceTokenHeader()
+    {}
+
+    /**
+     * @return whether the header value is in the compact multi-property form
+     */
+    public static boolean isCompact(String value)
+    {
+        return !value.isEmpty() && value.charAt(0) == COMPACT_PREFIX;
+    }
+
+    public static String encode(TraceToken token)
+    {
+        requireNonNull(token, "token is null");
+        String id = token.get("id");
+
+        boolean hasProperties = false;
+        for (String key : token.keySet()) {
+            if (!key.equals("id") && !key.startsWith("_")) {
+                hasProperties = true;
+                break;
+            }
+        }
+        if (!hasProperties && !id.isEmpty() && id.charAt(0) != COMPACT_PREFIX && id.charAt(0) != '{') {
+            return id;
+        }
+
+        StringBuilder builder = new StringBuilder(64);
+        builder.append(COMPACT_PREFIX);
+        appendEscaped(builder, id);
+        for (Entry<String, String> entry : token.entrySet()) {
+            String key = entry.getKey();
+            if (key.equals("id") || key.startsWith("_")) {
+                continue;
+            }
+            builder.append(';');
+            appendEscaped(builder, key);
+            builder.append('=');
+            appendEscaped(builder, entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Decodes a header value in the compact multi-property form.
+     *
+     * @throws IllegalArgumentException if the value is malformed
+     */
+    public static TraceToken decode(String value)
+    {
+        checkArgument(isCompact(value), "value is not a compact trace token");
+
+        Map<String, String> map = new LinkedHashMap<>();
+        int end = value.indexOf(';', 1);
+        if (end < 0) {
+            end = value.length();
+        }
+        map.put("id", unescape(value, 1, end));
+
+        while (end < value.length()) {
+            int start = end + 1;
+            end = value.indexOf(';', start);
+            if (end < 0) {
+                end = value.length();
+            }
+            int equals = value.indexOf('=', start);
+            checkArgument(equals >= 0 && equals < end, "trace token property has no value");
+            String key = unescape(value, start, equals);
+            checkArgument(!key.equals("id"), "trace token has duplicate id");
+            if (!key.startsWith("_")) {
+                map.put(key, unescape(value, equals + 1, end));
+            }
+        }
+        return new TraceToken(map);
+    }
+
+    private static void appendEscaped(StringBuilder builder, String string)
+    {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c > ' ' && c < 0x7f && c != '%' && c != ';' && c != '=' && c != '+') {
+                builder.append(c);
+            }
+            else if (c < 0x80) {
+                appendPercentEncoded(builder, c);
+            }
+            else {
+                int codePoint = string.codePointAt(i);
+                i += Character.charCount(codePoint) - 1;
+                for (byte b : new String(Character.toChars(codePoint)).getBytes(UTF_8)) {
+                    appendPercentEncoded(builder, b & 0xff);
+                }
+            }
+        }
+    }
+
+    private static void appendPercentEncoded(StringBuilder builder, int b)
+    {
+        builder.append('%')
+                .append(HEX_DIGITS[b >> 4])
+                .append(HEX_DIGITS[b & 0xf]);
+    }
+
+    private static String unescape(String value, int start, int end)
+    {
+        String string = value.substring(start, end);
+        if (string.indexOf('%') < 0) {
+            return string;
+        }
+        // '+' is always escaped, so URLDecoder's treatment of it does not apply
+        return URLDecoder.decode(string, UTF_8);
+    }
+}
@@ -34,10 +34,28 @@ import static java.util.Objects.requireNonNull;
 public final class TraceTokenManager
 {
     private static final ThreadLocal<TokenState> token = new ThreadLocal<>();
+    private static final TraceTokenScope NO_TOKEN_SCOPE = new TraceTokenScope(null);
+    private static volatile boolean threadRenamingEnabled;
 
     private TraceTokenManager()
     {}
 
+    /**
+     * Set whether the name of a thread is changed to include its trace token
+     * while the token is registered. Renaming threads has a cost on every
+     * registration, so it is disabled by default; the log formatter includes
+     * the trace token without it.
+     */
+    public static void setThreadRenamingEnabled(boolean threadRenamingEnabled)
+    {
+        TraceTokenManager.threadRenamingEnabled = threadRenamingEnabled;
+    }
+
+    public static boolean isThreadRenamingEnabled()
+    {
+        return threadRenamingEnabled;
+    }
+
     /**
      * Associate a given trace token id, with no other properties, with the
      * current thread.
@@ -77,25 +95,35 @@ public final class TraceTokenManager
     {
         TokenState oldTokenState = TraceTokenManager.token.get();
 
-        String oldThreadName;
-        if (oldTokenState == null) {
-            oldThreadName = currentThread().getName();
-        }
-        else {
+        String oldThreadName = null;
+        if (oldTokenState != null) {
             oldThreadName = oldTokenState.getOldThreadName();
         }
+        boolean renameThread = threadRenamingEnabled;
+        if (oldThreadName == null && renameThread) {
+            oldThreadName = currentThread().getName();
+        }
 
         if (token == null) {
             TraceTokenManager.token.set(null);
-            currentThread().setName(oldThreadName);
+            if (oldThreadName != null) {
+                currentThread().setName(oldThreadName);
+            }
         }
-        else {
+        else if (renameThread) {
             TraceTokenManager.token.set(new AutoValue_TraceTokenManager_TokenState(token, oldThreadName));
             currentThread().setName(oldThreadName + " " + token);
         }
+        else {
+            // Undo any renaming done while thread renaming was enabled
+            if (oldThreadName != null) {
+                currentThread().setName(oldThreadName);
+            }
+            TraceTokenManager.token.set(new AutoValue_TraceTokenManager_TokenState(token, null));
+        }
 
         if (oldTokenState == null) {
-            return new TraceTokenScope(null);
+            return NO_TOKEN_SCOPE;
         }
         else {
             return new TraceTokenScope(oldTokenState.getToken());
@@ -154,7 +182,7 @@ public final class TraceTokenManager
     {
         TokenState oldToken = TraceTokenManager.token.get();
         token.remove();
-        if (oldToken != null) {
+        if (oldToken != null && oldToken.getOldThreadName() != null) {
             currentThread().setName(oldToken.getOldThreadName());
         }
     }
@@ -172,7 +200,7 @@ public final class TraceTokenManager
         TokenState tokenState = token.get();
 
         if (tokenState == null) {
-            return new TraceTokenScope(null);
+            return NO_TOKEN_SCOPE;
         }
 
         Map<String, String> map = new LinkedHashMap<>(tokenState.getToken());
@@ -192,6 +220,7 @@ public final class TraceTokenManager
     {
         abstract TraceToken getToken();
 
+        @Nullable
         abstract String getOldThreadName();
     }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2022 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.tracetoken;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static com.proofpoint.tracetoken.TraceTokenHeader.decode;
+import static com.proofpoint.tracetoken.TraceTokenHeader.encode;
+import static com.proofpoint.tracetoken.TraceTokenHeader.isCompact;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestTraceTokenHeader
+{
+    @Test
+    public void testIdOnly()
+    {
+        assertEquals(encode(new TraceToken(ImmutableMap.of("id", "abc=="))), "abc==");
+        assertEquals(encode(new TraceToken(ImmutableMap.of("id", "abc", "_local", "value"))), "abc");
+        assertFalse(isCompact("abc"));
+    }
+
+    @Test
+    public void testIdNeedingCompactForm()
+    {
+        TraceToken token = new TraceToken(ImmutableMap.of("id", "~abc"));
+        assertEquals(encode(token), "~~abc");
+        assertEquals(decode(encode(token)), token);
+
+        token = new TraceToken(ImmutableMap.of("id", "{abc"));
+        assertEquals(encode(token), "~{abc");
+        assertEquals(decode(encode(token)), token);
+    }
+
+    @Test
+    public void testProperties()
+    {
+        TraceToken token = new TraceToken(ImmutableMap.of("id", "testBasic", "key-b", "value-b", "key-a", "value-a"));
+        String encoded = encode(token);
+        assertEquals(encoded, "~testBasic;key-b=value-b;key-a=value-a");
+        assertTrue(isCompact(encoded));
+
+        TraceToken decoded = decode(encoded);
+        assertEquals(decoded, token);
+        assertEquals(decoded.keySet(), List.of("id", "key-b", "key-a"));
+    }
+
+    @Test
+    public void testIgnoresLocalProperties()
+    {
+        TraceToken token = new TraceToken(ImmutableMap.of("id", "testBasic", "_local-1", "value-1", "key-a", "value-a"));
+        assertEquals(encode(token), "~testBasic;key-a=value-a");
+        assertEquals(decode("~testBasic;_local-1=value-1;key-a=value-a"), ImmutableMap.of("id", "testBasic", "key-a", "value-a"));
+    }
+
+    @Test
+    public void testEscaping()
+    {
+        TraceToken token = new TraceToken(ImmutableMap.of("id", "a;b=c", "key %+", "value with spaces, é and 😀"));
+        String encoded = encode(token);
+        assertEquals(encoded, "~a%3Bb%3Dc;key%20%25%2B=value%20with%20spaces,%20%C3%A9%20and%20%F0%9F%98%80");
+        assertEquals(decode(encoded), token);
+    }
+
+    @Test
+    public void testEmptyValue()
+    {
+        TraceToken token = new TraceToken(ImmutableMap.of("id", "abc", "key", ""));
+        assertEquals(encode(token), "~abc;key=");
+        assertEquals(decode("~abc;key="), token);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingValue()
+    {
+        decode("~abc;key");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDuplicateId()
+    {
+        decode("~abc;id=def");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidEscape()
+    {
+        decode("~abc;key=%zz");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNotCompact()
+    {
+        decode("abc");
+    }
+}
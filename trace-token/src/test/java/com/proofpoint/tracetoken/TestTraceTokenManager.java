@@ -29,6 +29,7 @@ import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentRequestToken
 import static com.proofpoint.tracetoken.TraceTokenManager.getCurrentTraceToken;
 import static com.proofpoint.tracetoken.TraceTokenManager.registerRequestToken;
 import static com.proofpoint.tracetoken.TraceTokenManager.registerTraceToken;
+import static com.proofpoint.tracetoken.TraceTokenManager.setThreadRenamingEnabled;
 import static java.lang.Thread.currentThread;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
@@ -44,11 +45,13 @@ public class TestTraceTokenManager
     {
         originalThreadName.set(currentThread().getName());
         currentThread().setName("testing thread name");
+        setThreadRenamingEnabled(true);
     }
 
     @AfterMethod(alwaysRun = true)
     public void cleanup()
     {
+        setThreadRenamingEnabled(false);
         currentThread().setName(originalThreadName.get());
     }
 
@@ -263,4 +266,42 @@ public class TestTraceTokenManager
         assertNull(getCurrentTraceToken());
         assertEquals(currentThread().getName(), "testing thread name");
     }
+
+    @Test
+    public void testThreadRenamingDisabled()
+    {
+        clearRequestToken();
+        setThreadRenamingEnabled(false);
+
+        try (TraceTokenScope ignored = registerTraceToken(TESTING_TRACE_TOKEN)) {
+            assertEquals(getCurrentTraceToken(), TESTING_TRACE_TOKEN);
+            assertEquals(currentThread().getName(), "testing thread name");
+
+            try (TraceTokenScope ignored2 = registerRequestToken("abc")) {
+                assertEquals(getCurrentRequestToken(), "abc");
+                assertEquals(currentThread().getName(), "testing thread name");
+            }
+            assertEquals(getCurrentTraceToken(), TESTING_TRACE_TOKEN);
+        }
+        assertNull(getCurrentTraceToken());
+        assertEquals(currentThread().getName(), "testing thread name");
+    }
+
+    @Test
+    public void testThreadRenamingDisabledRestoresName()
+    {
+        registerRequestToken("abc");
+        assertEquals(currentThread().getName(), "testing thread name abc");
+
+        setThreadRenamingEnabled(false);
+        registerRequestToken("def");
+        assertEquals(getCurrentRequestToken(), "def");
+        assertEquals(currentThread().getName(), "testing thread name");
+
+        setThreadRenamingEnabled(true);
+        registerRequestToken("ghi");
+        assertEquals(currentThread().getName(), "testing thread name ghi");
+        clearRequestToken();
+        assertEquals(currentThread().getName(), "testing thread name");
+    }
 }